@@ -27,6 +27,20 @@ CREATE EXTENSION IF NOT EXISTS plpgsql WITH SCHEMA pg_catalog;
 COMMENT ON EXTENSION plpgsql IS 'PL/pgSQL procedural language';
 
 
+--
+-- Name: pg_trgm; Type: EXTENSION; Schema: -; Owner: -
+--
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm WITH SCHEMA public;
+
+
+--
+-- Name: EXTENSION pg_trgm; Type: COMMENT; Schema: -; Owner: -
+--
+
+COMMENT ON EXTENSION pg_trgm IS 'text similarity measurement and index searching based on trigrams';
+
+
 SET search_path = public, pg_catalog;
 
 --
@@ -1704,6 +1718,7 @@ BEGIN
             DELETE FROM goodfood_extrusionprotocol WHERE order_id = _order.id;
             DELETE FROM orders_operationaltask WHERE order_id = _order.id;
             DELETE FROM productflowthrudivision_materialavailability WHERE order_id = _order.id;
+            DELETE FROM productflowthrudivision_ordermaterialusage WHERE order_id = _order.id;
             DELETE FROM productioncounting_productiontrackingreport WHERE order_id = _order.id;
             DELETE FROM productioncounting_productiontracking WHERE order_id = _order.id;
             DELETE FROM productionpershift_productionpershift WHERE order_id = _order.id;
@@ -9929,7 +9944,11 @@ CREATE TABLE productioncounting_productiontracking (
     workstation_id bigint,
     batch_id bigint,
     expirationdate date,
-    qualityrating character varying(255)
+    qualityrating character varying(255),
+    acceptancequeuedat timestamp without time zone,
+    acceptancestartedat timestamp without time zone,
+    acceptancenextattemptat timestamp without time zone,
+    acceptanceattempts integer DEFAULT 0
 );
 
 
@@ -16581,7 +16600,12 @@ CREATE SEQUENCE materialflowresources_resourcedto_id_seq
 CREATE TABLE materialflowresources_resourcestock (
     id bigint NOT NULL,
     location_id bigint,
-    product_id bigint
+    product_id bigint,
+    quantity numeric(12,5) DEFAULT (0)::numeric,
+    quantityinadditionalunit numeric(12,5) DEFAULT (0)::numeric,
+    reservedquantity numeric(12,5) DEFAULT (0)::numeric,
+    orderedquantity numeric(12,5) DEFAULT (0)::numeric,
+    minimumstate numeric(12,5) DEFAULT (0)::numeric
 );
 
 
@@ -19819,6 +19843,38 @@ CREATE SEQUENCE productflowthrudivision_materialavailability_id_seq
 ALTER SEQUENCE productflowthrudivision_materialavailability_id_seq OWNED BY productflowthrudivision_materialavailability.id;
 
 
+--
+-- Name: productflowthrudivision_ordermaterialusage; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE productflowthrudivision_ordermaterialusage (
+    id bigint NOT NULL,
+    order_id bigint NOT NULL,
+    product_id bigint NOT NULL,
+    quantity numeric DEFAULT (0)::numeric,
+    cost numeric DEFAULT (0)::numeric
+);
+
+
+--
+-- Name: productflowthrudivision_ordermaterialusage_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE productflowthrudivision_ordermaterialusage_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: productflowthrudivision_ordermaterialusage_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE productflowthrudivision_ordermaterialusage_id_seq OWNED BY productflowthrudivision_ordermaterialusage.id;
+
+
 --
 -- Name: productflowthrudivision_productandquantityhelper; Type: TABLE; Schema: public; Owner: -
 --
@@ -28315,6 +28371,13 @@ ALTER TABLE ONLY productflowthrudivision_issue ALTER COLUMN id SET DEFAULT nextv
 ALTER TABLE ONLY productflowthrudivision_materialavailability ALTER COLUMN id SET DEFAULT nextval('productflowthrudivision_materialavailability_id_seq'::regclass);
 
 
+--
+-- Name: id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productflowthrudivision_ordermaterialusage ALTER COLUMN id SET DEFAULT nextval('productflowthrudivision_ordermaterialusage_id_seq'::regclass);
+
+
 --
 -- Name: id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -35950,6 +36013,21 @@ COPY productflowthrudivision_materialavailability (id, order_id, product_id, ava
 SELECT pg_catalog.setval('productflowthrudivision_materialavailability_id_seq', 1, false);
 
 
+--
+-- Data for Name: productflowthrudivision_ordermaterialusage; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY productflowthrudivision_ordermaterialusage (id, order_id, product_id, quantity, cost) FROM stdin;
+\.
+
+
+--
+-- Name: productflowthrudivision_ordermaterialusage_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('productflowthrudivision_ordermaterialusage_id_seq', 1, false);
+
+
 --
 -- Data for Name: productflowthrudivision_productandquantityhelper; Type: TABLE DATA; Schema: public; Owner: -
 --
@@ -39037,6 +39115,13 @@ COPY zmbak_tpctable (id, product_id, quantity, price, date, entityversion) FROM
 SELECT pg_catalog.setval('zmbak_tpctable_id_seq', 1, false);
 
 
+--
+-- Name: materialflowresources_resourcestock; Type: TABLE DATA UPDATE; Schema: public; Owner: -
+--
+
+UPDATE materialflowresources_resourcestock rs SET quantity = v.quantity, quantityinadditionalunit = v.quantityinadditionalunit, reservedquantity = v.reservedquantity, orderedquantity = v.orderedquantity, minimumstate = v.minimumstate FROM materialflowresources_resourcestockdto v WHERE v.id = rs.id;
+
+
 --
 -- Name: advancedgenealogy_batch_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -42269,6 +42354,14 @@ ALTER TABLE ONLY productflowthrudivision_materialavailability
     ADD CONSTRAINT productflowthrudivision_materialavailability_pkey PRIMARY KEY (id);
 
 
+--
+-- Name: productflowthrudivision_ordermaterialusage_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productflowthrudivision_ordermaterialusage
+    ADD CONSTRAINT productflowthrudivision_ordermaterialusage_pkey PRIMARY KEY (id);
+
+
 --
 -- Name: productflowthrudivision_productandquantityhelper_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -44040,6 +44133,48 @@ CREATE INDEX basicproductioncounting_productioncountingqu_typeofmaterial_idx ON
 CREATE INDEX idx_adv_atchstatechange_batch_id ON advancedgenealogy_batchstatechange USING btree (batch_id);
 
 
+--
+-- Name: idx_adv_trackingrecord_producedbatch_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_adv_trackingrecord_producedbatch_id ON advancedgenealogy_trackingrecord USING btree (producedbatch_id);
+
+
+--
+-- Name: idx_adv_usedbatchsimple_batch_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_adv_usedbatchsimple_batch_id ON advancedgenealogy_usedbatchsimple USING btree (batch_id);
+
+
+--
+-- Name: idx_adv_usedbatchsimple_trackingrecord_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_adv_usedbatchsimple_trackingrecord_id ON advancedgenealogy_usedbatchsimple USING btree (trackingrecord_id);
+
+
+--
+-- Name: idx_adv_productinbatch_batch_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_adv_productinbatch_batch_id ON advancedgenealogyfororders_genealogyproductinbatch USING btree (batch_id);
+
+
+--
+-- Name: idx_adv_productinbatch_productincomponent_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_adv_productinbatch_productincomponent_id ON advancedgenealogyfororders_genealogyproductinbatch USING btree (genealogyproductincomponent_id);
+
+
+--
+-- Name: idx_adv_productincomponent_trackingrecord_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_adv_productincomponent_trackingrecord_id ON advancedgenealogyfororders_genealogyproductincomponent USING btree (trackingrecord_id);
+
+
 --
 -- Name: idx_ass_signmenttoshift_masterorder_id; Type: INDEX; Schema: public; Owner: -
 --
@@ -44124,6 +44259,34 @@ CREATE INDEX idx_bas_ountingquantity_technologyoperationcomponent_id ON basicpro
 CREATE INDEX idx_bas_product_parent_id ON basic_product USING btree (parent_id);
 
 
+--
+-- Name: idx_bas_product_number_trgm; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_bas_product_number_trgm ON basic_product USING gin (number gin_trgm_ops);
+
+
+--
+-- Name: idx_bas_additionalcode_code_trgm; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_bas_additionalcode_code_trgm ON basic_additionalcode USING gin (code gin_trgm_ops);
+
+
+--
+-- Name: idx_bas_palletnumber_number_trgm; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_bas_palletnumber_number_trgm ON basic_palletnumber USING gin (number gin_trgm_ops);
+
+
+--
+-- Name: idx_bas_attributevalue_value_trgm; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_bas_attributevalue_value_trgm ON basic_attributevalue USING gin (value gin_trgm_ops);
+
+
 --
 -- Name: idx_cmm_staffworktime_maintenanceevent_id; Type: INDEX; Schema: public; Owner: -
 --
@@ -44551,6 +44714,13 @@ CREATE INDEX idx_mat_position_product_id ON materialflowresources_position USING
 CREATE INDEX idx_mat_position_resource_id ON materialflowresources_position USING btree (resource_id);
 
 
+--
+-- Name: idx_mat_positionattributevalue_position_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_mat_positionattributevalue_position_id ON materialflowresources_positionattributevalue USING btree (position_id);
+
+
 --
 -- Name: idx_mat_resource_palletnumber_id; Type: INDEX; Schema: public; Owner: -
 --
@@ -44796,6 +44966,13 @@ CREATE INDEX idx_pro_ductiontracking_order_id ON productioncounting_productiontr
 CREATE INDEX idx_pro_ductiontracking_state ON productioncounting_productiontracking USING btree (state);
 
 
+--
+-- Name: idx_pro_ductiontracking_acceptance_queue; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_pro_ductiontracking_acceptance_queue ON productioncounting_productiontracking USING btree (order_id, acceptancequeuedat, id) WHERE ((state)::text = '05pending'::text);
+
+
 --
 -- Name: idx_pro_ductiontracking_technologyoperationcomponent_id; Type: INDEX; Schema: public; Owner: -
 --
@@ -44817,6 +44994,13 @@ CREATE INDEX idx_pro_ialavailability_order_id ON productflowthrudivision_materia
 CREATE INDEX idx_pro_ialavailability_product_id ON productflowthrudivision_materialavailability USING btree (product_id);
 
 
+--
+-- Name: idx_pro_ermaterialusage_order_id_product_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE UNIQUE INDEX idx_pro_ermaterialusage_order_id_product_id ON productflowthrudivision_ordermaterialusage USING btree (order_id, product_id);
+
+
 --
 -- Name: idx_pro_issue_document_id; Type: INDEX; Schema: public; Owner: -
 --
@@ -49589,6 +49773,22 @@ ALTER TABLE ONLY arch_productflowthrudivision_materialavailability
     ADD CONSTRAINT materialavailability_product_fkey FOREIGN KEY (product_id) REFERENCES basic_product(id) DEFERRABLE;
 
 
+--
+-- Name: ordermaterialusage_order_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productflowthrudivision_ordermaterialusage
+    ADD CONSTRAINT ordermaterialusage_order_fkey FOREIGN KEY (order_id) REFERENCES orders_order(id) ON DELETE CASCADE DEFERRABLE;
+
+
+--
+-- Name: ordermaterialusage_product_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productflowthrudivision_ordermaterialusage
+    ADD CONSTRAINT ordermaterialusage_product_fkey FOREIGN KEY (product_id) REFERENCES basic_product(id) ON DELETE CASCADE DEFERRABLE;
+
+
 --
 -- Name: materialflowmultitransfers_transfertemplate_locationfrom_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
 --
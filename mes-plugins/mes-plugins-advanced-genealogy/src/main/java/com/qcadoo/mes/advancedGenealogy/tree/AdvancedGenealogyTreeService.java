@@ -27,26 +27,23 @@ import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.ENTITY_TYPE
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.NUMBER;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.PARENT;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.PRIORITY;
-import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.SUPPLIER;
-import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.TRACKING_RECORDS;
-import static com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields.STATE;
-import static com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields.USED_BATCHES_SIMPLE;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.advancedGenealogy.constants.AdvancedGenealogyConstants;
-import com.qcadoo.mes.advancedGenealogy.constants.BatchFields;
-import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields;
-import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
-import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.plugin.api.PluginAccessor;
 
 @Service
@@ -60,12 +57,20 @@ public class AdvancedGenealogyTreeService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private BatchGenealogyGraphService batchGenealogyGraphService;
+
     public List<Entity> getProducedFromTree(final Entity batch, final boolean includeDrafts, final boolean makeIdsUnique) {
         List<Entity> tree = new ArrayList<Entity>();
 
+        long realParentId = batch.getId();
+
         addChild(tree, batch, makeIdsUnique);
 
-        generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
+        ListMultimap<Long, Long> edges = batchGenealogyGraphService.getProducedFromEdges(realParentId, includeDrafts,
+                isEnabled("advancedGenealogyForOrders"));
+
+        generateTree(batch, realParentId, tree, edges, getBatches(edges), Sets.newHashSet(realParentId), makeIdsUnique);
 
         return tree;
     }
@@ -77,152 +82,75 @@ public class AdvancedGenealogyTreeService {
 
         addChild(tree, batch, true);
 
-        generateUsedToProduceTree(batch, tree, includeDrafts, true, realParentId);
+        ListMultimap<Long, Long> edges = batchGenealogyGraphService.getUsedToProduceEdges(realParentId, includeDrafts,
+                isEnabled("advancedGenealogyForOrders"));
+
+        generateTree(batch, realParentId, tree, edges, getBatches(edges), Sets.newHashSet(realParentId), true);
 
         return tree;
     }
 
-    private boolean addChild(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
+    private void addChild(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
         child.setField(PARENT, null);
-        return addToList(tree, child, makeIdsUnique);
+        addToList(tree, child, makeIdsUnique);
     }
 
-    private boolean addChild(final List<Entity> tree, final Entity child, final Entity parent, final boolean makeIdsUnique) {
+    private void addChild(final List<Entity> tree, final Entity child, final Entity parent, final boolean makeIdsUnique) {
         child.setField(PARENT, parent);
-        return addToList(tree, child, makeIdsUnique);
+        addToList(tree, child, makeIdsUnique);
     }
 
-    private boolean addToList(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
+    private void addToList(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
         child.setField(PRIORITY, 1);
         child.setField(ENTITY_TYPE, L_BATCH);
 
-        if (checkIfTreeContainsEntity(tree, child)) {
-            return false;
-        } else {
-            if (makeIdsUnique) {
-                child.setId((long) tree.size());
-            }
-            tree.add(child);
-            return true;
+        if (makeIdsUnique) {
+            child.setId((long) tree.size());
         }
+        tree.add(child);
     }
 
-    private boolean checkIfTreeContainsEntity(final List<Entity> tree, final Entity child) {
-        for (Entity entity : tree) {
-            if (child.getField(PARENT).equals(entity.getField(PARENT)) && entity.getField(NUMBER).equals(child.getField(NUMBER))) {
-                Entity supplierChild = child.getBelongsToField(SUPPLIER);
-                Entity supplierEntity = entity.getBelongsToField(SUPPLIER);
-                if (supplierChild != null && supplierEntity != null && supplierChild.equals(supplierEntity)) {
-                    return true;
-                }
-                return true;
-            }
-        }
-        return false;
-    }
+    /**
+     * Adds batches related to the parent as its children, depth first. A batch number is added only once under the same
+     * parent, and a batch is not added below itself, so cyclic usages end the branch.
+     */
+    private void generateTree(final Entity parent, final Long realParentId, final List<Entity> tree,
+            final ListMultimap<Long, Long> edges, final Map<Long, Entity> batches, final Set<Long> path,
+            final boolean makeIdsUnique) {
+        Set<Object> childrenNumbers = Sets.newHashSet();
 
-    private void generateUsedToProduceTree(final Entity parent, final List<Entity> tree, final boolean includeDrafts,
-            final boolean makeIdsUnique, final long realParentId) {
-        List<Entity> batches = getDD().find().list().getEntities();
-
-        for (Entity producedBatch : batches) {
-            EntityList trackingRecords = producedBatch.getHasManyField(TRACKING_RECORDS);
-            for (Entity trackingRecord : trackingRecords) {
-                String type = trackingRecord.getStringField(ENTITY_TYPE);
-                if (type == null) {
-                    continue;
-                }
-
-                String state = trackingRecord.getStringField(STATE);
-
-                if (!TrackingRecordState.ACCEPTED.getStringValue().equals(state)) {
-                    boolean isDraftAndWeIncludeDrafts = TrackingRecordState.DRAFT.getStringValue().equals(state) && includeDrafts;
-
-                    if (!isDraftAndWeIncludeDrafts) {
-                        continue;
-                    }
-                }
-
-                if (TrackingRecordType.SIMPLE.equals(type)) {
-                    EntityList usedBatches = trackingRecord.getHasManyField(USED_BATCHES_SIMPLE);
-                    for (Entity usedBatch : usedBatches) {
-                        Entity batch = usedBatch.getBelongsToField(L_BATCH);
-                        if (batch.getId().equals(realParentId)) {
-                            long realId = producedBatch.getId();
-                            boolean addedChild = addChild(tree, producedBatch, parent, makeIdsUnique);
-                            if (addedChild) {
-                                generateUsedToProduceTree(producedBatch, tree, includeDrafts, makeIdsUnique, realId);
-                            }
-                        }
-                    }
-                } else if (TrackingRecordType.FOR_ORDER.equals(type) && isEnabled("advancedGenealogyForOrders")) {
-                    EntityList genealogyProductInComponents = trackingRecord.getHasManyField("genealogyProductInComponents");
-                    for (Entity genealogyProductInComponent : genealogyProductInComponents) {
-                        EntityList productInBatches = genealogyProductInComponent.getHasManyField("productInBatches");
-                        for (Entity producedInBatch : productInBatches) {
-                            Entity batch = producedInBatch.getBelongsToField(L_BATCH);
-                            if (batch == null) {
-                                continue;
-                            }
-                            if (batch.getId().equals(realParentId)) {
-                                long realId = producedBatch.getId();
-                                boolean addedChild = addChild(tree, producedBatch, parent, makeIdsUnique);
-                                if (addedChild) {
-                                    generateUsedToProduceTree(producedBatch, tree, includeDrafts, makeIdsUnique, realId);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-    }
+        for (Long batchId : edges.get(realParentId)) {
+            Entity batch = batches.get(batchId);
 
-    private void generateProducedFromTree(final Entity producedBatch, final List<Entity> tree, final boolean includeDrafts,
-            final boolean makeIdsUnique) {
-        EntityList trackingRecords = producedBatch.getHasManyField(BatchFields.TRACKING_RECORDS);
-        for (Entity trackingRecord : trackingRecords) {
-            String type = trackingRecord.getStringField(TrackingRecordFields.ENTITY_TYPE);
-            if (type == null) {
+            if ((batch == null) || path.contains(batchId) || !childrenNumbers.add(batch.getField(NUMBER))) {
                 continue;
             }
 
-            String state = trackingRecord.getStringField(STATE);
+            Entity child = batch.copy();
 
-            if (!TrackingRecordState.ACCEPTED.getStringValue().equals(state)) {
-                boolean isDraftAndWeIncludeDrafts = TrackingRecordState.DRAFT.getStringValue().equals(state) && includeDrafts;
+            addChild(tree, child, parent, makeIdsUnique);
 
-                if (!isDraftAndWeIncludeDrafts) {
-                    continue;
-                }
-            }
+            path.add(batchId);
 
-            if (TrackingRecordType.SIMPLE.equals(type)) {
-                EntityList usedBatches = trackingRecord.getHasManyField(USED_BATCHES_SIMPLE);
-                for (Entity usedBatch : usedBatches) {
-                    Entity batch = usedBatch.getBelongsToField(L_BATCH);
-                    boolean addedChild = addChild(tree, batch, producedBatch, makeIdsUnique);
-                    if (addedChild) {
-                        generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
-                    }
-                }
-            } else if (TrackingRecordType.FOR_ORDER.equals(type) && isEnabled("advancedGenealogyForOrders")) {
-                EntityList genealogyProductInComponents = trackingRecord.getHasManyField("genealogyProductInComponents");
-                for (Entity genealogyProductInComponent : genealogyProductInComponents) {
-                    EntityList productInBatches = genealogyProductInComponent.getHasManyField("productInBatches");
-                    for (Entity producedInBatch : productInBatches) {
-                        Entity batch = producedInBatch.getBelongsToField(L_BATCH);
-                        if (batch == null) {
-                            continue;
-                        }
-                        boolean addedChild = addChild(tree, batch, producedBatch, makeIdsUnique);
-                        if (addedChild) {
-                            generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
-                        }
-                    }
-                }
-            }
+            generateTree(child, batchId, tree, edges, batches, path, makeIdsUnique);
+
+            path.remove(batchId);
+        }
+    }
+
+    private Map<Long, Entity> getBatches(final ListMultimap<Long, Long> edges) {
+        Map<Long, Entity> batches = Maps.newHashMap();
+
+        if (edges.isEmpty()) {
+            return batches;
         }
+
+        for (Entity batch : getDD().find().add(SearchRestrictions.in("id", Sets.newHashSet(edges.values()))).list()
+                .getEntities()) {
+            batches.put(batch.getId(), batch);
+        }
+
+        return batches;
     }
 
     private DataDefinition getDD() {
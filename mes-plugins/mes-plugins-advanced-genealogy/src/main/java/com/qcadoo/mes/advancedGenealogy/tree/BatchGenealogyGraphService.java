@@ -0,0 +1,115 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.tree;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
+import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
+
+/**
+ * Reads batch usages recorded by tracking records as edges between the used batch and the produced batch. Each direction of
+ * the genealogy is read with one recursive query, which follows only the edges reachable from the given batch.
+ */
+@Service
+public class BatchGenealogyGraphService {
+
+    private static final String L_SIMPLE_USAGES = "SELECT tr.id AS trackingrecord_id, ubs.id AS usage_id, "
+            + "tr.producedbatch_id, ubs.batch_id AS usedbatch_id FROM advancedgenealogy_trackingrecord tr "
+            + "JOIN advancedgenealogy_usedbatchsimple ubs ON ubs.trackingrecord_id = tr.id "
+            + "WHERE tr.entitytype = :simpleType AND tr.state IN (:states)";
+
+    private static final String L_FOR_ORDER_USAGES = "SELECT tr.id AS trackingrecord_id, gpib.id AS usage_id, "
+            + "tr.producedbatch_id, gpib.batch_id AS usedbatch_id FROM advancedgenealogy_trackingrecord tr "
+            + "JOIN advancedgenealogyfororders_genealogyproductincomponent gpic ON gpic.trackingrecord_id = tr.id "
+            + "JOIN advancedgenealogyfororders_genealogyproductinbatch gpib ON gpib.genealogyproductincomponent_id = gpic.id "
+            + "WHERE tr.entitytype = :forOrderType AND tr.state IN (:states)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * @return ids of batches produced from the key batch, for the given batch and all batches produced from it
+     */
+    public ListMultimap<Long, Long> getUsedToProduceEdges(final Long batchId, final boolean includeDrafts,
+            final boolean includeForOrders) {
+        return getEdges(batchId, "usedbatch_id", "producedbatch_id", includeDrafts, includeForOrders);
+    }
+
+    /**
+     * @return ids of batches used to produce the key batch, for the given batch and all batches it was produced from
+     */
+    public ListMultimap<Long, Long> getProducedFromEdges(final Long batchId, final boolean includeDrafts,
+            final boolean includeForOrders) {
+        return getEdges(batchId, "producedbatch_id", "usedbatch_id", includeDrafts, includeForOrders);
+    }
+
+    private ListMultimap<Long, Long> getEdges(final Long batchId, final String fromColumn, final String toColumn,
+            final boolean includeDrafts, final boolean includeForOrders) {
+        String usages = "SELECT * FROM (" + L_SIMPLE_USAGES;
+
+        if (includeForOrders) {
+            usages += " UNION ALL " + L_FOR_ORDER_USAGES;
+        }
+
+        usages += ") u WHERE u.producedbatch_id IS NOT NULL AND u.usedbatch_id IS NOT NULL";
+
+        String query = "WITH RECURSIVE reachable(batch_id) AS (SELECT CAST(:batchId AS bigint) UNION "
+                + "SELECT e." + toColumn + " FROM (" + usages + ") e JOIN reachable r ON e." + fromColumn + " = r.batch_id) "
+                + "SELECT e." + fromColumn + " AS from_id, e." + toColumn + " AS to_id FROM (" + usages + ") e "
+                + "JOIN reachable r ON e." + fromColumn + " = r.batch_id "
+                + "ORDER BY e." + fromColumn + ", e.trackingrecord_id, e.usage_id";
+
+        List<String> states = Lists.newArrayList(TrackingRecordState.ACCEPTED.getStringValue());
+
+        if (includeDrafts) {
+            states.add(TrackingRecordState.DRAFT.getStringValue());
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("batchId", batchId);
+        params.put("states", states);
+        params.put("simpleType", TrackingRecordType.SIMPLE);
+        params.put("forOrderType", TrackingRecordType.FOR_ORDER);
+
+        ListMultimap<Long, Long> edges = LinkedListMultimap.create();
+
+        jdbcTemplate.query(query, params, rs -> {
+            edges.put(rs.getLong("from_id"), rs.getLong("to_id"));
+        });
+
+        return edges;
+    }
+
+}
@@ -44,6 +44,7 @@ import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftReportFields;
 import com.qcadoo.mes.assignmentToShift.constants.OccupationType;
 import com.qcadoo.mes.basic.constants.FactoryFields;
 import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.print.xls.ReportStyleRegistry;
 import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -77,11 +78,14 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
 
     @Override
     protected void addHeader(final HSSFSheet sheet, final Locale locale, final Entity assignmentToShiftReport) {
-        createHeaderForAuthor(sheet, locale, assignmentToShiftReport);
-        createHeaderForAssignmentToShift(sheet, locale, assignmentToShiftReport);
+        ReportStyleRegistry styleRegistry = new ReportStyleRegistry(sheet.getWorkbook());
+
+        createHeaderForAuthor(sheet, styleRegistry, locale, assignmentToShiftReport);
+        createHeaderForAssignmentToShift(sheet, styleRegistry, locale, assignmentToShiftReport);
     }
 
-    private void createHeaderForAuthor(final HSSFSheet sheet, final Locale locale, final Entity assignmentToShiftReport) {
+    private void createHeaderForAuthor(final HSSFSheet sheet, final ReportStyleRegistry styleRegistry, final Locale locale,
+            final Entity assignmentToShiftReport) {
         HSSFRow headerAuthorLine = sheet.createRow(1);
 
         String shift = translationService.translate(AssignmentToShiftReportConstants.COLUMN_HEADER_SHIFT, locale) + " "
@@ -109,14 +113,14 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
 
         headerAuthorFactoryLine.setHeightInPoints(20);
 
-        assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAuthor(sheet, 1,
+        assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAuthor(sheet, styleRegistry, 1,
                 assignmentToShiftXlsHelper.getNumberOfDaysBetweenGivenDates(assignmentToShiftReport));
-        assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAuthorFactory(sheet, 2,
+        assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAuthorFactory(sheet, styleRegistry, 2,
                 assignmentToShiftXlsHelper.getNumberOfDaysBetweenGivenDates(assignmentToShiftReport));
     }
 
-    private void createHeaderForAssignmentToShift(final HSSFSheet sheet, final Locale locale,
-            final Entity assignmentToShiftReport) {
+    private void createHeaderForAssignmentToShift(final HSSFSheet sheet, final ReportStyleRegistry styleRegistry,
+            final Locale locale, final Entity assignmentToShiftReport) {
         List<DateTime> days = assignmentToShiftXlsHelper.getDaysBetweenGivenDates(assignmentToShiftReport);
 
         if (days != null) {
@@ -140,7 +144,7 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
 
             headerAssignmentToShift.setHeightInPoints(14);
 
-            assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAssignmentToShift(sheet, 4,
+            assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAssignmentToShift(sheet, styleRegistry, 4,
                     assignmentToShiftXlsHelper.getNumberOfDaysBetweenGivenDates(assignmentToShiftReport));
         }
     }
@@ -150,28 +154,33 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
         List<DateTime> days = assignmentToShiftXlsHelper.getDaysBetweenGivenDates(assignmentToShiftReport);
 
         if (days != null) {
+            ReportStyleRegistry styleRegistry = new ReportStyleRegistry(sheet.getWorkbook());
+
             int rowNum = 5;
 
             List<Entity> occupationTypesWithoutTechnicalCode = getOccupationTypeDictionaryWithoutTechnicalCode();
             List<Entity> productionlines = assignmentToShiftXlsHelper.getProductionLines();
 
             if (!productionlines.isEmpty()) {
-                rowNum = fillColumnWithStaffForWorkOnLine(sheet, rowNum, assignmentToShiftReport, days, productionlines,
-                        getDictionaryItemWithProductionOnLine());
+                rowNum = fillColumnWithStaffForWorkOnLine(sheet, styleRegistry, rowNum, assignmentToShiftReport, days,
+                        productionlines, getDictionaryItemWithProductionOnLine());
             }
 
             for (Entity dictionaryItem : occupationTypesWithoutTechnicalCode) {
-                rowNum = fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, days, dictionaryItem);
+                rowNum = fillColumnWithStaffForOtherTypes(sheet, styleRegistry, rowNum, assignmentToShiftReport, days,
+                        dictionaryItem);
             }
 
-            fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, days, getDictionaryItemWithOtherCase());
+            fillColumnWithStaffForOtherTypes(sheet, styleRegistry, rowNum, assignmentToShiftReport, days,
+                    getDictionaryItemWithOtherCase());
 
             sheet.autoSizeColumn(0);
         }
     }
 
-    private int fillColumnWithStaffForWorkOnLine(final HSSFSheet sheet, int rowNum, final Entity assignmentToShiftReport,
-            final List<DateTime> days, final List<Entity> productionLines, final Entity dictionaryItem) {
+    private int fillColumnWithStaffForWorkOnLine(final HSSFSheet sheet, final ReportStyleRegistry styleRegistry, int rowNum,
+            final Entity assignmentToShiftReport, final List<DateTime> days, final List<Entity> productionLines,
+            final Entity dictionaryItem) {
         if ((assignmentToShiftReport != null) && (days != null) && (productionLines != null)) {
             for (Entity productionLine : productionLines) {
                 int rowNumFromLastSection = rowNum;
@@ -256,7 +265,7 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
                 }
 
                 for (int i = rowNumFromLastSection; i < rowNum; i++) {
-                    assignmentToShiftXlsStyleHelper.addMarginsAndStylesForSeries(sheet, i,
+                    assignmentToShiftXlsStyleHelper.addMarginsAndStylesForSeries(sheet, styleRegistry, i,
                             assignmentToShiftXlsHelper.getNumberOfDaysBetweenGivenDates(assignmentToShiftReport));
 
                 }
@@ -323,8 +332,8 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
         return numberOfWorkers;
     }
 
-    private int fillColumnWithStaffForOtherTypes(final HSSFSheet sheet, int rowNum, final Entity assignmentToShiftReport,
-            final List<DateTime> days, final Entity dictionaryItem) {
+    private int fillColumnWithStaffForOtherTypes(final HSSFSheet sheet, final ReportStyleRegistry styleRegistry, int rowNum,
+            final Entity assignmentToShiftReport, final List<DateTime> days, final Entity dictionaryItem) {
         if ((assignmentToShiftReport != null) && (days != null) && (dictionaryItem != null)) {
             int rowNumFromLastSection = rowNum;
 
@@ -400,7 +409,7 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
             }
 
             for (int i = rowNumFromLastSection; i < rowNum; i++) {
-                assignmentToShiftXlsStyleHelper.addMarginsAndStylesForSeries(sheet, i,
+                assignmentToShiftXlsStyleHelper.addMarginsAndStylesForSeries(sheet, styleRegistry, i,
                         assignmentToShiftXlsHelper.getNumberOfDaysBetweenGivenDates(assignmentToShiftReport));
             }
         }
@@ -27,120 +27,100 @@ import org.apache.poi.hssf.usermodel.HSSFCell;
 import org.apache.poi.hssf.usermodel.HSSFCellStyle;
 import org.apache.poi.hssf.usermodel.HSSFFont;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.basic.print.xls.ReportFont;
+import com.qcadoo.mes.basic.print.xls.ReportStyle;
+import com.qcadoo.mes.basic.print.xls.ReportStyleRegistry;
+
 @Service
 public class AssignmentToShiftXlsStyleHelper {
 
-    public void setGreyDataStyleBorderTopAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_NONE,
+    private static final ReportFont L_HEADER_FONT = ReportFont.DEFAULT.withName(HSSFFont.FONT_ARIAL)
+            .withHeightInPoints((short) 12);
+
+    private static final ReportFont L_SERIES_FONT = ReportFont.DEFAULT.withName(HSSFFont.FONT_ARIAL)
+            .withHeightInPoints((short) 11);
+
+    private static final ReportStyle L_HEADER_STYLE = ReportStyle.DEFAULT.withVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER)
+            .withIndention((short) 3).withWrapText(true).withFillColor(HSSFColor.GREY_25_PERCENT.index);
+
+    private static final ReportStyle L_SERIES_STYLE = ReportStyle.DEFAULT.withVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER)
+            .withWrapText(true);
+
+    public void setGreyDataStyleBorderTopAlignLeftBold(final ReportStyleRegistry styleRegistry, final HSSFCell cell) {
+        cell.setCellStyle(getHeaderStyle(styleRegistry, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_NONE,
                 HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_NONE, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
     }
 
-    public void setGreyDataStyleBorderBottomAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_NONE,
+    public void setGreyDataStyleBorderBottomAlignLeftBold(final ReportStyleRegistry styleRegistry, final HSSFCell cell) {
+        cell.setCellStyle(getHeaderStyle(styleRegistry, HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_NONE,
                 HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
     }
 
-    public void setGreyDataStyleAlignRightBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_NONE,
+    public void setGreyDataStyleAlignRightBold(final ReportStyleRegistry styleRegistry, final HSSFCell cell) {
+        cell.setCellStyle(getHeaderStyle(styleRegistry, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_NONE,
                 HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.ALIGN_RIGHT, Font.BOLDWEIGHT_BOLD));
     }
 
-    public void setGreyDataStyleBorderTopLeftAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_MEDIUM,
+    public void setGreyDataStyleBorderTopLeftAlignLeftBold(final ReportStyleRegistry styleRegistry, final HSSFCell cell) {
+        cell.setCellStyle(getHeaderStyle(styleRegistry, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_MEDIUM,
                 HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_NONE, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
     }
 
-    public void setGreyDataStyleBorderTopRightAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_NONE,
+    public void setGreyDataStyleBorderTopRightAlignLeftBold(final ReportStyleRegistry styleRegistry, final HSSFCell cell) {
+        cell.setCellStyle(getHeaderStyle(styleRegistry, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_NONE,
                 HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_NONE, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
     }
 
-    public void setGreyDataStyleBorderLeftBottomAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_MEDIUM,
+    public void setGreyDataStyleBorderLeftBottomAlignLeftBold(final ReportStyleRegistry styleRegistry, final HSSFCell cell) {
+        cell.setCellStyle(getHeaderStyle(styleRegistry, HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_MEDIUM,
                 HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
     }
 
-    public void setGreyDataStyleBorderRightBottomAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_NONE,
+    public void setGreyDataStyleBorderRightBottomAlignLeftBold(final ReportStyleRegistry styleRegistry, final HSSFCell cell) {
+        cell.setCellStyle(getHeaderStyle(styleRegistry, HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_NONE,
                 HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
     }
 
-    public void setWhiteDataStyleBorderBoxAlignLeft(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getSeriesStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
+    public void setWhiteDataStyleBorderBoxAlignLeft(final ReportStyleRegistry styleRegistry, final HSSFCell cell) {
+        cell.setCellStyle(getSeriesStyle(styleRegistry, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
                 HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_NORMAL));
     }
 
-    public void setWhiteDataStyleBorderBoxAlignCenter(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getSeriesStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
+    public void setWhiteDataStyleBorderBoxAlignCenter(final ReportStyleRegistry styleRegistry, final HSSFCell cell) {
+        cell.setCellStyle(getSeriesStyle(styleRegistry, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
                 HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.ALIGN_CENTER, Font.BOLDWEIGHT_NORMAL));
     }
 
-    public void setWhiteDataStyleBorderBoxAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getSeriesStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
+    public void setWhiteDataStyleBorderBoxAlignLeftBold(final ReportStyleRegistry styleRegistry, final HSSFCell cell) {
+        cell.setCellStyle(getSeriesStyle(styleRegistry, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
                 HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
     }
 
-    public void setWhiteDataStyleBorderBoxAlignCenterBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getSeriesStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
+    public void setWhiteDataStyleBorderBoxAlignCenterBold(final ReportStyleRegistry styleRegistry, final HSSFCell cell) {
+        cell.setCellStyle(getSeriesStyle(styleRegistry, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
                 HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.ALIGN_CENTER, Font.BOLDWEIGHT_BOLD));
     }
 
-    private HSSFCellStyle getHeaderStyle(final HSSFWorkbook workbook, final short borderTop, final short borderLeft,
+    private CellStyle getHeaderStyle(final ReportStyleRegistry styleRegistry, final short borderTop, final short borderLeft,
             final short borderRight, final short borderBottom, final short alignment, final short boldweight) {
-        HSSFCellStyle style = workbook.createCellStyle();
-
-        style.setBorderTop(borderTop);
-        style.setBorderLeft(borderLeft);
-        style.setBorderRight(borderRight);
-        style.setBorderBottom(borderBottom);
-
-        style.setAlignment(alignment);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setIndention((short) 3);
-        style.setWrapText(true);
-
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 12);
-        font.setBoldweight(boldweight);
-
-        style.setFont(font);
-
-        return style;
+        return styleRegistry.getStyle(L_HEADER_STYLE.withBorders(borderTop, borderLeft, borderRight, borderBottom)
+                .withAlignment(alignment).withFont(L_HEADER_FONT.withBoldweight(boldweight)));
     }
 
-    private HSSFCellStyle getSeriesStyle(final HSSFWorkbook workbook, final short borderTop, final short borderLeft,
+    private CellStyle getSeriesStyle(final ReportStyleRegistry styleRegistry, final short borderTop, final short borderLeft,
             final short borderRight, final short borderBottom, final short alignment, final short boldweight) {
-        HSSFCellStyle style = workbook.createCellStyle();
-
-        style.setBorderTop(borderTop);
-        style.setBorderLeft(borderLeft);
-        style.setBorderRight(borderRight);
-        style.setBorderBottom(borderBottom);
-
-        style.setAlignment(alignment);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 11);
-        font.setBoldweight(boldweight);
-        style.setFont(font);
-
-        return style;
+        return styleRegistry.getStyle(L_SERIES_STYLE.withBorders(borderTop, borderLeft, borderRight, borderBottom)
+                .withAlignment(alignment).withFont(L_SERIES_FONT.withBoldweight(boldweight)));
     }
 
-    public void addMarginsAndStylesForAuthor(final HSSFSheet sheet, final int rowNumber, final int numberOfDays) {
+    public void addMarginsAndStylesForAuthor(final HSSFSheet sheet, final ReportStyleRegistry styleRegistry,
+            final int rowNumber, final int numberOfDays) {
         int firstColumnNumber = 0;
         int lastColumnNumber;
         int margin = 3;
@@ -157,11 +137,11 @@ public class AssignmentToShiftXlsStyleHelper {
             }
 
             if (columnNumber == firstColumnNumber) {
-                setGreyDataStyleBorderTopLeftAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderTopLeftAlignLeftBold(styleRegistry, sheet.getRow(rowNumber).getCell(columnNumber));
             } else if (columnNumber == lastColumnNumber) {
-                setGreyDataStyleBorderTopRightAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderTopRightAlignLeftBold(styleRegistry, sheet.getRow(rowNumber).getCell(columnNumber));
             } else {
-                setGreyDataStyleBorderTopAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderTopAlignLeftBold(styleRegistry, sheet.getRow(rowNumber).getCell(columnNumber));
             }
         }
 
@@ -171,7 +151,8 @@ public class AssignmentToShiftXlsStyleHelper {
         sheet.addMergedRegion(new CellRangeAddress(rowNumber, rowNumber, firstColumnNumber + (margin * 2), lastColumnNumber));
     }
 
-    public void addMarginsAndStylesForAuthorFactory(final HSSFSheet sheet, final int rowNumber, final int numberOfDays) {
+    public void addMarginsAndStylesForAuthorFactory(final HSSFSheet sheet, final ReportStyleRegistry styleRegistry,
+            final int rowNumber, final int numberOfDays) {
         int firstColumnNumber = 0;
         int lastColumnNumber;
         int margin = 3;
@@ -188,18 +169,19 @@ public class AssignmentToShiftXlsStyleHelper {
             }
 
             if (columnNumber == firstColumnNumber) {
-                setGreyDataStyleBorderLeftBottomAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderLeftBottomAlignLeftBold(styleRegistry, sheet.getRow(rowNumber).getCell(columnNumber));
             } else if (columnNumber == lastColumnNumber) {
-                setGreyDataStyleBorderRightBottomAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderRightBottomAlignLeftBold(styleRegistry, sheet.getRow(rowNumber).getCell(columnNumber));
             } else {
-                setGreyDataStyleBorderBottomAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderBottomAlignLeftBold(styleRegistry, sheet.getRow(rowNumber).getCell(columnNumber));
             }
         }
 
         sheet.addMergedRegion(new CellRangeAddress(rowNumber, rowNumber, firstColumnNumber, lastColumnNumber));
     }
 
-    public void addMarginsAndStylesForAssignmentToShift(final HSSFSheet sheet, final int rowNumber, final int numberOfDays) {
+    public void addMarginsAndStylesForAssignmentToShift(final HSSFSheet sheet, final ReportStyleRegistry styleRegistry,
+            final int rowNumber, final int numberOfDays) {
         int margin = 3;
         int firstColumn = 0;
         int lastColumn = (numberOfDays + 1) * margin;
@@ -209,7 +191,7 @@ public class AssignmentToShiftXlsStyleHelper {
                 sheet.getRow(rowNumber).createCell(columnNumber);
             }
 
-            setWhiteDataStyleBorderBoxAlignCenterBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+            setWhiteDataStyleBorderBoxAlignCenterBold(styleRegistry, sheet.getRow(rowNumber).getCell(columnNumber));
         }
 
         for (int columnNumber = 1; columnNumber <= lastColumn; columnNumber += margin) {
@@ -217,7 +199,8 @@ public class AssignmentToShiftXlsStyleHelper {
         }
     }
 
-    public void addMarginsAndStylesForSeries(final HSSFSheet sheet, final int rowNumber, final int numberOfDays) {
+    public void addMarginsAndStylesForSeries(final HSSFSheet sheet, final ReportStyleRegistry styleRegistry,
+            final int rowNumber, final int numberOfDays) {
         int margin = 3;
         int firstColumn = 0;
         int lastColumn = (numberOfDays + 1) * margin;
@@ -228,9 +211,9 @@ public class AssignmentToShiftXlsStyleHelper {
             }
 
             if (columnNumber == firstColumn) {
-                setWhiteDataStyleBorderBoxAlignCenterBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setWhiteDataStyleBorderBoxAlignCenterBold(styleRegistry, sheet.getRow(rowNumber).getCell(columnNumber));
             } else {
-                setWhiteDataStyleBorderBoxAlignLeft(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setWhiteDataStyleBorderBoxAlignLeft(styleRegistry, sheet.getRow(rowNumber).getCell(columnNumber));
             }
         }
 
@@ -1,18 +1,32 @@
 package com.qcadoo.mes.basic;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
-
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.qcadoo.mes.basic.constants.BasicConstants;
-import com.qcadoo.mes.basic.constants.LogFields;
 import com.qcadoo.mes.basic.constants.LogLevel;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -23,12 +37,43 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
 import com.qcadoo.security.constants.UserFields;
 import com.qcadoo.tenant.api.MultiTenantCallback;
 import com.qcadoo.tenant.api.MultiTenantService;
-
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+/**
+ * Writes activity and audit logs to basic_log.
+ * <p>
+ * Log lines are put into a bounded buffer and inserted in batches by a background writer, in their own transaction, so
+ * logging neither waits for the database nor takes part in the caller's transaction. When the buffer is full the line is
+ * inserted by the caller instead, which slows logging threads down to the speed of the database without dropping lines.
+ * Each line keeps the tenant of its caller and is written in that tenant's context. Buffered lines are written before the
+ * application context is closed.
+ */
 @Service
 public class LogService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(LogService.class);
+
     public static final String QCADOO_BOT = "qcadoo_bot";
 
+    private static final String L_INSERT = "INSERT INTO basic_log "
+            + "(createtime, user_id, message, item1, item2, item3, details, loglevel, logtype, action) "
+            + "VALUES (:createTime, :userId, :message, :item1, :item2, :item3, :details, :logLevel, :logType, :action)";
+
+    private static final String L_TENANT_ID = "tenantId";
+
+    private static final int L_ITEM_MAX_LENGTH = 2048;
+
+    private static final long L_SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    @Value("${basicLogAsync:true}")
+    private boolean asyncEnabled;
+
+    @Value("${basicLogBufferSize:10000}")
+    private int bufferSize;
+
+    @Value("${basicLogBatchSize:500}")
+    private int batchSize;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -41,6 +86,14 @@ public class LogService {
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    private BlockingQueue<Map<String, Object>> buffer;
+
+    private ExecutorService writer;
+
+    private volatile boolean running;
+
+    private final ConcurrentMap<Integer, Long> botUserIds = Maps.newConcurrentMap();
+
     public final static class Builder {
 
         private Builder() {
@@ -130,38 +183,167 @@ public class LogService {
         }
     }
 
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public Entity add(Builder builder) {
+    @PostConstruct
+    public void init() {
+        if (!asyncEnabled) {
+            return;
+        }
+
+        buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "basic-log-writer");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        running = true;
+
+        writer.execute(this::drain);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (Objects.isNull(writer)) {
+            return;
+        }
+
+        running = false;
+
+        writer.shutdown();
+
+        try {
+            if (!writer.awaitTermination(L_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Log writer did not finish in time, writing remaining logs directly");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+    }
+
+    public void add(Builder builder) {
         validate(builder);
 
-        DataDefinition logDD = getLogDD();
-        Entity logEntity = logDD.create();
-
-        logEntity.setField(LogFields.ACTION, builder.action);
-        if (builder.createTime == null) {
-            logEntity.setField(LogFields.CREATE_TIME, new Date());
-        } else {
-            logEntity.setField(LogFields.CREATE_TIME, builder.createTime);
-        }
-        logEntity.setField(LogFields.DETAILS, builder.details);
-        logEntity.setField(LogFields.ITEM_1, builder.item1);
-        logEntity.setField(LogFields.ITEM_2, builder.item2);
-        logEntity.setField(LogFields.ITEM_3, builder.item3);
-        logEntity.setField(LogFields.LOG_LEVEL, builder.logLevel.getCode());
-        logEntity.setField(LogFields.MESSAGE, builder.message);
-        logEntity.setField(LogFields.LOG_TYPE, builder.type);
-        Long userId;
+        Map<String, Object> log = Maps.newHashMap();
+
+        log.put("createTime", Objects.isNull(builder.createTime) ? new Date() : builder.createTime);
+        log.put("userId", getCurrentUserId());
+        log.put("message", builder.message);
+        log.put("item1", StringUtils.abbreviate(builder.item1, L_ITEM_MAX_LENGTH));
+        log.put("item2", StringUtils.abbreviate(builder.item2, L_ITEM_MAX_LENGTH));
+        log.put("item3", StringUtils.abbreviate(builder.item3, L_ITEM_MAX_LENGTH));
+        log.put("details", builder.details);
+        log.put("logLevel", builder.logLevel.getCode());
+        log.put("logType", builder.type);
+        log.put("action", builder.action);
+        log.put(L_TENANT_ID, getCurrentTenantId());
+
+        if (!running || !buffer.offer(log)) {
+            insert(Lists.newArrayList(log));
+        }
+    }
+
+    /**
+     * Writes logs waiting in the buffer in the calling thread.
+     */
+    public void flush() {
+        if (Objects.isNull(buffer)) {
+            return;
+        }
+
+        List<Map<String, Object>> logs = Lists.newArrayList();
+
+        while (buffer.drainTo(logs, Math.max(1, batchSize)) > 0) {
+            write(logs);
+
+            logs.clear();
+        }
+    }
+
+    private void drain() {
+        List<Map<String, Object>> logs = Lists.newArrayList();
+
+        while (running || !buffer.isEmpty()) {
+            try {
+                Map<String, Object> log = buffer.poll(1, TimeUnit.SECONDS);
+
+                if (Objects.nonNull(log)) {
+                    logs.add(log);
+
+                    buffer.drainTo(logs, Math.max(1, batchSize) - 1);
+
+                    write(logs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                return;
+            } finally {
+                logs.clear();
+            }
+        }
+    }
+
+    private void write(final List<Map<String, Object>> logs) {
+        Map<Integer, List<Map<String, Object>>> logsByTenant = Maps.newLinkedHashMap();
+
+        for (Map<String, Object> log : logs) {
+            logsByTenant.computeIfAbsent((Integer) log.get(L_TENANT_ID), tenantId -> Lists.newArrayList()).add(log);
+        }
+
+        for (Map.Entry<Integer, List<Map<String, Object>>> tenantLogs : logsByTenant.entrySet()) {
+            try {
+                insert(tenantLogs.getKey(), tenantLogs.getValue());
+            } catch (RuntimeException e) {
+                LOG.warn("Could not write " + tenantLogs.getValue().size() + " log lines of tenant " + tenantLogs.getKey()
+                        + " at once, writing them one by one", e);
+
+                for (Map<String, Object> log : tenantLogs.getValue()) {
+                    try {
+                        insert(tenantLogs.getKey(), Lists.newArrayList(log));
+                    } catch (RuntimeException lineException) {
+                        LOG.error("Could not write log line " + log, lineException);
+                    }
+                }
+            }
+        }
+    }
+
+    private void insert(final Integer tenantId, final List<Map<String, Object>> logs) {
+        multiTenantService.doInMultiTenantContext(tenantId, new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                insert(logs);
+            }
+
+        });
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    private void insert(final List<Map<String, Object>> logs) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object>[] params = logs.toArray(new Map[logs.size()]);
+
+        jdbcTemplate.batchUpdate(L_INSERT, params);
+    }
+
+    int getCurrentTenantId() {
+        return MultiTenantUtil.getCurrentTenantId();
+    }
+
+    private Long getCurrentUserId() {
         try {
-            userId = securityService.getCurrentUserId();
+            return securityService.getCurrentUserId();
         } catch (Exception ex) {
-            userId = findBotUser().getId();
+            return getBotUserId();
         }
-        logEntity.setField(LogFields.USER, userId);
-        return logDD.save(logEntity);
     }
 
-    private DataDefinition getLogDD() {
-        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_LOG);
+    private Long getBotUserId() {
+        return botUserIds.computeIfAbsent(getCurrentTenantId(), tenantId -> findBotUser().getId());
     }
 
     private Entity findBotUser() {
@@ -0,0 +1,225 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftCalendarWeek;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+/**
+ * Cached working time calendars of production lines, built week by week from shifts and timetable exceptions. Each tenant
+ * has its own calendars, as production line ids repeat between tenants.
+ * <p>
+ * Calendars are dropped whenever a shift, a timetable exception or a production line is changed, and expire after
+ * shiftCalendarCacheTimeout seconds to pick up changes made outside of the application.
+ */
+@Service
+public class ShiftCalendarService {
+
+    private static final long L_ALL_SHIFTS = 0L;
+
+    private static final int L_MAX_WEEKS = 143;
+
+    private static final int L_MAX_CACHED_WEEKS = 520;
+
+    @Value("${shiftCalendarCacheTimeout:600}")
+    private long cacheTimeout;
+
+    @Autowired
+    private ShiftsService shiftsService;
+
+    @Autowired
+    private ShiftExceptionService shiftExceptionService;
+
+    private final ConcurrentMap<Integer, ConcurrentMap<Long, ProductionLineCalendar>> calendars = new ConcurrentHashMap<>();
+
+    public Date findDateAfterWorkingTime(final Date dateFrom, final long seconds, final Entity productionLine) {
+        ProductionLineCalendar calendar = getCalendar(productionLine);
+
+        long leftMilliseconds = TimeUnit.SECONDS.toMillis(seconds);
+
+        if (calendar.getShifts().isEmpty() || (leftMilliseconds <= 0L)) {
+            return Date.from(dateFrom.toInstant().plusSeconds(seconds));
+        }
+
+        long date = dateFrom.getTime();
+
+        DateTime weekStart = new LocalDate(dateFrom).withDayOfWeek(1).toDateTimeAtStartOfDay();
+
+        for (int week = 0; week < L_MAX_WEEKS; week++) {
+            ShiftCalendarWeek calendarWeek = calendar.getWeek(weekStart, productionLine);
+
+            Optional<Date> dateTo = calendarWeek.findDateAfter(date, leftMilliseconds);
+
+            if (dateTo.isPresent()) {
+                return dateTo.get();
+            }
+
+            leftMilliseconds -= calendarWeek.getWorkingMillisAfter(date);
+
+            weekStart = weekStart.plusWeeks(1);
+            date = weekStart.getMillis();
+        }
+
+        return Date.from(dateFrom.toInstant().plusSeconds(seconds));
+    }
+
+    /**
+     * Returns the first working moment of the production line at or after dateFrom, or empty if the line has no shifts or no
+     * working time in the calendar horizon.
+     */
+    public Optional<Date> findNearestWorkingDate(final Date dateFrom, final Entity productionLine) {
+        ProductionLineCalendar calendar = getCalendar(productionLine);
+
+        if (calendar.getShifts().isEmpty()) {
+            return Optional.empty();
+        }
+
+        long date = dateFrom.getTime();
+
+        DateTime weekStart = new LocalDate(dateFrom).withDayOfWeek(1).toDateTimeAtStartOfDay();
+
+        for (int week = 0; week < L_MAX_WEEKS; week++) {
+            Optional<Date> workingDate = calendar.getWeek(weekStart, productionLine).findWorkingDateFrom(date);
+
+            if (workingDate.isPresent()) {
+                return workingDate;
+            }
+
+            weekStart = weekStart.plusWeeks(1);
+            date = weekStart.getMillis();
+        }
+
+        return Optional.empty();
+    }
+
+    public void invalidate() {
+        final Integer tenantId = MultiTenantUtil.getCurrentTenantId();
+
+        calendars.remove(tenantId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    calendars.remove(tenantId);
+                }
+
+            });
+        }
+    }
+
+    private ProductionLineCalendar getCalendar(final Entity productionLine) {
+        Long productionLineId = Objects.isNull(productionLine) ? L_ALL_SHIFTS : productionLine.getId();
+
+        ConcurrentMap<Long, ProductionLineCalendar> tenantCalendars = calendars.computeIfAbsent(
+                MultiTenantUtil.getCurrentTenantId(), tenantId -> new ConcurrentHashMap<>());
+
+        ProductionLineCalendar calendar = tenantCalendars.get(productionLineId);
+
+        if (Objects.isNull(calendar) || calendar.isExpired()) {
+            calendar = new ProductionLineCalendar(shiftsService.findAll(productionLine));
+
+            tenantCalendars.put(productionLineId, calendar);
+        }
+
+        return calendar;
+    }
+
+    private ShiftCalendarWeek createWeek(final List<Shift> shifts, final Entity productionLine, final DateTime weekStart) {
+        DateTime weekEnd = weekStart.plusWeeks(1);
+
+        List<DateTimeRange> ranges = Lists.newArrayList();
+
+        // ranges of the last day of previous week may end in this week
+        LocalDate day = weekStart.toLocalDate().minusDays(1);
+
+        for (; day.isBefore(weekEnd.toLocalDate()); day = day.plusDays(1)) {
+            for (Shift shift : shifts) {
+                ranges.addAll(shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, day.toDateTimeAtStartOfDay()));
+            }
+        }
+
+        return new ShiftCalendarWeek(ranges, weekStart, weekEnd);
+    }
+
+    private class ProductionLineCalendar {
+
+        private final List<Shift> shifts;
+
+        private final ConcurrentMap<Long, ShiftCalendarWeek> weeks = new ConcurrentHashMap<>();
+
+        private final long createTime = System.currentTimeMillis();
+
+        ProductionLineCalendar(final List<Shift> shifts) {
+            this.shifts = shifts;
+        }
+
+        List<Shift> getShifts() {
+            return shifts;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - createTime > TimeUnit.SECONDS.toMillis(cacheTimeout);
+        }
+
+        ShiftCalendarWeek getWeek(final DateTime weekStart, final Entity productionLine) {
+            ShiftCalendarWeek week = weeks.get(weekStart.getMillis());
+
+            if (Objects.isNull(week)) {
+                week = createWeek(shifts, productionLine, weekStart);
+
+                if (weeks.size() >= L_MAX_CACHED_WEEKS) {
+                    weeks.clear();
+                }
+
+                weeks.put(weekStart.getMillis(), week);
+            }
+
+            return week;
+        }
+
+    }
+
+}
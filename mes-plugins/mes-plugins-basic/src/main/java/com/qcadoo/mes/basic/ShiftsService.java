@@ -56,6 +56,18 @@ public interface ShiftsService {
 
     List<ShiftHour> getHoursForShift(final Entity shift, final Date dateFrom, final Date dateTo);
 
+    /**
+     * Returns merged working intervals of all shifts within given range, as pairs of epoch milliseconds - see
+     * {@link com.qcadoo.mes.basic.shift.WorkingIntervals}.
+     */
+    long[] getWorkingIntervalsForAllShifts(final Date dateFrom, final Date dateTo);
+
+    /**
+     * Returns merged working intervals of given shift within given range, as pairs of epoch milliseconds - see
+     * {@link com.qcadoo.mes.basic.shift.WorkingIntervals}.
+     */
+    long[] getWorkingIntervalsForShift(final Entity shift, final Date dateFrom, final Date dateTo);
+
     /**
      * @deprecated use {@link Shift#worksAt(int)} instead.
      */
@@ -25,7 +25,6 @@ package com.qcadoo.mes.basic;
 
 import java.io.Serializable;
 import java.util.Calendar;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -33,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
@@ -51,6 +51,8 @@ import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.basic.constants.TimetableExceptionType;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftPattern;
+import com.qcadoo.mes.basic.shift.WorkingIntervals;
 import com.qcadoo.mes.basic.util.DateTimeRange;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -92,10 +94,6 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     private static final String SHIFTS = "shifts";
 
-    private static final int MAX_LOOPS = 1000;
-
-    private static final int MILLS = 1000;
-
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -105,6 +103,11 @@ public class ShiftsServiceImpl implements ShiftsService {
     @Autowired
     private ShiftExceptionService shiftExceptionService;
 
+    @Autowired
+    private ShiftCalendarService shiftCalendarService;
+
+    private final Map<Long, ShiftPattern> shiftPatterns = new ConcurrentHashMap<>();
+
     private static final String[] WEEK_DAYS = { L_MONDAY, L_TUESDAY, L_WENSDAY, L_THURSDAY, L_FRIDAY, L_SATURDAY, L_SUNDAY };
 
     private static final Map<Integer, String> DAY_OF_WEEK = buildDayNumToNameMap();
@@ -339,246 +342,131 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public Date findDateToForProductionLine(final Date dateFrom, final long seconds, final Entity productionLine) {
-        if (getShiftDataDefinition().find().list().getTotalNumberOfEntities() == 0) {
-            return Date.from(dateFrom.toInstant().plusSeconds(seconds));
-        }
-
-        DateTime dateFromDT = new DateTime(dateFrom, DateTimeZone.getDefault());
-
-        List<Shift> shifts = findAll(productionLine);
-        DateTime dateOfDay = new DateTime(dateFrom);
-        dateOfDay = dateOfDay.minusDays(1);
-        dateOfDay = dateOfDay.toLocalDate().toDateTimeAtStartOfDay();
-        long leftMilliseconds = seconds * MILLS;
-        int loopCount = 0;
-        while (leftMilliseconds > 0L) {
-            if (loopCount > MAX_LOOPS) {
-                return Date.from(dateFrom.toInstant().plusSeconds(seconds));
-            }
-            for (Shift shift : shifts) {
-                for (DateTimeRange range : shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay)) {
-                    if (dateFrom.after(dateOfDay.toDate())) {
-                        range = range.trimBefore(dateFromDT);
-                    }
-                    if (range != null) {
-                        if (leftMilliseconds > range.durationMillis()) {
-                            leftMilliseconds = leftMilliseconds - range.durationMillis();
-                        } else {
-                            return range.getFrom().plusMillis((int) leftMilliseconds).toDate();
-                        }
-                    }
-                }
-            }
-            loopCount++;
-            dateOfDay = dateOfDay.plusDays(1);
-        }
-
-        return Date.from(dateFrom.toInstant().plusSeconds(seconds));
+        return shiftCalendarService.findDateAfterWorkingTime(dateFrom, seconds, productionLine);
     }
 
     @Override
     public List<ShiftHour> getHoursForAllShifts(final Date dateFrom, final Date dateTo) {
-        List<Entity> shifts = getShifts();
+        return getShiftHours(getWorkingIntervalsForAllShifts(dateFrom, dateTo));
+    }
 
-        List<ShiftHour> hours = Lists.newArrayList();
+    @Override
+    public long[] getWorkingIntervalsForAllShifts(final Date dateFrom, final Date dateTo) {
+        long[] intervals = WorkingIntervals.empty();
 
-        for (Entity shift : shifts) {
-            hours.addAll(getHoursForShift(shift, dateFrom, dateTo));
+        for (Entity shift : getShifts()) {
+            intervals = WorkingIntervals.union(intervals, getWorkingIntervalsForShift(shift, dateFrom, dateTo));
         }
 
-        hours.sort(new ShiftHoursComparator());
-
-        return mergeOverlappedHours(hours);
+        return intervals;
     }
 
     @Override
     public List<ShiftHour> getHoursForShift(final Entity shift, final Date dateFrom, final Date dateTo) {
-        List<ShiftHour> hours = Lists.newArrayList();
-
-        hours.addAll(getHourForDay(shift, dateFrom, dateTo, L_MONDAY, 1));
-        hours.addAll(getHourForDay(shift, dateFrom, dateTo, L_TUESDAY, 2));
-        hours.addAll(getHourForDay(shift, dateFrom, dateTo, L_WENSDAY, 3));
-        hours.addAll(getHourForDay(shift, dateFrom, dateTo, L_THURSDAY, 4));
-        hours.addAll(getHourForDay(shift, dateFrom, dateTo, L_FRIDAY, 5));
-        hours.addAll(getHourForDay(shift, dateFrom, dateTo, L_SATURDAY, 6));
-        hours.addAll(getHourForDay(shift, dateFrom, dateTo, L_SUNDAY, 7));
-
-        List<Entity> exceptions = shift.getHasManyField(TIMETABLE_EXCEPTIONS_FIELD);
-
-        addWorkTimeExceptions(hours, exceptions);
-        removeFreeTimeExceptions(hours, exceptions);
-
-        hours.sort(new ShiftHoursComparator());
-
-        return removeHoursOutOfRange(mergeOverlappedHours(hours), dateFrom, dateTo);
+        return getShiftHours(getWorkingIntervalsForShift(shift, dateFrom, dateTo));
     }
 
-    public void onDayCheckboxChange(final ViewDefinitionState viewDefinitionState, final ComponentState state,
-            final String[] args) {
-        updateDayFieldsState(viewDefinitionState);
-    }
-
-    public void setHourFieldsState(final ViewDefinitionState viewDefinitionState) {
-        updateDayFieldsState(viewDefinitionState);
-    }
-
-    public void updateDayFieldsState(final ViewDefinitionState viewDefinitionState) {
-        FormComponent form = (FormComponent) viewDefinitionState.getComponentByReference("form");
-        Entity shift = form.getEntity();
-
-        for (String day : WEEK_DAYS) {
-            updateDayFieldState(day, viewDefinitionState, shift);
-        }
-    }
+    @Override
+    public long[] getWorkingIntervalsForShift(final Entity shift, final Date dateFrom, final Date dateTo) {
+        long from = dateFrom.getTime();
+        long to = dateTo.getTime();
 
-    public void updateDayFieldState(final String day, final ViewDefinitionState viewDefinitionState, final Entity shift) {
-        FieldComponent dayHours = (FieldComponent) viewDefinitionState.getComponentByReference(day + HOURS_LITERAL);
+        long[] intervals = getShiftPattern(shift).getWorkingIntervals(from, to, DateTimeZone.getDefault());
 
-        if (!shift.getBooleanField(day + WORKING_LITERAL)) {
-            dayHours.setEnabled(false);
-            dayHours.setRequired(false);
-        } else {
-            dayHours.setEnabled(true);
-            dayHours.setRequired(true);
-        }
-    }
+        List<Entity> exceptions = shift.getHasManyField(TIMETABLE_EXCEPTIONS_FIELD);
 
-    private List<ShiftHour> removeHoursOutOfRange(final List<ShiftHour> hours, final Date dateFrom, final Date dateTo) {
-        List<ShiftHour> list = Lists.newArrayList();
+        for (Entity exception : exceptions) {
+            if (TimetableExceptionType.WORK_TIME.getStringValue().equals(exception.getStringField(TYPE_FIELD))) {
+                long exceptionFrom = Math.max(exception.getDateField(FROM_DATE_FIELD).getTime(), from);
+                long exceptionTo = Math.min(exception.getDateField(TO_DATE_FIELD).getTime(), to);
 
-        for (ShiftHour hour : hours) {
-            if (hour.getDateTo().compareTo(dateFrom) <= 0 || hour.getDateFrom().compareTo(dateTo) >= 0) {
-                continue;
-            }
-            if (hour.getDateFrom().compareTo(dateFrom) >= 0 && hour.getDateTo().compareTo(dateTo) <= 0) {
-                list.add(hour);
-            } else if (hour.getDateFrom().compareTo(dateFrom) < 0 && hour.getDateTo().compareTo(dateTo) > 0) {
-                list.add(new ShiftHour(dateFrom, dateTo));
-            } else if (hour.getDateFrom().compareTo(dateFrom) < 0 && hour.getDateTo().compareTo(dateTo) <= 0) {
-                list.add(new ShiftHour(dateFrom, hour.getDateTo()));
-            } else if (hour.getDateFrom().compareTo(dateFrom) >= 0 && hour.getDateTo().compareTo(dateTo) > 0) {
-                list.add(new ShiftHour(hour.getDateFrom(), dateTo));
+                if (exceptionFrom < exceptionTo) {
+                    intervals = WorkingIntervals.union(intervals, new long[] { exceptionFrom, exceptionTo });
+                }
             }
         }
 
-        return list;
-    }
-
-    private void removeFreeTimeExceptions(final List<ShiftHour> hours, final List<Entity> exceptions) {
         for (Entity exception : exceptions) {
-            if (!"01freeTime".equals(exception.getStringField(TYPE_FIELD))) {
-                continue;
+            if (TimetableExceptionType.FREE_TIME.getStringValue().equals(exception.getStringField(TYPE_FIELD))) {
+                intervals = WorkingIntervals.subtract(intervals, exception.getDateField(FROM_DATE_FIELD).getTime(),
+                        exception.getDateField(TO_DATE_FIELD).getTime());
             }
+        }
 
-            Date from = (Date) exception.getField(FROM_DATE_FIELD);
-            Date to = (Date) exception.getField(TO_DATE_FIELD);
-
-            List<ShiftHour> hoursToRemove = Lists.newArrayList();
-            List<ShiftHour> hoursToAdd = Lists.newArrayList();
+        return intervals;
+    }
 
-            for (ShiftHour hour : hours) {
-                if (hour.getDateFrom().compareTo(to) >= 0) {
-                    continue;
-                }
-                if (hour.getDateTo().compareTo(from) <= 0) {
-                    continue;
-                }
-                if (hour.getDateTo().compareTo(to) <= 0 && hour.getDateFrom().compareTo(from) >= 0) {
-                    hoursToRemove.add(hour);
+    private List<ShiftHour> getShiftHours(final long[] intervals) {
+        List<ShiftHour> hours = Lists.newArrayListWithCapacity(WorkingIntervals.size(intervals));
 
-                    continue;
-                }
-                if (hour.getDateTo().compareTo(to) >= 0 && hour.getDateFrom().compareTo(from) >= 0) {
-                    hoursToRemove.add(hour);
-                    hoursToAdd.add(new ShiftHour(to, hour.getDateTo()));
+        for (int i = 0; i < intervals.length; i += 2) {
+            hours.add(new ShiftHour(new Date(intervals[i]), new Date(intervals[i + 1])));
+        }
 
-                    continue;
-                }
-                if (hour.getDateTo().compareTo(to) <= 0 && hour.getDateFrom().compareTo(from) <= 0) {
-                    hoursToRemove.add(hour);
-                    hoursToAdd.add(new ShiftHour(hour.getDateFrom(), from));
+        return hours;
+    }
 
-                    continue;
-                }
-                if (hour.getDateTo().compareTo(to) >= 0 && hour.getDateFrom().compareTo(from) <= 0) {
-                    hoursToRemove.add(hour);
-                    hoursToAdd.add(new ShiftHour(hour.getDateFrom(), from));
-                    hoursToAdd.add(new ShiftHour(to, hour.getDateTo()));
+    private ShiftPattern getShiftPattern(final Entity shift) {
+        StringBuilder signature = new StringBuilder();
 
-                }
+        for (String day : WEEK_DAYS) {
+            if (shift.getBooleanField(day + WORKING_LITERAL)) {
+                signature.append(shift.getStringField(day + HOURS_LITERAL));
             }
 
-            hours.removeAll(hoursToRemove);
-            hours.addAll(hoursToAdd);
+            signature.append('|');
         }
-    }
-
-    private void addWorkTimeExceptions(final List<ShiftHour> hours, final List<Entity> exceptions) {
-        for (Entity exception : exceptions) {
-            if (!"02workTime".equals(exception.getStringField(TYPE_FIELD))) {
-                continue;
-            }
 
-            Date from = (Date) exception.getField(FROM_DATE_FIELD);
-            Date to = (Date) exception.getField(TO_DATE_FIELD);
+        ShiftPattern shiftPattern = Objects.isNull(shift.getId()) ? null : shiftPatterns.get(shift.getId());
 
-            hours.add(new ShiftHour(from, to));
-        }
-    }
+        if (Objects.isNull(shiftPattern) || !shiftPattern.isCompiledFrom(signature.toString())) {
+            List<LocalTime[][]> hoursPerDay = Lists.newArrayList();
 
-    private List<ShiftHour> mergeOverlappedHours(final List<ShiftHour> hours) {
-        if (hours.size() < 2) {
-            return hours;
-        }
-
-        List<ShiftHour> mergedHours = Lists.newArrayList();
+            for (String day : WEEK_DAYS) {
+                if (shift.getBooleanField(day + WORKING_LITERAL)) {
+                    hoursPerDay.add(convertDayHoursToInt(shift.getStringField(day + HOURS_LITERAL)));
+                } else {
+                    hoursPerDay.add(new LocalTime[][] {});
+                }
+            }
 
-        ShiftHour currentHour = hours.get(0);
+            shiftPattern = new ShiftPattern(signature.toString(), hoursPerDay);
 
-        for (int i = 1; i < hours.size(); i++) {
-            if (currentHour.getDateTo().before(hours.get(i).getDateFrom())) {
-                mergedHours.add(currentHour);
-                currentHour = hours.get(i);
-            } else if (currentHour.getDateTo().before(hours.get(i).getDateTo())) {
-                currentHour = new ShiftHour(currentHour.getDateFrom(), hours.get(i).getDateTo());
+            if (Objects.nonNull(shift.getId())) {
+                shiftPatterns.put(shift.getId(), shiftPattern);
             }
         }
 
-        mergedHours.add(currentHour);
-
-        return mergedHours;
+        return shiftPattern;
     }
 
-    private Collection<ShiftHour> getHourForDay(final Entity shift, final Date dateFrom, final Date dateTo, final String day,
-            final int offset) {
-        if ((Boolean) shift.getField(day + WORKING_LITERAL) && StringUtils.hasText(shift.getStringField(day + HOURS_LITERAL))) {
-            List<ShiftHour> hours = Lists.newArrayList();
-
-            LocalTime[][] dayHours = convertDayHoursToInt(shift.getStringField(day + HOURS_LITERAL));
+    public void onDayCheckboxChange(final ViewDefinitionState viewDefinitionState, final ComponentState state,
+            final String[] args) {
+        updateDayFieldsState(viewDefinitionState);
+    }
 
-            DateTime from = new DateTime(dateFrom).withSecondOfMinute(0);
-            DateTime to = new DateTime(dateTo);
+    public void setHourFieldsState(final ViewDefinitionState viewDefinitionState) {
+        updateDayFieldsState(viewDefinitionState);
+    }
 
-            DateTime current = from.plusDays(offset - from.getDayOfWeek());
+    public void updateDayFieldsState(final ViewDefinitionState viewDefinitionState) {
+        FormComponent form = (FormComponent) viewDefinitionState.getComponentByReference("form");
+        Entity shift = form.getEntity();
 
-            if (current.compareTo(from) < 0) {
-                current = current.plusDays(7);
-            }
+        for (String day : WEEK_DAYS) {
+            updateDayFieldState(day, viewDefinitionState, shift);
+        }
+    }
 
-            while (current.compareTo(to) <= 0) {
-                for (LocalTime[] dayHour : dayHours) {
-                    hours.add(new ShiftHour(
-                            current.withHourOfDay(dayHour[0].getHourOfDay()).withMinuteOfHour(dayHour[0].getMinuteOfHour())
-                                    .toDate(),
-                            current.withHourOfDay(dayHour[1].getHourOfDay()).withMinuteOfHour(dayHour[1].getMinuteOfHour())
-                                    .toDate()));
-                }
-                current = current.plusDays(7);
-            }
+    public void updateDayFieldState(final String day, final ViewDefinitionState viewDefinitionState, final Entity shift) {
+        FieldComponent dayHours = (FieldComponent) viewDefinitionState.getComponentByReference(day + HOURS_LITERAL);
 
-            return hours;
+        if (!shift.getBooleanField(day + WORKING_LITERAL)) {
+            dayHours.setEnabled(false);
+            dayHours.setRequired(false);
         } else {
-            return Collections.emptyList();
+            dayHours.setEnabled(true);
+            dayHours.setRequired(true);
         }
     }
 
@@ -0,0 +1,103 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.controllers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.print.xls.XlsxDocumentService;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+@Controller
+@RequestMapping(value = BasicConstants.PLUGIN_IDENTIFIER, method = RequestMethod.GET)
+public class XlsxReportController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(XlsxReportController.class);
+
+    private static final String L_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private static final String L_LEGACY_CONTENT_TYPE = "application/vnd.ms-excel";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @RequestMapping(value = "generatedXlsxReport/{pluginIdentifier}/{modelName}.xlsx")
+    public final void generatedXlsxReport(@PathVariable("pluginIdentifier") final String pluginIdentifier,
+            @PathVariable("modelName") final String modelName, @RequestParam("id") final Long id,
+            final HttpServletResponse response) {
+        Entity report = dataDefinitionService.get(pluginIdentifier, modelName).get(id);
+
+        try {
+            if ((report == null) || StringUtils.isEmpty(report.getStringField(XlsxDocumentService.L_FILE_NAME))) {
+                response.sendRedirect("/error.html?code=404");
+
+                return;
+            }
+
+            File file = new File(XlsxDocumentService.getFilePath(report));
+            String contentType = L_CONTENT_TYPE;
+
+            if (!file.exists()) {
+                file = new File(XlsxDocumentService.getLegacyFilePath(report));
+                contentType = L_LEGACY_CONTENT_TYPE;
+            }
+
+            if (!file.exists()) {
+                response.sendRedirect("/error.html?code=404");
+
+                return;
+            }
+
+            response.setHeader("Content-disposition", "inline; filename=" + file.getName());
+            response.setContentType(contentType);
+            response.setContentLength((int) file.length());
+
+            try (InputStream inputStream = new FileInputStream(file)) {
+                IOUtils.copy(inputStream, response.getOutputStream());
+            }
+
+            response.flushBuffer();
+        } catch (IOException e) {
+            LOG.error("Unable to copy report file to response stream.", e);
+        }
+    }
+
+}
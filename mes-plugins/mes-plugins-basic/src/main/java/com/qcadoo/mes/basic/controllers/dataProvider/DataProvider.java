@@ -18,9 +18,9 @@ import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -34,19 +34,16 @@ public class DataProvider {
 
     public static final int MAX_RESULTS = 20;
 
+    private static final int L_MAX_COUNTED_RESULTS = 1000;
+
     private String prepareProductsQuery() {
         return "SELECT product.id AS id, product.number AS code, product.number AS number, product.name AS name "
                 + "FROM basic_product product WHERE product.active = true AND product.number ilike :query ;";
     }
 
-    private String prepareProductsQueryWithLimit(int limit) {
-        return "SELECT product.id AS id, product.number AS code, product.number AS number, product.name AS name "
-                + "FROM basic_product product WHERE product.active = true AND product.number ilike :query LIMIT " + limit + ";";
-    }
-
     private String prepareAdditionalCodeQuery(final String productnumber) {
         String productNumberCondition = Strings.isNullOrEmpty(productnumber) ? ""
-                : "AND product.number = '" + productnumber + "'";
+                : "AND product.number = :productnumber";
 
         return "SELECT additionalcode.id AS id, additionalcode.code AS code, product.number AS productnumber "
                 + "FROM basic_additionalcode additionalcode "
@@ -54,13 +51,6 @@ public class DataProvider {
                 + "WHERE additionalcode.code ilike :query;";
     }
 
-    private String prepareAdditionalCodeQueryWithLimit(int limit) {
-        return "SELECT additionalcode.id AS id, additionalcode.code AS code, product.number AS productnumber "
-                + "FROM basic_additionalcode additionalcode "
-                + "JOIN basic_product product ON (additionalcode.product_id = product.id AND (product.number = :productnumber OR COALESCE(:productnumber,'')='' ))"
-                + "WHERE additionalcode.code ilike :query LIMIT " + limit + ";";
-    }
-
     private String preparePalletNumbersQuery() {
         return "SELECT palletnumber.id AS id, palletnumber.number AS code, palletnumber.number AS number "
                 + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true AND palletnumber.number ilike :query;";
@@ -75,21 +65,6 @@ public class DataProvider {
 
     }
 
-    private String prepareAttributesQueryLimit(int limit) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("SELECT av.id as id, av.value as value FROM basic_attributevalue av ");
-        builder.append("LEFT JOIN basic_attribute a  ON a.id = av.attribute_id ");
-        builder.append("WHERE a.number = :attr AND av.value ilike :query LIMIT " + limit + ";");
-        return builder.toString();
-
-    }
-
-    private String preparePalletNumbersQueryWithLimit(int limit) {
-        return "SELECT palletnumber.id AS id, palletnumber.number AS code, palletnumber.number AS number "
-                + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true AND palletnumber.number ilike :query LIMIT "
-                + limit + ";";
-    }
-
     private int countQueryResults(final String preparedQuery, final String query, final Map<String, Object> paramMap) {
         String countQuery = "SELECT count(*) AS cnt FROM (" + preparedQuery.replace(";", "") + ") sq;";
 
@@ -99,17 +74,52 @@ public class DataProvider {
         return jdbcTemplate.queryForObject(countQuery, paramMap, Integer.class);
     }
 
+    /**
+     * Returns the first matches together with their number in a single query. Matches are counted up to
+     * L_MAX_COUNTED_RESULTS + 1, so above that the number of results is only a lower bound - enough to tell the user to narrow
+     * the query. The ilike conditions are served by the pg_trgm indexes of the searched columns.
+     */
+    private DataResponse getLookupResponse(final String preparedQuery, final String query, final Map<String, Object> paramMap,
+            final Class<? extends AbstractDTO> dtoClass) {
+        String lookupQuery = "SELECT sq.*, count(*) OVER () AS totalcount FROM (" + preparedQuery.replace(";", "") + " LIMIT "
+                + (L_MAX_COUNTED_RESULTS + 1) + ") sq LIMIT " + MAX_RESULTS + ";";
+
+        paramMap.put("query", buildConditionParameterForIlike(query));
+
+        BeanPropertyRowMapper<? extends AbstractDTO> rowMapper = new BeanPropertyRowMapper<>(dtoClass);
+
+        return jdbcTemplate.query(lookupQuery, paramMap, (ResultSetExtractor<DataResponse>) resultSet -> {
+            List<AbstractDTO> entities = Lists.newArrayList();
+
+            int numberOfResults = 0;
+
+            while (resultSet.next()) {
+                numberOfResults = resultSet.getInt("totalcount");
+
+                entities.add(rowMapper.mapRow(resultSet, entities.size()));
+            }
+
+            if (numberOfResults > MAX_RESULTS) {
+                return new DataResponse(Lists.newArrayList(), numberOfResults);
+            }
+
+            return new DataResponse(entities, numberOfResults);
+        });
+    }
+
     public DataResponse getProductsResponseByQuery(final String query) {
-        return getDataResponse(query, prepareProductsQuery(), getProductsByQuery(query), Maps.newHashMap());
+        return getLookupResponse(prepareProductsQuery(), query, Maps.newHashMap(), ProductDTO.class);
     }
 
     public DataResponse getAdditionalCodesResponseByQuery(final String query, final String productnumber) {
-        return getDataResponse(query, prepareAdditionalCodeQuery(productnumber), getAdditionalCodesByQuery(query, productnumber),
-                Maps.newHashMap());
+        Map<String, Object> parameters = Maps.newHashMap();
+        parameters.put("productnumber", productnumber);
+
+        return getLookupResponse(prepareAdditionalCodeQuery(productnumber), query, parameters, AdditionalCodeDTO.class);
     }
 
     public DataResponse getPalletNumbersResponseByQuery(final String query) {
-        return getDataResponse(query, preparePalletNumbersQuery(), getPalletNumbersByQuery(query), Maps.newHashMap());
+        return getLookupResponse(preparePalletNumbersQuery(), query, Maps.newHashMap(), PalletNumberDTO.class);
     }
 
     public DataResponse getDataResponse(final String query, final String preparedQuery, final List<? extends AbstractDTO> entities,
@@ -131,7 +141,7 @@ public class DataProvider {
     public DataResponse getAttributesByQuery(String attr, String query) {
         Map<String, Object> parameters = Maps.newHashMap();
         parameters.put("attr", attr);
-        return getDataResponse(query, prepareAttributesQuery(), getAttribiutesByQuery(attr, query), parameters);
+        return getLookupResponse(prepareAttributesQuery(), query, parameters, AttribiuteValueDTO.class);
 
     }
 
@@ -146,21 +156,6 @@ public class DataProvider {
         return products;
     }
 
-    public List<AbstractDTO> getProductsByQuery(final String query) {
-        String _query = prepareProductsQueryWithLimit(MAX_RESULTS);
-
-        Map<String, Object> parameters = Maps.newHashMap();
-
-        String ilikeQuery = buildConditionParameterForIlike(query);
-        parameters.put("query", ilikeQuery);
-
-        SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
-
-        List<AbstractDTO> products = jdbcTemplate.query(_query, nParameters, new BeanPropertyRowMapper(ProductDTO.class));
-
-        return products;
-    }
-
     public List<AdditionalCodeDTO> getAllAdditionalCodes(final String sidx, final String sord) {
         // TODO sort
         String _query = "SELECT additionalcode.id AS id, additionalcode.code AS code, product.number AS productnumber "
@@ -173,21 +168,6 @@ public class DataProvider {
         return codes;
     }
 
-    public List<AbstractDTO> getAdditionalCodesByQuery(final String query, final String productnumber) {
-        String _query = prepareAdditionalCodeQueryWithLimit(MAX_RESULTS);
-
-        Map<String, Object> parameters = Maps.newHashMap();
-        String ilikeQuery = buildConditionParameterForIlike(query);
-        parameters.put("query", ilikeQuery);
-        parameters.put("productnumber", productnumber);
-
-        SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
-
-        List<AbstractDTO> codes = jdbcTemplate.query(_query, nParameters, new BeanPropertyRowMapper(AdditionalCodeDTO.class));
-
-        return codes;
-    }
-
     public List<PalletNumberDTO> getAllPalletNumbers(final String sidx, final String sord) {
         String _query = "SELECT palletnumber.id AS id, palletnumber.number AS code, palletnumber.number AS number "
                 + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true;";
@@ -198,37 +178,6 @@ public class DataProvider {
         return pallets;
     }
 
-    public List<AbstractDTO> getPalletNumbersByQuery(final String query) {
-        String _query = preparePalletNumbersQueryWithLimit(MAX_RESULTS);
-
-        Map<String, Object> parameters = Maps.newHashMap();
-
-        String ilikeQuery = buildConditionParameterForIlike(query);
-        parameters.put("query", ilikeQuery);
-
-        SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
-
-        List<AbstractDTO> pallets = jdbcTemplate.query(_query, nParameters, new BeanPropertyRowMapper(PalletNumberDTO.class));
-
-        return pallets;
-    }
-
-    public List<AbstractDTO> getAttribiutesByQuery(final String attr, final String query) {
-        String _query = prepareAttributesQueryLimit(MAX_RESULTS);
-
-        Map<String, Object> parameters = Maps.newHashMap();
-
-        String ilikeQuery = buildConditionParameterForIlike(query);
-        parameters.put("query", ilikeQuery);
-        parameters.put("attr", attr);
-
-        SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
-
-        List<AbstractDTO> attrs = jdbcTemplate.query(_query, nParameters, new BeanPropertyRowMapper(AttribiuteValueDTO.class));
-
-        return attrs;
-    }
-
     public List<Map<String, String>> getUnits() {
         return dictionaryService.getKeys("units").stream().map(unit -> {
             Map<String, String> type = Maps.newHashMap();
@@ -3,16 +3,30 @@ package com.qcadoo.mes.basic.hooks;
 import com.qcadoo.mes.basic.constants.NumberPatternElement;
 import com.qcadoo.mes.basic.constants.NumberPatternElementFields;
 import com.qcadoo.mes.basic.constants.NumberPatternFields;
+import com.qcadoo.mes.basic.services.NumberPatternGeneratorService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service
 public class NumberPatternElementHooks {
 
+    @Autowired
+    private NumberPatternGeneratorService numberPatternGeneratorService;
+
+    public void onSave(final DataDefinition dataDefinition, final Entity entity) {
+        numberPatternGeneratorService.invalidate(entity.getBelongsToField(NumberPatternElementFields.NUMBER_PATTERN));
+    }
+
+    public boolean onDelete(final DataDefinition dataDefinition, final Entity entity) {
+        numberPatternGeneratorService.invalidate(entity.getBelongsToField(NumberPatternElementFields.NUMBER_PATTERN));
+        return true;
+    }
+
     public boolean validatesWith(final DataDefinition dataDefinition, final Entity entity) {
         if (NumberPatternElement.XX.getStringValue().equals(entity.getStringField(NumberPatternElementFields.ELEMENT))
                 && StringUtils.isBlank(entity.getStringField(NumberPatternElementFields.VALUE))) {
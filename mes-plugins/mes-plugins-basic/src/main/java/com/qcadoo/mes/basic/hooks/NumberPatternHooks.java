@@ -2,6 +2,7 @@ package com.qcadoo.mes.basic.hooks;
 
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.NumberPatternFields;
+import com.qcadoo.mes.basic.services.NumberPatternGeneratorService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,16 +18,21 @@ public class NumberPatternHooks {
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private NumberPatternGeneratorService numberPatternGeneratorService;
+
     public void onSave(final DataDefinition dataDefinition, final Entity entity) {
         if (entity.getStringField(NumberPatternFields.NUMBER) == null) {
             entity.setField(NumberPatternFields.NUMBER, setNumberFromSequence());
         }
+        numberPatternGeneratorService.invalidate(entity);
     }
 
     public boolean onDelete(final DataDefinition dataDefinition, final Entity entity) {
         if (entity.getBooleanField(NumberPatternFields.USED)) {
             dropSequence(entity.getStringField(NumberPatternFields.NUMBER));
         }
+        numberPatternGeneratorService.releaseReservedNumbers(entity);
         return true;
     }
 
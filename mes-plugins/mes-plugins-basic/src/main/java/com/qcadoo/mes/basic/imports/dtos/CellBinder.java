@@ -103,6 +103,12 @@ public abstract class CellBinder {
 
     public abstract void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor);
 
+    public abstract void bindFormattedValue(final String formattedValue, final Entity entity,
+            final CellErrorsAccessor errorsAccessor);
+
+    public abstract void bindFormattedValue(final String formattedValue, final String dependentFormattedValue,
+            final Entity entity, final CellErrorsAccessor errorsAccessor);
+
     private static String formatCell(final Cell cell) {
         Locale locale = LocaleContextHolder.getLocale();
 
@@ -115,6 +121,10 @@ public abstract class CellBinder {
         return cellValue.trim();
     }
 
+    private static String formatDependentCell(final String dependentCellValue) {
+        return Objects.isNull(dependentCellValue) ? StringUtils.EMPTY : dependentCellValue.trim();
+    }
+
     @Override
     public String toString() {
         return ToStringBuilder.reflectionToString(this);
@@ -160,6 +170,24 @@ public abstract class CellBinder {
             }
         }
 
+        @Override
+        public void bindFormattedValue(final String formattedValue, final Entity entity,
+                final CellErrorsAccessor errorsAccessor) {
+            if (Objects.nonNull(formattedValue)) {
+                getCellParser().parse(formatCell(formattedValue), null, errorsAccessor,
+                        fieldValue -> entity.setField(getFieldName(), fieldValue));
+            }
+        }
+
+        @Override
+        public void bindFormattedValue(final String formattedValue, final String dependentFormattedValue,
+                final Entity entity, final CellErrorsAccessor errorsAccessor) {
+            if (Objects.nonNull(formattedValue)) {
+                getCellParser().parse(formatCell(formattedValue), formatDependentCell(dependentFormattedValue),
+                        errorsAccessor, fieldValue -> entity.setField(getFieldName(), fieldValue));
+            }
+        }
+
         @Override
         public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor) {
             if (StringUtils.isEmpty(cellValue)) {
@@ -206,6 +234,28 @@ public abstract class CellBinder {
             }
         }
 
+        @Override
+        public void bindFormattedValue(final String formattedValue, final Entity entity,
+                final CellErrorsAccessor errorsAccessor) {
+            if (Objects.nonNull(formattedValue)) {
+                getCellParser().parse(formatCell(formattedValue), null, errorsAccessor,
+                        fieldValue -> entity.setField(getFieldName(), fieldValue));
+            } else {
+                setDefaultValue(entity, errorsAccessor);
+            }
+        }
+
+        @Override
+        public void bindFormattedValue(final String formattedValue, final String dependentFormattedValue,
+                final Entity entity, final CellErrorsAccessor errorsAccessor) {
+            if (Objects.nonNull(formattedValue)) {
+                getCellParser().parse(formatCell(formattedValue), formatDependentCell(dependentFormattedValue),
+                        errorsAccessor, fieldValue -> entity.setField(getFieldName(), fieldValue));
+            } else {
+                setDefaultValue(entity, errorsAccessor);
+            }
+        }
+
         @Override
         public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor) {
             if (StringUtils.isNotEmpty(cellValue)) {
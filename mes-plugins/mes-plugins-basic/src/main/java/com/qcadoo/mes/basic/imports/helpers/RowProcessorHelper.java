@@ -105,6 +105,32 @@ public class RowProcessorHelper {
                 errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
     }
 
+    public void appendFormattedValue(final String formattedValue) {
+        assureNotProcessedYet();
+
+        if (Objects.nonNull(formattedValue)) {
+            empty = false;
+        }
+
+        final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
+
+        binder.bindFormattedValue(formattedValue, entity,
+                errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
+    }
+
+    public void appendFormattedValue(final String formattedValue, final String dependentFormattedValue) {
+        assureNotProcessedYet();
+
+        if (Objects.nonNull(formattedValue)) {
+            empty = false;
+        }
+
+        final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
+
+        binder.bindFormattedValue(formattedValue, dependentFormattedValue, entity,
+                errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
+    }
+
     public void update(final Entity entityToUpdate, final Function<Entity, Boolean> checkOnUpdate) {
         if (!Objects.isNull(entityToUpdate)) {
             if (!Objects.isNull(checkOnUpdate)) {
@@ -33,6 +33,7 @@ import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.CompanyFields;
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
+import com.qcadoo.mes.basic.imports.services.ImportLookupCache;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -46,10 +47,13 @@ public class CompanyCellParser implements CellParser {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ImportLookupCache importLookupCache;
+
     @Override
     public void parse(final String cellValue, final String dependentCellValue, final CellErrorsAccessor errorsAccessor,
             final Consumer<Object> valueConsumer) {
-        Entity company = getCompanyByNumber(cellValue);
+        Entity company = importLookupCache.find(() -> getCompanyByNumber(cellValue), BasicConstants.MODEL_COMPANY, cellValue);
 
         if (Objects.isNull(company)) {
             errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
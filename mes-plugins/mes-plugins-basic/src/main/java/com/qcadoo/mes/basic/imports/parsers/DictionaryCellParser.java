@@ -9,6 +9,7 @@ import java.util.function.Consumer;
 
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
+import com.qcadoo.mes.basic.imports.services.ImportLookupCache;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -26,20 +27,26 @@ public class DictionaryCellParser implements CellParser {
 
     private DataDefinitionService dataDefinitionService;
 
+    private ImportLookupCache importLookupCache;
+
     private DictionaryCellParser() {
         this.dataDefinitionService = null;
+        this.importLookupCache = null;
         this.dictionaryName = null;
     }
 
-    public DictionaryCellParser(final DataDefinitionService dataDefinitionService, final String dictionaryName) {
+    public DictionaryCellParser(final DataDefinitionService dataDefinitionService, final ImportLookupCache importLookupCache,
+            final String dictionaryName) {
         this.dataDefinitionService = dataDefinitionService;
+        this.importLookupCache = importLookupCache;
         this.dictionaryName = dictionaryName;
     }
 
     @Override
     public void parse(final String cellValue, final String dependentCellValue, final CellErrorsAccessor errorsAccessor,
             final Consumer<Object> valueConsumer) {
-        Entity dictionaryItem = getDictionaryItemByName(cellValue);
+        Entity dictionaryItem = importLookupCache.find(() -> getDictionaryItemByName(cellValue),
+                QcadooModelConstants.MODEL_DICTIONARY_ITEM, dictionaryName, cellValue);
 
         if (Objects.isNull(dictionaryItem)) {
             errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_INVALID_DICTIONARY_ITEM);
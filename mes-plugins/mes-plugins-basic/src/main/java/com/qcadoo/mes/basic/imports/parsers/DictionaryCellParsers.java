@@ -27,6 +27,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
+import com.qcadoo.mes.basic.imports.services.ImportLookupCache;
 import com.qcadoo.model.api.DataDefinitionService;
 
 @Component
@@ -35,16 +36,19 @@ public class DictionaryCellParsers {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ImportLookupCache importLookupCache;
+
     public CellParser productCategory() {
-        return new DictionaryCellParser(dataDefinitionService, "categories");
+        return new DictionaryCellParser(dataDefinitionService, importLookupCache, "categories");
     }
 
     public CellParser units() {
-        return new DictionaryCellParser(dataDefinitionService, "units");
+        return new DictionaryCellParser(dataDefinitionService, importLookupCache, "units");
     }
 
     public CellParser typeOfPallet() {
-        return new DictionaryCellParser(dataDefinitionService, "typeOfPallet");
+        return new DictionaryCellParser(dataDefinitionService, importLookupCache, "typeOfPallet");
     }
 
 }
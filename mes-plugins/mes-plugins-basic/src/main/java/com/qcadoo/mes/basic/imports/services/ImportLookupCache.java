@@ -0,0 +1,77 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.services;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Remembers entities looked up by cell parsers while a file is imported, so the same number is queried only once per import.
+ * Lookups which find nothing are not remembered, because rows imported later may create the missing entity. Outside of an
+ * import every lookup goes straight to the database.
+ */
+@Service
+public class ImportLookupCache {
+
+    private final ThreadLocal<Map<List<Object>, Entity>> lookups = new ThreadLocal<>();
+
+    public void open() {
+        lookups.set(Maps.newHashMap());
+    }
+
+    public void close() {
+        lookups.remove();
+    }
+
+    public Entity find(final Supplier<Entity> lookup, final Object... key) {
+        Map<List<Object>, Entity> entities = lookups.get();
+
+        if (Objects.isNull(entities)) {
+            return lookup.get();
+        }
+
+        List<Object> entityKey = Arrays.asList(key);
+
+        Entity entity = entities.get(entityKey);
+
+        if (Objects.isNull(entity)) {
+            entity = lookup.get();
+
+            if (Objects.nonNull(entity)) {
+                entities.put(entityKey, entity);
+            }
+        }
+
+        return entity;
+    }
+
+}
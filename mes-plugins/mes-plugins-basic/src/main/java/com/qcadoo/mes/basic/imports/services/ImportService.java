@@ -316,6 +316,8 @@ public abstract class ImportService {
         } else if (!checkFileExtension(filePath)) {
             view.addMessage(L_BASIC_IMPORT_ERROR_FILE_INVALID, ComponentState.MessageType.FAILURE);
         } else {
+            logService.flush();
+
             String url = UriComponentsBuilder.newInstance().path("basic").pathSegment("logsList.html").build().toUriString();
 
             String logType = new StringBuilder(modelName).append(StringUtils.capitalize(L_IMPORT)).toString();
@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.basic.imports.services;
 
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import com.qcadoo.mes.basic.imports.dtos.CellBinder;
 import com.qcadoo.mes.basic.imports.dtos.CellBinderRegistry;
@@ -33,20 +34,48 @@ import com.qcadoo.model.api.search.SearchCriterion;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
 
+import javax.xml.parsers.ParserConfigurationException;
+
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.POIXMLException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 @Service
 public class XlsxImportService extends ImportService {
 
+    @Value("${xlsxImportChunkSize:500}")
+    private int chunkSize;
+
+    @Autowired
+    private ImportLookupCache importLookupCache;
+
     @Transactional
     public ImportStatus importFile(final FileInputStream fis, final CellBinderRegistry cellBinderRegistry,
             final Boolean rollbackOnError, final String pluginIdentifier, final String modelName, final Entity belongsTo,
@@ -54,16 +83,199 @@ public class XlsxImportService extends ImportService {
             final Function<Entity, Boolean> checkOnUpdate) throws IOException {
         ImportStatus importStatus = new ImportStatus();
 
-        XSSFWorkbook workbook = new XSSFWorkbook(fis);
-        XSSFSheet sheet = workbook.getSheetAt(0);
+        SheetRowsImport sheetRowsImport = new SheetRowsImport(cellBinderRegistry, rollbackOnError, pluginIdentifier,
+                modelName, belongsTo, belongsToName, shouldUpdate, criteriaSupplier, checkOnUpdate, importStatus);
+
+        importLookupCache.open();
+
+        try {
+            readFirstSheet(fis, sheetRowsImport);
+
+            sheetRowsImport.flush();
+        } finally {
+            importLookupCache.close();
+        }
+
+        if (rollbackOnError && importStatus.hasErrors()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+
+        return importStatus;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void importRowsInNewTransaction(final Runnable rowsImport) {
+        rowsImport.run();
+    }
+
+    private void readFirstSheet(final FileInputStream fis, final SheetContentsHandler sheetContentsHandler)
+            throws IOException {
+        Locale locale = LocaleContextHolder.getLocale();
+
+        DataFormatter dataFormatter = new DataFormatter(Objects.isNull(locale) ? Locale.getDefault() : locale);
+
+        try {
+            OPCPackage opcPackage = OPCPackage.open(fis);
+
+            try {
+                XSSFReader xssfReader = new XSSFReader(opcPackage);
+                ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+                Iterator<InputStream> sheets = xssfReader.getSheetsData();
+
+                if (sheets.hasNext()) {
+                    try (InputStream sheet = sheets.next()) {
+                        XMLReader xmlReader = SAXHelper.newXMLReader();
+
+                        xmlReader.setContentHandler(new XSSFSheetXMLHandler(xssfReader.getStylesTable(), sharedStrings,
+                                sheetContentsHandler, dataFormatter, false));
+                        xmlReader.parse(new InputSource(sheet));
+                    }
+                }
+            } finally {
+                opcPackage.revert();
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new POIXMLException(e);
+        }
+    }
+
+    private int getDependentIndex(final String dependentFieldName, final CellBinderRegistry cellBinderRegistry) {
+        for (int columnIndex = 0; columnIndex < cellBinderRegistry.getSize(); columnIndex++) {
+            if(cellBinderRegistry.getCellBinder(columnIndex).getFieldName().equals(dependentFieldName)) {
+                return columnIndex;
+            }
+        }
+        return -1;
+    }
+
+    public boolean checkFileExtension(final String filePath) {
+        return Files.getFileExtension(filePath).equalsIgnoreCase(L_XLSX);
+    }
+
+    /**
+     * Receives rows of the first sheet from the SAX parser, skipping the header row, and imports them in chunks. Reading stops
+     * at the first missing or empty row, as it did when the whole workbook was loaded.
+     */
+    private class SheetRowsImport implements SheetContentsHandler {
+
+        private final CellBinderRegistry cellBinderRegistry;
+
+        private final Boolean rollbackOnError;
+
+        private final String pluginIdentifier;
+
+        private final String modelName;
+
+        private final Entity belongsTo;
+
+        private final String belongsToName;
+
+        private final Boolean shouldUpdate;
+
+        private final Function<Entity, SearchCriterion> criteriaSupplier;
+
+        private final Function<Entity, Boolean> checkOnUpdate;
+
+        private final ImportStatus importStatus;
+
+        private final Map<Integer, String[]> rows = Maps.newLinkedHashMap();
+
+        private String[] currentRow;
 
-        for (int rowIndex = 1; rowIndex <= sheet.getLastRowNum(); rowIndex++) {
-            Row row = sheet.getRow(rowIndex);
+        private int currentRowIndex;
 
-            if (Objects.isNull(row)) {
-                break;
+        private int nextRowIndex = 1;
+
+        private boolean finished = false;
+
+        SheetRowsImport(final CellBinderRegistry cellBinderRegistry, final Boolean rollbackOnError,
+                final String pluginIdentifier, final String modelName, final Entity belongsTo, final String belongsToName,
+                final Boolean shouldUpdate, final Function<Entity, SearchCriterion> criteriaSupplier,
+                final Function<Entity, Boolean> checkOnUpdate, final ImportStatus importStatus) {
+            this.cellBinderRegistry = cellBinderRegistry;
+            this.rollbackOnError = rollbackOnError;
+            this.pluginIdentifier = pluginIdentifier;
+            this.modelName = modelName;
+            this.belongsTo = belongsTo;
+            this.belongsToName = belongsToName;
+            this.shouldUpdate = shouldUpdate;
+            this.criteriaSupplier = criteriaSupplier;
+            this.checkOnUpdate = checkOnUpdate;
+            this.importStatus = importStatus;
+        }
+
+        @Override
+        public void startRow(final int rowNum) {
+            if (finished || (rowNum == 0)) {
+                return;
+            }
+
+            if (rowNum == nextRowIndex) {
+                currentRow = new String[cellBinderRegistry.getSize()];
+                currentRowIndex = rowNum;
+                nextRowIndex++;
+            } else {
+                finished = true;
+            }
+        }
+
+        @Override
+        public void cell(final String cellReference, final String formattedValue, final XSSFComment comment) {
+            if (Objects.isNull(currentRow) || StringUtils.isEmpty(formattedValue)) {
+                return;
+            }
+
+            int columnIndex = new CellReference(cellReference).getCol();
+
+            if (columnIndex < currentRow.length) {
+                currentRow[columnIndex] = formattedValue;
+            }
+        }
+
+        @Override
+        public void endRow(final int rowNum) {
+            if (Objects.isNull(currentRow)) {
+                return;
+            }
+
+            if (Arrays.stream(currentRow).allMatch(Objects::isNull)) {
+                finished = true;
+            } else {
+                rows.put(currentRowIndex, currentRow);
+
+                if (rows.size() >= chunkSize) {
+                    flush();
+                }
+            }
+
+            currentRow = null;
+        }
+
+        @Override
+        public void headerFooter(final String text, final boolean isHeader, final String tagName) {
+        }
+
+        void flush() {
+            if (rows.isEmpty()) {
+                return;
+            }
+
+            Map<Integer, String[]> chunk = Maps.newLinkedHashMap(rows);
+
+            rows.clear();
+
+            if (rollbackOnError) {
+                importRows(chunk);
+            } else {
+                importRowsInNewTransaction(() -> importRows(chunk));
             }
+        }
 
+        private void importRows(final Map<Integer, String[]> chunk) {
+            chunk.forEach(this::importRow);
+        }
+
+        private void importRow(final Integer rowIndex, final String[] row) {
             Entity entity = createEntity(pluginIdentifier, modelName);
 
             if (Objects.nonNull(belongsTo) && Objects.nonNull(belongsToName)) {
@@ -76,17 +288,13 @@ public class XlsxImportService extends ImportService {
                 CellBinder cell = cellBinderRegistry.getCellBinder(columnIndex);
                 String dependentFieldName = cell.getDependentFieldName();
                 if(StringUtils.isEmpty(dependentFieldName)) {
-                    rowProcessorHelper.append(row.getCell(columnIndex, Row.RETURN_BLANK_AS_NULL));
+                    rowProcessorHelper.appendFormattedValue(row[columnIndex]);
                 } else {
                     int dependentIndex = getDependentIndex(dependentFieldName, cellBinderRegistry);
-                    rowProcessorHelper.append(row.getCell(columnIndex, Row.RETURN_BLANK_AS_NULL), row.getCell(dependentIndex, Row.RETURN_BLANK_AS_NULL));
+                    rowProcessorHelper.appendFormattedValue(row[columnIndex], row[dependentIndex]);
                 }
             }
 
-            if (rowProcessorHelper.isEmpty()) {
-                break;
-            }
-
             if (shouldUpdate && !Objects.isNull(criteriaSupplier)) {
                 Entity entityToUpdate = getEntity(pluginIdentifier, modelName, criteriaSupplier.apply(entity));
 
@@ -98,24 +306,6 @@ public class XlsxImportService extends ImportService {
             rowProcessorHelper.process();
         }
 
-        if (rollbackOnError && importStatus.hasErrors()) {
-            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
-        }
-
-        return importStatus;
-    }
-
-    private int getDependentIndex(final String dependentFieldName, final CellBinderRegistry cellBinderRegistry) {
-        for (int columnIndex = 0; columnIndex < cellBinderRegistry.getSize(); columnIndex++) {
-            if(cellBinderRegistry.getCellBinder(columnIndex).getFieldName().equals(dependentFieldName)) {
-                return columnIndex;
-            }
-        }
-        return -1;
-    }
-
-    public boolean checkFileExtension(final String filePath) {
-        return Files.getFileExtension(filePath).equalsIgnoreCase(L_XLSX);
     }
 
 }
@@ -0,0 +1,108 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.util.Objects;
+
+import org.apache.poi.ss.usermodel.Font;
+
+/**
+ * Attributes of a report font. Fonts with equal attributes are created only once per workbook by
+ * {@link ReportStyleRegistry}.
+ */
+public final class ReportFont {
+
+    public static final ReportFont DEFAULT = new ReportFont(null, null, Font.BOLDWEIGHT_NORMAL, Font.COLOR_NORMAL);
+
+    public static final ReportFont BOLD = DEFAULT.withBoldweight(Font.BOLDWEIGHT_BOLD);
+
+    private final String name;
+
+    private final Short heightInPoints;
+
+    private final short boldweight;
+
+    private final short color;
+
+    private ReportFont(final String name, final Short heightInPoints, final short boldweight, final short color) {
+        this.name = name;
+        this.heightInPoints = heightInPoints;
+        this.boldweight = boldweight;
+        this.color = color;
+    }
+
+    public ReportFont withName(final String name) {
+        return new ReportFont(name, heightInPoints, boldweight, color);
+    }
+
+    public ReportFont withHeightInPoints(final short heightInPoints) {
+        return new ReportFont(name, heightInPoints, boldweight, color);
+    }
+
+    public ReportFont withBoldweight(final short boldweight) {
+        return new ReportFont(name, heightInPoints, boldweight, color);
+    }
+
+    public ReportFont withColor(final short color) {
+        return new ReportFont(name, heightInPoints, boldweight, color);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Short getHeightInPoints() {
+        return heightInPoints;
+    }
+
+    public short getBoldweight() {
+        return boldweight;
+    }
+
+    public short getColor() {
+        return color;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object) {
+            return true;
+        }
+
+        if (!(object instanceof ReportFont)) {
+            return false;
+        }
+
+        ReportFont other = (ReportFont) object;
+
+        return Objects.equals(name, other.name) && Objects.equals(heightInPoints, other.heightInPoints)
+                && (boldweight == other.boldweight) && (color == other.color);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, heightInPoints, boldweight, color);
+    }
+
+}
@@ -0,0 +1,186 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+/**
+ * Attributes of a report cell style. Styles are described by value, so helpers may build them for every cell and still get
+ * one cell style per distinct set of attributes from {@link ReportStyleRegistry}.
+ */
+public final class ReportStyle {
+
+    public static final ReportStyle DEFAULT = new ReportStyle(CellStyle.ALIGN_GENERAL, CellStyle.VERTICAL_BOTTOM,
+            new short[] { CellStyle.BORDER_NONE, CellStyle.BORDER_NONE, CellStyle.BORDER_NONE, CellStyle.BORDER_NONE }, false,
+            (short) 0, null, null, null);
+
+    private static final int L_TOP = 0;
+
+    private static final int L_LEFT = 1;
+
+    private static final int L_RIGHT = 2;
+
+    private static final int L_BOTTOM = 3;
+
+    private final short alignment;
+
+    private final short verticalAlignment;
+
+    private final short[] borders;
+
+    private final boolean wrapText;
+
+    private final short indention;
+
+    private final Short fillColor;
+
+    private final String dataFormat;
+
+    private final ReportFont font;
+
+    private ReportStyle(final short alignment, final short verticalAlignment, final short[] borders, final boolean wrapText,
+            final short indention, final Short fillColor, final String dataFormat, final ReportFont font) {
+        this.alignment = alignment;
+        this.verticalAlignment = verticalAlignment;
+        this.borders = borders;
+        this.wrapText = wrapText;
+        this.indention = indention;
+        this.fillColor = fillColor;
+        this.dataFormat = dataFormat;
+        this.font = font;
+    }
+
+    public ReportStyle withAlignment(final short alignment) {
+        return new ReportStyle(alignment, verticalAlignment, borders, wrapText, indention, fillColor, dataFormat, font);
+    }
+
+    public ReportStyle withVerticalAlignment(final short verticalAlignment) {
+        return new ReportStyle(alignment, verticalAlignment, borders, wrapText, indention, fillColor, dataFormat, font);
+    }
+
+    public ReportStyle withBorders(final short border) {
+        return withBorders(border, border, border, border);
+    }
+
+    public ReportStyle withBorders(final short top, final short left, final short right, final short bottom) {
+        return new ReportStyle(alignment, verticalAlignment, new short[] { top, left, right, bottom }, wrapText, indention,
+                fillColor, dataFormat, font);
+    }
+
+    public ReportStyle withBorderBottom(final short bottom) {
+        return withBorders(borders[L_TOP], borders[L_LEFT], borders[L_RIGHT], bottom);
+    }
+
+    public ReportStyle withWrapText(final boolean wrapText) {
+        return new ReportStyle(alignment, verticalAlignment, borders, wrapText, indention, fillColor, dataFormat, font);
+    }
+
+    public ReportStyle withIndention(final short indention) {
+        return new ReportStyle(alignment, verticalAlignment, borders, wrapText, indention, fillColor, dataFormat, font);
+    }
+
+    public ReportStyle withFillColor(final short fillColor) {
+        return new ReportStyle(alignment, verticalAlignment, borders, wrapText, indention, fillColor, dataFormat, font);
+    }
+
+    public ReportStyle withDataFormat(final String dataFormat) {
+        return new ReportStyle(alignment, verticalAlignment, borders, wrapText, indention, fillColor, dataFormat, font);
+    }
+
+    public ReportStyle withFont(final ReportFont font) {
+        return new ReportStyle(alignment, verticalAlignment, borders, wrapText, indention, fillColor, dataFormat, font);
+    }
+
+    public short getAlignment() {
+        return alignment;
+    }
+
+    public short getVerticalAlignment() {
+        return verticalAlignment;
+    }
+
+    public short getBorderTop() {
+        return borders[L_TOP];
+    }
+
+    public short getBorderLeft() {
+        return borders[L_LEFT];
+    }
+
+    public short getBorderRight() {
+        return borders[L_RIGHT];
+    }
+
+    public short getBorderBottom() {
+        return borders[L_BOTTOM];
+    }
+
+    public boolean isWrapText() {
+        return wrapText;
+    }
+
+    public short getIndention() {
+        return indention;
+    }
+
+    public Short getFillColor() {
+        return fillColor;
+    }
+
+    public String getDataFormat() {
+        return dataFormat;
+    }
+
+    public ReportFont getFont() {
+        return font;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object) {
+            return true;
+        }
+
+        if (!(object instanceof ReportStyle)) {
+            return false;
+        }
+
+        ReportStyle other = (ReportStyle) object;
+
+        return (alignment == other.alignment) && (verticalAlignment == other.verticalAlignment)
+                && Arrays.equals(borders, other.borders) && (wrapText == other.wrapText) && (indention == other.indention)
+                && Objects.equals(fillColor, other.fillColor) && Objects.equals(dataFormat, other.dataFormat)
+                && Objects.equals(font, other.font);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(alignment, verticalAlignment, Arrays.hashCode(borders), wrapText, indention, fillColor, dataFormat,
+                font);
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Cell styles and fonts of one report workbook, created on first use and shared by all cells with equal attributes.
+ * <p>
+ * Workbooks keep every style and font created, XLS files accept at most 4000 styles, so styles must not be created per cell.
+ * Create one registry per workbook and look styles up by {@link ReportStyle} instead.
+ */
+public class ReportStyleRegistry {
+
+    private final Workbook workbook;
+
+    private final Map<ReportStyle, CellStyle> styles = Maps.newHashMap();
+
+    private final Map<ReportFont, Font> fonts = Maps.newHashMap();
+
+    private DataFormat dataFormat;
+
+    public ReportStyleRegistry(final Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    public CellStyle getStyle(final ReportStyle style) {
+        CellStyle cellStyle = styles.get(style);
+
+        if (Objects.isNull(cellStyle)) {
+            cellStyle = createStyle(style);
+
+            styles.put(style, cellStyle);
+        }
+
+        return cellStyle;
+    }
+
+    public Font getFont(final ReportFont font) {
+        Font workbookFont = fonts.get(font);
+
+        if (Objects.isNull(workbookFont)) {
+            workbookFont = createFont(font);
+
+            fonts.put(font, workbookFont);
+        }
+
+        return workbookFont;
+    }
+
+    public Workbook getWorkbook() {
+        return workbook;
+    }
+
+    private CellStyle createStyle(final ReportStyle style) {
+        CellStyle cellStyle = workbook.createCellStyle();
+
+        cellStyle.setAlignment(style.getAlignment());
+        cellStyle.setVerticalAlignment(style.getVerticalAlignment());
+        cellStyle.setBorderTop(style.getBorderTop());
+        cellStyle.setBorderLeft(style.getBorderLeft());
+        cellStyle.setBorderRight(style.getBorderRight());
+        cellStyle.setBorderBottom(style.getBorderBottom());
+        cellStyle.setWrapText(style.isWrapText());
+        cellStyle.setIndention(style.getIndention());
+
+        if (Objects.nonNull(style.getFillColor())) {
+            cellStyle.setFillForegroundColor(style.getFillColor());
+            cellStyle.setFillPattern(CellStyle.SOLID_FOREGROUND);
+        }
+
+        if (Objects.nonNull(style.getDataFormat())) {
+            cellStyle.setDataFormat(getDataFormat().getFormat(style.getDataFormat()));
+        }
+
+        if (Objects.nonNull(style.getFont())) {
+            cellStyle.setFont(getFont(style.getFont()));
+        }
+
+        return cellStyle;
+    }
+
+    private Font createFont(final ReportFont font) {
+        Font workbookFont = workbook.createFont();
+
+        if (Objects.nonNull(font.getName())) {
+            workbookFont.setFontName(font.getName());
+        }
+
+        if (Objects.nonNull(font.getHeightInPoints())) {
+            workbookFont.setFontHeightInPoints(font.getHeightInPoints());
+        }
+
+        workbookFont.setBoldweight(font.getBoldweight());
+        workbookFont.setColor(font.getColor());
+
+        return workbookFont;
+    }
+
+    private DataFormat getDataFormat() {
+        if (Objects.isNull(dataFormat)) {
+            dataFormat = workbook.createDataFormat();
+        }
+
+        return dataFormat;
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.SheetUtil;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+
+/**
+ * Base of reports saved as XLSX files.
+ * <p>
+ * The workbook is streamed: each sheet keeps only the last rows in memory and flushes the older ones to a temporary file, so
+ * neither the heap nor the 65,536 rows of the XLS format limit the size of the report. Rows which were flushed can not be
+ * accessed anymore, so column widths are computed from the rows still kept in memory, see
+ * {@link #autoSizeColumns(Sheet, int, int)}.
+ */
+public abstract class XlsxDocumentService {
+
+    public static final String L_XLSX = "xlsx";
+
+    public static final String L_XLS = "xls";
+
+    public static final String L_FILE_NAME = "fileName";
+
+    private static final int L_MAX_COLUMN_WIDTH = 255 * 256;
+
+    @Value("${xlsxReportRowWindow:100}")
+    private int rowWindow;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    public void generateDocument(final Entity entity, final Locale locale) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(rowWindow);
+
+        try {
+            Sheet sheet = createSheet(workbook, getReportTitle(locale));
+
+            addHeader(sheet, locale, entity);
+            addSeries(sheet, entity);
+            addExtraSheets(workbook, entity, locale);
+
+            try (OutputStream outputStream = new FileOutputStream(getFilePath(entity))) {
+                workbook.write(outputStream);
+            }
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    public abstract String getReportTitle(final Locale locale);
+
+    protected abstract void addHeader(final Sheet sheet, final Locale locale, final Entity entity);
+
+    protected abstract void addSeries(final Sheet sheet, final Entity entity);
+
+    protected void addExtraSheets(final Workbook workbook, final Entity entity, final Locale locale) {
+    }
+
+    public Sheet createSheet(final Workbook workbook, final String sheetName) {
+        return workbook.createSheet(WorkbookUtil.createSafeSheetName(sheetName));
+    }
+
+    /**
+     * Widens the given columns to fit the rows which are still kept in memory. Call it before the sheet grows beyond the row
+     * window or right after the rows which determine the widths, e.g. headers and the first rows of data, were added.
+     */
+    protected void autoSizeColumns(final Sheet sheet, final int firstColumn, final int lastColumn) {
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            double width = SheetUtil.getColumnWidth(sheet, column, false);
+
+            if (width > 0) {
+                int columnWidth = (int) Math.min(width * 256, L_MAX_COLUMN_WIDTH);
+
+                if (columnWidth > sheet.getColumnWidth(column)) {
+                    sheet.setColumnWidth(column, columnWidth);
+                }
+            }
+        }
+    }
+
+    public void printGeneratedReport(final ViewDefinitionState view, final ComponentState state, final String pluginIdentifier,
+            final String modelName) {
+        Long reportId = (Long) state.getFieldValue();
+
+        Entity report = null;
+
+        if (reportId != null) {
+            report = dataDefinitionService.get(pluginIdentifier, modelName).get(reportId);
+        }
+
+        if (report == null) {
+            state.addMessage("qcadooView.message.entityNotFound", MessageType.FAILURE);
+        } else if (StringUtils.isEmpty(report.getStringField(L_FILE_NAME))) {
+            state.addMessage("qcadooReport.errorMessage.documentsWasNotGenerated", MessageType.FAILURE);
+        } else {
+            view.redirectTo("/" + BasicConstants.PLUGIN_IDENTIFIER + "/generatedXlsxReport/" + pluginIdentifier + "/" + modelName
+                    + "." + L_XLSX + "?id=" + reportId, true, false);
+        }
+    }
+
+    public static String getFilePath(final Entity entity) {
+        return entity.getStringField(L_FILE_NAME) + "." + L_XLSX;
+    }
+
+    /**
+     * Path of the report file saved in the XLS format, used by reports generated before they were switched to XLSX.
+     */
+    public static String getLegacyFilePath(final Entity entity) {
+        return entity.getStringField(L_FILE_NAME) + "." + L_XLS;
+    }
+
+}
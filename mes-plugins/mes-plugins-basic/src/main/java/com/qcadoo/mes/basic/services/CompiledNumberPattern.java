@@ -0,0 +1,131 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.services;
+
+import com.google.common.collect.ImmutableList;
+import com.qcadoo.mes.basic.constants.NumberPatternElement;
+import com.qcadoo.mes.basic.constants.NumberPatternElementFields;
+import com.qcadoo.mes.basic.constants.NumberPatternFields;
+import com.qcadoo.model.api.Entity;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateFormatUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Elements of a number pattern read once from its numberPatternElements. Instances are immutable and can be used to format
+ * numbers from many threads at once.
+ */
+public final class CompiledNumberPattern {
+
+    private static final String L_SEQUENCE_NAME = "number_pattern_%s_seq";
+
+    private final List<NumberPatternElement> elements;
+
+    private final List<String> values;
+
+    private final String sequenceName;
+
+    private CompiledNumberPattern(final List<NumberPatternElement> elements, final List<String> values,
+            final String sequenceName) {
+        this.elements = elements;
+        this.values = values;
+        this.sequenceName = sequenceName;
+    }
+
+    public static CompiledNumberPattern compile(final Entity numberPattern) {
+        ImmutableList.Builder<NumberPatternElement> elements = ImmutableList.builder();
+        ImmutableList.Builder<String> values = ImmutableList.builder();
+
+        boolean withSequence = false;
+
+        for (Entity element : numberPattern.getHasManyField(NumberPatternFields.NUMBER_PATTERN_ELEMENTS)) {
+            NumberPatternElement numberPatternElement = NumberPatternElement.parseString(element
+                    .getStringField(NumberPatternElementFields.ELEMENT));
+
+            elements.add(numberPatternElement);
+            values.add(StringUtils.defaultString(element.getStringField(NumberPatternElementFields.VALUE)));
+
+            withSequence |= isSequenceElement(numberPatternElement);
+        }
+
+        String sequenceName = withSequence ? getSequenceName(numberPattern) : null;
+
+        return new CompiledNumberPattern(elements.build(), values.build(), sequenceName);
+    }
+
+    public static String getSequenceName(final Entity numberPattern) {
+        return String.format(L_SEQUENCE_NAME, numberPattern.getStringField(NumberPatternFields.NUMBER));
+    }
+
+    private static boolean isSequenceElement(final NumberPatternElement numberPatternElement) {
+        return NumberPatternElement.N999.equals(numberPatternElement) || NumberPatternElement.N9999.equals(numberPatternElement)
+                || NumberPatternElement.N99999.equals(numberPatternElement);
+    }
+
+    public boolean hasSequence() {
+        return Objects.nonNull(sequenceName);
+    }
+
+    public String getSequenceName() {
+        return sequenceName;
+    }
+
+    public String format(final Date date, final Long sequenceNumber) {
+        StringBuilder number = new StringBuilder();
+
+        for (int i = 0; i < elements.size(); i++) {
+            switch (elements.get(i)) {
+                case DD:
+                    number.append(DateFormatUtils.format(date, "dd"));
+                    break;
+                case MM:
+                    number.append(DateFormatUtils.format(date, "MM"));
+                    break;
+                case RR:
+                    number.append(DateFormatUtils.format(date, "yy"));
+                    break;
+                case RRRR:
+                    number.append(DateFormatUtils.format(date, "yyyy"));
+                    break;
+                case N999:
+                    number.append(StringUtils.leftPad(String.valueOf(sequenceNumber), 3, '0'));
+                    break;
+                case N9999:
+                    number.append(StringUtils.leftPad(String.valueOf(sequenceNumber), 4, '0'));
+                    break;
+                case N99999:
+                    number.append(StringUtils.leftPad(String.valueOf(sequenceNumber), 5, '0'));
+                    break;
+                case XX:
+                    number.append(values.get(i));
+            }
+        }
+
+        return number.toString();
+    }
+
+}
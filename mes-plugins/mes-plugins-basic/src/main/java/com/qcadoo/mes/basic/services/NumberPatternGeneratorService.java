@@ -1,86 +1,128 @@
 package com.qcadoo.mes.basic.services;
 
-import com.qcadoo.mes.basic.constants.NumberPatternElement;
-import com.qcadoo.mes.basic.constants.NumberPatternElementFields;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.NumberPatternFields;
 import com.qcadoo.model.api.Entity;
-import org.apache.commons.lang3.time.DateFormatUtils;
+import com.qcadoo.tenant.api.MultiTenantUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import java.text.DecimalFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Generates numbers from number patterns.
+ * <p>
+ * Patterns are compiled once and cached until they are saved again. Sequence values are taken from the database in blocks of
+ * numberPatternSequenceBlockSize values and handed out by this node, so with blocks larger than one, numbers of different
+ * nodes interleave and values reserved by a stopped node are skipped. Both caches are kept per tenant, as pattern ids and
+ * sequence names repeat between tenants.
+ */
 @Service
 public class NumberPatternGeneratorService {
 
-    private static final DecimalFormat threeCharacterNumber = new DecimalFormat("000");
+    private static final String L_NEXT_VALUES = "SELECT nextval(CAST(:sequenceName AS regclass)) AS value "
+            + "FROM generate_series(1, :count) ORDER BY value";
 
-    private static final DecimalFormat fourCharacterNumber = new DecimalFormat("0000");
-
-    private static final DecimalFormat fiveCharacterNumber = new DecimalFormat("00000");
+    @Value("${numberPatternSequenceBlockSize:1}")
+    private int sequenceBlockSize;
 
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    private final ConcurrentMap<List<Object>, CompiledNumberPattern> compiledPatterns = Maps.newConcurrentMap();
+
+    private final ConcurrentMap<List<Object>, Deque<Long>> reservedSequenceNumbers = Maps.newConcurrentMap();
+
     public String generateNumber(Entity numberPattern) {
-        StringBuilder number = new StringBuilder();
-        for (Entity element : numberPattern.getHasManyField(NumberPatternFields.NUMBER_PATTERN_ELEMENTS)) {
-            addElementToNumber(number, element);
-        }
-        return number.toString();
+        return generateNumbers(numberPattern, 1).get(0);
     }
 
-    private void addElementToNumber(StringBuilder number, Entity element) {
+    public List<String> generateNumbers(Entity numberPattern, int count) {
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+
+        CompiledNumberPattern compiledPattern = getCompiledPattern(numberPattern);
+
         Date now = new Date();
-        long sequenceNumber;
-        switch (NumberPatternElement.parseString(element.getStringField(NumberPatternElementFields.ELEMENT))) {
-            case DD:
-                number.append(DateFormatUtils.format(now, "dd"));
-                break;
-            case MM:
-                number.append(DateFormatUtils.format(now, "MM"));
-                break;
-            case RR:
-                number.append(DateFormatUtils.format(now, "yy"));
-                break;
-            case RRRR:
-                number.append(DateFormatUtils.format(now, "yyyy"));
-                break;
-            case N999:
-                sequenceNumber = getSequenceNumber(element.getBelongsToField(NumberPatternElementFields.NUMBER_PATTERN));
-                if (sequenceNumber <= 999) {
-                    number.append(threeCharacterNumber.format(sequenceNumber));
-                } else {
-                    number.append(sequenceNumber);
-                }
-                break;
-            case N9999:
-                sequenceNumber = getSequenceNumber(element.getBelongsToField(NumberPatternElementFields.NUMBER_PATTERN));
-                if (sequenceNumber <= 9999) {
-                    number.append(fourCharacterNumber.format(sequenceNumber));
-                } else {
-                    number.append(sequenceNumber);
-                }
-                break;
-            case N99999:
-                sequenceNumber = getSequenceNumber(element.getBelongsToField(NumberPatternElementFields.NUMBER_PATTERN));
-                if (sequenceNumber <= 99999) {
-                    number.append(fiveCharacterNumber.format(sequenceNumber));
-                } else {
-                    number.append(sequenceNumber);
-                }
-                break;
-            case XX:
-                number.append(element.getStringField(NumberPatternElementFields.VALUE));
+
+        List<String> numbers = Lists.newArrayListWithCapacity(count);
+
+        if (compiledPattern.hasSequence()) {
+            for (Long sequenceNumber : getSequenceNumbers(compiledPattern.getSequenceName(), count)) {
+                numbers.add(compiledPattern.format(now, sequenceNumber));
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                numbers.add(compiledPattern.format(now, null));
+            }
+        }
+
+        return numbers;
+    }
+
+    public void invalidate(Entity numberPattern) {
+        if (Objects.nonNull(numberPattern) && Objects.nonNull(numberPattern.getId())) {
+            Integer tenantId = MultiTenantUtil.getCurrentTenantId();
+
+            compiledPatterns.keySet().removeIf(key -> tenantId.equals(key.get(0)) && numberPattern.getId().equals(key.get(1)));
+        }
+    }
+
+    public void releaseReservedNumbers(Entity numberPattern) {
+        invalidate(numberPattern);
+
+        reservedSequenceNumbers.remove(Arrays.asList(MultiTenantUtil.getCurrentTenantId(),
+                CompiledNumberPattern.getSequenceName(numberPattern)));
+    }
+
+    private CompiledNumberPattern getCompiledPattern(Entity numberPattern) {
+        if (Objects.isNull(numberPattern.getId())) {
+            return CompiledNumberPattern.compile(numberPattern);
         }
+
+        return compiledPatterns.computeIfAbsent(
+                Arrays.asList(MultiTenantUtil.getCurrentTenantId(), numberPattern.getId(),
+                        numberPattern.getStringField(NumberPatternFields.PATTERN)),
+                key -> CompiledNumberPattern.compile(numberPattern));
     }
 
-    private long getSequenceNumber(Entity numberPattern) {
-        return jdbcTemplate.queryForObject(
-                "select nextval('number_pattern_" + numberPattern.getStringField(NumberPatternFields.NUMBER) + "_seq')",
-                Collections.emptyMap(), Long.class);
+    private List<Long> getSequenceNumbers(String sequenceName, int count) {
+        Deque<Long> reserved = reservedSequenceNumbers.computeIfAbsent(
+                Arrays.asList(MultiTenantUtil.getCurrentTenantId(), sequenceName), key -> new ArrayDeque<>());
+
+        synchronized (reserved) {
+            if (reserved.size() < count) {
+                reserved.addAll(getNextValues(sequenceName, Math.max(count - reserved.size(), sequenceBlockSize)));
+            }
+
+            List<Long> sequenceNumbers = Lists.newArrayListWithCapacity(count);
+
+            for (int i = 0; i < count; i++) {
+                sequenceNumbers.add(reserved.poll());
+            }
+
+            return sequenceNumbers;
+        }
+    }
+
+    private List<Long> getNextValues(String sequenceName, int count) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("sequenceName", sequenceName);
+        params.put("count", count);
+
+        return jdbcTemplate.queryForList(L_NEXT_VALUES, params, Long.class);
     }
 }
@@ -0,0 +1,160 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.joda.time.DateTime;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+
+/**
+ * Working time of one calendar week: work ranges of all shifts clipped to the week, sorted and merged, with prefix sums of
+ * working milliseconds, so that the date after given working time can be found by binary search.
+ */
+public class ShiftCalendarWeek {
+
+    private final long[] starts;
+
+    private final long[] ends;
+
+    private final long[] workingMillis;
+
+    public ShiftCalendarWeek(final Collection<DateTimeRange> ranges, final DateTime weekStart, final DateTime weekEnd) {
+        List<long[]> intervals = Lists.newArrayList();
+
+        for (DateTimeRange range : ranges) {
+            long start = Math.max(range.getFrom().getMillis(), weekStart.getMillis());
+            long end = Math.min(range.getTo().getMillis(), weekEnd.getMillis());
+
+            if (start < end) {
+                intervals.add(new long[] { start, end });
+            }
+        }
+
+        intervals.sort(Comparator.comparingLong(interval -> interval[0]));
+
+        long[] mergedStarts = new long[intervals.size()];
+        long[] mergedEnds = new long[intervals.size()];
+
+        int size = 0;
+
+        for (long[] interval : intervals) {
+            if ((size > 0) && (interval[0] <= mergedEnds[size - 1])) {
+                mergedEnds[size - 1] = Math.max(mergedEnds[size - 1], interval[1]);
+            } else {
+                mergedStarts[size] = interval[0];
+                mergedEnds[size] = interval[1];
+
+                size++;
+            }
+        }
+
+        starts = Arrays.copyOf(mergedStarts, size);
+        ends = Arrays.copyOf(mergedEnds, size);
+        workingMillis = new long[size + 1];
+
+        for (int i = 0; i < size; i++) {
+            workingMillis[i + 1] = workingMillis[i] + ends[i] - starts[i];
+        }
+    }
+
+    public long getWorkingMillisAfter(final long date) {
+        return workingMillis[starts.length] - getWorkingMillisBefore(date);
+    }
+
+    /**
+     * Returns the date at which given working time, counted from date, ends within this week, or empty if the week has less
+     * working time left.
+     */
+    public Optional<Date> findDateAfter(final long date, final long millis) {
+        long target = getWorkingMillisBefore(date) + millis;
+
+        if ((starts.length == 0) || (target > workingMillis[starts.length])) {
+            return Optional.empty();
+        }
+
+        int low = 0;
+        int high = starts.length - 1;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (workingMillis[middle + 1] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return Optional.of(new Date(starts[low] + target - workingMillis[low]));
+    }
+
+    /**
+     * Returns the first working moment of this week at or after date, or empty if no working time is left in the week.
+     */
+    public Optional<Date> findWorkingDateFrom(final long date) {
+        int index = findFirstEndingAfter(date);
+
+        if (index == starts.length) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new Date(Math.max(date, starts[index])));
+    }
+
+    private long getWorkingMillisBefore(final long date) {
+        int index = findFirstEndingAfter(date);
+
+        if (index == starts.length) {
+            return workingMillis[index];
+        }
+
+        return workingMillis[index] + Math.max(0L, date - starts[index]);
+    }
+
+    private int findFirstEndingAfter(final long date) {
+        int low = 0;
+        int high = ends.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (ends[middle] <= date) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalTime;
+
+/**
+ * Weekly working hours of a shift, parsed once and expanded to {@link WorkingIntervals} for any date range without
+ * intermediate date objects. Hours ending before they start (e.g. 22:00-06:00) end on the next day.
+ */
+public class ShiftPattern {
+
+    private static final long L_DAY = DateTimeConstants.MILLIS_PER_DAY;
+
+    private static final long L_MINUTE = DateTimeConstants.MILLIS_PER_MINUTE;
+
+    private final String signature;
+
+    private final int[][] minutesPerDay = new int[DateTimeConstants.DAYS_PER_WEEK][];
+
+    /**
+     * @param signature
+     *            source of the pattern, used to tell whether it is still up to date
+     * @param hoursPerDay
+     *            working hours from Monday to Sunday, as returned by convertDayHoursToInt
+     */
+    public ShiftPattern(final String signature, final List<LocalTime[][]> hoursPerDay) {
+        this.signature = signature;
+
+        for (int day = 0; day < DateTimeConstants.DAYS_PER_WEEK; day++) {
+            LocalTime[][] dayHours = hoursPerDay.get(day);
+            int[][] ranges = new int[dayHours.length][];
+
+            for (int i = 0; i < dayHours.length; i++) {
+                int from = dayHours[i][0].getMillisOfDay() / DateTimeConstants.MILLIS_PER_MINUTE;
+                int to = dayHours[i][1].getMillisOfDay() / DateTimeConstants.MILLIS_PER_MINUTE;
+
+                if (to < from) {
+                    to += DateTimeConstants.MINUTES_PER_DAY;
+                }
+
+                ranges[i] = new int[] { from, to };
+            }
+
+            Arrays.sort(ranges, Comparator.comparingInt(range -> range[0]));
+
+            minutesPerDay[day] = new int[ranges.length * 2];
+
+            for (int i = 0; i < ranges.length; i++) {
+                minutesPerDay[day][2 * i] = ranges[i][0];
+                minutesPerDay[day][2 * i + 1] = ranges[i][1];
+            }
+        }
+    }
+
+    public boolean isCompiledFrom(final String signature) {
+        return this.signature.equals(signature);
+    }
+
+    public long[] getWorkingIntervals(final long dateFrom, final long dateTo, final DateTimeZone zone) {
+        if (dateFrom >= dateTo) {
+            return WorkingIntervals.empty();
+        }
+
+        // hours of the previous day may end within the range
+        long firstDay = Math.floorDiv(zone.convertUTCToLocal(dateFrom), L_DAY) - 1;
+        long lastDay = Math.floorDiv(zone.convertUTCToLocal(dateTo), L_DAY);
+
+        WorkingIntervals.Builder builder = new WorkingIntervals.Builder((int) (lastDay - firstDay + 1) * 2);
+
+        for (long day = firstDay; day <= lastDay; day++) {
+            // epoch day 0 was a Thursday
+            int[] minutes = minutesPerDay[(int) Math.floorMod(day + 3, DateTimeConstants.DAYS_PER_WEEK)];
+
+            for (int i = 0; i < minutes.length; i += 2) {
+                long from = zone.convertLocalToUTC(day * L_DAY + minutes[i] * L_MINUTE, false);
+                long to = zone.convertLocalToUTC(day * L_DAY + minutes[i + 1] * L_MINUTE, false);
+
+                builder.add(Math.max(from, dateFrom), Math.min(to, dateTo));
+            }
+        }
+
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Arrays;
+
+/**
+ * Operations on working intervals stored as sorted, disjoint pairs of epoch milliseconds: { from0, to0, from1, to1, ... }.
+ */
+public final class WorkingIntervals {
+
+    private static final long[] EMPTY = new long[0];
+
+    private WorkingIntervals() {
+
+    }
+
+    public static long[] empty() {
+        return EMPTY;
+    }
+
+    public static int size(final long[] intervals) {
+        return intervals.length / 2;
+    }
+
+    public static long[] union(final long[] first, final long[] second) {
+        if (first.length == 0) {
+            return second;
+        }
+
+        if (second.length == 0) {
+            return first;
+        }
+
+        Builder builder = new Builder(first.length + second.length);
+
+        int i = 0;
+        int j = 0;
+
+        while ((i < first.length) || (j < second.length)) {
+            if ((j >= second.length) || ((i < first.length) && (first[i] <= second[j]))) {
+                builder.add(first[i], first[i + 1]);
+
+                i += 2;
+            } else {
+                builder.add(second[j], second[j + 1]);
+
+                j += 2;
+            }
+        }
+
+        return builder.build();
+    }
+
+    public static long[] subtract(final long[] intervals, final long from, final long to) {
+        if ((intervals.length == 0) || (from >= to)) {
+            return intervals;
+        }
+
+        Builder builder = new Builder(intervals.length + 2);
+
+        for (int i = 0; i < intervals.length; i += 2) {
+            if ((intervals[i + 1] <= from) || (intervals[i] >= to)) {
+                builder.add(intervals[i], intervals[i + 1]);
+            } else {
+                builder.add(intervals[i], from);
+                builder.add(to, intervals[i + 1]);
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Collects intervals added in ascending order of their starts, merging overlapping and adjoining ones and skipping empty
+     * ones.
+     */
+    public static class Builder {
+
+        private long[] intervals;
+
+        private int length;
+
+        public Builder(final int capacity) {
+            intervals = new long[Math.max(capacity, 2)];
+        }
+
+        public void add(final long from, final long to) {
+            if (from >= to) {
+                return;
+            }
+
+            if ((length > 0) && (from <= intervals[length - 1])) {
+                intervals[length - 1] = Math.max(intervals[length - 1], to);
+
+                return;
+            }
+
+            if (length == intervals.length) {
+                intervals = Arrays.copyOf(intervals, length * 2);
+            }
+
+            intervals[length++] = from;
+            intervals[length++] = to;
+        }
+
+        public long[] build() {
+            return (length == 0) ? EMPTY : Arrays.copyOf(intervals, length);
+        }
+
+    }
+
+}
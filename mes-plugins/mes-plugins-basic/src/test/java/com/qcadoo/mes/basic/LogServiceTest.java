@@ -0,0 +1,360 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.LogLevel;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.security.constants.QcadooSecurityConstants;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class LogServiceTest {
+
+    private static final Long L_USER_ID = 1L;
+
+    private static final Long L_BOT_USER_ID = 7L;
+
+    private static final int L_TENANT_ID = 3;
+
+    private LogService logService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinition userDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private Entity botUser;
+
+    private List<Map<String, Object>> writtenLogs;
+
+    private volatile int currentTenantId;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        currentTenantId = L_TENANT_ID;
+
+        logService = new LogService() {
+
+            @Override
+            int getCurrentTenantId() {
+                return currentTenantId;
+            }
+
+        };
+
+        ReflectionTestUtils.setField(logService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(logService, "multiTenantService", multiTenantService);
+        ReflectionTestUtils.setField(logService, "securityService", securityService);
+        ReflectionTestUtils.setField(logService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(logService, "asyncEnabled", true);
+        ReflectionTestUtils.setField(logService, "bufferSize", 100);
+        ReflectionTestUtils.setField(logService, "batchSize", 10);
+
+        writtenLogs = Collections.synchronizedList(Lists.newArrayList());
+
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            Map<String, Object>[] params = (Map<String, Object>[]) invocation.getArguments()[1];
+
+            Collections.addAll(writtenLogs, params);
+
+            return new int[params.length];
+        }).when(jdbcTemplate).batchUpdate(anyString(), any(Map[].class));
+
+        doAnswer(invocation -> {
+            ((MultiTenantCallback) invocation.getArguments()[1]).invoke();
+
+            return null;
+        }).when(multiTenantService).doInMultiTenantContext(anyInt(), any(MultiTenantCallback.class));
+
+        given(securityService.getCurrentUserId()).willReturn(L_USER_ID);
+
+        given(dataDefinitionService.get(QcadooSecurityConstants.PLUGIN_IDENTIFIER, QcadooSecurityConstants.MODEL_USER))
+                .willReturn(userDD);
+        given(userDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.uniqueResult()).willReturn(botUser);
+        given(botUser.getId()).willReturn(L_BOT_USER_ID);
+    }
+
+    @After
+    public final void destroy() {
+        logService.destroy();
+    }
+
+    @Test
+    public final void shouldWriteLogsInBackground() {
+        // given
+        logService.init();
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            logService.add(LogService.Builder.activity("productionTracking", "accepted").withItem1(String.valueOf(i)));
+        }
+
+        // then
+        verify(multiTenantService, timeout(1000).atLeastOnce()).doInMultiTenantContext(eq(L_TENANT_ID),
+                any(MultiTenantCallback.class));
+
+        logService.destroy();
+
+        assertEquals(3, writtenLogs.size());
+        assertEquals(L_USER_ID, writtenLogs.get(0).get("userId"));
+        assertEquals(LogLevel.ACTIVITY.getCode(), writtenLogs.get(0).get("logLevel"));
+        assertEquals("productionTracking", writtenLogs.get(0).get("logType"));
+    }
+
+    @Test
+    public final void shouldWriteLogInCallerThreadWhenBufferIsFull() throws InterruptedException {
+        // given
+        ReflectionTestUtils.setField(logService, "bufferSize", 1);
+
+        CountDownLatch writerStarted = new CountDownLatch(1);
+        CountDownLatch writerReleased = new CountDownLatch(1);
+
+        doAnswer(invocation -> {
+            writerStarted.countDown();
+            writerReleased.await();
+
+            ((MultiTenantCallback) invocation.getArguments()[1]).invoke();
+
+            return null;
+        }).when(multiTenantService).doInMultiTenantContext(anyInt(), any(MultiTenantCallback.class));
+
+        logService.init();
+
+        logService.add(LogService.Builder.info("productImport", "import").withItem1("first"));
+
+        writerStarted.await(1, TimeUnit.SECONDS);
+
+        logService.add(LogService.Builder.info("productImport", "import").withItem1("second"));
+
+        // when
+        logService.add(LogService.Builder.info("productImport", "import").withItem1("third"));
+
+        // then
+        assertEquals(1, writtenLogs.size());
+        assertEquals("third", writtenLogs.get(0).get("item1"));
+
+        writerReleased.countDown();
+
+        logService.destroy();
+
+        assertEquals(3, writtenLogs.size());
+    }
+
+    @Test
+    public final void shouldWriteLogsInTenantContextOfTheirCallers() {
+        // given
+        List<String> writtenItems = Collections.synchronizedList(Lists.newArrayList());
+
+        doAnswer(invocation -> {
+            int tenantId = (Integer) invocation.getArguments()[0];
+
+            writtenLogs.clear();
+
+            ((MultiTenantCallback) invocation.getArguments()[1]).invoke();
+
+            for (Map<String, Object> log : writtenLogs) {
+                writtenItems.add(tenantId + ":" + log.get("item1"));
+            }
+
+            return null;
+        }).when(multiTenantService).doInMultiTenantContext(anyInt(), any(MultiTenantCallback.class));
+
+        ReflectionTestUtils.setField(logService, "buffer", new ArrayBlockingQueue<Map<String, Object>>(10));
+        ReflectionTestUtils.setField(logService, "running", true);
+
+        // when
+        currentTenantId = 1;
+
+        logService.add(LogService.Builder.info("order", "changeState").withItem1("first"));
+
+        currentTenantId = 2;
+
+        logService.add(LogService.Builder.info("order", "changeState").withItem1("second"));
+
+        currentTenantId = 1;
+
+        logService.add(LogService.Builder.info("order", "changeState").withItem1("third"));
+
+        logService.flush();
+
+        // then
+        assertEquals(Lists.newArrayList("1:first", "1:third", "2:second"), writtenItems);
+    }
+
+    @Test
+    public final void shouldUseCachedBotUserWhenNoUserIsLoggedIn() {
+        // given
+        given(securityService.getCurrentUserId()).willThrow(new IllegalStateException());
+
+        logService.init();
+
+        // when
+        logService.add(LogService.Builder.error("document", "accept"));
+        logService.add(LogService.Builder.error("document", "accept"));
+
+        // then
+        logService.destroy();
+
+        verify(userDD, times(1)).find();
+
+        assertEquals(2, writtenLogs.size());
+        assertEquals(L_BOT_USER_ID, writtenLogs.get(0).get("userId"));
+        assertEquals(L_BOT_USER_ID, writtenLogs.get(1).get("userId"));
+    }
+
+    @Test
+    public final void shouldFindBotUserOfEachTenant() {
+        // given
+        given(securityService.getCurrentUserId()).willThrow(new IllegalStateException());
+
+        // when
+        currentTenantId = 1;
+
+        logService.add(LogService.Builder.error("document", "accept"));
+        logService.add(LogService.Builder.error("document", "accept"));
+
+        currentTenantId = 2;
+
+        logService.add(LogService.Builder.error("document", "accept"));
+
+        // then
+        verify(userDD, times(2)).find();
+
+        assertEquals(3, writtenLogs.size());
+    }
+
+    @Test
+    public final void shouldWriteLinesOneByOneWhenBatchFails() {
+        // given
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            Map<String, Object>[] params = (Map<String, Object>[]) invocation.getArguments()[1];
+
+            for (Map<String, Object> log : params) {
+                if ("bad".equals(log.get("item1"))) {
+                    throw new IllegalStateException();
+                }
+            }
+
+            Collections.addAll(writtenLogs, params);
+
+            return new int[params.length];
+        }).when(jdbcTemplate).batchUpdate(anyString(), any(Map[].class));
+
+        ReflectionTestUtils.setField(logService, "buffer", new ArrayBlockingQueue<Map<String, Object>>(10));
+        ReflectionTestUtils.setField(logService, "running", true);
+
+        logService.add(LogService.Builder.info("order", "changeState").withItem1("first"));
+        logService.add(LogService.Builder.info("order", "changeState").withItem1("bad"));
+        logService.add(LogService.Builder.info("order", "changeState").withItem1("third"));
+
+        // when
+        logService.flush();
+
+        // then
+        verify(jdbcTemplate, times(4)).batchUpdate(anyString(), any(Map[].class));
+
+        assertEquals(2, writtenLogs.size());
+        assertEquals("first", writtenLogs.get(0).get("item1"));
+        assertEquals("third", writtenLogs.get(1).get("item1"));
+    }
+
+    @Test
+    public final void shouldWriteLogsDirectlyWhenBufferIsDisabled() {
+        // given
+        ReflectionTestUtils.setField(logService, "asyncEnabled", false);
+
+        logService.init();
+
+        // when
+        logService.add(LogService.Builder.debug("order", "changeState"));
+
+        // then
+        assertEquals(1, writtenLogs.size());
+
+        verify(multiTenantService, never()).doInMultiTenantContext(anyInt(), any(MultiTenantCallback.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public final void shouldThrowExceptionWhenTypeIsMissing() {
+        // given
+        logService.init();
+
+        // when
+        logService.add(LogService.Builder.info(null, "import"));
+    }
+
+}
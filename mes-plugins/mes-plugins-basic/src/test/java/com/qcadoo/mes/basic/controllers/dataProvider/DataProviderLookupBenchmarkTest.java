@@ -0,0 +1,136 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.controllers.dataProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
+
+/**
+ * Measures product lookup latency on 500 000 generated products. Runs only against a database given with
+ * -Ddataprovider.benchmark.url (and .user, .password); the products are inserted in a transaction that is rolled back.
+ */
+public class DataProviderLookupBenchmarkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DataProviderLookupBenchmarkTest.class);
+
+    private static final int PRODUCTS = 500000;
+
+    private static final int WARM_UP = 5;
+
+    private static final int ITERATIONS = 50;
+
+    private DataProvider dataProvider;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Before
+    public void init() {
+        String url = System.getProperty("dataprovider.benchmark.url");
+
+        assumeNotNull(url);
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url,
+                System.getProperty("dataprovider.benchmark.user", "postgres"),
+                System.getProperty("dataprovider.benchmark.password", "postgres"));
+
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        dataProvider = new DataProvider();
+
+        ReflectionTestUtils.setField(dataProvider, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @Test
+    public void shouldLookUpProductsOnLargeCatalogue() {
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.update("INSERT INTO basic_product (number, name, active) "
+                    + "SELECT 'BM' || lpad(g::text, 7, '0'), 'Benchmark product ' || g, true "
+                    + "FROM generate_series(1, " + PRODUCTS + ") g", Collections.emptyMap());
+            jdbcTemplate.update("ANALYZE basic_product", Collections.emptyMap());
+
+            DataResponse exact = measure("BM0123456");
+            DataResponse narrow = measure("BM012345");
+            DataResponse broad = measure("BM01");
+            DataResponse missing = measure("QQQQQ");
+
+            assertEquals(1, exact.getEntities().size());
+            assertEquals(10, narrow.getEntities().size());
+            assertTrue(broad.getEntities().isEmpty());
+            assertTrue(broad.getNumberOfResults() > DataProvider.MAX_RESULTS);
+            assertEquals(0, missing.getNumberOfResults());
+
+            status.setRollbackOnly();
+
+            return null;
+        });
+    }
+
+    private DataResponse measure(final String query) {
+        DataResponse response = null;
+
+        for (int i = 0; i < WARM_UP; i++) {
+            response = dataProvider.getProductsResponseByQuery(query);
+        }
+
+        long total = 0;
+        long max = 0;
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+
+            response = dataProvider.getProductsResponseByQuery(query);
+
+            long elapsed = System.nanoTime() - start;
+
+            total += elapsed;
+            max = Math.max(max, elapsed);
+        }
+
+        LOG.info(String.format("lookup '%s': %d results, avg %.2f ms, max %.2f ms", query,
+                response.getNumberOfResults(), total / (double) ITERATIONS / TimeUnit.MILLISECONDS.toNanos(1),
+                max / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+
+        return response;
+    }
+
+}
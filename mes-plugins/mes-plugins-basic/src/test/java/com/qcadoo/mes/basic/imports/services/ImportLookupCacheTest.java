@@ -0,0 +1,152 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.qcadoo.model.api.Entity;
+
+public class ImportLookupCacheTest {
+
+    private static final String L_MODEL = "product";
+
+    private static final String L_NUMBER = "P-001";
+
+    private ImportLookupCache importLookupCache;
+
+    private AtomicInteger lookups;
+
+    @Before
+    public final void init() {
+        importLookupCache = new ImportLookupCache();
+        lookups = new AtomicInteger();
+    }
+
+    @After
+    public final void tearDown() {
+        importLookupCache.close();
+    }
+
+    @Test
+    public final void shouldQueryEveryTimeOutsideOfImport() {
+        // given
+        Entity product = mock(Entity.class);
+
+        // when
+        importLookupCache.find(countingLookup(product), L_MODEL, L_NUMBER);
+        Entity found = importLookupCache.find(countingLookup(product), L_MODEL, L_NUMBER);
+
+        // then
+        assertSame(product, found);
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public final void shouldQueryFoundEntityOncePerImport() {
+        // given
+        Entity product = mock(Entity.class);
+
+        importLookupCache.open();
+
+        // when
+        importLookupCache.find(countingLookup(product), L_MODEL, L_NUMBER);
+        Entity found = importLookupCache.find(countingLookup(product), L_MODEL, L_NUMBER);
+
+        // then
+        assertSame(product, found);
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public final void shouldQueryAgainWhenEntityWasNotFound() {
+        // given
+        Entity product = mock(Entity.class);
+
+        importLookupCache.open();
+
+        // when
+        Entity missing = importLookupCache.find(countingLookup(null), L_MODEL, L_NUMBER);
+        Entity found = importLookupCache.find(countingLookup(product), L_MODEL, L_NUMBER);
+
+        // then
+        assertNull(missing);
+        assertSame(product, found);
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public final void shouldKeepEntitiesOfDifferentModelsApart() {
+        // given
+        Entity product = mock(Entity.class);
+        Entity workstation = mock(Entity.class);
+
+        importLookupCache.open();
+
+        // when
+        Entity foundProduct = importLookupCache.find(countingLookup(product), L_MODEL, L_NUMBER);
+        Entity foundWorkstation = importLookupCache.find(countingLookup(workstation), "workstation", L_NUMBER);
+
+        // then
+        assertSame(product, foundProduct);
+        assertSame(workstation, foundWorkstation);
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public final void shouldForgetEntitiesWhenImportIsClosed() {
+        // given
+        Entity product = mock(Entity.class);
+
+        importLookupCache.open();
+        importLookupCache.find(countingLookup(product), L_MODEL, L_NUMBER);
+        importLookupCache.close();
+
+        importLookupCache.open();
+
+        // when
+        importLookupCache.find(countingLookup(product), L_MODEL, L_NUMBER);
+
+        // then
+        assertEquals(2, lookups.get());
+    }
+
+    private Supplier<Entity> countingLookup(final Entity entity) {
+        return () -> {
+            lookups.incrementAndGet();
+
+            return entity;
+        };
+    }
+
+}
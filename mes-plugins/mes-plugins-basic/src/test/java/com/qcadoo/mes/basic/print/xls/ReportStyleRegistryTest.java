@@ -0,0 +1,146 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.Test;
+
+public class ReportStyleRegistryTest {
+
+    private static final ReportStyle L_HEADER_STYLE = ReportStyle.DEFAULT.withFont(ReportFont.BOLD)
+            .withFillColor(IndexedColors.GREY_25_PERCENT.getIndex()).withBorderBottom(CellStyle.BORDER_MEDIUM);
+
+    private static final ReportStyle L_NUMBER_STYLE = ReportStyle.DEFAULT.withDataFormat("0.00###");
+
+    private static final int L_COLUMNS = 10;
+
+    @Test
+    public final void shouldReturnSameStyleForEqualAttributes() {
+        // given
+        ReportStyleRegistry styleRegistry = new ReportStyleRegistry(new HSSFWorkbook());
+
+        // when
+        CellStyle style = styleRegistry.getStyle(ReportStyle.DEFAULT.withAlignment(CellStyle.ALIGN_RIGHT)
+                .withFont(ReportFont.DEFAULT.withBoldweight(Font.BOLDWEIGHT_BOLD)));
+        CellStyle sameStyle = styleRegistry.getStyle(ReportStyle.DEFAULT.withFont(ReportFont.BOLD).withAlignment(
+                CellStyle.ALIGN_RIGHT));
+
+        // then
+        assertSame(style, sameStyle);
+    }
+
+    @Test
+    public final void shouldReturnDistinctStylesForDistinctAttributes() {
+        // given
+        ReportStyleRegistry styleRegistry = new ReportStyleRegistry(new HSSFWorkbook());
+
+        // when
+        CellStyle leftStyle = styleRegistry.getStyle(L_HEADER_STYLE.withAlignment(CellStyle.ALIGN_LEFT));
+        CellStyle rightStyle = styleRegistry.getStyle(L_HEADER_STYLE.withAlignment(CellStyle.ALIGN_RIGHT));
+
+        // then
+        assertNotSame(leftStyle, rightStyle);
+        assertEquals(CellStyle.ALIGN_LEFT, leftStyle.getAlignment());
+        assertEquals(CellStyle.ALIGN_RIGHT, rightStyle.getAlignment());
+        assertEquals(CellStyle.BORDER_MEDIUM, leftStyle.getBorderBottom());
+        assertEquals(CellStyle.SOLID_FOREGROUND, leftStyle.getFillPattern());
+        assertEquals(leftStyle.getFontIndex(), rightStyle.getFontIndex());
+    }
+
+    @Test
+    public final void shouldKeepNumberOfHssfStylesIndependentOfNumberOfRows() {
+        // given
+        Workbook smallWorkbook = new HSSFWorkbook();
+        Workbook largeWorkbook = new HSSFWorkbook();
+
+        // when
+        fillSheet(smallWorkbook, 10);
+        fillSheet(largeWorkbook, 1000);
+
+        // then
+        assertEquals(smallWorkbook.getNumCellStyles(), largeWorkbook.getNumCellStyles());
+        assertEquals(smallWorkbook.getNumberOfFonts(), largeWorkbook.getNumberOfFonts());
+    }
+
+    @Test
+    public final void shouldKeepNumberOfXssfStylesIndependentOfNumberOfRows() {
+        // given
+        SXSSFWorkbook smallWorkbook = new SXSSFWorkbook(100);
+        SXSSFWorkbook largeWorkbook = new SXSSFWorkbook(100);
+
+        try {
+            // when
+            fillSheet(smallWorkbook, 10);
+            fillSheet(largeWorkbook, 1000);
+
+            // then
+            assertEquals(smallWorkbook.getNumCellStyles(), largeWorkbook.getNumCellStyles());
+            assertEquals(smallWorkbook.getNumberOfFonts(), largeWorkbook.getNumberOfFonts());
+        } finally {
+            smallWorkbook.dispose();
+            largeWorkbook.dispose();
+        }
+    }
+
+    private void fillSheet(final Workbook workbook, final int rows) {
+        ReportStyleRegistry styleRegistry = new ReportStyleRegistry(workbook);
+
+        Sheet sheet = workbook.createSheet();
+
+        Row headerRow = sheet.createRow(0);
+
+        for (int column = 0; column < L_COLUMNS; column++) {
+            Cell cell = headerRow.createCell(column);
+
+            cell.setCellValue("header " + column);
+            cell.setCellStyle(styleRegistry.getStyle(L_HEADER_STYLE.withAlignment(column == 0 ? CellStyle.ALIGN_LEFT
+                    : CellStyle.ALIGN_RIGHT)));
+        }
+
+        for (int rowNumber = 1; rowNumber <= rows; rowNumber++) {
+            Row row = sheet.createRow(rowNumber);
+
+            for (int column = 0; column < L_COLUMNS; column++) {
+                Cell cell = row.createCell(column);
+
+                cell.setCellValue(rowNumber * column);
+                cell.setCellStyle(styleRegistry.getStyle(L_NUMBER_STYLE.withAlignment(CellStyle.ALIGN_RIGHT).withFont(
+                        rowNumber % 2 == 0 ? ReportFont.BOLD : ReportFont.DEFAULT)));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares heap retained while building a 60 000 rows report with the in-memory XLS workbook and with the streamed XLSX
+ * workbook used by {@link XlsxDocumentService}. Runs only with -Dxlsxreport.benchmark=true.
+ */
+public class XlsxDocumentServiceBenchmarkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(XlsxDocumentServiceBenchmarkTest.class);
+
+    private static final int ROWS = 60000;
+
+    private static final int COLUMNS = 10;
+
+    private static final int ROW_WINDOW = 100;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void init() {
+        assumeTrue(Boolean.getBoolean("xlsxreport.benchmark"));
+    }
+
+    @Test
+    public void shouldRetainLessHeapWhenStreamingRows() throws IOException {
+        long inMemory = measure("xls", new HSSFWorkbook());
+
+        SXSSFWorkbook streamedWorkbook = new SXSSFWorkbook(ROW_WINDOW);
+
+        long streamed;
+
+        try {
+            streamed = measure("xlsx", streamedWorkbook);
+        } finally {
+            streamedWorkbook.dispose();
+        }
+
+        assertTrue(streamed < inMemory);
+    }
+
+    private long measure(final String extension, final Workbook workbook) throws IOException {
+        long before = usedHeap();
+        long start = System.nanoTime();
+
+        CellStyle style = workbook.createCellStyle();
+        Sheet sheet = workbook.createSheet("benchmark");
+
+        for (int rowIndex = 0; rowIndex < ROWS; rowIndex++) {
+            Row row = sheet.createRow(rowIndex);
+
+            for (int column = 0; column < COLUMNS; column++) {
+                if (column % 2 == 0) {
+                    row.createCell(column).setCellValue(rowIndex * column);
+                } else {
+                    row.createCell(column).setCellValue("Row " + rowIndex + " column " + column);
+                }
+
+                row.getCell(column).setCellStyle(style);
+            }
+        }
+
+        long retained = usedHeap() - before;
+
+        File file = temporaryFolder.newFile("benchmark." + extension);
+
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            workbook.write(outputStream);
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        LOG.info(String.format("%s: %d rows, retained %.1f MB, %d ms, file %.1f MB", extension, ROWS,
+                retained / 1048576.0, TimeUnit.NANOSECONDS.toMillis(elapsed), file.length() / 1048576.0));
+
+        return retained;
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
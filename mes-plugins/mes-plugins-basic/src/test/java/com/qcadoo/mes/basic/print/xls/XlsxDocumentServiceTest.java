@@ -0,0 +1,207 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+
+public class XlsxDocumentServiceTest {
+
+    private static final int L_ROW_WINDOW = 100;
+
+    private static final int L_ROWS = 10000;
+
+    private static final String L_PLUGIN = "basic";
+
+    private static final String L_MODEL = "report";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition dataDefinition;
+
+    @Mock
+    private Entity report;
+
+    @Mock
+    private ViewDefinitionState view;
+
+    @Mock
+    private ComponentState state;
+
+    private RowsReport rowsReport;
+
+    private String fileName;
+
+    @Before
+    public final void init() throws IOException {
+        MockitoAnnotations.initMocks(this);
+
+        rowsReport = new RowsReport(L_ROWS);
+
+        ReflectionTestUtils.setField(rowsReport, "rowWindow", L_ROW_WINDOW);
+        ReflectionTestUtils.setField(rowsReport, "dataDefinitionService", dataDefinitionService);
+
+        fileName = new File(temporaryFolder.getRoot(), "report").getAbsolutePath();
+
+        given(report.getStringField(XlsxDocumentService.L_FILE_NAME)).willReturn(fileName);
+        given(dataDefinitionService.get(L_PLUGIN, L_MODEL)).willReturn(dataDefinition);
+        given(dataDefinition.get(1L)).willReturn(report);
+    }
+
+    @Test
+    public final void shouldKeepOnlyRowWindowInMemory() throws IOException {
+        // when
+        rowsReport.generateDocument(report, Locale.ENGLISH);
+
+        // then
+        assertTrue(rowsReport.headerFlushed);
+        assertTrue(rowsReport.rowsInMemory <= L_ROW_WINDOW);
+    }
+
+    @Test
+    public final void shouldWriteAllRowsToXlsxFile() throws IOException {
+        // when
+        rowsReport.generateDocument(report, Locale.ENGLISH);
+
+        // then
+        try (InputStream inputStream = new FileInputStream(fileName + ".xlsx")) {
+            Workbook workbook = new XSSFWorkbook(inputStream);
+            Sheet sheet = workbook.getSheetAt(0);
+
+            assertEquals("Rows", sheet.getSheetName());
+            assertEquals(L_ROWS, sheet.getLastRowNum());
+            assertEquals("Name", sheet.getRow(0).getCell(1).getStringCellValue());
+            assertEquals("Product " + L_ROWS, sheet.getRow(L_ROWS).getCell(1).getStringCellValue());
+            assertTrue(sheet.getColumnWidth(1) > sheet.getColumnWidth(2));
+        }
+    }
+
+    @Test
+    public final void shouldRedirectToGeneratedReport() {
+        // given
+        given(state.getFieldValue()).willReturn(1L);
+
+        // when
+        rowsReport.printGeneratedReport(view, state, L_PLUGIN, L_MODEL);
+
+        // then
+        verify(view).redirectTo("/basic/generatedXlsxReport/basic/report.xlsx?id=1", true, false);
+    }
+
+    @Test
+    public final void shouldNotRedirectIfReportWasNotGenerated() {
+        // given
+        given(state.getFieldValue()).willReturn(1L);
+        given(report.getStringField(XlsxDocumentService.L_FILE_NAME)).willReturn(null);
+
+        // when
+        rowsReport.printGeneratedReport(view, state, L_PLUGIN, L_MODEL);
+
+        // then
+        verify(state).addMessage("qcadooReport.errorMessage.documentsWasNotGenerated", MessageType.FAILURE);
+        verify(view, never()).redirectTo(anyString(), anyBoolean(), anyBoolean());
+    }
+
+    private static class RowsReport extends XlsxDocumentService {
+
+        private final int rows;
+
+        private boolean headerFlushed;
+
+        private int rowsInMemory;
+
+        RowsReport(final int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public String getReportTitle(final Locale locale) {
+            return "Rows";
+        }
+
+        @Override
+        protected void addHeader(final Sheet sheet, final Locale locale, final Entity entity) {
+            Row row = sheet.createRow(0);
+
+            row.createCell(0).setCellValue("Number");
+            row.createCell(1).setCellValue("Name");
+        }
+
+        @Override
+        protected void addSeries(final Sheet sheet, final Entity entity) {
+            for (int index = 1; index <= rows; index++) {
+                Row row = sheet.createRow(index);
+
+                row.createCell(0).setCellValue(index);
+                row.createCell(1).setCellValue("Product " + index);
+            }
+
+            autoSizeColumns(sheet, 0, 1);
+
+            headerFlushed = sheet.getRow(0) == null;
+
+            for (Row row : sheet) {
+                rowsInMemory++;
+            }
+        }
+
+    }
+
+}
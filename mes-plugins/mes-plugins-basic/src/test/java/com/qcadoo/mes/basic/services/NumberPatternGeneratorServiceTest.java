@@ -0,0 +1,251 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.time.DateFormatUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.constants.NumberPatternElement;
+import com.qcadoo.mes.basic.constants.NumberPatternElementFields;
+import com.qcadoo.mes.basic.constants.NumberPatternFields;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+
+public class NumberPatternGeneratorServiceTest {
+
+    private static final String L_SEQUENCE_NAME = "number_pattern_000001_seq";
+
+    private NumberPatternGeneratorService numberPatternGeneratorService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Entity numberPattern;
+
+    @Mock
+    private EntityList numberPatternElements;
+
+    private AtomicLong sequence;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        numberPatternGeneratorService = new NumberPatternGeneratorService();
+
+        ReflectionTestUtils.setField(numberPatternGeneratorService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(numberPatternGeneratorService, "sequenceBlockSize", 1);
+
+        sequence = new AtomicLong();
+
+        given(jdbcTemplate.queryForList(anyString(), anyMap(), eq(Long.class))).willAnswer(invocation -> {
+            Map<?, ?> params = (Map<?, ?>) invocation.getArguments()[1];
+
+            List<Long> values = Lists.newArrayList();
+
+            for (int i = 0; i < (Integer) params.get("count"); i++) {
+                values.add(sequence.incrementAndGet());
+            }
+
+            return values;
+        });
+
+        given(numberPattern.getId()).willReturn(1L);
+        given(numberPattern.getStringField(NumberPatternFields.NUMBER)).willReturn("000001");
+        given(numberPattern.getStringField(NumberPatternFields.PATTERN)).willReturn("RRRR/999-A");
+        given(numberPattern.getHasManyField(NumberPatternFields.NUMBER_PATTERN_ELEMENTS)).willReturn(numberPatternElements);
+
+        List<Entity> elements = Lists.newArrayList(mockElement(NumberPatternElement.RRRR, null),
+                mockElement(NumberPatternElement.XX, "/"), mockElement(NumberPatternElement.N999, null),
+                mockElement(NumberPatternElement.XX, "-A"));
+
+        given(numberPatternElements.iterator()).willAnswer(invocation -> elements.iterator());
+    }
+
+    private Entity mockElement(final NumberPatternElement numberPatternElement, final String value) {
+        Entity element = mock(Entity.class);
+
+        given(element.getStringField(NumberPatternElementFields.ELEMENT)).willReturn(numberPatternElement.getStringValue());
+        given(element.getStringField(NumberPatternElementFields.VALUE)).willReturn(value);
+
+        return element;
+    }
+
+    @Test
+    public final void shouldGenerateNumberFromPattern() {
+        // given
+        sequence.set(41);
+
+        // when
+        String number = numberPatternGeneratorService.generateNumber(numberPattern);
+
+        // then
+        assertEquals(DateFormatUtils.format(new Date(), "yyyy") + "/042-A", number);
+    }
+
+    @Test
+    public final void shouldNotPadSequenceNumbersLongerThanElement() {
+        // given
+        sequence.set(1233);
+
+        // when
+        String number = numberPatternGeneratorService.generateNumber(numberPattern);
+
+        // then
+        assertTrue(number.endsWith("/1234-A"));
+    }
+
+    @Test
+    public final void shouldCompilePatternOnce() {
+        // when
+        numberPatternGeneratorService.generateNumber(numberPattern);
+        numberPatternGeneratorService.generateNumbers(numberPattern, 5);
+
+        // then
+        verify(numberPattern, times(1)).getHasManyField(NumberPatternFields.NUMBER_PATTERN_ELEMENTS);
+    }
+
+    @Test
+    public final void shouldCompilePatternAgainAfterInvalidation() {
+        // given
+        numberPatternGeneratorService.generateNumber(numberPattern);
+
+        // when
+        numberPatternGeneratorService.invalidate(numberPattern);
+        numberPatternGeneratorService.generateNumber(numberPattern);
+
+        // then
+        verify(numberPattern, times(2)).getHasManyField(NumberPatternFields.NUMBER_PATTERN_ELEMENTS);
+    }
+
+    @Test
+    public final void shouldReserveSequenceNumbersOfBulkInOneQuery() {
+        // when
+        List<String> numbers = numberPatternGeneratorService.generateNumbers(numberPattern, 100);
+
+        // then
+        assertEquals(100, numbers.size());
+        assertEquals(100, Sets.newHashSet(numbers).size());
+
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), anyMap(), eq(Long.class));
+    }
+
+    @Test
+    public final void shouldReserveSequenceNumbersInBlocks() {
+        // given
+        ReflectionTestUtils.setField(numberPatternGeneratorService, "sequenceBlockSize", 10);
+
+        // when
+        for (int i = 0; i < 25; i++) {
+            numberPatternGeneratorService.generateNumber(numberPattern);
+        }
+
+        // then
+        verify(jdbcTemplate, times(3)).queryForList(anyString(), anyMap(), eq(Long.class));
+        assertEquals(30, sequence.get());
+    }
+
+    @Test
+    public final void shouldGenerateUniqueNumbersConcurrently() throws Exception {
+        // given
+        ReflectionTestUtils.setField(numberPatternGeneratorService, "sequenceBlockSize", 7);
+
+        int threads = 8;
+        int iterations = 250;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+
+        List<Callable<List<String>>> tasks = Lists.newArrayList();
+
+        for (int i = 0; i < threads; i++) {
+            final boolean bulk = i % 2 == 0;
+
+            tasks.add(() -> {
+                List<String> numbers = Lists.newArrayList();
+
+                for (int j = 0; j < iterations; j++) {
+                    if (bulk) {
+                        numbers.addAll(numberPatternGeneratorService.generateNumbers(numberPattern, 3));
+                    } else {
+                        numbers.add(numberPatternGeneratorService.generateNumber(numberPattern));
+                    }
+                }
+
+                return numbers;
+            });
+        }
+
+        // when
+        Set<String> numbers = Sets.newHashSet();
+
+        int generated = 0;
+
+        try {
+            for (Future<List<String>> future : executorService.invokeAll(tasks)) {
+                List<String> threadNumbers = future.get();
+
+                generated += threadNumbers.size();
+                numbers.addAll(threadNumbers);
+            }
+        } finally {
+            executorService.shutdown();
+            executorService.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        // then
+        assertEquals(threads / 2 * iterations * 3 + threads / 2 * iterations, generated);
+        assertEquals(generated, numbers.size());
+        assertTrue(sequence.get() >= generated);
+    }
+
+}
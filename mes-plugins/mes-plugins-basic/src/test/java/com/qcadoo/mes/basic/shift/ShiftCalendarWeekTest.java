@@ -0,0 +1,120 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+
+public class ShiftCalendarWeekTest {
+
+    private static final DateTime WEEK_START = new DateTime(2017, 3, 6, 0, 0);
+
+    private static final DateTime WEEK_END = WEEK_START.plusWeeks(1);
+
+    private static final long HOUR = 3600000L;
+
+    @Test
+    public final void shouldMergeOverlappingRangesAndClipThemToWeek() {
+        // given
+        List<DateTimeRange> ranges = Lists.newArrayList(range(0, 6, 14), range(0, 10, 22), range(-1, 22, 30), range(6, 22, 30));
+
+        // when
+        ShiftCalendarWeek week = new ShiftCalendarWeek(ranges, WEEK_START, WEEK_END);
+
+        // then
+        assertEquals((6 + 16 + 2) * HOUR, week.getWorkingMillisAfter(WEEK_START.getMillis()));
+        assertEquals(18 * HOUR, week.getWorkingMillisAfter(hour(0, 6)));
+        assertEquals(2 * HOUR, week.getWorkingMillisAfter(hour(1, 0)));
+        assertEquals(0L, week.getWorkingMillisAfter(WEEK_END.getMillis()));
+    }
+
+    @Test
+    public final void shouldFindDateAfterWorkingTime() {
+        // given
+        ShiftCalendarWeek week = new ShiftCalendarWeek(Lists.newArrayList(range(0, 6, 14), range(1, 6, 14), range(2, 6, 14)),
+                WEEK_START, WEEK_END);
+
+        // when
+        Optional<Date> fromStartOfShift = week.findDateAfter(hour(0, 6), 8 * HOUR);
+        Optional<Date> fromMiddleOfShift = week.findDateAfter(hour(0, 10), 6 * HOUR);
+        Optional<Date> fromBreak = week.findDateAfter(hour(1, 2), 9 * HOUR);
+        Optional<Date> tooLong = week.findDateAfter(hour(1, 10), 13 * HOUR);
+
+        // then
+        assertEquals(new Date(hour(0, 14)), fromStartOfShift.get());
+        assertEquals(new Date(hour(1, 8)), fromMiddleOfShift.get());
+        assertEquals(new Date(hour(2, 7)), fromBreak.get());
+        assertFalse(tooLong.isPresent());
+        assertEquals(12 * HOUR, week.getWorkingMillisAfter(hour(1, 10)));
+    }
+
+    @Test
+    public final void shouldFindNearestWorkingDate() {
+        // given
+        ShiftCalendarWeek week = new ShiftCalendarWeek(Lists.newArrayList(range(0, 6, 14), range(1, 6, 14)), WEEK_START,
+                WEEK_END);
+
+        // when
+        Optional<Date> withinShift = week.findWorkingDateFrom(hour(0, 10));
+        Optional<Date> atEndOfShift = week.findWorkingDateFrom(hour(0, 14));
+        Optional<Date> afterLastShift = week.findWorkingDateFrom(hour(1, 15));
+
+        // then
+        assertEquals(new Date(hour(0, 10)), withinShift.get());
+        assertEquals(new Date(hour(1, 6)), atEndOfShift.get());
+        assertFalse(afterLastShift.isPresent());
+    }
+
+    @Test
+    public final void shouldReturnEmptyForWeekWithoutWorkingTime() {
+        // given
+        ShiftCalendarWeek week = new ShiftCalendarWeek(Lists.newArrayList(), WEEK_START, WEEK_END);
+
+        // when
+        Optional<Date> dateTo = week.findDateAfter(WEEK_START.getMillis(), HOUR);
+
+        // then
+        assertFalse(dateTo.isPresent());
+        assertEquals(0L, week.getWorkingMillisAfter(WEEK_START.getMillis()));
+    }
+
+    private static DateTimeRange range(final int day, final int fromHour, final int toHour) {
+        return new DateTimeRange(new DateTime(hour(day, fromHour)), new DateTime(hour(day, toHour)));
+    }
+
+    private static long hour(final int day, final int hour) {
+        return WEEK_START.plusDays(day).getMillis() + hour * HOUR;
+    }
+
+}
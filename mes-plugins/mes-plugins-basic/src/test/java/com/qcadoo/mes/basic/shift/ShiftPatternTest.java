@@ -0,0 +1,117 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalTime;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ShiftPatternTest {
+
+    private static final DateTimeZone ZONE = DateTimeZone.forID("Europe/Warsaw");
+
+    // Monday
+    private static final DateTime DAY = new DateTime(2017, 3, 6, 0, 0, ZONE);
+
+    private static final LocalTime[][] NOT_WORKING = new LocalTime[][] {};
+
+    @Test
+    public final void shouldExpandDayHoursWithinRange() {
+        // given
+        ShiftPattern shiftPattern = new ShiftPattern("", week(hours(6, 14), hours(6, 14), NOT_WORKING, NOT_WORKING,
+                NOT_WORKING, NOT_WORKING, NOT_WORKING));
+
+        // when
+        long[] intervals = shiftPattern.getWorkingIntervals(at(0, 10), at(7, 12), ZONE);
+
+        // then
+        assertArrayEquals(new long[] { at(0, 10), at(0, 14), at(1, 6), at(1, 14), at(7, 6), at(7, 12) }, intervals);
+    }
+
+    @Test
+    public final void shouldEndNightHoursOnNextDayAndMergeThem() {
+        // given
+        LocalTime[][] nightAndMorning = new LocalTime[][] { { new LocalTime(22, 0), new LocalTime(6, 0) },
+                { new LocalTime(6, 0), new LocalTime(10, 0) } };
+        ShiftPattern shiftPattern = new ShiftPattern("", week(nightAndMorning, hours(6, 14), NOT_WORKING, NOT_WORKING,
+                NOT_WORKING, NOT_WORKING, nightAndMorning));
+
+        // when
+        long[] intervals = shiftPattern.getWorkingIntervals(at(0, 0), at(2, 0), ZONE);
+
+        // then
+        assertArrayEquals(new long[] { at(0, 0), at(0, 10), at(0, 22), at(1, 14) }, intervals);
+    }
+
+    @Test
+    public final void shouldKeepLocalHoursOnDaylightSavingTimeChange() {
+        // given
+        ShiftPattern shiftPattern = new ShiftPattern("", week(hours(6, 14), hours(6, 14), hours(6, 14), hours(6, 14),
+                hours(6, 14), hours(6, 14), hours(6, 14)));
+        DateTime sunday = new DateTime(2017, 3, 26, 0, 0, ZONE);
+
+        // when
+        long[] intervals = shiftPattern.getWorkingIntervals(sunday.getMillis(), sunday.plusDays(1).getMillis(), ZONE);
+
+        // then
+        assertArrayEquals(new long[] { sunday.withHourOfDay(6).getMillis(), sunday.withHourOfDay(14).getMillis() },
+                intervals);
+    }
+
+    @Test
+    public final void shouldUnionAndSubtractIntervals() {
+        // given
+        long[] intervals = new long[] { 10, 20, 30, 40 };
+
+        // when
+        long[] union = WorkingIntervals.union(intervals, new long[] { 15, 32, 50, 60 });
+        long[] difference = WorkingIntervals.subtract(union, 18, 55);
+
+        // then
+        assertArrayEquals(new long[] { 10, 40, 50, 60 }, union);
+        assertArrayEquals(new long[] { 10, 18, 55, 60 }, difference);
+        assertTrue(WorkingIntervals.subtract(intervals, 0, 100).length == 0);
+    }
+
+    private static List<LocalTime[][]> week(final LocalTime[][]... days) {
+        return Lists.newArrayList(days);
+    }
+
+    private static LocalTime[][] hours(final int from, final int to) {
+        return new LocalTime[][] { { new LocalTime(from, 0), new LocalTime(to, 0) } };
+    }
+
+    private static long at(final int day, final int hour) {
+        return DAY.plusDays(day).withHourOfDay(hour).getMillis();
+    }
+
+}
@@ -33,6 +33,7 @@ import com.qcadoo.mes.deliveries.states.constants.DeliveryStateChangeDescriber;
 import com.qcadoo.mes.deliveries.states.constants.DeliveryStateStringValues;
 import com.qcadoo.mes.deliveries.util.DeliveryPricesAndQuantities;
 import com.qcadoo.mes.materialFlow.constants.LocationType;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockLedgerService;
 import com.qcadoo.mes.states.service.StateChangeEntityBuilder;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
@@ -73,6 +74,9 @@ public class DeliveryHooks {
     @Autowired
     private ReservationService reservationService;
 
+    @Autowired
+    private ResourceStockLedgerService resourceStockLedgerService;
+
     public void onCreate(final DataDefinition deliveryDD, final Entity delivery) {
         setInitialState(delivery);
         setDeliveryAddressDefaultValue(delivery);
@@ -91,6 +95,46 @@ public class DeliveryHooks {
 
     public void onSave(final DataDefinition deliveryDD, final Entity delivery) {
         setStorageLocations(delivery);
+
+        registerResourceStockChange(deliveryDD, delivery);
+    }
+
+    private void registerResourceStockChange(final DataDefinition deliveryDD, final Entity delivery) {
+        if (Objects.isNull(delivery.getId())) {
+            return;
+        }
+
+        Entity oldDelivery = deliveryDD.get(delivery.getId());
+
+        boolean wasCounted = isOrderedQuantityCounted(oldDelivery);
+        boolean isCounted = isOrderedQuantityCounted(delivery);
+
+        Entity oldLocation = oldDelivery.getBelongsToField(LOCATION);
+        Entity location = delivery.getBelongsToField(LOCATION);
+
+        if (wasCounted == isCounted && Objects.equals(getId(oldLocation), getId(location))) {
+            return;
+        }
+
+        if (wasCounted) {
+            resourceStockLedgerService.subtractDeliveryOrderedQuantities(delivery.getId(), oldLocation);
+        }
+        if (isCounted) {
+            resourceStockLedgerService.addDeliveryOrderedQuantities(delivery.getId(), location);
+        }
+    }
+
+    private boolean isOrderedQuantityCounted(final Entity delivery) {
+        return resourceStockLedgerService.isOrderedQuantityCounted(delivery.getBooleanField(DeliveryFields.ACTIVE),
+                delivery.getStringField(STATE));
+    }
+
+    private Long getId(final Entity entity) {
+        if (Objects.isNull(entity)) {
+            return null;
+        }
+
+        return entity.getId();
     }
 
     private void setInitialState(final Entity delivery) {
@@ -43,6 +43,7 @@ import com.qcadoo.mes.deliveries.ReservationService;
 import com.qcadoo.mes.deliveries.constants.DeliveryFields;
 import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
 import com.qcadoo.mes.deliveries.constants.OrderedProductReservationFields;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockLedgerService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
@@ -71,6 +72,9 @@ public class OrderedProductHooks {
     @Autowired
     private BatchModelValidators batchModelValidators;
 
+    @Autowired
+    private ResourceStockLedgerService resourceStockLedgerService;
+
     public void onSave(final DataDefinition orderedProductDD, final Entity orderedProduct) {
         deliveriesService.calculatePricePerUnit(orderedProduct, OrderedProductFields.ORDERED_QUANTITY);
 
@@ -78,6 +82,33 @@ public class OrderedProductHooks {
         reservationService.deleteReservationsForOrderedProductIfChanged(orderedProduct);
 
         createBatch(orderedProduct);
+
+        registerResourceStockChange(orderedProductDD, orderedProduct);
+    }
+
+    private void registerResourceStockChange(final DataDefinition orderedProductDD, final Entity orderedProduct) {
+        if (Objects.nonNull(orderedProduct.getId())) {
+            addOrderedQuantity(orderedProductDD.get(orderedProduct.getId()), true);
+        }
+
+        addOrderedQuantity(orderedProduct, false);
+    }
+
+    private void addOrderedQuantity(final Entity orderedProduct, final boolean subtract) {
+        Entity delivery = orderedProduct.getBelongsToField(OrderedProductFields.DELIVERY);
+        BigDecimal orderedQuantity = orderedProduct.getDecimalField(OrderedProductFields.ORDERED_QUANTITY);
+
+        if (Objects.nonNull(delivery)
+                && Objects.nonNull(orderedQuantity)
+                && resourceStockLedgerService.isOrderedQuantityCounted(delivery.getBooleanField(DeliveryFields.ACTIVE),
+                        delivery.getStringField(DeliveryFields.STATE))) {
+            if (subtract) {
+                orderedQuantity = orderedQuantity.negate();
+            }
+
+            resourceStockLedgerService.addOrderedQuantity(delivery.getBelongsToField(DeliveryFields.LOCATION),
+                    orderedProduct.getBelongsToField(OrderedProductFields.PRODUCT), orderedQuantity);
+        }
     }
 
     private void calculateReservationQuantities(final Entity orderedProduct) {
@@ -122,6 +153,7 @@ public class OrderedProductHooks {
 
     public void onDelete(final DataDefinition orderedProductDD, final Entity orderedProduct) {
         nullifyDeliveredProducts(orderedProduct);
+        addOrderedQuantity(orderedProduct, true);
     }
 
     private void nullifyDeliveredProducts(final Entity orderedProduct) {
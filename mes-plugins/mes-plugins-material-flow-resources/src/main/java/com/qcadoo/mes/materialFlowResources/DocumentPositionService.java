@@ -67,21 +67,34 @@ public class DocumentPositionService {
         List<ColumnProperties> columns = (List<ColumnProperties>) config.get("columns");
         List<String> attrCloumns = columns.stream().filter(c -> c.isChecked() && c.isForAttribute()).map(c -> c.getName())
                 .collect(Collectors.toList());
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put("documentId", documentId);
+
         StringBuilder attrQueryPart = new StringBuilder();
+        StringBuilder attrJoinPart = new StringBuilder();
         if (!attrCloumns.isEmpty()) {
-            attrCloumns.forEach(ac -> {
-                attrQueryPart.append(" , ");
-                attrQueryPart.append("(SELECT string_agg(positionattributevalue.value, ', ') ");
-                attrQueryPart.append("FROM materialflowresources_positionattributevalue positionattributevalue ");
-                attrQueryPart.append("LEFT JOIN basic_attribute att ON att.id = positionattributevalue.attribute_id ");
-                attrQueryPart.append("WHERE positionattributevalue.position_id = p.id AND att.number ='" + ac
-                        + "' group by att.number) as \"" + ac + "\" ");
-            });
-
+            attrJoinPart.append("	LEFT JOIN (SELECT positionattributevalue.position_id");
+            for (int i = 0; i < attrCloumns.size(); i++) {
+                String ac = attrCloumns.get(i);
+                attrQueryPart.append(" , attrs.\"" + ac + "\" ");
+                attrJoinPart.append(", string_agg(CASE WHEN att.number = :attribute" + i
+                        + " THEN positionattributevalue.value END, ', ') AS \"" + ac + "\"");
+                parameters.put("attribute" + i, ac);
+            }
+            attrJoinPart.append(" FROM materialflowresources_positionattributevalue positionattributevalue ");
+            attrJoinPart.append("JOIN basic_attribute att ON att.id = positionattributevalue.attribute_id ");
+            attrJoinPart.append("JOIN materialflowresources_position attrposition ");
+            attrJoinPart.append("ON attrposition.id = positionattributevalue.position_id ");
+            attrJoinPart.append("WHERE attrposition.document_id = :documentId AND att.number IN (:attributeNumbers) ");
+            attrJoinPart.append("GROUP BY positionattributevalue.position_id) attrs ON attrs.position_id = p.id\n");
+            parameters.put("attributeNumbers", attrCloumns);
         }
         String query = "SELECT %s FROM ( SELECT p.*, p.document_id AS document, product.number AS product, product.name AS productName, product.unit, additionalcode.code AS additionalcode, "
                 + "palletnumber.number AS palletnumber, location.number AS storagelocation, resource.number AS resource, batch.number as batch, batch.id as batchId, \n"
-                + "(coalesce(r1.resourcesCount,0) < 2 AND p.quantity >= coalesce(resource.quantity,0)) AS lastResource "
+                + "(" + palletHasAtMostOneResource("resource.palletnumber_id")
+                + " AND p.quantity >= coalesce(resource.quantity,0)) AS lastResource "
                 + attrQueryPart.toString()
                 + "	FROM materialflowresources_position p\n"
                 + "	LEFT JOIN basic_product product ON (p.product_id = product.id)\n"
@@ -89,13 +102,9 @@ public class DocumentPositionService {
                 + "	LEFT JOIN basic_palletnumber palletnumber ON (p.palletnumber_id = palletnumber.id)\n"
                 + "	LEFT JOIN materialflowresources_resource resource ON (p.resource_id = resource.id)\n"
                 + "	LEFT JOIN advancedgenealogy_batch batch ON (p.batch_id = batch.id)\n"
-                + " LEFT JOIN (SELECT palletnumber_id, count(id) as resourcesCount FROM materialflowresources_resource GROUP BY palletnumber_id) r1 ON r1.palletnumber_id = resource.palletnumber_id \n"
+                + attrJoinPart.toString()
                 + "	LEFT JOIN materialflowresources_storagelocation location ON (p.storagelocation_id = location.id) WHERE p.document_id = :documentId %s) q ";
 
-        Map<String, Object> parameters = Maps.newHashMap();
-
-        parameters.put("documentId", documentId);
-
         query += lookupUtils.addQueryWhereForObject(position);
         parameters.putAll(lookupUtils.getParametersForObject(position));
 
@@ -455,6 +464,12 @@ public class DocumentPositionService {
         return units;
     }
 
+    // counts at most two resources of the pallet, using the palletnumber_id index
+    private String palletHasAtMostOneResource(final String palletNumberIdColumn) {
+        return "(SELECT count(*) FROM (SELECT 1 FROM materialflowresources_resource palletresource "
+                + "WHERE palletresource.palletnumber_id = " + palletNumberIdColumn + " LIMIT 2) palletresources) < 2";
+    }
+
     private boolean isGridReadOnly(final Long documentId) {
         String query = "SELECT state FROM materialflowresources_document WHERE id = :id";
         String stateString = jdbcTemplate.queryForObject(query, Collections.singletonMap("id", documentId), String.class);
@@ -632,9 +647,8 @@ public class DocumentPositionService {
 
     public ResourceDTO getResourceByNumber(final String resource) {
         String query = "SELECT r.*, batch.number as batch, sl.number AS storageLocation, pn.number AS palletNumber, ac.code AS additionalCode, \n"
-                + "coalesce(r1.resourcesCount,0) < 2 AS lastResource "
+                + palletHasAtMostOneResource("r.palletnumber_id") + " AS lastResource "
                 + "FROM materialflowresources_resource r \n"
-                + "LEFT JOIN (SELECT palletnumber_id, count(id) as resourcesCount FROM materialflowresources_resource GROUP BY palletnumber_id) r1 ON r1.palletnumber_id = r.palletnumber_id \n"
                 + "LEFT JOIN materialflowresources_storagelocation sl ON sl.id = storageLocation_id \n"
                 + "LEFT JOIN basic_additionalcode ac ON ac.id = additionalcode_id \n"
                 + "LEFT JOIN advancedgenealogy_batch batch ON batch.id = r.batch_id \n"
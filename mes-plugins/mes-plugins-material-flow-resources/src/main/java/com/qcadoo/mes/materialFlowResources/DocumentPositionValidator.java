@@ -14,6 +14,7 @@ import com.qcadoo.mes.basic.controllers.dataProvider.dto.AbstractDTO;
 import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockService;
 import com.qcadoo.model.api.BigDecimalUtils;
 
 import java.math.BigDecimal;
@@ -48,6 +49,9 @@ public class DocumentPositionValidator {
     @Autowired
     private DocumentPositionService documentPositionService;
 
+    @Autowired
+    private ResourceStockService resourceStockService;
+
     public Map<String, Object> validateAndTryMapBeforeCreate(final DocumentPositionDTO documentPositionDTO) {
         return validateAndMap(documentPositionDTO);
     }
@@ -250,24 +254,16 @@ public class DocumentPositionValidator {
             }
         }
 
-        String query = "SELECT availableQuantity FROM materialflowresources_resourcestockdto "
-                + "WHERE product_id = :product_id AND location_id = :location_id";
+        BigDecimal availableQuantity = resourceStockService
+                .getResourceStockAvailableQuantities(Collections.singleton(productId), locationId)
+                .getOrDefault(productId, BigDecimal.ZERO);
 
         Map<String, Object> params = Maps.newHashMap();
 
         params.put("product_id", productId);
-        params.put("location_id", locationId);
         params.put("position_id", positionId);
         params.put("resource_id", resourceId);
 
-        BigDecimal availableQuantity = jdbcTemplate.query(query, params, new ResultSetExtractor<BigDecimal>() {
-
-            @Override
-            public BigDecimal extractData(ResultSet rs) throws SQLException, DataAccessException {
-                return rs.next() ? rs.getBigDecimal("availableQuantity") : BigDecimal.ZERO;
-            }
-        });
-
         if (positionId != null && positionId != 0L) {
             String queryForOld = "SELECT product_id, quantity, resource_id FROM materialflowresources_position WHERE id = :position_id";
 
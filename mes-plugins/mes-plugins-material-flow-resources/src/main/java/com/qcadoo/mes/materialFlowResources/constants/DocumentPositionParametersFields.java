@@ -45,6 +45,8 @@ public final class DocumentPositionParametersFields {
 
     public static final String PRESENT_TOTAL_AMOUNT_AND_REST = "presentTotalAmountAndRest";
 
+    public static final String RESOURCE_STOCK_FROM_VIEW = "resourceStockFromView";
+
     public static final String SUGGEST_RESOURCE = "suggestResource";
 
 }
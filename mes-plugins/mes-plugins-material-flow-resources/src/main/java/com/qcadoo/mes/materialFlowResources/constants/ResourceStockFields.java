@@ -12,4 +12,12 @@ public final class ResourceStockFields {
     public static final String QUANTITY = "quantity";
 
     public static final String AVAILABLE_QUANTITY = "availableQuantity";
+
+    public static final String QUANTITY_IN_ADDITIONAL_UNIT = "quantityInAdditionalUnit";
+
+    public static final String RESERVED_QUANTITY = "reservedQuantity";
+
+    public static final String ORDERED_QUANTITY = "orderedQuantity";
+
+    public static final String MINIMUM_STATE = "minimumState";
 }
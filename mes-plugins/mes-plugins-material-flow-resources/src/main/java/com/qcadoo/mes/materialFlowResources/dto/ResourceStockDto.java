@@ -5,10 +5,20 @@ import java.util.Objects;
 
 public class ResourceStockDto {
 
+    private Long productId;
+
     private BigDecimal quantity;
 
     private BigDecimal availableQuantity;
 
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
     public BigDecimal getQuantity() {
         return quantity;
     }
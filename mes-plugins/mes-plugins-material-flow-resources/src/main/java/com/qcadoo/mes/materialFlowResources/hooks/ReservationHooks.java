@@ -7,6 +7,7 @@ import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.materialFlowResources.constants.ReservationFields;
 import com.qcadoo.mes.materialFlowResources.service.ResourceReservationsService;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockLedgerService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 
@@ -16,6 +17,9 @@ public class ReservationHooks {
     @Autowired
     private ResourceReservationsService resourceReservationsService;
 
+    @Autowired
+    private ResourceStockLedgerService resourceStockLedgerService;
+
     public void onSave(DataDefinition reservationDD, Entity reservation) {
         Entity newResource = reservation.getBelongsToField(ReservationFields.RESOURCE);
         Entity oldResource = null;
@@ -27,6 +31,9 @@ public class ReservationHooks {
             oldQuantity = oldReservation.getDecimalField(ReservationFields.QUANTITY);
             oldResource = oldReservation.getBelongsToField(ReservationFields.RESOURCE);
         }
+
+        resourceStockLedgerService.registerReservationChange(oldReservation, reservation);
+
         BigDecimal quantityToAdd = newQuantity.subtract(oldQuantity);
 
         if (oldResource != null && newResource != null) {
@@ -43,6 +50,10 @@ public class ReservationHooks {
         }
     }
 
+    public void onDelete(DataDefinition reservationDD, Entity reservation) {
+        resourceStockLedgerService.registerReservationChange(reservation, null);
+    }
+
     public void onCopy(DataDefinition reservationDD, Entity reservation) {
         reservation.setField(ReservationFields.RESOURCE, null);
     }
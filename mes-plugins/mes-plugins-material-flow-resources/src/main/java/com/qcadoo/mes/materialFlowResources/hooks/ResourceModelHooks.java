@@ -24,6 +24,7 @@
 package com.qcadoo.mes.materialFlowResources.hooks;
 
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockLedgerService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import org.apache.commons.lang3.StringUtils;
@@ -43,6 +44,9 @@ public class ResourceModelHooks {
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ResourceStockLedgerService resourceStockLedgerService;
+
     public void onSave(final DataDefinition resourceDD, final Entity resource) {
         if (StringUtils.isEmpty(resource.getStringField(ResourceFields.NUMBER))) {
             Date time = resource.getDateField(ResourceFields.TIME);
@@ -60,6 +64,22 @@ public class ResourceModelHooks {
 
             resource.setField(ResourceFields.NUMBER, number);
         }
+
+        registerResourceStockChange(resourceDD, resource);
+    }
+
+    public void onDelete(final DataDefinition resourceDD, final Entity resource) {
+        resourceStockLedgerService.registerResourceChange(resource, null);
+    }
+
+    private void registerResourceStockChange(final DataDefinition resourceDD, final Entity resource) {
+        Entity oldResource = null;
+
+        if (Objects.nonNull(resource.getId())) {
+            oldResource = resourceDD.get(resource.getId());
+        }
+
+        resourceStockLedgerService.registerResourceChange(oldResource, resource);
     }
 
     public void onCreate(final DataDefinition resourceDD, final Entity resource) {
@@ -28,6 +28,7 @@ import com.qcadoo.mes.advancedGenealogy.constants.BatchFields;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
+import com.qcadoo.mes.basic.imports.services.ImportLookupCache;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -48,16 +49,21 @@ public class BatchCellParser implements CellParser {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ImportLookupCache importLookupCache;
+
     @Override
     public void parse(final String cellValue, final String dependentCellValue, final CellErrorsAccessor errorsAccessor,
             final Consumer<Object> valueConsumer) {
-        Entity product = getProduct(dependentCellValue);
+        Entity product = importLookupCache.find(() -> getProduct(dependentCellValue), BasicConstants.MODEL_PRODUCT,
+                dependentCellValue);
         if (Objects.isNull(product)) {
             errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
             return;
         }
 
-        Entity batch = getBatch(cellValue, product);
+        Entity batch = importLookupCache.find(() -> getBatch(cellValue, product), AdvancedGenealogyConstants.MODEL_BATCH,
+                product.getId(), cellValue);
 
         if (Objects.isNull(batch)) {
             Entity newBatch = create(cellValue, product);
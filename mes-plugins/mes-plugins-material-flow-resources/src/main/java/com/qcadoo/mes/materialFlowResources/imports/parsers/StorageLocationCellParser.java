@@ -25,6 +25,7 @@ package com.qcadoo.mes.materialFlowResources.imports.parsers;
 
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
+import com.qcadoo.mes.basic.imports.services.ImportLookupCache;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.StorageLocationFields;
 import com.qcadoo.model.api.DataDefinition;
@@ -46,9 +47,13 @@ public class StorageLocationCellParser implements CellParser {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ImportLookupCache importLookupCache;
+
     @Override
     public void parse(final String cellValue, final String dependentCellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer) {
-        Entity storageLocation = getStorageLocationByNumber(cellValue);
+        Entity storageLocation = importLookupCache.find(() -> getStorageLocationByNumber(cellValue),
+                MaterialFlowResourcesConstants.MODEL_STORAGE_LOCATION, cellValue);
 
         if (Objects.isNull(storageLocation)) {
             errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
@@ -10,8 +10,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
-import com.lowagie.text.DocumentException;
-import com.lowagie.text.PageSize;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PalletBalanceFields;
 import com.qcadoo.mes.materialFlowResources.palletBalance.PalletBalanceReportHelper;
@@ -19,7 +17,6 @@ import com.qcadoo.mes.materialFlowResources.palletBalance.PalletBalanceXlsServic
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.file.FileService;
-import com.qcadoo.report.api.ReportService;
 import com.qcadoo.security.api.UserService;
 import com.qcadoo.security.constants.UserFields;
 import com.qcadoo.view.api.ComponentState;
@@ -37,9 +34,6 @@ public class PalletBalanceDetailsListeners {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
-    @Autowired
-    private ReportService reportService;
-
     @Autowired
     private UserService userService;
 
@@ -47,8 +41,8 @@ public class PalletBalanceDetailsListeners {
     private PalletBalanceReportHelper palletBalanceReportHelper;
 
     public void printPalletBalance(final ViewDefinitionState viewDefinitionState, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(viewDefinitionState, state, new String[] { args[0],
-                MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_PALLET_BALANCE });
+        palletBalanceXlsService.printGeneratedReport(viewDefinitionState, state,
+                MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_PALLET_BALANCE);
     }
 
     @Transactional
@@ -87,8 +81,6 @@ public class PalletBalanceDetailsListeners {
                 state.addMessage("materialFlowResource.palletBalance.report.generatedMessage", ComponentState.MessageType.SUCCESS);
             } catch (IOException e) {
                 throw new IllegalStateException(e.getMessage(), e);
-            } catch (DocumentException e) {
-                throw new IllegalStateException(e.getMessage(), e);
             }
         }
     }
@@ -101,12 +93,12 @@ public class PalletBalanceDetailsListeners {
         report.getDataDefinition().save(report);
     }
 
-    private void generateReport(final Entity palletBalance, final Locale locale) throws IOException, DocumentException {
+    private void generateReport(final Entity palletBalance, final Locale locale) throws IOException {
 
         Entity palletBalanceWithFilename = fileService.updateReportFileName(palletBalance, PalletBalanceFields.DATE_TO,
                 "materialFlowResource.palletBalance.report.fileName");
         try {
-            palletBalanceXlsService.generateDocument(palletBalanceWithFilename, locale, PageSize.A3);
+            palletBalanceXlsService.generateDocument(palletBalanceWithFilename, locale);
 
         } catch (IOException e) {
             throw new IllegalStateException("Problem with saving pallet report");
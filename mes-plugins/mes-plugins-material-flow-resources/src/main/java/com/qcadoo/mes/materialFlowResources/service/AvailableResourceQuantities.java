@@ -0,0 +1,188 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Available resource quantities of one warehouse, aggregated by product, additional code, batch and conversion.
+ * <p>
+ * Built from a single grouped query and then used to answer every position of a document without further database access.
+ */
+public class AvailableResourceQuantities {
+
+    public static final String QUERY = "SELECT r.product_id AS productId, r.additionalcode_id AS additionalCodeId, "
+            + "r.batch_id AS batchId, r.conversion AS conversion, SUM(r.availablequantity) AS availableQuantity "
+            + "FROM materialflowresources_resource r "
+            + "WHERE r.location_id = :locationId AND r.product_id IN (:productIds) AND r.availablequantity > 0 "
+            + "GROUP BY r.product_id, r.additionalcode_id, r.batch_id, r.conversion";
+
+    private final Map<Long, List<Group>> groupsByProduct = Maps.newHashMap();
+
+    public AvailableResourceQuantities(final Collection<Group> groups) {
+        for (Group group : groups) {
+            groupsByProduct.computeIfAbsent(group.getProductId(), productId -> Lists.newArrayList()).add(group);
+        }
+    }
+
+    public BigDecimal getAvailableQuantity(final Long productId, final Long batchId, final BigDecimal conversion) {
+        BigDecimal availableQuantity = BigDecimal.ZERO;
+
+        if (Objects.isNull(conversion)) {
+            return availableQuantity;
+        }
+
+        for (Group group : groupsByProduct.getOrDefault(productId, Collections.emptyList())) {
+            if (Objects.nonNull(batchId) && !batchId.equals(group.getBatchId())) {
+                continue;
+            }
+
+            if (Objects.isNull(group.getConversion()) || group.getConversion().compareTo(conversion) != 0) {
+                continue;
+            }
+
+            availableQuantity = availableQuantity.add(group.getAvailableQuantity());
+        }
+
+        return availableQuantity;
+    }
+
+    /**
+     * Returns quantities in the same shape as the per-position search criteria did: one value per position, each accumulated
+     * with the values already present for its product.
+     * <p>
+     * The additional code of a position does not narrow the result - resources with the matching code and resources with
+     * any other (or no) code are both counted - so all additional code groups of a product are summed.
+     */
+    public Multimap<Long, BigDecimal> getQuantitiesForPositions(final Multimap<Entity, Entity> productsAndPositions) {
+        Multimap<Long, BigDecimal> result = ArrayListMultimap.create();
+
+        for (Map.Entry<Entity, Entity> productAndPosition : productsAndPositions.entries()) {
+            Entity product = productAndPosition.getKey();
+            Entity position = productAndPosition.getValue();
+            Entity batch = position.getBelongsToField(PositionFields.BATCH);
+
+            BigDecimal conversion = BigDecimal.ONE;
+
+            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+                conversion = position.getDecimalField(PositionFields.CONVERSION);
+            }
+
+            BigDecimal quantity = getAvailableQuantity(product.getId(), Objects.isNull(batch) ? null : batch.getId(),
+                    conversion);
+
+            if (result.containsKey(product.getId())) {
+                BigDecimal currentQuantity = result.get(product.getId()).stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+
+                result.put(product.getId(), quantity.add(currentQuantity));
+            } else {
+                result.put(product.getId(), quantity);
+            }
+        }
+
+        return result;
+    }
+
+    public static class Group {
+
+        private Long productId;
+
+        private Long additionalCodeId;
+
+        private Long batchId;
+
+        private BigDecimal conversion;
+
+        private BigDecimal availableQuantity;
+
+        public Group() {
+        }
+
+        public Group(final Long productId, final Long additionalCodeId, final Long batchId, final BigDecimal conversion,
+                final BigDecimal availableQuantity) {
+            this.productId = productId;
+            this.additionalCodeId = additionalCodeId;
+            this.batchId = batchId;
+            this.conversion = conversion;
+            this.availableQuantity = availableQuantity;
+        }
+
+        public Long getProductId() {
+            return productId;
+        }
+
+        public void setProductId(final Long productId) {
+            this.productId = productId;
+        }
+
+        public Long getAdditionalCodeId() {
+            return additionalCodeId;
+        }
+
+        public void setAdditionalCodeId(final Long additionalCodeId) {
+            this.additionalCodeId = additionalCodeId;
+        }
+
+        public Long getBatchId() {
+            return batchId;
+        }
+
+        public void setBatchId(final Long batchId) {
+            this.batchId = batchId;
+        }
+
+        public BigDecimal getConversion() {
+            return conversion;
+        }
+
+        public void setConversion(final BigDecimal conversion) {
+            this.conversion = conversion;
+        }
+
+        public BigDecimal getAvailableQuantity() {
+            return availableQuantity;
+        }
+
+        public void setAvailableQuantity(final BigDecimal availableQuantity) {
+            this.availableQuantity = availableQuantity;
+        }
+
+    }
+
+}
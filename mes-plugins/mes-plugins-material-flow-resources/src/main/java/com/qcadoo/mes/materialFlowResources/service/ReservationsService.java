@@ -43,6 +43,9 @@ public class ReservationsService {
     @Autowired
     private MultiTenantService multiTenantService;
 
+    @Autowired
+    private ResourceStockLedgerService resourceStockLedgerService;
+
     private final static String L_QUANTITY = "quantity";
 
     public void cleanReservationsTrigger() {
@@ -87,6 +90,7 @@ public class ReservationsService {
 
         jdbcTemplate.update(query, params);
         resourceReservationsService.updateResourceQuantites(params, BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)));
+        resourceStockLedgerService.addPositionReservations(toId(params.get("id")));
     }
 
     /**
@@ -162,7 +166,9 @@ public class ReservationsService {
                     + "location_id = (SELECT locationfrom_id FROM materialflowresources_document WHERE id=:document_id), "
                     + "product_id = :product_id, quantity = :quantity, resource_id = :resource_id WHERE position_id = :id";
 
+            resourceStockLedgerService.subtractPositionReservations(toId(params.get("id")));
             jdbcTemplate.update(query, params);
+            resourceStockLedgerService.addPositionReservations(toId(params.get("id")));
 
             if (oldResourceId != null && newResourceId != null) {
                 if (oldResourceId.compareTo(newResourceId) != 0) {
@@ -233,11 +239,20 @@ public class ReservationsService {
             return;
         }
         String query = "DELETE FROM materialflowresources_reservation WHERE position_id = :id";
+        resourceStockLedgerService.subtractPositionReservations(toId(params.get("id")));
         jdbcTemplate.update(query, params);
         resourceReservationsService.updateResourceQuantites(params,
                 BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)).negate());
     }
 
+    private Long toId(final Object id) {
+        if (id == null) {
+            return null;
+        }
+
+        return ((Number) id).longValue();
+    }
+
     /**
      * Deletes reservation for position and updates resource stock. Uses framework.
      *
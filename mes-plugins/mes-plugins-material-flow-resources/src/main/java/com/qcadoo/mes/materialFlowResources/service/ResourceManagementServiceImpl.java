@@ -25,6 +25,7 @@ package com.qcadoo.mes.materialFlowResources.service;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.qcadoo.commons.functional.Either;
 import com.qcadoo.mes.basic.CalculationQuantityService;
@@ -48,6 +49,8 @@ import org.hibernate.exception.LockAcquisitionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
@@ -57,6 +60,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class ResourceManagementServiceImpl implements ResourceManagementService {
@@ -90,6 +95,9 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private CalculationQuantityService calculationQuantityService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     @Override
     @Transactional
     public void createResources(final Entity document) {
@@ -284,81 +292,21 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
     public Multimap<Long, BigDecimal> getQuantitiesInWarehouse(final Entity warehouse,
             final Multimap<Entity, Entity> productsAndPositions) {
-        Multimap<Long, BigDecimal> result = ArrayListMultimap.create();
-
-        for (Map.Entry<Entity, Entity> productAndPosition : productsAndPositions.entries()) {
-            Entity additionalCode = productAndPosition.getValue().getBelongsToField(PositionFields.ADDITIONAL_CODE);
-            BigDecimal conversion = productAndPosition.getValue().getDecimalField(PositionFields.CONVERSION);
-            Entity batch = productAndPosition.getValue().getBelongsToField(PositionFields.BATCH);
-
-            List<Entity> resources = Lists.newArrayList();
-
-            if (additionalCode != null) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(),
-                        warehouse);
-
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
-
-                if(Objects.nonNull(batch)) {
-                    scb.add(SearchRestrictions.belongsTo(ResourceFields.BATCH, batch));
-                }
-                resources = scb.add(SearchRestrictions.belongsTo(ResourceFields.ADDITIONAL_CODE, additionalCode)).list()
-                        .getEntities();
-
-                scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(), warehouse);
-
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
-
-                if(Objects.nonNull(batch)) {
-                    scb.add(SearchRestrictions.belongsTo(ResourceFields.BATCH, batch));
-                }
-
-                resources.addAll(scb
-                        .add(SearchRestrictions.or(SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                                SearchRestrictions.ne("additionalCode.id", additionalCode.getId()))).list().getEntities());
-            }
-
-            if (resources.isEmpty()) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(),
-                        warehouse);
-
-                if(Objects.nonNull(batch)) {
-                    scb.add(SearchRestrictions.belongsTo(ResourceFields.BATCH, batch));
-                }
+        if (productsAndPositions.isEmpty()) {
+            return ArrayListMultimap.create();
+        }
 
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
+        Set<Long> productIds = productsAndPositions.keySet().stream().map(Entity::getId).collect(Collectors.toSet());
 
-                resources = scb.list().getEntities();
-            }
+        Map<String, Object> params = Maps.newHashMap();
 
-            if (result.containsKey(productAndPosition.getKey().getId())) {
-                BigDecimal currentQuantity = result.get(productAndPosition.getKey().getId()).stream()
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
+        params.put("locationId", warehouse.getId());
+        params.put("productIds", productIds);
 
-                result.put(productAndPosition.getKey().getId(),
-                        (resources.stream().map(res -> res.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).reduce(
-                                BigDecimal.ZERO, BigDecimal::add)).add(currentQuantity));
-            } else {
-                result.put(
-                        productAndPosition.getKey().getId(),
-                        resources.stream().map(res -> res.getDecimalField(ResourceFields.AVAILABLE_QUANTITY))
-                                .reduce(BigDecimal.ZERO, BigDecimal::add));
-            }
-        }
+        List<AvailableResourceQuantities.Group> groups = jdbcTemplate.query(AvailableResourceQuantities.QUERY, params,
+                BeanPropertyRowMapper.newInstance(AvailableResourceQuantities.Group.class));
 
-        return result;
+        return new AvailableResourceQuantities(groups).getQuantitiesForPositions(productsAndPositions);
     }
 
     private Multimap<Entity, Entity> getProductsAndPositionsFromDocument(final Entity document) {
@@ -0,0 +1,175 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentPositionParametersFields;
+import com.qcadoo.mes.materialFlowResources.constants.ParameterFieldsMFR;
+import com.qcadoo.mes.materialFlowResources.constants.ReservationFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps quantities stored in materialflowresources_resourcestock up to date.
+ * <p>
+ * Write paths of resources, reservations, deliveries and minimal states pass the difference between the old and the new
+ * values of the saved entity. Differences are added to the stock rows in the transaction of the write, so stock checks made
+ * later in the same transaction, e.g. for the next position of a document, already take them into account. The nightly
+ * reconciliation repairs anything that was changed outside of these paths.
+ */
+@Service
+public class ResourceStockLedgerService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceStockLedgerService.class);
+
+    private static final Set<String> L_ORDERED_STATES = Sets.newHashSet("01draft", "02prepared", "03duringCorrection",
+            "05approved");
+
+    @Autowired
+    private ResourceStockLedgerUpdater resourceStockLedgerUpdater;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    public boolean isLedgerEnabled() {
+        Entity documentPositionParameters = parameterService.getParameter().getBelongsToField(
+                ParameterFieldsMFR.DOCUMENT_POSITION_PARAMETERS);
+
+        return Objects.isNull(documentPositionParameters)
+                || !documentPositionParameters.getBooleanField(DocumentPositionParametersFields.RESOURCE_STOCK_FROM_VIEW);
+    }
+
+    public boolean isOrderedQuantityCounted(final boolean active, final String state) {
+        return active && L_ORDERED_STATES.contains(state);
+    }
+
+    public void createResourceStock(final Entity location, final Entity product) {
+        resourceStockLedgerUpdater.createResourceStock(getId(location), getId(product));
+    }
+
+    public void registerResourceChange(final Entity oldResource, final Entity newResource) {
+        if (Objects.nonNull(oldResource)) {
+            resourceStockLedgerUpdater.addQuantities(getId(oldResource.getBelongsToField(ResourceFields.LOCATION)),
+                    getId(oldResource.getBelongsToField(ResourceFields.PRODUCT)),
+                    negate(oldResource.getDecimalField(ResourceFields.QUANTITY)),
+                    negate(oldResource.getDecimalField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT)));
+        }
+        if (Objects.nonNull(newResource)) {
+            resourceStockLedgerUpdater.addQuantities(getId(newResource.getBelongsToField(ResourceFields.LOCATION)),
+                    getId(newResource.getBelongsToField(ResourceFields.PRODUCT)),
+                    newResource.getDecimalField(ResourceFields.QUANTITY),
+                    newResource.getDecimalField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT));
+        }
+    }
+
+    public void registerReservationChange(final Entity oldReservation, final Entity newReservation) {
+        if (Objects.nonNull(oldReservation)) {
+            resourceStockLedgerUpdater.addReservedQuantity(getId(oldReservation.getBelongsToField(ReservationFields.LOCATION)),
+                    getId(oldReservation.getBelongsToField(ReservationFields.PRODUCT)),
+                    negate(oldReservation.getDecimalField(ReservationFields.QUANTITY)));
+        }
+        if (Objects.nonNull(newReservation)) {
+            resourceStockLedgerUpdater.addReservedQuantity(getId(newReservation.getBelongsToField(ReservationFields.LOCATION)),
+                    getId(newReservation.getBelongsToField(ReservationFields.PRODUCT)),
+                    newReservation.getDecimalField(ReservationFields.QUANTITY));
+        }
+    }
+
+    public void addPositionReservations(final Long positionId) {
+        resourceStockLedgerUpdater.addPositionReservations(positionId, 1);
+    }
+
+    public void subtractPositionReservations(final Long positionId) {
+        resourceStockLedgerUpdater.addPositionReservations(positionId, -1);
+    }
+
+    public void addOrderedQuantity(final Entity location, final Entity product, final BigDecimal quantity) {
+        resourceStockLedgerUpdater.addOrderedQuantity(getId(location), getId(product), quantity);
+    }
+
+    public void addDeliveryOrderedQuantities(final Long deliveryId, final Entity location) {
+        resourceStockLedgerUpdater.addDeliveryOrderedQuantities(deliveryId, getId(location), 1);
+    }
+
+    public void subtractDeliveryOrderedQuantities(final Long deliveryId, final Entity location) {
+        resourceStockLedgerUpdater.addDeliveryOrderedQuantities(deliveryId, getId(location), -1);
+    }
+
+    public void addMinimumState(final Entity location, final Entity product, final BigDecimal quantity) {
+        resourceStockLedgerUpdater.addMinimumState(getId(location), getId(product), quantity);
+    }
+
+    public void reconcileTrigger() {
+        multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                reconcile();
+            }
+
+        });
+    }
+
+    public int reconcile() {
+        int driftedRows = resourceStockLedgerUpdater.reconcile();
+
+        if (driftedRows > 0) {
+            LOG.warn("Resource stock ledger reconciled, rows corrected: " + driftedRows);
+        }
+
+        return driftedRows;
+    }
+
+    private Long getId(final Entity entity) {
+        if (Objects.isNull(entity)) {
+            return null;
+        }
+
+        return entity.getId();
+    }
+
+    private BigDecimal negate(final BigDecimal value) {
+        if (Objects.isNull(value)) {
+            return null;
+        }
+
+        return value.negate();
+    }
+
+}
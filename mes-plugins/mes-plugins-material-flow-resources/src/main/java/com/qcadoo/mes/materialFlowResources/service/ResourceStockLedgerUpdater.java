@@ -0,0 +1,211 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Applies changes to stored quantities of materialflowresources_resourcestock rows. Changes are applied as deltas in the
+ * transaction of the caller, so the updated rows stay locked until it ends and later reads of that transaction already see
+ * them. New rows are calculated in the same way as the materialflowresources_resourcestockdto view.
+ */
+@Service
+public class ResourceStockLedgerUpdater {
+
+    private static final String L_QUANTITY = "quantity";
+
+    private static final String L_QUANTITY_IN_ADDITIONAL_UNIT = "quantityinadditionalunit";
+
+    private static final String L_RESERVED_QUANTITY = "reservedquantity";
+
+    private static final String L_ORDERED_QUANTITY = "orderedquantity";
+
+    private static final String L_MINIMUM_STATE = "minimumstate";
+
+    private static final String L_ADD_POSITION_RESERVATIONS = "UPDATE materialflowresources_resourcestock rs "
+            + "SET reservedquantity = COALESCE(rs.reservedquantity, 0) + :sign * res.quantity "
+            + "FROM (SELECT location_id, product_id, SUM(quantity) AS quantity FROM materialflowresources_reservation "
+            + "WHERE position_id = :positionId GROUP BY location_id, product_id) res "
+            + "WHERE rs.location_id = res.location_id AND rs.product_id = res.product_id";
+
+    private static final String L_ADD_DELIVERY_ORDERED_QUANTITIES = "UPDATE materialflowresources_resourcestock rs "
+            + "SET orderedquantity = COALESCE(rs.orderedquantity, 0) + :sign * dop.quantity "
+            + "FROM (SELECT product_id, SUM(orderedquantity) AS quantity FROM deliveries_orderedproduct "
+            + "WHERE delivery_id = :deliveryId GROUP BY product_id) dop "
+            + "WHERE rs.location_id = :locationId AND rs.product_id = dop.product_id";
+
+    private static final String L_LOCK = "SELECT pg_advisory_xact_lock(hashtext('materialflowresources_resourcestock'), "
+            + "hashtext(CAST(:locationId AS text) || '_' || CAST(:productId AS text)))";
+
+    private static final String L_CREATE = "INSERT INTO materialflowresources_resourcestock "
+            + "(location_id, product_id, quantity, quantityinadditionalunit, reservedquantity, orderedquantity, minimumstate) "
+            + "SELECT :locationId, :productId, "
+            + "COALESCE((SELECT SUM(r.quantity) FROM materialflowresources_resource r "
+            + "WHERE r.product_id = :productId AND r.location_id = :locationId), 0), "
+            + "COALESCE((SELECT SUM(r.quantityinadditionalunit) FROM materialflowresources_resource r "
+            + "WHERE r.product_id = :productId AND r.location_id = :locationId), 0), "
+            + "COALESCE((SELECT SUM(res.quantity) FROM materialflowresources_reservation res "
+            + "WHERE res.product_id = :productId AND res.location_id = :locationId), 0), "
+            + "COALESCE((SELECT SUM(dop.orderedquantity) FROM deliveries_orderedproduct dop "
+            + "JOIN deliveries_delivery dd ON dop.delivery_id = dd.id "
+            + "WHERE dd.active = true AND dd.state IN ('01draft', '02prepared', '03duringCorrection', '05approved') "
+            + "AND dop.product_id = :productId AND dd.location_id = :locationId), 0), "
+            + "COALESCE((SELECT SUM(ms.minimumstate) FROM warehouseminimalstate_warehouseminimumstate ms "
+            + "WHERE ms.product_id = :productId AND ms.location_id = :locationId), 0) "
+            + "WHERE NOT EXISTS (SELECT 1 FROM materialflowresources_resourcestock "
+            + "WHERE location_id = :locationId AND product_id = :productId)";
+
+    private static final String L_RECONCILE = "UPDATE materialflowresources_resourcestock rs "
+            + "SET quantity = v.quantity, quantityinadditionalunit = v.quantityinadditionalunit, "
+            + "reservedquantity = v.reservedquantity, orderedquantity = v.orderedquantity, minimumstate = v.minimumstate "
+            + "FROM materialflowresources_resourcestockdto v WHERE v.id = rs.id "
+            + "AND (rs.quantity, rs.quantityinadditionalunit, rs.reservedquantity, rs.orderedquantity, rs.minimumstate) "
+            + "IS DISTINCT FROM (v.quantity, v.quantityinadditionalunit, v.reservedquantity, v.orderedquantity, v.minimumstate)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void addQuantities(final Long locationId, final Long productId, final BigDecimal quantity,
+            final BigDecimal quantityInAdditionalUnit) {
+        Map<String, BigDecimal> deltas = Maps.newLinkedHashMap();
+
+        deltas.put(L_QUANTITY, quantity);
+        deltas.put(L_QUANTITY_IN_ADDITIONAL_UNIT, quantityInAdditionalUnit);
+
+        add(locationId, productId, deltas);
+    }
+
+    public void addReservedQuantity(final Long locationId, final Long productId, final BigDecimal quantity) {
+        add(locationId, productId, L_RESERVED_QUANTITY, quantity);
+    }
+
+    public void addOrderedQuantity(final Long locationId, final Long productId, final BigDecimal quantity) {
+        add(locationId, productId, L_ORDERED_QUANTITY, quantity);
+    }
+
+    public void addMinimumState(final Long locationId, final Long productId, final BigDecimal quantity) {
+        add(locationId, productId, L_MINIMUM_STATE, quantity);
+    }
+
+    public void addPositionReservations(final Long positionId, final int sign) {
+        if (Objects.isNull(positionId)) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("positionId", positionId);
+        params.put("sign", sign);
+
+        jdbcTemplate.update(L_ADD_POSITION_RESERVATIONS, params);
+    }
+
+    public void addDeliveryOrderedQuantities(final Long deliveryId, final Long locationId, final int sign) {
+        if (Objects.isNull(deliveryId) || Objects.isNull(locationId)) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("deliveryId", deliveryId);
+        params.put("locationId", locationId);
+        params.put("sign", sign);
+
+        jdbcTemplate.update(L_ADD_DELIVERY_ORDERED_QUANTITIES, params);
+    }
+
+    public void createResourceStock(final Long locationId, final Long productId) {
+        if (Objects.isNull(locationId) || Objects.isNull(productId)) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("locationId", locationId);
+        params.put("productId", productId);
+
+        jdbcTemplate.queryForList(L_LOCK, params);
+        jdbcTemplate.update(L_CREATE, params);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int reconcile() {
+        return jdbcTemplate.update(L_RECONCILE, Maps.newHashMap());
+    }
+
+    private void add(final Long locationId, final Long productId, final String column, final BigDecimal delta) {
+        Map<String, BigDecimal> deltas = Maps.newHashMap();
+
+        deltas.put(column, delta);
+
+        add(locationId, productId, deltas);
+    }
+
+    private void add(final Long locationId, final Long productId, final Map<String, BigDecimal> deltas) {
+        if (Objects.isNull(locationId) || Objects.isNull(productId)) {
+            return;
+        }
+
+        StringBuilder query = new StringBuilder("UPDATE materialflowresources_resourcestock SET ");
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        for (Map.Entry<String, BigDecimal> delta : deltas.entrySet()) {
+            if (Objects.isNull(delta.getValue()) || BigDecimal.ZERO.compareTo(delta.getValue()) == 0) {
+                continue;
+            }
+
+            if (!params.isEmpty()) {
+                query.append(", ");
+            }
+
+            query.append(delta.getKey()).append(" = COALESCE(").append(delta.getKey()).append(", 0) + :")
+                    .append(delta.getKey());
+
+            params.put(delta.getKey(), delta.getValue());
+        }
+
+        if (params.isEmpty()) {
+            return;
+        }
+
+        query.append(" WHERE location_id = :locationId AND product_id = :productId");
+
+        params.put("locationId", locationId);
+        params.put("productId", productId);
+
+        jdbcTemplate.update(query.toString(), params);
+    }
+
+}
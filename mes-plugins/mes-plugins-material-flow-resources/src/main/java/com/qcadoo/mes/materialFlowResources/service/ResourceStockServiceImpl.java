@@ -2,9 +2,11 @@ package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,37 +19,24 @@ import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.materialFlow.constants.LocationFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
-import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
-import com.qcadoo.mes.materialFlowResources.constants.ResourceStockFields;
 import com.qcadoo.mes.materialFlowResources.dto.ResourceStockDto;
-import com.qcadoo.model.api.DataDefinition;
-import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 
 @Service
 public class ResourceStockServiceImpl implements ResourceStockService {
 
     @Autowired
-    private DataDefinitionService dataDefinitionService;
+    private NamedParameterJdbcTemplate jdbcTemplate;
 
     @Autowired
-    private NamedParameterJdbcTemplate jdbcTemplate;
+    private ResourceStockLedgerService resourceStockLedgerService;
 
     @Override
     public void createResourceStock(final Entity resource) {
-        Entity product = resource.getBelongsToField(ResourceFields.PRODUCT);
-        Entity location = resource.getBelongsToField(ResourceFields.LOCATION);
-        Optional<ResourceStockDto> maybeStock = getResourceStockForProductAndLocation(product, location);
-        if (!maybeStock.isPresent()) {
-            DataDefinition resourceStockDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                    MaterialFlowResourcesConstants.MODEL_RESOURCE_STOCK);
-            Entity stock = resourceStockDD.create();
-            stock.setField(ResourceStockFields.LOCATION, location);
-            stock.setField(ResourceStockFields.PRODUCT, product);
-            resourceStockDD.save(stock);
-        }
+        resourceStockLedgerService.createResourceStock(resource.getBelongsToField(ResourceFields.LOCATION),
+                resource.getBelongsToField(ResourceFields.PRODUCT));
     }
 
     @Override
@@ -70,7 +59,96 @@ public class ResourceStockServiceImpl implements ResourceStockService {
         return quantity;
     }
 
+    @Override
+    public Map<Long, BigDecimal> getResourceStockAvailableQuantities(final Collection<Long> productIds, final Entity location) {
+        return getResourceStockAvailableQuantities(productIds, getLocationId(location));
+    }
+
+    @Override
+    public Map<Long, BigDecimal> getResourceStockAvailableQuantities(final Collection<Long> productIds, final Long locationId) {
+        Map<Long, BigDecimal> availableQuantities = Maps.newHashMap();
+        Map<Long, ResourceStockDto> resourceStocks = getResourceStocksForProductsAndLocation(productIds, locationId);
+        for (Long productId : productIds) {
+            ResourceStockDto resourceStock = resourceStocks.get(productId);
+            availableQuantities.put(productId, resourceStock == null ? BigDecimal.ZERO : resourceStock.getAvailableQuantity());
+        }
+        return availableQuantities;
+    }
+
+    @Override
+    public Map<Long, BigDecimal> getResourceStockQuantities(final Collection<Long> productIds, final Entity location) {
+        Map<Long, BigDecimal> quantities = Maps.newHashMap();
+        Map<Long, ResourceStockDto> resourceStocks = getResourceStocksForProductsAndLocation(productIds, getLocationId(location));
+        for (Long productId : productIds) {
+            ResourceStockDto resourceStock = resourceStocks.get(productId);
+            quantities.put(productId, resourceStock == null ? BigDecimal.ZERO : resourceStock.getQuantity());
+        }
+        return quantities;
+    }
+
+    private Long getLocationId(final Entity location) {
+        return location == null ? null : location.getId();
+    }
+
+    private Map<Long, ResourceStockDto> getResourceStocksForProductsAndLocation(final Collection<Long> productIds,
+            final Long locationId) {
+        Map<Long, ResourceStockDto> resourceStocks = Maps.newHashMap();
+        if (productIds.isEmpty() || locationId == null) {
+            return resourceStocks;
+        }
+
+        StringBuilder query = new StringBuilder();
+        Map<String, Object> params = Maps.newHashMap();
+        if (resourceStockLedgerService.isLedgerEnabled()) {
+            query.append("SELECT rs.product_id AS productId, COALESCE(rs.quantity, 0) AS quantity, ");
+            query.append("COALESCE(rs.quantity, 0) - COALESCE(rs.reservedquantity, 0) AS availableQuantity ");
+            query.append("FROM materialflowresources_resourcestock rs ");
+            query.append("WHERE rs.location_id = :locationId AND rs.product_id IN (:productIds)");
+
+            params.put("locationId", locationId);
+            params.put("productIds", productIds);
+        } else {
+            query.append("SELECT rs.product_id AS productId, rs.quantity, rs.availablequantity AS availableQuantity ");
+            query.append("FROM materialflowresources_resourcestockdto rs ");
+            query.append("WHERE rs.location_id = :locationId AND rs.product_id IN (:productIds)");
+
+            params.put("locationId", locationId.intValue());
+            params.put("productIds", productIds.stream().map(Long::intValue).collect(Collectors.toSet()));
+        }
+
+        List<ResourceStockDto> resourceStock = jdbcTemplate.query(query.toString(), params,
+                BeanPropertyRowMapper.newInstance(ResourceStockDto.class));
+        for (ResourceStockDto stock : resourceStock) {
+            resourceStocks.putIfAbsent(stock.getProductId(), stock);
+        }
+        return resourceStocks;
+    }
+
     private Optional<ResourceStockDto> getResourceStockForProductAndLocation(Entity product, Entity location) {
+        if (!resourceStockLedgerService.isLedgerEnabled()) {
+            return getResourceStockFromViewForProductAndLocation(product, location);
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT COALESCE(rs.quantity, 0) AS quantity, ");
+        query.append("COALESCE(rs.quantity, 0) - COALESCE(rs.reservedquantity, 0) AS availableQuantity ");
+        query.append("FROM materialflowresources_resourcestock rs ");
+        query.append("WHERE rs.location_id = :locationId AND rs.product_id = :productId ");
+        query.append("LIMIT 1");
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("locationId", location.getId());
+        params.put("productId", product.getId());
+        List<ResourceStockDto> resourceStock = jdbcTemplate.query(query.toString(), params,
+                BeanPropertyRowMapper.newInstance(ResourceStockDto.class));
+        if (resourceStock.isEmpty()) {
+            return Optional.empty();
+        } else {
+            return Optional.of(resourceStock.get(0));
+        }
+    }
+
+    private Optional<ResourceStockDto> getResourceStockFromViewForProductAndLocation(Entity product, Entity location) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT rs.* ");
         query.append("FROM materialflowresources_resourcestockdto rs ");
@@ -93,11 +171,14 @@ public class ResourceStockServiceImpl implements ResourceStockService {
     public void checkResourcesStock(Entity document) {
         List<String> invalidProducts = new ArrayList<>();
         List<Entity> mergedPositions = mergePositionsBeforeValidation(document.getHasManyField(DocumentFields.POSITIONS));
+        Set<Long> productIds = mergedPositions.stream()
+                .map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId()).collect(Collectors.toSet());
+        Map<Long, BigDecimal> availableQuantities = getResourceStockAvailableQuantities(productIds,
+                document.getBelongsToField(DocumentFields.LOCATION_FROM));
         for (Entity position : mergedPositions) {
-            if ((position.getDecimalField(PositionFields.QUANTITY)
-                    .compareTo(getResourceStockAvailableQuantity(position.getBelongsToField(PositionFields.PRODUCT),
-                            document.getBelongsToField(DocumentFields.LOCATION_FROM))) > 0)) {
-                Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            if (position.getDecimalField(PositionFields.QUANTITY).compareTo(
+                    availableQuantities.getOrDefault(product.getId(), BigDecimal.ZERO)) > 0) {
                 invalidProducts.add(product.getStringField(ProductFields.NUMBER));
             }
         }
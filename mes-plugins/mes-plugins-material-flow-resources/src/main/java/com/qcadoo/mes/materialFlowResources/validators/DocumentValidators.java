@@ -181,10 +181,16 @@ public class DocumentValidators {
 
         List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
         Map<Long, Entity> groupedPositions = groupProductsInPositions(positions);
+        Map<Long, BigDecimal> availableQuantities = positionValidators.getAvailableQuantities(positions, document);
+        Map<Long, BigDecimal> oldQuantities = positionValidators.getOldQuantities(positionDD, positions);
 
         for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
-            BigDecimal availableQuantity = positionValidators.getAvailableQuantity(positionDD, position, document);
+            BigDecimal availableQuantity = availableQuantities.getOrDefault(product.getId(), BigDecimal.ZERO);
+
+            if (position.getId() != null && oldQuantities.containsKey(position.getId())) {
+                availableQuantity = availableQuantity.add(oldQuantities.get(position.getId()));
+            }
 
             if (groupedPositions.get(product.getId()).getDecimalField(PositionFields.QUANTITY).compareTo(availableQuantity) > 0) {
                 document.addGlobalError("documentGrid.error.document.quantity.notEnoughResources", false);
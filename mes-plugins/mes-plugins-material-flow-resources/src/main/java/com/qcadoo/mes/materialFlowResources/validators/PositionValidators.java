@@ -23,16 +23,24 @@
  */
 package com.qcadoo.mes.materialFlowResources.validators;
 
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.materialFlowResources.constants.*;
 import com.qcadoo.mes.materialFlowResources.service.ReservationsService;
 import com.qcadoo.mes.materialFlowResources.service.ResourceStockService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class PositionValidators {
@@ -125,6 +133,31 @@ public class PositionValidators {
                 document.getBelongsToField(DocumentFields.LOCATION_FROM)).add(oldQuantity);
     }
 
+    public Map<Long, BigDecimal> getAvailableQuantities(final Collection<Entity> positions, final Entity document) {
+        Set<Long> productIds = positions.stream().map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId())
+                .collect(Collectors.toSet());
+
+        return resourceStockService.getResourceStockAvailableQuantities(productIds,
+                document.getBelongsToField(DocumentFields.LOCATION_FROM));
+    }
+
+    public Map<Long, BigDecimal> getOldQuantities(final DataDefinition positionDD, final Collection<Entity> positions) {
+        Map<Long, BigDecimal> oldQuantities = Maps.newHashMap();
+
+        List<Long> positionIds = positions.stream().map(Entity::getId).filter(Objects::nonNull).collect(Collectors.toList());
+
+        if (!positionIds.isEmpty()) {
+            List<Entity> positionsFromDB = positionDD.find().add(SearchRestrictions.in("id", positionIds)).list()
+                    .getEntities();
+
+            for (Entity positionFromDB : positionsFromDB) {
+                oldQuantities.put(positionFromDB.getId(), positionFromDB.getDecimalField(PositionFields.QUANTITY));
+            }
+        }
+
+        return oldQuantities;
+    }
+
     public boolean validateDates(final DataDefinition dataDefinition, final Entity position) {
         Date productionDate = position.getDateField(PositionFields.PRODUCTION_DATE);
         Date expirationDate = position.getDateField(PositionFields.EXPIRATION_DATE);
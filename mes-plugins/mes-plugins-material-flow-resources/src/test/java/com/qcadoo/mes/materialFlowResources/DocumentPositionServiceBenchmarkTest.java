@@ -0,0 +1,232 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.GridResponse;
+import com.qcadoo.mes.basic.LookupUtils;
+
+/**
+ * Compares the document positions grid query with the former one, which grouped all resources by pallet and read each
+ * attribute column with its own subquery. Uses 1 000 000 resources on 20 000 pallets and a document of 500 positions with
+ * three attribute columns. Runs only against a database given with -Ddocumentpositions.benchmark.url (and .user,
+ * .password); the data is inserted in a transaction that is rolled back.
+ */
+public class DocumentPositionServiceBenchmarkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentPositionServiceBenchmarkTest.class);
+
+    private static final int PALLETS = 20000;
+
+    private static final int RESOURCES = 1000000;
+
+    private static final int POSITIONS = 500;
+
+    private static final String[] ATTRIBUTES = { "BMA1", "BMA2", "BMA3" };
+
+    private static final int PER_PAGE = 20;
+
+    private static final int WARM_UP = 3;
+
+    private static final int ITERATIONS = 20;
+
+    private static final String L_FORMER_QUERY = "SELECT %s FROM ( SELECT p.id, p.number, "
+            + "(coalesce(r1.resourcesCount,0) < 2 AND p.quantity >= coalesce(resource.quantity,0)) AS formerLastResource %s "
+            + "FROM materialflowresources_position p "
+            + "LEFT JOIN basic_product product ON (p.product_id = product.id) "
+            + "LEFT JOIN basic_additionalcode additionalcode ON (p.additionalcode_id = additionalcode.id) "
+            + "LEFT JOIN basic_palletnumber palletnumber ON (p.palletnumber_id = palletnumber.id) "
+            + "LEFT JOIN materialflowresources_resource resource ON (p.resource_id = resource.id) "
+            + "LEFT JOIN advancedgenealogy_batch batch ON (p.batch_id = batch.id) "
+            + "LEFT JOIN (SELECT palletnumber_id, count(id) as resourcesCount FROM materialflowresources_resource "
+            + "GROUP BY palletnumber_id) r1 ON r1.palletnumber_id = resource.palletnumber_id "
+            + "LEFT JOIN materialflowresources_storagelocation location ON (p.storagelocation_id = location.id) "
+            + "WHERE p.document_id = :documentId %s) q ";
+
+    private DocumentPositionService documentPositionService;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Before
+    public void init() {
+        String url = System.getProperty("documentpositions.benchmark.url");
+
+        assumeNotNull(url);
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url,
+                System.getProperty("documentpositions.benchmark.user", "postgres"),
+                System.getProperty("documentpositions.benchmark.password", "postgres"));
+
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        documentPositionService = new DocumentPositionService();
+
+        ReflectionTestUtils.setField(documentPositionService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(documentPositionService, "lookupUtils", new LookupUtils());
+    }
+
+    @Test
+    public void shouldReadDocumentPositionsPageOnLargeWarehouse() {
+        transactionTemplate.execute(status -> {
+            Long documentId = createData();
+
+            Map<String, Object> parameters = Maps.newHashMap();
+
+            parameters.put("documentId", documentId);
+
+            StringBuilder formerAttributes = new StringBuilder();
+
+            for (String attribute : ATTRIBUTES) {
+                formerAttributes.append(", (SELECT string_agg(positionattributevalue.value, ', ') "
+                        + "FROM materialflowresources_positionattributevalue positionattributevalue "
+                        + "LEFT JOIN basic_attribute att ON att.id = positionattributevalue.attribute_id "
+                        + "WHERE positionattributevalue.position_id = p.id AND att.number ='" + attribute
+                        + "' group by att.number) as \"" + attribute + "\" ");
+            }
+
+            String formerQuery = String.format(L_FORMER_QUERY, "%s", formerAttributes, "%s");
+            String formerCountQuery = String.format(formerQuery, "COUNT(*)", "");
+            String formerRecordsQuery = String.format(formerQuery, "*", "ORDER BY number asc") + " LIMIT " + PER_PAGE;
+
+            List<Map<String, Object>> formerRecords = measure("former", () -> {
+                jdbcTemplate.queryForObject(formerCountQuery, parameters, Long.class);
+
+                return jdbcTemplate.queryForList(formerRecordsQuery, parameters);
+            });
+
+            GridResponse<DocumentPositionDTO> response = measure("current",
+                    () -> documentPositionService.findAll(documentId, "number", "asc", 1, PER_PAGE, new DocumentPositionDTO(),
+                            Collections.emptyMap()));
+
+            assertEquals(POSITIONS, response.getRecords());
+            assertEquals(formerRecords.size(), response.getRows().size());
+
+            for (int i = 0; i < formerRecords.size(); i++) {
+                DocumentPositionDTO position = response.getRows().get(i);
+
+                assertEquals(((Number) formerRecords.get(i).get("id")).longValue(), position.getId().longValue());
+
+                for (String attribute : ATTRIBUTES) {
+                    assertEquals(formerRecords.get(i).get(attribute), position.getAttrs().get(attribute));
+                }
+            }
+
+            status.setRollbackOnly();
+
+            return null;
+        });
+    }
+
+    private Long createData() {
+        Map<String, Object> parameters = Collections.emptyMap();
+
+        jdbcTemplate.update("INSERT INTO basic_palletnumber (number) SELECT 'Q' || lpad(g::text, 5, '0') "
+                + "FROM generate_series(1, " + PALLETS + ") g", parameters);
+        jdbcTemplate.update("INSERT INTO materialflowresources_resource (number, time, quantity, palletnumber_id) "
+                + "SELECT 'BMR' || g, now(), 10, pn.id FROM generate_series(1, " + RESOURCES + ") g "
+                + "JOIN basic_palletnumber pn ON pn.number = 'Q' || lpad((g % " + PALLETS + " + 1)::text, 5, '0')", parameters);
+
+        for (int i = 0; i < ATTRIBUTES.length; i++) {
+            Map<String, Object> attribute = Maps.newHashMap();
+
+            attribute.put("number", ATTRIBUTES[i]);
+            attribute.put("ordering", 1000 + i);
+
+            jdbcTemplate.update("INSERT INTO basic_attribute (number, name) VALUES (:number, :number)", attribute);
+            jdbcTemplate.update("INSERT INTO materialflowresources_documentpositionparametersitem "
+                    + "(checked, editable, parameters_id, name, ordering, forattribute, attribute_id) "
+                    + "SELECT true, true, (SELECT id FROM materialflowresources_documentpositionparameters LIMIT 1), "
+                    + "a.number, :ordering, true, a.id FROM basic_attribute a WHERE a.number = :number", attribute);
+        }
+
+        Long documentId = jdbcTemplate.queryForObject("INSERT INTO materialflowresources_document (number, type, name, state, "
+                + "inbuffer) VALUES ('BMDOC', '03internalOutbound', 'BMDOC', '01draft', false) RETURNING id", parameters,
+                Long.class);
+
+        jdbcTemplate.update("INSERT INTO materialflowresources_position (document_id, number, quantity, resource_id) "
+                + "SELECT :documentId, g, CASE WHEN g % 2 = 0 THEN 10 ELSE 5 END, r.id FROM generate_series(1, " + POSITIONS
+                + ") g JOIN materialflowresources_resource r ON r.number = 'BMR' || (g * 37)",
+                Collections.singletonMap("documentId", documentId));
+        jdbcTemplate.update("INSERT INTO materialflowresources_positionattributevalue (position_id, attribute_id, value) "
+                + "SELECT p.id, a.id, a.number || '-' || p.number FROM materialflowresources_position p "
+                + "CROSS JOIN basic_attribute a WHERE p.document_id = :documentId AND a.number LIKE 'BMA%'",
+                Collections.singletonMap("documentId", documentId));
+
+        jdbcTemplate.update("ANALYZE materialflowresources_resource", parameters);
+        jdbcTemplate.update("ANALYZE materialflowresources_position", parameters);
+        jdbcTemplate.update("ANALYZE materialflowresources_positionattributevalue", parameters);
+
+        return documentId;
+    }
+
+    private <T> T measure(final String name, final Supplier<T> query) {
+        T result = null;
+
+        for (int i = 0; i < WARM_UP; i++) {
+            result = query.get();
+        }
+
+        long total = 0;
+        long max = 0;
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+
+            result = query.get();
+
+            long elapsed = System.nanoTime() - start;
+
+            total += elapsed;
+            max = Math.max(max, elapsed);
+        }
+
+        LOG.info(String.format("%s positions page: avg %.2f ms, max %.2f ms", name,
+                total / (double) ITERATIONS / TimeUnit.MILLISECONDS.toNanos(1), max / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+
+        return result;
+    }
+
+}
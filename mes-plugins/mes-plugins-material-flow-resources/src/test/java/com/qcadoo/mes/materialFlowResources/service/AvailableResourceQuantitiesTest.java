@@ -0,0 +1,245 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.model.api.Entity;
+
+public class AvailableResourceQuantitiesTest {
+
+    private static final int PRODUCTS = 40;
+
+    private static final int RESOURCES = 2000;
+
+    private static final int POSITIONS = 300;
+
+    private static final List<BigDecimal> CONVERSIONS = Arrays.asList(BigDecimal.ONE, new BigDecimal("2.00000"),
+            new BigDecimal("12.50000"));
+
+    private final Random random = new Random(20101L);
+
+    private final List<Entity> products = Lists.newArrayList();
+
+    private final List<Entity> batches = Lists.newArrayList();
+
+    private final List<Entity> additionalCodes = Lists.newArrayList();
+
+    private final List<GeneratedResource> warehouse = Lists.newArrayList();
+
+    @Before
+    public void init() {
+        for (long id = 1; id <= PRODUCTS; id++) {
+            Entity product = mockEntity(id);
+
+            given(product.getStringField(ProductFields.ADDITIONAL_UNIT)).willReturn(id % 3 == 0 ? "szt" : null);
+
+            products.add(product);
+        }
+
+        for (long id = 1; id <= 10; id++) {
+            batches.add(mockEntity(100 + id));
+            additionalCodes.add(mockEntity(200 + id));
+        }
+
+        for (int i = 0; i < RESOURCES; i++) {
+            Entity batch = random.nextInt(3) == 0 ? null : pick(batches);
+            Entity additionalCode = random.nextBoolean() ? null : pick(additionalCodes);
+            BigDecimal availableQuantity = new BigDecimal(random.nextInt(100000)).movePointLeft(3);
+
+            warehouse.add(new GeneratedResource(pick(products).getId(), idOf(additionalCode), idOf(batch), pick(CONVERSIONS),
+                    availableQuantity));
+        }
+    }
+
+    @Test
+    public void shouldReturnSameQuantitiesAsPerPositionQueries() {
+        // given
+        Multimap<Entity, Entity> productsAndPositions = ArrayListMultimap.create();
+
+        for (int i = 0; i < POSITIONS; i++) {
+            Entity position = mock(Entity.class);
+
+            given(position.getBelongsToField(PositionFields.BATCH)).willReturn(random.nextBoolean() ? null : pick(batches));
+            given(position.getBelongsToField(PositionFields.ADDITIONAL_CODE)).willReturn(
+                    random.nextBoolean() ? null : pick(additionalCodes));
+            given(position.getDecimalField(PositionFields.CONVERSION)).willReturn(pick(CONVERSIONS));
+
+            productsAndPositions.put(pick(products), position);
+        }
+
+        // when
+        Multimap<Long, BigDecimal> result = new AvailableResourceQuantities(groupLikeDatabase())
+                .getQuantitiesForPositions(productsAndPositions);
+
+        // then
+        Multimap<Long, BigDecimal> expected = getQuantitiesPerPosition(productsAndPositions);
+
+        assertEquals(expected.keySet(), result.keySet());
+
+        for (Long productId : expected.keySet()) {
+            List<BigDecimal> expectedQuantities = Lists.newArrayList(expected.get(productId));
+            List<BigDecimal> quantities = Lists.newArrayList(result.get(productId));
+
+            assertEquals(expectedQuantities.size(), quantities.size());
+
+            for (int i = 0; i < expectedQuantities.size(); i++) {
+                assertEquals(0, expectedQuantities.get(i).compareTo(quantities.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void shouldReturnZeroForProductWithoutResources() {
+        // given
+        AvailableResourceQuantities quantities = new AvailableResourceQuantities(groupLikeDatabase());
+
+        // when
+        BigDecimal result = quantities.getAvailableQuantity(-1L, null, BigDecimal.ONE);
+
+        // then
+        assertEquals(0, BigDecimal.ZERO.compareTo(result));
+    }
+
+    private List<AvailableResourceQuantities.Group> groupLikeDatabase() {
+        Map<List<Object>, BigDecimal> sums = Maps.newLinkedHashMap();
+
+        for (GeneratedResource resource : warehouse) {
+            sums.merge(Arrays.asList(resource.productId, resource.additionalCodeId, resource.batchId, resource.conversion),
+                    resource.availableQuantity, BigDecimal::add);
+        }
+
+        return sums.entrySet().stream()
+                .map(entry -> new AvailableResourceQuantities.Group((Long) entry.getKey().get(0), (Long) entry.getKey().get(1),
+                        (Long) entry.getKey().get(2), (BigDecimal) entry.getKey().get(3), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    // mirrors the former search criteria based implementation: up to three queries per position
+    private Multimap<Long, BigDecimal> getQuantitiesPerPosition(final Multimap<Entity, Entity> productsAndPositions) {
+        Multimap<Long, BigDecimal> result = ArrayListMultimap.create();
+
+        for (Map.Entry<Entity, Entity> productAndPosition : productsAndPositions.entries()) {
+            Entity product = productAndPosition.getKey();
+            Entity additionalCode = productAndPosition.getValue().getBelongsToField(PositionFields.ADDITIONAL_CODE);
+            Entity batch = productAndPosition.getValue().getBelongsToField(PositionFields.BATCH);
+            BigDecimal conversion = StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT)) ? BigDecimal.ONE
+                    : productAndPosition.getValue().getDecimalField(PositionFields.CONVERSION);
+
+            List<GeneratedResource> resources = Lists.newArrayList();
+
+            if (additionalCode != null) {
+                resources = find(product, batch, conversion).stream()
+                        .filter(resource -> additionalCode.getId().equals(resource.additionalCodeId))
+                        .collect(Collectors.toList());
+                resources.addAll(find(product, batch, conversion).stream()
+                        .filter(resource -> !additionalCode.getId().equals(resource.additionalCodeId))
+                        .collect(Collectors.toList()));
+            }
+
+            if (resources.isEmpty()) {
+                resources = find(product, batch, conversion);
+            }
+
+            BigDecimal quantity = resources.stream().map(resource -> resource.availableQuantity).reduce(BigDecimal.ZERO,
+                    BigDecimal::add);
+
+            if (result.containsKey(product.getId())) {
+                quantity = quantity.add(result.get(product.getId()).stream().reduce(BigDecimal.ZERO, BigDecimal::add));
+            }
+
+            result.put(product.getId(), quantity);
+        }
+
+        return result;
+    }
+
+    private List<GeneratedResource> find(final Entity product, final Entity batch, final BigDecimal conversion) {
+        return warehouse.stream().filter(resource -> product.getId().equals(resource.productId))
+                .filter(resource -> resource.availableQuantity.compareTo(BigDecimal.ZERO) > 0)
+                .filter(resource -> resource.conversion.compareTo(conversion) == 0)
+                .filter(resource -> Objects.isNull(batch) || batch.getId().equals(resource.batchId))
+                .collect(Collectors.toList());
+    }
+
+    private <T> T pick(final List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static Long idOf(final Entity entity) {
+        return Objects.isNull(entity) ? null : entity.getId();
+    }
+
+    private static Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+    private static class GeneratedResource {
+
+        private final Long productId;
+
+        private final Long additionalCodeId;
+
+        private final Long batchId;
+
+        private final BigDecimal conversion;
+
+        private final BigDecimal availableQuantity;
+
+        GeneratedResource(final Long productId, final Long additionalCodeId, final Long batchId, final BigDecimal conversion,
+                final BigDecimal availableQuantity) {
+            this.productId = productId;
+            this.additionalCodeId = additionalCodeId;
+            this.batchId = batchId;
+            this.conversion = conversion;
+            this.availableQuantity = availableQuantity;
+        }
+
+    }
+
+}
@@ -24,7 +24,6 @@
 package com.qcadoo.mes.materialRequirementCoverageForOrder.aspects;
 
 import com.google.common.collect.Lists;
-import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.materialRequirementCoverageForOrder.constans.MaterialRequirementCoverageForOrderConstans;
 import com.qcadoo.mes.orderSupplies.constants.CoverageProductFields;
 import com.qcadoo.mes.orderSupplies.constants.CoverageRegisterFields;
@@ -45,12 +44,8 @@ import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -67,9 +62,6 @@ public class MRCServiceOverideAspect {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
-    @Autowired
-    private NamedParameterJdbcTemplate jdbcTemplate;
-
     private static final String L_PRODUCT_TYPE = "productType";
 
     private static final String L_PLANNED_QUANTITY = "planedQuantity";
@@ -152,51 +144,20 @@ public class MRCServiceOverideAspect {
         return orderProduct != null && product.equals(orderProduct.getId());
     }
 
-    @Pointcut("execution(private void com.qcadoo.mes.orderSupplies.coverage.MaterialRequirementCoverageServiceImpl.saveCoverageProduct(..)) "
-            + "&& args(materialRequirementCoverage, covProduct)")
-    public void saveCoverageProductA(Entity materialRequirementCoverage, Entity covProduct) {
+    @Pointcut("execution(private java.util.Map<java.lang.String, java.lang.Object> com.qcadoo.mes.orderSupplies.coverage.MaterialRequirementCoverageServiceImpl.getCoverageProductParameters(..)) "
+            + "&& args(materialRequirementCoverage, covProduct, coverageProductId)")
+    public void getCoverageProductParametersA(Entity materialRequirementCoverage, Entity covProduct, Long coverageProductId) {
     }
 
-    @Around("saveCoverageProductA(materialRequirementCoverage, covProduct)")
-    public void aroundSaveCoverageProduct(final ProceedingJoinPoint pjp, Entity materialRequirementCoverage, Entity covProduct) {
-        String sql = "INSERT INTO ordersupplies_coverageproduct "
-                + "(materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
-                + "reservemissingquantity, deliveredquantity, locationsquantity, state, productnumber, productname, "
-                + "productunit, productType, planedQuantity, produceQuantity,fromSelectedOrder, allProductsType, company_id) "
-                + "VALUES (:materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
-                + ":reservemissingquantity, :deliveredquantity, :locationsquantity, :state, :productnumber, :productname, "
-                + ":productunit, :productType, :planedQuantity, :produceQuantity,:fromSelectedOrder, :allProductsType, :company_id)";
-
-        Map<String, Object> parameters = new HashMap<String, Object>();
+    @Around("getCoverageProductParametersA(materialRequirementCoverage, covProduct, coverageProductId)")
+    public Map<String, Object> aroundGetCoverageProductParameters(final ProceedingJoinPoint pjp,
+            Entity materialRequirementCoverage, Entity covProduct, Long coverageProductId) throws Throwable {
+        Map<String, Object> parameters = (Map<String, Object>) pjp.proceed();
+
         parameters.put(L_PRODUCT_TYPE, covProduct.getStringField(L_PRODUCT_TYPE));
         parameters.put(L_PLANNED_QUANTITY, covProduct.getDecimalField(L_PLANNED_QUANTITY));
-        parameters.put("materialrequirementcoverage_id", materialRequirementCoverage.getId());
-        parameters.put("product_id", covProduct.getBelongsToField(CoverageProductFields.PRODUCT).getId());
-        Entity company = covProduct.getBelongsToField(CoverageProductFields.COMPANY);
-        if (company != null) {
-            parameters.put("company_id", company.getId());
-        } else {
-            parameters.put("company_id", null);
-        }
-        parameters.put("lackfromdate", covProduct.getDateField(CoverageProductFields.LACK_FROM_DATE));
-        parameters.put("demandquantity", covProduct.getDecimalField(CoverageProductFields.DEMAND_QUANTITY));
-        parameters.put("coveredquantity", covProduct.getDecimalField(CoverageProductFields.COVERED_QUANTITY));
-        parameters.put("reservemissingquantity", covProduct.getDecimalField(CoverageProductFields.RESERVE_MISSING_QUANTITY));
-        parameters.put("deliveredquantity", covProduct.getDecimalField(CoverageProductFields.DELIVERED_QUANTITY));
-        parameters.put("locationsquantity", covProduct.getDecimalField(CoverageProductFields.LOCATIONS_QUANTITY));
-        parameters.put("produceQuantity", covProduct.getDecimalField(CoverageProductFields.PRODUCE_QUANTITY));
-        parameters.put("state", covProduct.getStringField(CoverageProductFields.STATE));
-        parameters.put("productnumber",
-                covProduct.getBelongsToField(CoverageProductFields.PRODUCT).getStringField(ProductFields.NUMBER));
-        parameters.put("productname",
-                covProduct.getBelongsToField(CoverageProductFields.PRODUCT).getStringField(ProductFields.NAME));
-        parameters.put("productunit",
-                covProduct.getBelongsToField(CoverageProductFields.PRODUCT).getStringField(ProductFields.UNIT));
-        parameters.put("fromSelectedOrder", covProduct.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER));
-        parameters.put("allProductsType", covProduct.getStringField("allProductsType"));
-
-        SqlParameterSource namedParameters = new MapSqlParameterSource(parameters);
-        jdbcTemplate.update(sql, namedParameters);
+
+        return parameters;
     }
 
 }
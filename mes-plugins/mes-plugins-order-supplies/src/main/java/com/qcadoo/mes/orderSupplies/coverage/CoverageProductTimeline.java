@@ -0,0 +1,239 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.coverage;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Date;
+
+import com.qcadoo.mes.orderSupplies.constants.CoverageProductLoggingEventType;
+import com.qcadoo.mes.orderSupplies.constants.CoverageProductLoggingState;
+
+/**
+ * Coverage product loggings of a single product, kept in parallel arrays instead of one entity per logging.
+ * <p>
+ * Events are collected in any order. {@link #calculateStates(MathContext)} orders them by date and event type (later event
+ * types first), computes running reserve/missing quantities and logging states and returns the lack from date.
+ */
+public class CoverageProductTimeline {
+
+    private static final int L_INITIAL_CAPACITY = 4;
+
+    private int size;
+
+    private long[] dates = new long[L_INITIAL_CAPACITY];
+
+    private CoverageProductLoggingEventType[] eventTypes = new CoverageProductLoggingEventType[L_INITIAL_CAPACITY];
+
+    private BigDecimal[] quantities = new BigDecimal[L_INITIAL_CAPACITY];
+
+    private Long[] orderIds = new Long[L_INITIAL_CAPACITY];
+
+    private Long[] operationIds = new Long[L_INITIAL_CAPACITY];
+
+    private Long[] deliveryIds = new Long[L_INITIAL_CAPACITY];
+
+    private String[] warehouseNumbers = new String[L_INITIAL_CAPACITY];
+
+    private int[] sequence;
+
+    private BigDecimal[] reserveMissingQuantities;
+
+    private CoverageProductLoggingState[] states;
+
+    public void addOrderEvent(final Date date, final CoverageProductLoggingEventType eventType, final BigDecimal changes,
+            final Long orderId, final Long operationId) {
+        int index = add(date, eventType, changes);
+
+        orderIds[index] = orderId;
+        operationIds[index] = operationId;
+    }
+
+    public void addDeliveryEvent(final Date date, final BigDecimal changes, final Long deliveryId) {
+        int index = add(date, CoverageProductLoggingEventType.DELIVERY, changes);
+
+        deliveryIds[index] = deliveryId;
+    }
+
+    public void addWarehouseState(final Date date, final BigDecimal locationsQuantity, final String warehouseNumber) {
+        int index = add(date, CoverageProductLoggingEventType.WAREHOUSE_STATE, locationsQuantity);
+
+        warehouseNumbers[index] = warehouseNumber;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Orders the events and fills reserve/missing quantities and states of all non warehouse events.
+     *
+     * @return date of the first event after which the product is missing, or null if it is covered all the time
+     */
+    public Date calculateStates(final MathContext mathContext) {
+        sortEvents();
+
+        reserveMissingQuantities = new BigDecimal[size];
+        states = new CoverageProductLoggingState[size];
+
+        Date lackFromDate = null;
+
+        BigDecimal reserveMissingQuantity = BigDecimal.ZERO;
+
+        for (int position = 0; position < size; position++) {
+            int index = sequence[position];
+
+            CoverageProductLoggingEventType eventType = eventTypes[index];
+
+            if (CoverageProductLoggingEventType.WAREHOUSE_STATE.equals(eventType)) {
+                reserveMissingQuantity = reserveMissingQuantity.add(quantities[index], mathContext);
+                reserveMissingQuantities[index] = quantities[index];
+
+                continue;
+            }
+
+            if (CoverageProductLoggingEventType.DELIVERY.equals(eventType)
+                    || CoverageProductLoggingEventType.ORDER_OUTPUT.equals(eventType)) {
+                reserveMissingQuantity = reserveMissingQuantity.add(quantities[index], mathContext);
+            } else {
+                reserveMissingQuantity = reserveMissingQuantity.subtract(quantities[index], mathContext);
+            }
+
+            reserveMissingQuantities[index] = reserveMissingQuantity;
+
+            if (reserveMissingQuantity.compareTo(BigDecimal.ZERO) >= 0) {
+                states[index] = CoverageProductLoggingState.COVERED;
+            } else {
+                states[index] = CoverageProductLoggingState.LACK;
+
+                if (lackFromDate == null) {
+                    lackFromDate = new Date(dates[index]);
+                }
+            }
+        }
+
+        return lackFromDate;
+    }
+
+    public Date getDate(final int position) {
+        return new Date(dates[indexOf(position)]);
+    }
+
+    public CoverageProductLoggingEventType getEventType(final int position) {
+        return eventTypes[indexOf(position)];
+    }
+
+    public BigDecimal getChanges(final int position) {
+        int index = indexOf(position);
+
+        if (CoverageProductLoggingEventType.WAREHOUSE_STATE.equals(eventTypes[index])) {
+            return null;
+        }
+
+        return quantities[index];
+    }
+
+    public BigDecimal getReserveMissingQuantity(final int position) {
+        return reserveMissingQuantities == null ? null : reserveMissingQuantities[indexOf(position)];
+    }
+
+    public CoverageProductLoggingState getState(final int position) {
+        return states == null ? null : states[indexOf(position)];
+    }
+
+    public Long getOrderId(final int position) {
+        return orderIds[indexOf(position)];
+    }
+
+    public Long getOperationId(final int position) {
+        return operationIds[indexOf(position)];
+    }
+
+    public Long getDeliveryId(final int position) {
+        return deliveryIds[indexOf(position)];
+    }
+
+    public String getWarehouseNumber(final int position) {
+        return warehouseNumbers[indexOf(position)];
+    }
+
+    private int add(final Date date, final CoverageProductLoggingEventType eventType, final BigDecimal quantity) {
+        if (size == dates.length) {
+            int capacity = size * 2;
+
+            dates = Arrays.copyOf(dates, capacity);
+            eventTypes = Arrays.copyOf(eventTypes, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            orderIds = Arrays.copyOf(orderIds, capacity);
+            operationIds = Arrays.copyOf(operationIds, capacity);
+            deliveryIds = Arrays.copyOf(deliveryIds, capacity);
+            warehouseNumbers = Arrays.copyOf(warehouseNumbers, capacity);
+        }
+
+        dates[size] = date.getTime();
+        eventTypes[size] = eventType;
+        quantities[size] = quantity;
+
+        sequence = null;
+        reserveMissingQuantities = null;
+        states = null;
+
+        return size++;
+    }
+
+    private int indexOf(final int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size);
+        }
+
+        return sequence == null ? position : sequence[position];
+    }
+
+    // stable, so events with the same date and type keep the order in which they were added
+    private void sortEvents() {
+        Integer[] indexes = new Integer[size];
+
+        for (int index = 0; index < size; index++) {
+            indexes[index] = index;
+        }
+
+        Arrays.sort(indexes, (index1, index2) -> {
+            int result = Long.compare(dates[index1], dates[index2]);
+
+            if (result == 0) {
+                result = eventTypes[index2].getStringValue().compareTo(eventTypes[index1].getStringValue());
+            }
+
+            return result;
+        });
+
+        sequence = new int[size];
+
+        for (int position = 0; position < size; position++) {
+            sequence[position] = indexes[position];
+        }
+    }
+
+}
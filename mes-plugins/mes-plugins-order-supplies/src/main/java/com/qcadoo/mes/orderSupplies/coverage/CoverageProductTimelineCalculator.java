@@ -0,0 +1,127 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.coverage;
+
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Calculates states of coverage product timelines.
+ * <p>
+ * Timelines of different products are independent, so when coverageCalculationParallelism is greater than 1 they are
+ * calculated by a dedicated fork join pool of that size. Results are returned in the order of the given timelines, so the
+ * output does not depend on the parallelism.
+ */
+@Service
+public class CoverageProductTimelineCalculator {
+
+    private static final int L_PRODUCTS_PER_TASK = 64;
+
+    @Value("${coverageCalculationParallelism:1}")
+    private int parallelism;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void init() {
+        if (parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return lack from dates of the given timelines, in the same order
+     */
+    public List<Date> calculateStates(final List<CoverageProductTimeline> timelines, final MathContext mathContext) {
+        CoverageProductTimeline[] timelinesArray = timelines.toArray(new CoverageProductTimeline[timelines.size()]);
+        Date[] lackFromDates = new Date[timelinesArray.length];
+
+        CalculateStatesTask task = new CalculateStatesTask(timelinesArray, lackFromDates, mathContext, 0, timelinesArray.length);
+
+        if (pool == null || timelinesArray.length <= L_PRODUCTS_PER_TASK) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+
+        return Arrays.asList(lackFromDates);
+    }
+
+    private static class CalculateStatesTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CoverageProductTimeline[] timelines;
+
+        private final Date[] lackFromDates;
+
+        private final MathContext mathContext;
+
+        private final int from;
+
+        private final int to;
+
+        CalculateStatesTask(final CoverageProductTimeline[] timelines, final Date[] lackFromDates, final MathContext mathContext,
+                final int from, final int to) {
+            this.timelines = timelines;
+            this.lackFromDates = lackFromDates;
+            this.mathContext = mathContext;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= L_PRODUCTS_PER_TASK) {
+                for (int index = from; index < to; index++) {
+                    lackFromDates[index] = timelines[index].calculateStates(mathContext);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+
+                invokeAll(new CalculateStatesTask(timelines, lackFromDates, mathContext, from, middle),
+                        new CalculateStatesTask(timelines, lackFromDates, mathContext, middle, to));
+            }
+        }
+
+    }
+
+}
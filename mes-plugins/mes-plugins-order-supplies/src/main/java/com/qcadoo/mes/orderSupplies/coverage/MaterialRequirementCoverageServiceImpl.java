@@ -25,7 +25,6 @@ package com.qcadoo.mes.orderSupplies.coverage;
 
 import java.math.BigDecimal;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -44,7 +43,6 @@ import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.ProductFields;
@@ -60,7 +58,6 @@ import com.qcadoo.mes.orderSupplies.constants.CoverageLocationFields;
 import com.qcadoo.mes.orderSupplies.constants.CoverageOrderStateFields;
 import com.qcadoo.mes.orderSupplies.constants.CoverageProductFields;
 import com.qcadoo.mes.orderSupplies.constants.CoverageProductLoggingEventType;
-import com.qcadoo.mes.orderSupplies.constants.CoverageProductLoggingFields;
 import com.qcadoo.mes.orderSupplies.constants.CoverageProductLoggingState;
 import com.qcadoo.mes.orderSupplies.constants.CoverageProductState;
 import com.qcadoo.mes.orderSupplies.constants.CoverageRegisterFields;
@@ -93,6 +90,22 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
     private static final String L_PLANNED_QUANTITY = "planedQuantity";
 
+    private static final int L_SAVE_BATCH_SIZE = 1000;
+
+    private static final String L_INSERT_COVERAGE_PRODUCT = "INSERT INTO ordersupplies_coverageproduct "
+            + "(id, materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
+            + "reservemissingquantity, deliveredquantity, locationsquantity, state, productnumber, productname, "
+            + "productunit, productType, planedQuantity, produceQuantity, fromSelectedOrder, allProductsType, company_id) "
+            + "VALUES (:id, :materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
+            + ":reservemissingquantity, :deliveredquantity, :locationsquantity, :state, :productnumber, :productname, "
+            + ":productunit, :productType, :planedQuantity, :produceQuantity, :fromSelectedOrder, :allProductsType, :company_id)";
+
+    private static final String L_INSERT_COVERAGE_PRODUCT_LOGGING = "INSERT INTO ordersupplies_coverageproductlogging "
+            + "(coverageproduct_id, date, order_id, delivery_id, operation_id, reservemissingquantity, changes, eventtype, state, "
+            + "warehouseNumber, deliveryNumberExternal) "
+            + "VALUES (:coverageproduct_id, :date, :order_id, :delivery_id, :operation_id, :reservemissingquantity, :changes, "
+            + ":eventtype, :state, :warehouseNumber, :deliveryNumberExternal)";
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -114,6 +127,9 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
     @Autowired
     private DeliveriesService deliveriesService;
 
+    @Autowired
+    private CoverageProductTimelineCalculator coverageProductTimelineCalculator;
+
     @Transactional
     @Override
     public void estimateProductCoverageInTime(final Entity materialRequirementCoverage) {
@@ -136,6 +152,7 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         List<Entity> includedDeliveries = getDeliveriesFromDB(coverageToDate, includeDraftDeliveries);
 
         Map<Long, Entity> productAndCoverageProducts = Maps.newHashMap();
+        Map<Long, CoverageProductTimeline> productTimelines = Maps.newHashMap();
 
         List<Entity> orderStates = materialRequirementCoverage
                 .getHasManyField(MaterialRequirementCoverageFields.COVERAGE_ORDER_STATES);
@@ -145,7 +162,7 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
             orderStates = Collections.emptyList();
         }
 
-        fillFromRegistry(productAndCoverageProducts, coverageToDate, actualDate, orderStates);
+        fillFromRegistry(productAndCoverageProducts, productTimelines, coverageToDate, actualDate, orderStates);
 
         Entity assignedOrder = materialRequirementCoverage.getBelongsToField(L_ORDER);
 
@@ -153,33 +170,31 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
             Optional<Entity> maybeState = orderStates.stream()
                     .filter(state -> state.equals(assignedOrder.getStringField(OrderFields.STATE))).findAny();
             if (!maybeState.isPresent()) {
-                fillFromRegistryAssignedOrder(productAndCoverageProducts, assignedOrder, coverageToDate, actualDate);
+                fillFromRegistryAssignedOrder(productAndCoverageProducts, productTimelines, assignedOrder, coverageToDate,
+                        actualDate);
             }
         }
 
-        estimateProductLocationsInTime(materialRequirementCoverage, productAndCoverageProducts, coverageLocations, actualDate);
+        estimateProductLocationsInTime(materialRequirementCoverage, productAndCoverageProducts, productTimelines,
+                coverageLocations, actualDate);
 
-        estimateProductDeliveriesInTime(materialRequirementCoverage, productAndCoverageProducts, includedDeliveries, actualDate,
-                coverageToDate, belongsToFamily, includeDraftDeliveries);
+        estimateProductDeliveriesInTime(materialRequirementCoverage, productAndCoverageProducts, productTimelines,
+                includedDeliveries, actualDate, coverageToDate, belongsToFamily, includeDraftDeliveries);
 
-        estimateProductProducedInTime(productAndCoverageProducts, coverageToDate, actualDate, orderStates);
+        estimateProductProducedInTime(productAndCoverageProducts, productTimelines, coverageToDate, actualDate, orderStates);
 
         additionalProcessProductCoverage(materialRequirementCoverage, productAndCoverageProducts);
 
-        fillCoverageProductStatesAndQuantities(productAndCoverageProducts);
-
-        fillCoverageProductSupplier(productAndCoverageProducts);
-
         materialRequirementCoverage.getDataDefinition().save(materialRequirementCoverage);
 
-        saveCoverage(materialRequirementCoverage,
-                filterCoverageProducts(productAndCoverageProducts, productExtracted, coverageType));
+        saveCoverage(materialRequirementCoverage, productAndCoverageProducts, productTimelines, productExtracted, coverageType);
 
         LOG.info("Finish generation material requirement - id : " + materialRequirementCoverage.getId());
     }
 
-    private void estimateProductProducedInTime(final Map<Long, Entity> productAndCoverageProducts, final Date coverageToDate,
-            final Date actualDate, final List<Entity> orderStates) {
+    private void estimateProductProducedInTime(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, CoverageProductTimeline> productTimelines, final Date coverageToDate, final Date actualDate,
+            final List<Entity> orderStates) {
         List<String> states = Lists.newArrayList();
 
         if (orderStates != null && !orderStates.isEmpty()) {
@@ -209,57 +224,39 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
         for (Entity reg : regs) {
             if (BigDecimal.ZERO.compareTo(reg.getDecimalField(CoverageRegisterFields.QUANTITY)) < 0) {
-                Entity coverageProductLogging = createProductLoggingForOrderProduced(reg, actualDate, coverageToDate);
-
-                fillCoverageProductForOrderProduced(productAndCoverageProducts, reg.getBelongsToField("product"),
-                        coverageProductLogging);
+                fillCoverageProductForOrderProduced(productAndCoverageProducts, productTimelines,
+                        reg.getBelongsToField("product"), reg, actualDate);
             }
         }
     }
 
-    private void fillCoverageProductForOrderProduced(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
-            final Entity coverageProductLogging) {
-        if (coverageProductLogging != null) {
-            if (productAndCoverageProducts.containsKey(product.getId())) {
-                updateCoverageProductForOrderProduced(productAndCoverageProducts, product, coverageProductLogging);
-            }
+    private void fillCoverageProductForOrderProduced(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, CoverageProductTimeline> productTimelines, final Entity product, final Entity registerEntry,
+            final Date actualDate) {
+        if (productAndCoverageProducts.containsKey(product.getId())) {
+            BigDecimal changes = numberService.setScaleWithDefaultMathContext(registerEntry.getDecimalField("quantity"));
+
+            updateCoverageProductForOrderProduced(productAndCoverageProducts, product, changes);
+
+            getProductTimeline(productTimelines, product).addOrderEvent(
+                    getCoverageProductLoggingDateForOrderProduced(registerEntry.getDateField(CoverageRegisterFields.DATE),
+                            actualDate),
+                    CoverageProductLoggingEventType.parseString(registerEntry.getStringField("eventType")), changes,
+                    getId(registerEntry.getBelongsToField("order")), getId(registerEntry.getBelongsToField("operation")));
         }
     }
 
     private void updateCoverageProductForOrderProduced(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
-            final Entity coverageProductLogging) {
+            final BigDecimal changes) {
         Entity addedCoverageProduct = productAndCoverageProducts.get(product.getId());
 
         BigDecimal demandQuantity = BigDecimalUtils
                 .convertNullToZero(addedCoverageProduct.getDecimalField(CoverageProductFields.PRODUCE_QUANTITY));
 
-        demandQuantity = demandQuantity.add(coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES),
-                numberService.getMathContext());
-
-        List<Entity> coverageProductLoggings = Lists
-                .newArrayList(addedCoverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
-        coverageProductLoggings.add(coverageProductLogging);
+        demandQuantity = demandQuantity.add(changes, numberService.getMathContext());
 
         addedCoverageProduct.setField(CoverageProductFields.PRODUCE_QUANTITY,
                 numberService.setScaleWithDefaultMathContext(demandQuantity));
-        addedCoverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, coverageProductLoggings);
-
-        productAndCoverageProducts.put(product.getId(), addedCoverageProduct);
-    }
-
-    private Entity createProductLoggingForOrderProduced(final Entity registerEntry, final Date actualDate,
-            final Date coverageToDate) {
-        Entity coverageProductLogging = orderSuppliesService.getCoverageProductLoggingDD().create();
-
-        coverageProductLogging.setField(CoverageProductLoggingFields.DATE, getCoverageProductLoggingDateForOrderProduced(
-                registerEntry.getDateField(CoverageRegisterFields.DATE), actualDate));
-        coverageProductLogging.setField(CoverageProductLoggingFields.ORDER, registerEntry.getBelongsToField("order"));
-        coverageProductLogging.setField(CoverageProductLoggingFields.OPERATION, registerEntry.getBelongsToField("operation"));
-        coverageProductLogging.setField(CoverageProductLoggingFields.CHANGES,
-                numberService.setScaleWithDefaultMathContext(registerEntry.getDecimalField("quantity")));
-        coverageProductLogging.setField(CoverageProductLoggingFields.EVENT_TYPE, registerEntry.getStringField("eventType"));
-
-        return coverageProductLogging;
     }
 
     private Date getCoverageProductLoggingDateForOrderProduced(final Date finishDate, final Date actualDate) {
@@ -274,81 +271,110 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         return coverageDate;
     }
 
-    private void saveCoverage(final Entity materialRequirementCoverage, final List<Entity> entities) {
-        List<Entity> selectedOrders = materialRequirementCoverage.getHasManyField("coverageOrders");
+    private void saveCoverage(final Entity materialRequirementCoverage, final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, CoverageProductTimeline> productTimelines, final String productExtracted,
+            final String coverageType) {
+        boolean fromSelectedOrders = !materialRequirementCoverage.getHasManyField("coverageOrders").isEmpty();
 
-        if (!selectedOrders.isEmpty()) {
-            List<Entity> filtredEntities = entities.stream()
-                    .filter(e -> e.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER)).collect(Collectors.toList());
+        for (List<Entity> finishedCoverageProducts : Lists.partition(getCoverageProducts(productAndCoverageProducts),
+                L_SAVE_BATCH_SIZE)) {
+            fillCoverageProductStatesAndQuantities(finishedCoverageProducts, productTimelines);
 
-            for (Entity covProduct : filtredEntities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
-            }
-        } else {
-            for (Entity covProduct : entities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
-            }
+            saveFinishedCoverageProducts(materialRequirementCoverage, finishedCoverageProducts, productTimelines,
+                    productExtracted, coverageType, fromSelectedOrders);
         }
     }
 
-    private void saveCoverageProductLogging(final Entity log) {
-        String sqlLog = "INSERT INTO ordersupplies_coverageproductlogging(coverageproduct_id, date, "
-                + "order_id, delivery_id, operation_id, reservemissingquantity, changes, eventtype, state, warehouseNumber, deliveryNumberExternal) "
-                + "VALUES (currval('ordersupplies_coverageproduct_id_seq'), :date, :order_id, :delivery_id, :operation_id, "
-                + ":reservemissingquantity, :changes, :eventtype, :state, :warehouseNumber, :deliveryNumberExternal);";
+    private void saveFinishedCoverageProducts(final Entity materialRequirementCoverage,
+            final List<Entity> finishedCoverageProducts, final Map<Long, CoverageProductTimeline> productTimelines,
+            final String productExtracted, final String coverageType, final boolean fromSelectedOrders) {
+        fillCoverageProductSupplier(finishedCoverageProducts);
 
-        Map<String, Object> parametersLogg = Maps.newHashMap();
+        List<Entity> coverageProducts = filterCoverageProducts(finishedCoverageProducts, productExtracted, coverageType);
+
+        if (fromSelectedOrders) {
+            coverageProducts = coverageProducts.stream()
+                    .filter(e -> e.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER)).collect(Collectors.toList());
+        }
 
-        parametersLogg.put("date", log.getDateField(CoverageProductLoggingFields.DATE));
+        if (!coverageProducts.isEmpty()) {
+            saveCoverageProducts(materialRequirementCoverage, coverageProducts, productTimelines);
+        }
 
-        if (log.getBelongsToField(CoverageProductLoggingFields.DELIVERY) != null) {
-            parametersLogg.put("delivery_id", log.getBelongsToField(CoverageProductLoggingFields.DELIVERY).getId());
-        } else {
-            parametersLogg.put("delivery_id", null);
+        for (Entity coverageProduct : finishedCoverageProducts) {
+            productTimelines.remove(coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT).getId());
         }
+    }
 
-        if (log.getBelongsToField(CoverageProductLoggingFields.ORDER) != null) {
-            parametersLogg.put("order_id", log.getBelongsToField(CoverageProductLoggingFields.ORDER).getId());
-        } else {
-            parametersLogg.put("order_id", null);
+    private void saveCoverageProducts(final Entity materialRequirementCoverage, final List<Entity> coverageProducts,
+            final Map<Long, CoverageProductTimeline> productTimelines) {
+        List<Long> coverageProductIds = getNextCoverageProductIds(coverageProducts.size());
+
+        List<SqlParameterSource> coverageProductsParameters = Lists.newArrayListWithCapacity(coverageProducts.size());
+        List<SqlParameterSource> coverageProductLoggingsParameters = Lists.newArrayList();
+
+        for (int i = 0; i < coverageProducts.size(); i++) {
+            Entity coverageProduct = coverageProducts.get(i);
+            Long coverageProductId = coverageProductIds.get(i);
+
+            coverageProductsParameters.add(new MapSqlParameterSource(
+                    getCoverageProductParameters(materialRequirementCoverage, coverageProduct, coverageProductId)));
+
+            CoverageProductTimeline timeline = getProductTimeline(productTimelines,
+                    coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT));
+
+            for (int position = 0; position < timeline.size(); position++) {
+                coverageProductLoggingsParameters.add(new MapSqlParameterSource(
+                        getCoverageProductLoggingParameters(timeline, position, coverageProductId)));
+            }
         }
 
-        if (log.getBelongsToField(CoverageProductLoggingFields.OPERATION) != null) {
-            parametersLogg.put("operation_id", log.getBelongsToField(CoverageProductLoggingFields.OPERATION).getId());
-        } else {
-            parametersLogg.put("operation_id", null);
+        jdbcTemplate.batchUpdate(L_INSERT_COVERAGE_PRODUCT,
+                coverageProductsParameters.toArray(new SqlParameterSource[coverageProductsParameters.size()]));
 
+        for (List<SqlParameterSource> loggingsBatch : Lists.partition(coverageProductLoggingsParameters, L_SAVE_BATCH_SIZE)) {
+            jdbcTemplate.batchUpdate(L_INSERT_COVERAGE_PRODUCT_LOGGING,
+                    loggingsBatch.toArray(new SqlParameterSource[loggingsBatch.size()]));
         }
+    }
 
-        parametersLogg.put("reservemissingquantity", log.getDecimalField(CoverageProductLoggingFields.RESERVE_MISSING_QUANTITY));
-        parametersLogg.put("changes", log.getDecimalField(CoverageProductLoggingFields.CHANGES));
-        parametersLogg.put("eventtype", log.getStringField(CoverageProductLoggingFields.EVENT_TYPE));
-        parametersLogg.put("state", log.getStringField(CoverageProductLoggingFields.STATE));
-        parametersLogg.put("warehouseNumber", log.getStringField(CoverageProductLoggingFields.WAREHOUSE_NUMBER));
-        parametersLogg.put("deliveryNumberExternal", log.getStringField("deliveryNumberExternal"));
+    private List<Long> getNextCoverageProductIds(final int count) {
+        Map<String, Object> parameters = Maps.newHashMap();
 
-        SqlParameterSource nParameters = new MapSqlParameterSource(parametersLogg);
+        parameters.put("count", count);
 
-        jdbcTemplate.update(sqlLog, nParameters);
+        return jdbcTemplate.queryForList(
+                "SELECT nextval('ordersupplies_coverageproduct_id_seq') FROM generate_series(1, :count) ORDER BY 1", parameters,
+                Long.class);
     }
 
-    private void saveCoverageProduct(final Entity materialRequirementCoverage, final Entity coverageProduct) {
-        String sql = "INSERT INTO ordersupplies_coverageproduct "
-                + "(materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
-                + "reservemissingquantity, deliveredquantity, locationsquantity, state, productnumber, productname, "
-                + "productunit, produceQuantity, fromSelectedOrder, allProductsType, company_id) "
-                + "VALUES (:materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
-                + ":reservemissingquantity, :deliveredquantity, :locationsquantity, :state, :productnumber, :productname, "
-                + ":productunit, :produceQuantity, :fromSelectedOrder, :allProductsType, :company_id)";
+    private Map<String, Object> getCoverageProductLoggingParameters(final CoverageProductTimeline timeline, final int position,
+            final Long coverageProductId) {
+        Map<String, Object> parametersLogg = Maps.newHashMap();
+
+        CoverageProductLoggingState state = timeline.getState(position);
+
+        parametersLogg.put("coverageproduct_id", coverageProductId);
+        parametersLogg.put("date", timeline.getDate(position));
+        parametersLogg.put("delivery_id", timeline.getDeliveryId(position));
+        parametersLogg.put("order_id", timeline.getOrderId(position));
+        parametersLogg.put("operation_id", timeline.getOperationId(position));
+        parametersLogg.put("reservemissingquantity", timeline.getReserveMissingQuantity(position));
+        parametersLogg.put("changes", timeline.getChanges(position));
+        parametersLogg.put("eventtype", timeline.getEventType(position).getStringValue());
+        parametersLogg.put("state", Objects.isNull(state) ? null : state.getStringValue());
+        parametersLogg.put("warehouseNumber", timeline.getWarehouseNumber(position));
+        parametersLogg.put("deliveryNumberExternal", null);
+
+        return parametersLogg;
+    }
 
+    // Do not remove, around by aspect
+    private Map<String, Object> getCoverageProductParameters(final Entity materialRequirementCoverage,
+            final Entity coverageProduct, final Long coverageProductId) {
         Map<String, Object> parameters = Maps.newHashMap();
 
+        parameters.put("id", coverageProductId);
         parameters.put("materialrequirementcoverage_id", materialRequirementCoverage.getId());
         parameters.put("product_id", coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT).getId());
 
@@ -376,10 +402,10 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                 coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT).getStringField(ProductFields.UNIT));
         parameters.put("fromSelectedOrder", coverageProduct.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER));
         parameters.put("allProductsType", coverageProduct.getStringField(CoverageProductFields.ALL_PRODUCTS_TYPE));
+        parameters.put(L_PRODUCT_TYPE, null);
+        parameters.put(L_PLANNED_QUANTITY, null);
 
-        SqlParameterSource namedParameters = new MapSqlParameterSource(parameters);
-
-        jdbcTemplate.update(sql, namedParameters);
+        return parameters;
     }
 
     // Do not remove, around by aspect
@@ -452,8 +478,9 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                 .collect(Collectors.toList());
     }
 
-    private void fillFromRegistry(final Map<Long, Entity> productAndCoverageProducts, final Date coverageToDate,
-            final Date actualDate, final List<Entity> orderStates) {
+    private void fillFromRegistry(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, CoverageProductTimeline> productTimelines, final Date coverageToDate, final Date actualDate,
+            final List<Entity> orderStates) {
         List<String> states = Lists.newArrayList();
 
         if (!orderStates.isEmpty()) {
@@ -484,16 +511,15 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
         for (Entity reg : regs) {
             if (BigDecimal.ZERO.compareTo(reg.getDecimalField(CoverageRegisterFields.QUANTITY)) < 0) {
-                Entity coverageProductLogging = createCoverageProductLoggingForOrder(reg, actualDate, coverageToDate);
-
-                fillCoverageProductForOrder(productAndCoverageProducts, reg.getBelongsToField("product"),
-                        reg.getStringField("productType"), coverageProductLogging);
+                fillCoverageProductForOrder(productAndCoverageProducts, productTimelines, reg.getBelongsToField("product"),
+                        reg.getStringField("productType"), reg, actualDate, coverageToDate);
             }
         }
     }
 
-    private void fillFromRegistryAssignedOrder(final Map<Long, Entity> productAndCoverageProducts, final Entity assignedOrder,
-            final Date coverageToDate, final Date actualDate) {
+    private void fillFromRegistryAssignedOrder(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, CoverageProductTimeline> productTimelines, final Entity assignedOrder, final Date coverageToDate,
+            final Date actualDate) {
         StringBuilder query = new StringBuilder();
 
         query.append("SELECT registry FROM #orderSupplies_coverageRegister AS registry ");
@@ -508,28 +534,12 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
         for (Entity reg : regs) {
             if (BigDecimal.ZERO.compareTo(reg.getDecimalField(CoverageRegisterFields.QUANTITY)) < 0) {
-                Entity coverageProductLogging = createCoverageProductLoggingForOrder(reg, actualDate, coverageToDate);
-                fillCoverageProductForOrder(productAndCoverageProducts, reg.getBelongsToField("product"),
-                        reg.getStringField("productType"), coverageProductLogging);
+                fillCoverageProductForOrder(productAndCoverageProducts, productTimelines, reg.getBelongsToField("product"),
+                        reg.getStringField("productType"), reg, actualDate, coverageToDate);
             }
         }
     }
 
-    private Entity createCoverageProductLoggingForOrder(final Entity registerEntry, final Date actualDate,
-            final Date coverageToDate) {
-        Entity coverageProductLogging = orderSuppliesService.getCoverageProductLoggingDD().create();
-
-        coverageProductLogging.setField(CoverageProductLoggingFields.DATE,
-                getCoverageProductLoggingDateForOrder(registerEntry, actualDate, coverageToDate));
-        coverageProductLogging.setField(CoverageProductLoggingFields.ORDER, registerEntry.getBelongsToField("order"));
-        coverageProductLogging.setField(CoverageProductLoggingFields.OPERATION, registerEntry.getBelongsToField("operation"));
-        coverageProductLogging.setField(CoverageProductLoggingFields.CHANGES,
-                numberService.setScaleWithDefaultMathContext(registerEntry.getDecimalField("quantity")));
-        coverageProductLogging.setField(CoverageProductLoggingFields.EVENT_TYPE, registerEntry.getStringField("eventType"));
-
-        return coverageProductLogging;
-    }
-
     private Date getCoverageProductLoggingDateForOrder(final Entity registerEntry, final Date actualDate,
             final Date coverageToDate) {
         Date coverageDate = null;
@@ -545,8 +555,9 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
     }
 
     private void estimateProductDeliveriesInTime(final Entity materialRequirementCoverage,
-            final Map<Long, Entity> productAndCoverageProducts, final List<Entity> includedDeliveries, final Date actualDate,
-            final Date coverageToDate, final Entity belongsToFamily, final Boolean includeDraftDeliveries) {
+            final Map<Long, Entity> productAndCoverageProducts, final Map<Long, CoverageProductTimeline> productTimelines,
+            final List<Entity> includedDeliveries, final Date actualDate, final Date coverageToDate,
+            final Entity belongsToFamily, final Boolean includeDraftDeliveries) {
         for (Entity delivery : includedDeliveries) {
             Date coverageDate = getCoverageProductLoggingDateForDelivery(delivery, actualDate);
 
@@ -559,13 +570,14 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
             }
 
             for (Entity deliveryProduct : deliveryProducts) {
-                estimateProductDelivery(productAndCoverageProducts,
+                estimateProductDelivery(productAndCoverageProducts, productTimelines,
                         new CoverageProductForDelivery(coverageDate, delivery, deliveryProduct), belongsToFamily);
             }
         }
     }
 
     private void estimateProductDelivery(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, CoverageProductTimeline> productTimelines,
             final CoverageProductForDelivery coverageProductForDelivery, final Entity belongsToFamily) {
         if (checkIfProductShouldBeAdded(belongsToFamily, coverageProductForDelivery.getProduct())
                 && productAndCoverageProducts.containsKey(coverageProductForDelivery.getProduct().getId())) {
@@ -573,10 +585,7 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
             coverageProductForDelivery.setQuantity(quantity);
 
-            Entity coverageProductLogging = createCoverageProductLoggingForDelivery(coverageProductForDelivery);
-
-            fillCoverageProductForDelivery(productAndCoverageProducts, coverageProductForDelivery.getProduct(),
-                    coverageProductLogging);
+            fillCoverageProductForDelivery(productAndCoverageProducts, productTimelines, coverageProductForDelivery);
         }
     }
 
@@ -594,107 +603,86 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         return coverageDate;
     }
 
-    private Entity createCoverageProductLoggingForDelivery(final CoverageProductForDelivery coverageProductForDelivery) {
-        Entity coverageProductLogging = orderSuppliesService.getCoverageProductLoggingDD().create();
-
-        coverageProductLogging.setField(CoverageProductLoggingFields.DATE, coverageProductForDelivery.getCoverageDate());
-        coverageProductLogging.setField(CoverageProductLoggingFields.DELIVERY, coverageProductForDelivery.getDelivery());
-        coverageProductLogging.setField(CoverageProductLoggingFields.CHANGES,
-                numberService.setScaleWithDefaultMathContext(coverageProductForDelivery.getQuantity()));
-        coverageProductLogging.setField(CoverageProductLoggingFields.EVENT_TYPE,
-                CoverageProductLoggingEventType.DELIVERY.getStringValue());
-        coverageProductLogging.setField(CoverageProductLoggingFields.STATE, CoverageProductLoggingState.COVERED.getStringValue());
+    private void fillCoverageProductForDelivery(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, CoverageProductTimeline> productTimelines,
+            final CoverageProductForDelivery coverageProductForDelivery) {
+        Entity product = coverageProductForDelivery.getProduct();
+        BigDecimal changes = numberService.setScaleWithDefaultMathContext(coverageProductForDelivery.getQuantity());
 
-        return coverageProductLogging;
-    }
-
-    private void fillCoverageProductForDelivery(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
-            final Entity coverageProductLogging) {
-        if (coverageProductLogging != null) {
-            if (productAndCoverageProducts.containsKey(product.getId())) {
-                updateCoverageProductForDelivery(productAndCoverageProducts, product, coverageProductLogging);
-            } else {
-                addCoverageProductForDelivery(productAndCoverageProducts, product, coverageProductLogging);
-            }
+        if (productAndCoverageProducts.containsKey(product.getId())) {
+            updateCoverageProductForDelivery(productAndCoverageProducts, product, changes);
+        } else {
+            addCoverageProductForDelivery(productAndCoverageProducts, product, changes);
         }
+
+        getProductTimeline(productTimelines, product).addDeliveryEvent(coverageProductForDelivery.getCoverageDate(), changes,
+                coverageProductForDelivery.getDelivery().getId());
     }
 
     private void addCoverageProductForDelivery(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
-            final Entity coverageProductLogging) {
+            final BigDecimal changes) {
         Entity coverageProduct = orderSuppliesService.getCoverageProductDD().create();
 
         coverageProduct.setField(CoverageProductFields.PRODUCT, product);
-        coverageProduct.setField(CoverageProductFields.DELIVERED_QUANTITY, numberService
-                .setScaleWithDefaultMathContext(coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES)));
+        coverageProduct.setField(CoverageProductFields.DELIVERED_QUANTITY, changes);
         coverageProduct.setField(CoverageProductFields.STATE, CoverageProductState.COVERED.getStringValue());
-        coverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, Lists.newArrayList(coverageProductLogging));
 
         productAndCoverageProducts.put(product.getId(), coverageProduct);
     }
 
     private void updateCoverageProductForDelivery(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
-            final Entity coverageProductLogging) {
+            final BigDecimal changes) {
         Entity addedCoverageProduct = productAndCoverageProducts.get(product.getId());
 
         BigDecimal deliveredQuantity = BigDecimalUtils
                 .convertNullToZero(addedCoverageProduct.getDecimalField(CoverageProductFields.DELIVERED_QUANTITY));
 
-        deliveredQuantity = deliveredQuantity.add(coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES),
-                numberService.getMathContext());
-
-        List<Entity> coverageProductLoggings = Lists
-                .newArrayList(addedCoverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
-        coverageProductLoggings.add(coverageProductLogging);
+        deliveredQuantity = deliveredQuantity.add(changes, numberService.getMathContext());
 
         addedCoverageProduct.setField(CoverageProductFields.DELIVERED_QUANTITY,
                 numberService.setScaleWithDefaultMathContext(deliveredQuantity));
-        addedCoverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, coverageProductLoggings);
-
-        productAndCoverageProducts.put(product.getId(), addedCoverageProduct);
     }
 
-    private void fillCoverageProductForOrder(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
-            final String productType, final Entity coverageProductLogging) {
-        if (coverageProductLogging != null) {
-            if (productAndCoverageProducts.containsKey(product.getId())) {
-                updateCoverageProductForOrder(productAndCoverageProducts, product, productType, coverageProductLogging);
-            } else {
-                addCoverageProductForOrder(productAndCoverageProducts, product, productType, coverageProductLogging);
-            }
+    private void fillCoverageProductForOrder(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, CoverageProductTimeline> productTimelines, final Entity product, final String productType,
+            final Entity registerEntry, final Date actualDate, final Date coverageToDate) {
+        BigDecimal changes = numberService.setScaleWithDefaultMathContext(registerEntry.getDecimalField("quantity"));
+
+        if (productAndCoverageProducts.containsKey(product.getId())) {
+            updateCoverageProductForOrder(productAndCoverageProducts, product, productType, changes);
+        } else {
+            addCoverageProductForOrder(productAndCoverageProducts, product, productType, changes);
         }
+
+        getProductTimeline(productTimelines, product).addOrderEvent(
+                getCoverageProductLoggingDateForOrder(registerEntry, actualDate, coverageToDate),
+                CoverageProductLoggingEventType.parseString(registerEntry.getStringField("eventType")), changes,
+                getId(registerEntry.getBelongsToField("order")), getId(registerEntry.getBelongsToField("operation")));
     }
 
     private void addCoverageProductForOrder(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
-            final String productType, final Entity coverageProductLogging) {
+            final String productType, final BigDecimal changes) {
         Entity coverageProduct = orderSuppliesService.getCoverageProductDD().create();
 
         coverageProduct.setField(CoverageProductFields.PRODUCT, product);
         coverageProduct.setField(CoverageProductFields.PRODUCT_TYPE, productType);
         coverageProduct.setField(CoverageProductFields.ALL_PRODUCTS_TYPE, productType);
-        coverageProduct.setField(CoverageProductFields.DEMAND_QUANTITY, numberService
-                .setScaleWithDefaultMathContext(coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES)));
-        coverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, Lists.newArrayList(coverageProductLogging));
+        coverageProduct.setField(CoverageProductFields.DEMAND_QUANTITY, changes);
 
         productAndCoverageProducts.put(product.getId(), coverageProduct);
     }
 
     private void updateCoverageProductForOrder(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
-            final String productType, final Entity coverageProductLogging) {
+            final String productType, final BigDecimal changes) {
         Entity addedCoverageProduct = productAndCoverageProducts.get(product.getId());
 
         BigDecimal demandQuantity = BigDecimalUtils
                 .convertNullToZero(addedCoverageProduct.getDecimalField(CoverageProductFields.DEMAND_QUANTITY));
 
-        demandQuantity = demandQuantity.add(coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES),
-                numberService.getMathContext());
-
-        List<Entity> coverageProductLoggings = Lists
-                .newArrayList(addedCoverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
-        coverageProductLoggings.add(coverageProductLogging);
+        demandQuantity = demandQuantity.add(changes, numberService.getMathContext());
 
         addedCoverageProduct.setField(CoverageProductFields.DEMAND_QUANTITY,
                 numberService.setScaleWithDefaultMathContext(demandQuantity));
-        addedCoverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, coverageProductLoggings);
 
         String types = addedCoverageProduct.getStringField(CoverageProductFields.ALL_PRODUCTS_TYPE);
 
@@ -707,7 +695,8 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
     }
 
     private void estimateProductLocationsInTime(final Entity materialRequirementCoverage,
-            final Map<Long, Entity> productAndCoverageProducts, final List<Entity> coverageLocations, final Date actualDate) {
+            final Map<Long, Entity> productAndCoverageProducts, final Map<Long, CoverageProductTimeline> productTimelines,
+            final List<Entity> coverageLocations, final Date actualDate) {
         for (Entity coverageLocation : coverageLocations) {
             Entity location = coverageLocation.getBelongsToField(CoverageLocationFields.LOCATION);
 
@@ -724,37 +713,22 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                 Entity addedCoverageProduct = productAndCoverageProduct.getValue();
 
                 BigDecimal locationsQuantity = BigDecimalUtils.convertNullToZero(map.get(productAndCoverageProduct.getKey()));
-                Entity coverageProductLogging = createCoverageProductLoggingForLocations(location, actualDate, locationsQuantity);
-                List<Entity> coverageProductLoggings = Lists
-                        .newArrayList(addedCoverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
-                coverageProductLoggings.add(coverageProductLogging);
+
+                getProductTimeline(productTimelines, addedCoverageProduct.getBelongsToField(CoverageProductFields.PRODUCT))
+                        .addWarehouseState(actualDate, numberService.setScaleWithDefaultMathContext(locationsQuantity),
+                                location.getStringField(LocationFields.NUMBER));
+
                 BigDecimal lQuantity = BigDecimalUtils
                         .convertNullToZero(addedCoverageProduct.getDecimalField(CoverageProductFields.LOCATIONS_QUANTITY));
 
                 lQuantity = lQuantity.add(locationsQuantity, numberService.getMathContext());
                 addedCoverageProduct.setField(CoverageProductFields.LOCATIONS_QUANTITY, lQuantity);
-                addedCoverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, coverageProductLoggings);
             }
         }
     }
 
-    private Entity createCoverageProductLoggingForLocations(final Entity location, final Date actualDate,
-            final BigDecimal locationsQuantity) {
-        Entity coverageProductLogging = orderSuppliesService.getCoverageProductLoggingDD().create();
-
-        coverageProductLogging.setField(CoverageProductLoggingFields.DATE, actualDate);
-        coverageProductLogging.setField(CoverageProductLoggingFields.RESERVE_MISSING_QUANTITY,
-                numberService.setScaleWithDefaultMathContext(locationsQuantity));
-        coverageProductLogging.setField(CoverageProductLoggingFields.EVENT_TYPE,
-                CoverageProductLoggingEventType.WAREHOUSE_STATE.getStringValue());
-        coverageProductLogging.setField(CoverageProductLoggingFields.WAREHOUSE_NUMBER,
-                location.getStringField(LocationFields.NUMBER));
-
-        return coverageProductLogging;
-    }
-
-    private void fillCoverageProductSupplier(final Map<Long, Entity> productAndCoverageProducts) {
-        productAndCoverageProducts.values().stream()
+    private void fillCoverageProductSupplier(final List<Entity> coverageProducts) {
+        coverageProducts.stream()
                 .filter(coverageProduct -> CoverageProductState.LACK.getStringValue()
                         .equals(coverageProduct.getStringField(CoverageProductFields.STATE)))
                 .forEach(coverageProduct -> deliveriesService
@@ -763,11 +737,20 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                         .ifPresent(supplier -> coverageProduct.setField(CoverageProductFields.COMPANY, supplier)));
     }
 
-    private void fillCoverageProductStatesAndQuantities(final Map<Long, Entity> productAndCoverageProducts) {
-        for (Entry<Long, Entity> productAndCoverageProduct : productAndCoverageProducts.entrySet()) {
-            Entity coverageProduct = productAndCoverageProduct.getValue();
+    private void fillCoverageProductStatesAndQuantities(final List<Entity> coverageProducts,
+            final Map<Long, CoverageProductTimeline> productTimelines) {
+        List<CoverageProductTimeline> timelines = coverageProducts.stream()
+                .map(coverageProduct -> getProductTimeline(productTimelines,
+                        coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT)))
+                .collect(Collectors.toList());
+
+        List<Date> lackFromDates = coverageProductTimelineCalculator.calculateStates(timelines, numberService.getMathContext());
+
+        for (int i = 0; i < coverageProducts.size(); i++) {
+            Entity coverageProduct = coverageProducts.get(i);
+
+            coverageProduct.setField(CoverageProductFields.LACK_FROM_DATE, lackFromDates.get(i));
 
-            fillCoverageProductLoggingsStates(coverageProduct);
             fillCoverageProductQuantities(coverageProduct);
         }
     }
@@ -814,78 +797,9 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         coverageProduct.setField(CoverageProductFields.STATE, state);
     }
 
-    private void fillCoverageProductLoggingsStates(final Entity coverageProduct) {
-        List<Entity> coverageProductLoggings = Lists
-                .newLinkedList(coverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
-        Collections.sort(coverageProductLoggings, new Comparator<Entity>() {
-
-            @Override
-            public int compare(final Entity entity1, final Entity entity2) {
-                return ComparisonChain.start()
-                        .compare(entity1.getDateField(CoverageProductLoggingFields.DATE),
-                                entity2.getDateField(CoverageProductLoggingFields.DATE))
-                        .compare(entity2.getStringField(CoverageProductLoggingFields.EVENT_TYPE),
-                                entity1.getStringField(CoverageProductLoggingFields.EVENT_TYPE))
-                        .result();
-            }
-        });
-
-        BigDecimal reserveMissingQuantity = BigDecimal.ZERO;
-
-        for (Entity coverageProductLogging : coverageProductLoggings) {
-            String eventType = coverageProductLogging.getStringField(CoverageProductLoggingFields.EVENT_TYPE);
-
-            if (CoverageProductLoggingEventType.WAREHOUSE_STATE.getStringValue().equals(eventType)) {
-                BigDecimal quantity = coverageProductLogging
-                        .getDecimalField(CoverageProductLoggingFields.RESERVE_MISSING_QUANTITY);
-
-                reserveMissingQuantity = reserveMissingQuantity.add(quantity, numberService.getMathContext());
-            } else if (CoverageProductLoggingEventType.DELIVERY.getStringValue().equals(eventType)
-                    || CoverageProductLoggingEventType.ORDER_OUTPUT.getStringValue().equals(eventType)) {
-                BigDecimal quantity = coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES);
-
-                reserveMissingQuantity = reserveMissingQuantity.add(quantity, numberService.getMathContext());
-
-                fillCoverageProductLogginState(coverageProduct, coverageProductLogging, reserveMissingQuantity);
-            } else if (CoverageProductLoggingEventType.OPERATION_INPUT.getStringValue().equals(eventType)
-                    || CoverageProductLoggingEventType.ORDER_INPUT.getStringValue().equals(eventType)) {
-                BigDecimal quantity = coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES);
-
-                reserveMissingQuantity = reserveMissingQuantity.subtract(quantity, numberService.getMathContext());
-
-                fillCoverageProductLogginState(coverageProduct, coverageProductLogging, reserveMissingQuantity);
-            }
-        }
-
-        coverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, coverageProductLoggings);
-    }
-
-    private void fillCoverageProductLogginState(final Entity coverageProduct, final Entity coverageProductLogging,
-            final BigDecimal reserveMissingQuantity) {
-        String state = null;
-
-        if (reserveMissingQuantity.compareTo(BigDecimal.ZERO) >= 0) {
-            state = CoverageProductLoggingState.COVERED.getStringValue();
-        } else {
-            state = CoverageProductLoggingState.LACK.getStringValue();
-
-            Date lackFromDate = coverageProduct.getDateField(CoverageProductFields.LACK_FROM_DATE);
-
-            if (lackFromDate == null) {
-                lackFromDate = coverageProductLogging.getDateField(CoverageProductLoggingFields.DATE);
-
-                coverageProduct.setField(CoverageProductFields.LACK_FROM_DATE, lackFromDate);
-            }
-        }
-
-        coverageProductLogging.setField(CoverageProductLoggingFields.RESERVE_MISSING_QUANTITY, reserveMissingQuantity);
-        coverageProductLogging.setField(CoverageProductLoggingFields.STATE, state);
-    }
-
-    private List<Entity> filterCoverageProducts(final Map<Long, Entity> productAndCoverageProducts, final String productExtracted,
+    private List<Entity> filterCoverageProducts(final List<Entity> coverageProducts, final String productExtracted,
             final String coverageType) {
-        return filterCoverageProductsWithCoverageType(
-                filterCoverageProductsWithProductExtracted(getCoverageProducts(productAndCoverageProducts), productExtracted),
+        return filterCoverageProductsWithCoverageType(filterCoverageProductsWithProductExtracted(coverageProducts, productExtracted),
                 coverageType);
     }
 
@@ -966,6 +880,19 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         }
     }
 
+    private CoverageProductTimeline getProductTimeline(final Map<Long, CoverageProductTimeline> productTimelines,
+            final Entity product) {
+        return productTimelines.computeIfAbsent(product.getId(), productId -> new CoverageProductTimeline());
+    }
+
+    private Long getId(final Entity entity) {
+        if (Objects.isNull(entity)) {
+            return null;
+        }
+
+        return entity.getId();
+    }
+
     private DataDefinition getCoverageRegisterDD() {
         return dataDefinitionService.get(OrderSuppliesConstants.PLUGIN_IDENTIFIER,
                 OrderSuppliesConstants.MODEL_COVERAGE_REGISTER);
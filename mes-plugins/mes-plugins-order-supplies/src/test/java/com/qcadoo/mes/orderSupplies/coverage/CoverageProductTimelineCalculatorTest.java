@@ -0,0 +1,153 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.coverage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.orderSupplies.constants.CoverageProductLoggingEventType;
+
+public class CoverageProductTimelineCalculatorTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoverageProductTimelineCalculatorTest.class);
+
+    private static final MathContext L_MATH_CONTEXT = MathContext.DECIMAL64;
+
+    private static final CoverageProductLoggingEventType[] L_EVENT_TYPES = { CoverageProductLoggingEventType.OPERATION_INPUT,
+            CoverageProductLoggingEventType.ORDER_INPUT, CoverageProductLoggingEventType.ORDER_OUTPUT };
+
+    private final List<CoverageProductTimelineCalculator> calculators = Lists.newArrayList();
+
+    @After
+    public void destroy() {
+        calculators.forEach(CoverageProductTimelineCalculator::destroy);
+    }
+
+    @Test
+    public void shouldCalculateSameStatesInParallel() {
+        // given
+        List<CoverageProductTimeline> serialTimelines = generateTimelines(5000, 20, 1L);
+        List<CoverageProductTimeline> parallelTimelines = generateTimelines(5000, 20, 1L);
+
+        // when
+        List<Date> serialLackFromDates = createCalculator(1).calculateStates(serialTimelines, L_MATH_CONTEXT);
+        List<Date> parallelLackFromDates = createCalculator(4).calculateStates(parallelTimelines, L_MATH_CONTEXT);
+
+        // then
+        assertEquals(serialLackFromDates, parallelLackFromDates);
+
+        for (int i = 0; i < serialTimelines.size(); i++) {
+            CoverageProductTimeline serialTimeline = serialTimelines.get(i);
+            CoverageProductTimeline parallelTimeline = parallelTimelines.get(i);
+
+            for (int position = 0; position < serialTimeline.size(); position++) {
+                assertEquals(serialTimeline.getDate(position), parallelTimeline.getDate(position));
+                assertEquals(serialTimeline.getState(position), parallelTimeline.getState(position));
+                assertEquals(serialTimeline.getReserveMissingQuantity(position),
+                        parallelTimeline.getReserveMissingQuantity(position));
+            }
+        }
+    }
+
+    @Ignore("benchmark, run manually")
+    @Test
+    public void shouldCompareSerialAndParallelCalculation() {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        CoverageProductTimelineCalculator serialCalculator = createCalculator(1);
+        CoverageProductTimelineCalculator parallelCalculator = createCalculator(parallelism);
+
+        for (int run = 0; run < 5; run++) {
+            List<CoverageProductTimeline> serialTimelines = generateTimelines(50000, 40, run);
+            List<CoverageProductTimeline> parallelTimelines = generateTimelines(50000, 40, run);
+
+            long serialStart = System.nanoTime();
+            List<Date> serialLackFromDates = serialCalculator.calculateStates(serialTimelines, L_MATH_CONTEXT);
+            long serialTime = System.nanoTime() - serialStart;
+
+            long parallelStart = System.nanoTime();
+            List<Date> parallelLackFromDates = parallelCalculator.calculateStates(parallelTimelines, L_MATH_CONTEXT);
+            long parallelTime = System.nanoTime() - parallelStart;
+
+            assertEquals(serialLackFromDates, parallelLackFromDates);
+
+            LOG.info(String.format("run %d: serial %d ms, parallel (%d threads) %d ms", run, serialTime / 1000000,
+                    parallelism, parallelTime / 1000000));
+        }
+    }
+
+    private CoverageProductTimelineCalculator createCalculator(final int parallelism) {
+        CoverageProductTimelineCalculator calculator = new CoverageProductTimelineCalculator();
+
+        ReflectionTestUtils.setField(calculator, "parallelism", parallelism);
+
+        calculator.init();
+
+        calculators.add(calculator);
+
+        return calculator;
+    }
+
+    private List<CoverageProductTimeline> generateTimelines(final int products, final int eventsPerProduct, final long seed) {
+        Random random = new Random(seed);
+
+        List<CoverageProductTimeline> timelines = Lists.newArrayListWithCapacity(products);
+
+        for (int product = 0; product < products; product++) {
+            CoverageProductTimeline timeline = new CoverageProductTimeline();
+
+            timeline.addWarehouseState(new Date(0L), new BigDecimal(random.nextInt(1000)), "W1");
+
+            for (int event = 0; event < eventsPerProduct; event++) {
+                Date date = new Date(1000L * random.nextInt(100000));
+                BigDecimal quantity = new BigDecimal(random.nextInt(100000)).movePointLeft(3);
+
+                if (random.nextInt(4) == 0) {
+                    timeline.addDeliveryEvent(date, quantity, (long) event);
+                } else {
+                    timeline.addOrderEvent(date, L_EVENT_TYPES[random.nextInt(L_EVENT_TYPES.length)], quantity, (long) event,
+                            null);
+                }
+            }
+
+            timelines.add(timeline);
+        }
+
+        return timelines;
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.coverage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.qcadoo.mes.orderSupplies.constants.CoverageProductLoggingEventType;
+import com.qcadoo.mes.orderSupplies.constants.CoverageProductLoggingState;
+
+public class CoverageProductTimelineTest {
+
+    private static final MathContext L_MATH_CONTEXT = MathContext.DECIMAL64;
+
+    private CoverageProductTimeline timeline;
+
+    @Before
+    public void init() {
+        timeline = new CoverageProductTimeline();
+    }
+
+    @Test
+    public void shouldReturnNullLackFromDateWhenProductIsCovered() {
+        // given
+        timeline.addOrderEvent(date(10), CoverageProductLoggingEventType.ORDER_INPUT, new BigDecimal("5"), 1L, null);
+        timeline.addWarehouseState(date(1), new BigDecimal("10"), "W1");
+
+        // when
+        Date lackFromDate = timeline.calculateStates(L_MATH_CONTEXT);
+
+        // then
+        assertNull(lackFromDate);
+        assertEquals(CoverageProductLoggingEventType.WAREHOUSE_STATE, timeline.getEventType(0));
+        assertNull(timeline.getState(0));
+        assertNull(timeline.getChanges(0));
+        assertEquals(0, new BigDecimal("10").compareTo(timeline.getReserveMissingQuantity(0)));
+        assertEquals(CoverageProductLoggingState.COVERED, timeline.getState(1));
+        assertEquals(0, new BigDecimal("5").compareTo(timeline.getReserveMissingQuantity(1)));
+        assertEquals(Long.valueOf(1L), timeline.getOrderId(1));
+    }
+
+    @Test
+    public void shouldReturnDateOfFirstLack() {
+        // given
+        timeline.addOrderEvent(date(20), CoverageProductLoggingEventType.ORDER_INPUT, new BigDecimal("8"), 1L, null);
+        timeline.addOrderEvent(date(10), CoverageProductLoggingEventType.OPERATION_INPUT, new BigDecimal("4"), 2L, 3L);
+        timeline.addWarehouseState(date(1), new BigDecimal("3"), "W1");
+        timeline.addDeliveryEvent(date(15), new BigDecimal("6"), 4L);
+
+        // when
+        Date lackFromDate = timeline.calculateStates(L_MATH_CONTEXT);
+
+        // then
+        assertEquals(date(10), lackFromDate);
+        assertEquals(date(10), timeline.getDate(1));
+        assertEquals(CoverageProductLoggingState.LACK, timeline.getState(1));
+        assertEquals(0, new BigDecimal("-1").compareTo(timeline.getReserveMissingQuantity(1)));
+        assertEquals(CoverageProductLoggingState.COVERED, timeline.getState(2));
+        assertEquals(Long.valueOf(4L), timeline.getDeliveryId(2));
+        assertEquals(CoverageProductLoggingState.LACK, timeline.getState(3));
+        assertEquals(0, new BigDecimal("-3").compareTo(timeline.getReserveMissingQuantity(3)));
+    }
+
+    @Test
+    public void shouldPutLaterEventTypesFirstForTheSameDate() {
+        // given
+        timeline.addOrderEvent(date(5), CoverageProductLoggingEventType.ORDER_INPUT, new BigDecimal("2"), 1L, null);
+        timeline.addDeliveryEvent(date(5), new BigDecimal("2"), 2L);
+        timeline.addOrderEvent(date(5), CoverageProductLoggingEventType.ORDER_OUTPUT, new BigDecimal("1"), 3L, null);
+
+        // when
+        Date lackFromDate = timeline.calculateStates(L_MATH_CONTEXT);
+
+        // then
+        assertEquals(date(5), lackFromDate);
+        assertEquals(CoverageProductLoggingEventType.ORDER_OUTPUT, timeline.getEventType(0));
+        assertEquals(CoverageProductLoggingEventType.ORDER_INPUT, timeline.getEventType(1));
+        assertEquals(CoverageProductLoggingEventType.DELIVERY, timeline.getEventType(2));
+        assertEquals(0, new BigDecimal("-1").compareTo(timeline.getReserveMissingQuantity(1)));
+        assertEquals(CoverageProductLoggingState.LACK, timeline.getState(1));
+        assertEquals(CoverageProductLoggingState.COVERED, timeline.getState(2));
+    }
+
+    @Test
+    public void shouldKeepInsertionOrderForEqualEvents() {
+        // given
+        for (long orderId = 1; orderId <= 20; orderId++) {
+            timeline.addOrderEvent(date(5), CoverageProductLoggingEventType.ORDER_INPUT, BigDecimal.ONE, orderId, null);
+        }
+
+        // when
+        timeline.calculateStates(L_MATH_CONTEXT);
+
+        // then
+        assertEquals(20, timeline.size());
+
+        for (int position = 0; position < timeline.size(); position++) {
+            assertEquals(Long.valueOf(position + 1), timeline.getOrderId(position));
+        }
+    }
+
+    private static Date date(final long seconds) {
+        return new Date(seconds * 1000L);
+    }
+
+}
@@ -28,6 +28,7 @@ import org.springframework.stereotype.Component;
 
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
 import com.qcadoo.mes.basic.imports.parsers.DictionaryCellParser;
+import com.qcadoo.mes.basic.imports.services.ImportLookupCache;
 import com.qcadoo.model.api.DataDefinitionService;
 
 @Component
@@ -36,8 +37,11 @@ public class OrderCategoryCellParser {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ImportLookupCache importLookupCache;
+
     public CellParser orderCategory() {
-        return new DictionaryCellParser(dataDefinitionService, "orderCategory");
+        return new DictionaryCellParser(dataDefinitionService, importLookupCache, "orderCategory");
     }
 
 }
@@ -0,0 +1,166 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.schedule;
+
+import java.sql.Types;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.orders.constants.ScheduleWorkerAssignCriterion;
+
+/**
+ * Assigns workers to positions of a schedule with a fixed number of queries: positions, workers qualified for their
+ * operations, finish dates of workers' operational tasks and last workers of workstations are loaded once, the assignment
+ * is done by {@link WorkerAssignmentScheduler} and all positions are updated in one batch.
+ * <p>
+ * Time spent on loading, assignment and saving is logged for every run.
+ */
+@Service
+public class ScheduleWorkerAssignmentService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduleWorkerAssignmentService.class);
+
+    private static final String L_SCHEDULE_ID = "scheduleId";
+
+    private static final String L_POSITIONS_QUERY = "SELECT sp.id, sp.workstation_id, toc.operation_id, sp.machineworktime, "
+            + "sp.starttime, sp.endtime FROM orders_scheduleposition sp "
+            + "JOIN technologies_technologyoperationcomponent toc ON sp.technologyoperationcomponent_id = toc.id "
+            + "WHERE sp.schedule_id = :scheduleId ORDER BY sp.starttime, sp.id";
+
+    // workers having every active skill of the operation at the required level
+    private static final String L_OPERATION_WORKERS_QUERY = "SELECT o.operation_id, s.id AS staff_id "
+            + "FROM (SELECT DISTINCT toc.operation_id FROM orders_scheduleposition sp "
+            + "JOIN technologies_technologyoperationcomponent toc ON sp.technologyoperationcomponent_id = toc.id "
+            + "WHERE sp.schedule_id = :scheduleId) o CROSS JOIN basic_staff s WHERE s.active = true "
+            + "AND NOT EXISTS (SELECT 1 FROM technologies_operationskill os "
+            + "WHERE os.operation_id = o.operation_id AND os.active = true "
+            + "AND NOT EXISTS (SELECT 1 FROM basic_staffskill ss WHERE ss.staff_id = s.id AND ss.skill_id = os.skill_id "
+            + "AND ss.active = true AND ss.level >= os.requiredlevel)) ORDER BY s.id";
+
+    private static final String L_WORKERS_FINISH_DATES_QUERY = "SELECT ot.staff_id, max(ot.finishdate) AS finishdate "
+            + "FROM orders_operationaltask ot WHERE ot.staff_id IS NOT NULL AND ot.state <> '04rejected' "
+            + "GROUP BY ot.staff_id";
+
+    private static final String L_WORKSTATIONS_LAST_WORKERS_QUERY = "SELECT DISTINCT ON (ot.workstation_id) "
+            + "ot.workstation_id, ot.staff_id FROM orders_operationaltask ot "
+            + "WHERE ot.workstation_id IN (SELECT sp.workstation_id FROM orders_scheduleposition sp "
+            + "WHERE sp.schedule_id = :scheduleId) AND ot.staff_id IS NOT NULL AND ot.state <> '04rejected' "
+            + "ORDER BY ot.workstation_id, ot.finishdate DESC";
+
+    private static final String L_UPDATE_POSITION = "UPDATE orders_scheduleposition SET staff_id = :staffId WHERE id = :id";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void assignWorkersToOperations(final Long scheduleId, final Date scheduleStartTime,
+            final String workerAssignCriterion) {
+        long startTime = System.nanoTime();
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put(L_SCHEDULE_ID, scheduleId);
+
+        Map<Long, List<Long>> operationWorkers = Maps.newHashMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_OPERATION_WORKERS_QUERY, params)) {
+            operationWorkers.computeIfAbsent(getLong(row, "operation_id"), operationId -> Lists.newArrayList()).add(
+                    getLong(row, "staff_id"));
+        }
+
+        Map<Long, Date> workersFinishDates = Maps.newHashMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_WORKERS_FINISH_DATES_QUERY, params)) {
+            if (Objects.nonNull(row.get("finishdate"))) {
+                workersFinishDates.put(getLong(row, "staff_id"), (Date) row.get("finishdate"));
+            }
+        }
+
+        Map<Long, Long> workstationLastWorkers = Maps.newHashMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_WORKSTATIONS_LAST_WORKERS_QUERY, params)) {
+            workstationLastWorkers.put(getLong(row, "workstation_id"), getLong(row, "staff_id"));
+        }
+
+        List<WorkerAssignmentScheduler.Position> positions = Lists.newArrayList();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_POSITIONS_QUERY, params)) {
+            Number machineWorkTime = (Number) row.get("machineworktime");
+
+            positions.add(new WorkerAssignmentScheduler.Position(getLong(row, "id"), getLong(row, "workstation_id"),
+                    getLong(row, "operation_id"), Objects.isNull(machineWorkTime) ? 0 : machineWorkTime.intValue(),
+                    (Date) row.get("starttime"), (Date) row.get("endtime")));
+        }
+
+        long loadTime = System.nanoTime();
+
+        WorkerAssignmentScheduler scheduler = new WorkerAssignmentScheduler(scheduleStartTime,
+                ScheduleWorkerAssignCriterion.WORKSTATION_LAST_OPERATOR_LATEST_FINISHED.getStringValue().equals(
+                        workerAssignCriterion), operationWorkers, workersFinishDates, workstationLastWorkers);
+
+        List<WorkerAssignmentScheduler.Position> assignedPositions = scheduler.assign(positions);
+
+        long assignTime = System.nanoTime();
+
+        if (!assignedPositions.isEmpty()) {
+            jdbcTemplate.batchUpdate(L_UPDATE_POSITION, assignedPositions.stream().map(this::toUpdateParams)
+                    .toArray(SqlParameterSource[]::new));
+        }
+
+        long saveTime = System.nanoTime();
+
+        LOG.info(String.format(
+                "Workers assigned to schedule %d: %d of %d positions in %d ms (loading %d ms, assignment %d ms, saving %d ms)",
+                scheduleId, assignedPositions.size(), positions.size(), toMillis(saveTime - startTime),
+                toMillis(loadTime - startTime), toMillis(assignTime - loadTime), toMillis(saveTime - assignTime)));
+    }
+
+    private SqlParameterSource toUpdateParams(final WorkerAssignmentScheduler.Position position) {
+        return new MapSqlParameterSource().addValue("id", position.getId()).addValue("staffId", position.getStaffId(),
+                Types.BIGINT);
+    }
+
+    private Long getLong(final Map<String, Object> row, final String column) {
+        Number value = (Number) row.get(column);
+
+        return Objects.isNull(value) ? null : value.longValue();
+    }
+
+    private long toMillis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+}
@@ -0,0 +1,212 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.schedule;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ShiftCalendarService;
+import com.qcadoo.mes.orders.constants.ScheduleSortOrder;
+import com.qcadoo.mes.orders.constants.ScheduleWorkstationAssignCriterion;
+import com.qcadoo.mes.productionLines.constants.ProductionLinesConstants;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Assigns positions of a schedule to workstations with a fixed number of queries: positions, workstations of their
+ * operations and finish dates of existing operational tasks are loaded once, the assignment is done by
+ * {@link WorkstationAssignmentScheduler} and all assigned positions are updated in one batch.
+ */
+@Service
+public class ScheduleWorkstationAssignmentService {
+
+    private static final String L_SCHEDULE_ID = "scheduleId";
+
+    private static final String L_SCHEDULE_START_TIME = "scheduleStartTime";
+
+    private static final String L_POSITIONS_QUERY = "SELECT sp.id, sp.order_id, sp.technologyoperationcomponent_id, "
+            + "toc.parent_id, sp.machineworktime, sp.additionaltime, sp.endtime FROM orders_scheduleposition sp "
+            + "JOIN technologies_technologyoperationcomponent toc ON sp.technologyoperationcomponent_id = toc.id "
+            + "WHERE sp.schedule_id = :scheduleId ORDER BY "
+            + "string_to_array(regexp_replace(rtrim(toc.nodenumber, '.'), '[^0-9.]', '0', 'g'), '.')::int[] desc, ";
+
+    private static final String L_SCHEDULE_WORKSTATIONS = "SELECT tw.workstation_id "
+            + "FROM jointable_technologyoperationcomponent_workstation tw "
+            + "WHERE tw.technologyoperationcomponent_id IN (SELECT sp.technologyoperationcomponent_id "
+            + "FROM orders_scheduleposition sp WHERE sp.schedule_id = :scheduleId)";
+
+    private static final String L_WORKSTATIONS_QUERY = "SELECT tw.technologyoperationcomponent_id, w.id, w.productionline_id "
+            + "FROM jointable_technologyoperationcomponent_workstation tw "
+            + "JOIN basic_workstation w ON w.id = tw.workstation_id "
+            + "WHERE tw.technologyoperationcomponent_id IN (SELECT sp.technologyoperationcomponent_id "
+            + "FROM orders_scheduleposition sp WHERE sp.schedule_id = :scheduleId) ORDER BY w.id";
+
+    private static final String L_OPERATIONAL_TASKS_FINISH_DATES_QUERY = "SELECT ot.workstation_id, "
+            + "max(ot.finishdate) AS finishdate FROM orders_operationaltask ot "
+            + "WHERE ot.workstation_id IN (" + L_SCHEDULE_WORKSTATIONS + ") "
+            + "AND ot.state <> '04rejected' AND ot.finishdate > :scheduleStartTime GROUP BY ot.workstation_id";
+
+    private static final String L_UPDATE_POSITION = "UPDATE orders_scheduleposition SET workstation_id = :workstationId, "
+            + "starttime = :startTime, endtime = :endTime, staff_id = NULL WHERE id = :id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private ShiftCalendarService shiftCalendarService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void assignOperationsToWorkstations(final Long scheduleId, final Date scheduleStartTime,
+            final String workstationAssignCriterion, final String sortOrder) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put(L_SCHEDULE_ID, scheduleId);
+        params.put(L_SCHEDULE_START_TIME, scheduleStartTime);
+
+        ListMultimap<Long, Long> operationComponentWorkstations = ArrayListMultimap.create();
+        Map<Long, Long> workstationProductionLines = Maps.newHashMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_WORKSTATIONS_QUERY, params)) {
+            operationComponentWorkstations.put(getLong(row, "technologyoperationcomponent_id"), getLong(row, "id"));
+            workstationProductionLines.put(getLong(row, "id"), getLong(row, "productionline_id"));
+        }
+
+        Map<Long, Date> operationalTasksFinishDates = Maps.newHashMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_OPERATIONAL_TASKS_FINISH_DATES_QUERY, params)) {
+            operationalTasksFinishDates.put(getLong(row, "workstation_id"), (Date) row.get("finishdate"));
+        }
+
+        List<WorkstationAssignmentScheduler.Position> positions = Lists.newArrayList();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(getPositionsQuery(sortOrder), params)) {
+            Long operationComponentId = getLong(row, "technologyoperationcomponent_id");
+
+            positions.add(new WorkstationAssignmentScheduler.Position(getLong(row, "id"), getLong(row, "order_id"),
+                    operationComponentId, getLong(row, "parent_id"), getInt(row, "machineworktime"),
+                    getInt(row, "additionaltime"), operationComponentWorkstations.get(operationComponentId),
+                    (Date) row.get("endtime")));
+        }
+
+        WorkstationAssignmentScheduler scheduler = new WorkstationAssignmentScheduler(scheduleStartTime,
+                ScheduleWorkstationAssignCriterion.SHORTEST_TIME.getStringValue().equals(workstationAssignCriterion),
+                workstationProductionLines, operationalTasksFinishDates,
+                new ProductionLinesCalendar(getProductionLines(workstationProductionLines.values())));
+
+        List<WorkstationAssignmentScheduler.Position> assignedPositions = scheduler.assign(positions);
+
+        if (!assignedPositions.isEmpty()) {
+            jdbcTemplate.batchUpdate(L_UPDATE_POSITION, assignedPositions.stream().map(this::toUpdateParams)
+                    .toArray(SqlParameterSource[]::new));
+        }
+    }
+
+    private String getPositionsQuery(final String sortOrder) {
+        if (ScheduleSortOrder.DESCENDING.getStringValue().equals(sortOrder)) {
+            return L_POSITIONS_QUERY + "sp.machineworktime desc";
+        } else {
+            return L_POSITIONS_QUERY + "sp.machineworktime asc";
+        }
+    }
+
+    private Map<Long, Entity> getProductionLines(final Collection<Long> productionLineIds) {
+        List<Long> ids = Lists.newArrayList(productionLineIds);
+
+        ids.removeIf(Objects::isNull);
+
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<Long, Entity> productionLines = Maps.newHashMap();
+
+        for (Entity productionLine : dataDefinitionService
+                .get(ProductionLinesConstants.PLUGIN_IDENTIFIER, ProductionLinesConstants.MODEL_PRODUCTION_LINE).find()
+                .add(SearchRestrictions.in("id", ids)).list().getEntities()) {
+            productionLines.put(productionLine.getId(), productionLine);
+        }
+
+        return productionLines;
+    }
+
+    private SqlParameterSource toUpdateParams(final WorkstationAssignmentScheduler.Position position) {
+        return new MapSqlParameterSource().addValue("id", position.getId())
+                .addValue("workstationId", position.getWorkstationId()).addValue("startTime", position.getStartTime())
+                .addValue("endTime", position.getEndTime());
+    }
+
+    private Long getLong(final Map<String, Object> row, final String column) {
+        Number value = (Number) row.get(column);
+
+        return Objects.isNull(value) ? null : value.longValue();
+    }
+
+    private int getInt(final Map<String, Object> row, final String column) {
+        Number value = (Number) row.get(column);
+
+        return Objects.isNull(value) ? 0 : value.intValue();
+    }
+
+    private class ProductionLinesCalendar implements WorkstationAssignmentScheduler.WorkingCalendar {
+
+        private final Map<Long, Entity> productionLines;
+
+        ProductionLinesCalendar(final Map<Long, Entity> productionLines) {
+            this.productionLines = productionLines;
+        }
+
+        @Override
+        public Date getNearestWorkingDate(final Date date, final Long productionLineId) {
+            return shiftCalendarService.findNearestWorkingDate(date, getProductionLine(productionLineId)).orElse(date);
+        }
+
+        @Override
+        public Date findDateAfterWorkingTime(final Date dateFrom, final int seconds, final Long productionLineId) {
+            return shiftCalendarService.findDateAfterWorkingTime(dateFrom, seconds, getProductionLine(productionLineId));
+        }
+
+        private Entity getProductionLine(final Long productionLineId) {
+            return Objects.isNull(productionLineId) ? null : productionLines.get(productionLineId);
+        }
+
+    }
+
+}
@@ -0,0 +1,155 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.schedule;
+
+import static java.util.Map.Entry.comparingByValue;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Assigns workers to schedule positions without database access.
+ * <p>
+ * Positions are given in the order of their start times. A worker can take a position if the worker has the skills required
+ * by its operation and the worker's last position or operational task finishes before the position starts. The last worker
+ * of the workstation is preferred, otherwise the worker who finished first or last, depending on the criterion.
+ */
+public class WorkerAssignmentScheduler {
+
+    private final Date scheduleStartTime;
+
+    private final boolean latestFinished;
+
+    private final Map<Long, List<Long>> operationWorkers;
+
+    private final Map<Long, Date> workersFinishDates;
+
+    private final Map<Long, Long> workstationLastWorkers;
+
+    public WorkerAssignmentScheduler(final Date scheduleStartTime, final boolean latestFinished,
+            final Map<Long, List<Long>> operationWorkers, final Map<Long, Date> operationalTasksFinishDates,
+            final Map<Long, Long> operationalTasksLastWorkers) {
+        this.scheduleStartTime = scheduleStartTime;
+        this.latestFinished = latestFinished;
+        this.operationWorkers = operationWorkers;
+        this.workersFinishDates = Maps.newHashMap(operationalTasksFinishDates);
+        this.workstationLastWorkers = Maps.newHashMap(operationalTasksLastWorkers);
+    }
+
+    /**
+     * @return positions to update, in the order of assignment; positions without a matching worker are returned with no
+     *         worker
+     */
+    public List<Position> assign(final List<Position> positions) {
+        List<Position> assignedPositions = Lists.newArrayList();
+
+        for (Position position : positions) {
+            if ((position.machineWorkTime == 0) || Objects.isNull(position.workstationId)
+                    || Objects.isNull(position.startTime) || Objects.isNull(position.endTime)) {
+                continue;
+            }
+
+            Map<Long, Date> operationWorkersFinishDates = Maps.newHashMap();
+
+            for (Long workerId : operationWorkers.getOrDefault(position.operationId, Collections.emptyList())) {
+                Date finishDate = workersFinishDates.getOrDefault(workerId, scheduleStartTime);
+
+                if (finishDate.compareTo(position.startTime) <= 0) {
+                    operationWorkersFinishDates.put(workerId, finishDate);
+                }
+            }
+
+            Long workstationLastWorkerId = workstationLastWorkers.get(position.workstationId);
+
+            Optional<Entry<Long, Date>> chosenEntry = operationWorkersFinishDates.entrySet().stream()
+                    .filter(entry -> entry.getKey().equals(workstationLastWorkerId)).findFirst();
+
+            if (!chosenEntry.isPresent()) {
+                if (latestFinished) {
+                    chosenEntry = operationWorkersFinishDates.entrySet().stream().max(comparingByValue());
+                } else {
+                    chosenEntry = operationWorkersFinishDates.entrySet().stream().min(comparingByValue());
+                }
+            }
+
+            position.staffId = null;
+
+            chosenEntry.ifPresent(entry -> {
+                workersFinishDates.put(entry.getKey(), position.endTime);
+                workstationLastWorkers.put(position.workstationId, entry.getKey());
+
+                position.staffId = entry.getKey();
+            });
+
+            assignedPositions.add(position);
+        }
+
+        return assignedPositions;
+    }
+
+    public static class Position {
+
+        private final Long id;
+
+        private final Long workstationId;
+
+        private final Long operationId;
+
+        private final int machineWorkTime;
+
+        private final Date startTime;
+
+        private final Date endTime;
+
+        private Long staffId;
+
+        public Position(final Long id, final Long workstationId, final Long operationId, final int machineWorkTime,
+                final Date startTime, final Date endTime) {
+            this.id = id;
+            this.workstationId = workstationId;
+            this.operationId = operationId;
+            this.machineWorkTime = machineWorkTime;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Long getStaffId() {
+            return staffId;
+        }
+
+    }
+
+}
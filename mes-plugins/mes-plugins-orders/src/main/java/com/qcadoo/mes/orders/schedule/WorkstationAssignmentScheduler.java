@@ -0,0 +1,219 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.schedule;
+
+import static java.util.Map.Entry.comparingByValue;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Assigns schedule positions to workstations without database access.
+ * <p>
+ * Positions are given in the order in which they are scheduled, children before their parents. Each position starts when
+ * the chosen workstation is free and all its children, including their additional time, are finished, moved to the nearest
+ * working moment of the workstation's production line.
+ */
+public class WorkstationAssignmentScheduler {
+
+    public interface WorkingCalendar {
+
+        Date getNearestWorkingDate(final Date date, final Long productionLineId);
+
+        Date findDateAfterWorkingTime(final Date dateFrom, final int seconds, final Long productionLineId);
+
+    }
+
+    private final Date scheduleStartTime;
+
+    private final boolean shortestTime;
+
+    private final Map<Long, Long> workstationProductionLines;
+
+    private final WorkingCalendar workingCalendar;
+
+    private final Map<Long, Date> workstationsFinishDates;
+
+    public WorkstationAssignmentScheduler(final Date scheduleStartTime, final boolean shortestTime,
+            final Map<Long, Long> workstationProductionLines, final Map<Long, Date> operationalTasksFinishDates,
+            final WorkingCalendar workingCalendar) {
+        this.scheduleStartTime = scheduleStartTime;
+        this.shortestTime = shortestTime;
+        this.workstationProductionLines = workstationProductionLines;
+        this.workingCalendar = workingCalendar;
+        this.workstationsFinishDates = Maps.newHashMap(operationalTasksFinishDates);
+    }
+
+    /**
+     * @return assigned positions, in the order of assignment
+     */
+    public List<Position> assign(final List<Position> positions) {
+        Map<List<Long>, List<Position>> children = Maps.newHashMap();
+
+        for (Position position : positions) {
+            if (Objects.nonNull(position.parentOperationComponentId)) {
+                children.computeIfAbsent(Lists.newArrayList(position.orderId, position.parentOperationComponentId),
+                        key -> Lists.newArrayList()).add(position);
+            }
+        }
+
+        Set<Long> ordersToAvoid = Sets.newHashSet();
+        List<Position> assignedPositions = Lists.newArrayList();
+
+        for (Position position : positions) {
+            if (ordersToAvoid.contains(position.orderId)) {
+                continue;
+            }
+
+            if (position.workstationIds.isEmpty() || position.machineWorkTime == 0) {
+                ordersToAvoid.add(position.orderId);
+
+                continue;
+            }
+
+            Date childrenFinishDate = getChildrenFinishDate(children.getOrDefault(
+                    Lists.newArrayList(position.orderId, position.operationComponentId), Collections.emptyList()));
+
+            Map<Long, Date> operationWorkstationsFinishDates = Maps.newHashMap();
+            Map<Long, Date> operationWorkstationsStartDates = Maps.newHashMap();
+
+            for (Long workstationId : position.workstationIds) {
+                Date finishDate = workstationsFinishDates.getOrDefault(workstationId, scheduleStartTime);
+
+                if (Objects.nonNull(childrenFinishDate) && childrenFinishDate.after(finishDate)) {
+                    finishDate = childrenFinishDate;
+                }
+
+                Long productionLineId = workstationProductionLines.get(workstationId);
+
+                Date startDate = workingCalendar.getNearestWorkingDate(finishDate, productionLineId);
+
+                operationWorkstationsStartDates.put(workstationId, startDate);
+                operationWorkstationsFinishDates.put(workstationId,
+                        workingCalendar.findDateAfterWorkingTime(startDate, position.machineWorkTime, productionLineId));
+            }
+
+            Entry<Long, Date> chosenEntry;
+
+            if (shortestTime) {
+                chosenEntry = operationWorkstationsFinishDates.entrySet().stream().min(comparingByValue()).get();
+            } else {
+                chosenEntry = operationWorkstationsFinishDates.entrySet().stream()
+                        .filter(entry -> workstationsFinishDates.containsKey(entry.getKey())).findFirst()
+                        .orElse(operationWorkstationsFinishDates.entrySet().iterator().next());
+            }
+
+            workstationsFinishDates.put(chosenEntry.getKey(), chosenEntry.getValue());
+
+            position.workstationId = chosenEntry.getKey();
+            position.startTime = operationWorkstationsStartDates.get(chosenEntry.getKey());
+            position.endTime = chosenEntry.getValue();
+
+            assignedPositions.add(position);
+        }
+
+        return assignedPositions;
+    }
+
+    private Date getChildrenFinishDate(final List<Position> children) {
+        Date childrenFinishDate = null;
+
+        for (Position child : children) {
+            if (Objects.isNull(child.endTime)) {
+                continue;
+            }
+
+            Date childEndTimeWithAdditionalTime = Date.from(child.endTime.toInstant().plusSeconds(child.additionalTime));
+
+            if (Objects.isNull(childrenFinishDate) || childEndTimeWithAdditionalTime.after(childrenFinishDate)) {
+                childrenFinishDate = childEndTimeWithAdditionalTime;
+            }
+        }
+
+        return childrenFinishDate;
+    }
+
+    public static class Position {
+
+        private final Long id;
+
+        private final Long orderId;
+
+        private final Long operationComponentId;
+
+        private final Long parentOperationComponentId;
+
+        private final int machineWorkTime;
+
+        private final int additionalTime;
+
+        private final List<Long> workstationIds;
+
+        private Long workstationId;
+
+        private Date startTime;
+
+        private Date endTime;
+
+        public Position(final Long id, final Long orderId, final Long operationComponentId,
+                final Long parentOperationComponentId, final int machineWorkTime, final int additionalTime,
+                final List<Long> workstationIds, final Date endTime) {
+            this.id = id;
+            this.orderId = orderId;
+            this.operationComponentId = operationComponentId;
+            this.parentOperationComponentId = parentOperationComponentId;
+            this.machineWorkTime = machineWorkTime;
+            this.additionalTime = additionalTime;
+            this.workstationIds = workstationIds;
+            this.endTime = endTime;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Long getWorkstationId() {
+            return workstationId;
+        }
+
+        public Date getStartTime() {
+            return startTime;
+        }
+
+        public Date getEndTime() {
+            return endTime;
+        }
+
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.orders.schedule.WorkerAssignmentScheduler.Position;
+
+public class WorkerAssignmentSchedulerTest {
+
+    private static final Date SCHEDULE_START_TIME = new Date(1000000000000L);
+
+    private static final Long WORKSTATION_1 = 1L;
+
+    private static final Long WORKSTATION_2 = 2L;
+
+    private static final Long OPERATION = 100L;
+
+    private static final Long WORKER_1 = 11L;
+
+    private static final Long WORKER_2 = 12L;
+
+    private static final Map<Long, List<Long>> OPERATION_WORKERS = ImmutableMap.of(OPERATION,
+            Lists.newArrayList(WORKER_1, WORKER_2));
+
+    @Test
+    public void shouldPreferLastWorkerOfWorkstation() {
+        // given
+        Position position = position(1L, WORKSTATION_1, 0, 600);
+
+        // when
+        new WorkerAssignmentScheduler(SCHEDULE_START_TIME, false, OPERATION_WORKERS,
+                ImmutableMap.of(WORKER_1, seconds(-600), WORKER_2, seconds(-60)), ImmutableMap.of(WORKSTATION_1, WORKER_2))
+                        .assign(Lists.newArrayList(position));
+
+        // then
+        assertEquals(WORKER_2, position.getStaffId());
+    }
+
+    @Test
+    public void shouldChooseWorkerByCriterion() {
+        // given
+        Map<Long, Date> finishDates = ImmutableMap.of(WORKER_1, seconds(-600), WORKER_2, seconds(-60));
+
+        Position firstFinished = position(1L, WORKSTATION_1, 0, 600);
+        Position latestFinished = position(2L, WORKSTATION_1, 0, 600);
+
+        // when
+        new WorkerAssignmentScheduler(SCHEDULE_START_TIME, false, OPERATION_WORKERS, finishDates, Collections.emptyMap())
+                .assign(Lists.newArrayList(firstFinished));
+        new WorkerAssignmentScheduler(SCHEDULE_START_TIME, true, OPERATION_WORKERS, finishDates, Collections.emptyMap())
+                .assign(Lists.newArrayList(latestFinished));
+
+        // then
+        assertEquals(WORKER_1, firstFinished.getStaffId());
+        assertEquals(WORKER_2, latestFinished.getStaffId());
+    }
+
+    @Test
+    public void shouldSkipWorkerBusyAtPositionStart() {
+        // given
+        Position first = position(1L, WORKSTATION_1, 0, 600);
+        Position second = position(2L, WORKSTATION_2, 300, 900);
+        Position third = position(3L, WORKSTATION_2, 600, 1200);
+
+        // when
+        List<Position> assigned = new WorkerAssignmentScheduler(SCHEDULE_START_TIME, false, OPERATION_WORKERS,
+                Collections.emptyMap(), Collections.emptyMap()).assign(Lists.newArrayList(first, second, third));
+
+        // then
+        assertEquals(3, assigned.size());
+        assertNotEquals(first.getStaffId(), second.getStaffId());
+        assertEquals(first.getStaffId(), third.getStaffId());
+    }
+
+    @Test
+    public void shouldLeavePositionWithoutWorkerIfNoneIsAvailable() {
+        // given
+        Position position = position(1L, WORKSTATION_1, 0, 600);
+        Position withoutWorkTime = new Position(2L, WORKSTATION_1, OPERATION, 0, seconds(0), seconds(600));
+
+        // when
+        List<Position> assigned = new WorkerAssignmentScheduler(SCHEDULE_START_TIME, false, OPERATION_WORKERS,
+                ImmutableMap.of(WORKER_1, seconds(60), WORKER_2, seconds(120)), Collections.emptyMap())
+                        .assign(Lists.newArrayList(position, withoutWorkTime));
+
+        // then
+        assertEquals(1, assigned.size());
+        assertNull(position.getStaffId());
+        assertTrue(assigned.contains(position));
+    }
+
+    private static Position position(final Long id, final Long workstationId, final int start, final int end) {
+        return new Position(id, workstationId, OPERATION, end - start, seconds(start), seconds(end));
+    }
+
+    private static Date seconds(final int seconds) {
+        return Date.from(SCHEDULE_START_TIME.toInstant().plusSeconds(seconds));
+    }
+
+}
@@ -0,0 +1,141 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.orders.schedule.WorkstationAssignmentScheduler.Position;
+import com.qcadoo.mes.orders.schedule.WorkstationAssignmentScheduler.WorkingCalendar;
+
+public class WorkstationAssignmentSchedulerTest {
+
+    private static final Date SCHEDULE_START_TIME = new Date(1000000000000L);
+
+    private static final Long WORKSTATION_1 = 1L;
+
+    private static final Long WORKSTATION_2 = 2L;
+
+    private static final Long ORDER_1 = 10L;
+
+    private static final Long ORDER_2 = 20L;
+
+    // every moment is working time
+    private static final WorkingCalendar CONTINUOUS_CALENDAR = new WorkingCalendar() {
+
+        @Override
+        public Date getNearestWorkingDate(final Date date, final Long productionLineId) {
+            return date;
+        }
+
+        @Override
+        public Date findDateAfterWorkingTime(final Date dateFrom, final int seconds, final Long productionLineId) {
+            return seconds(dateFrom, seconds);
+        }
+
+    };
+
+    @Test
+    public void shouldStartParentAfterChildrenWithAdditionalTime() {
+        // given
+        Position child1 = new Position(1L, ORDER_1, 101L, 100L, 600, 60, Lists.newArrayList(WORKSTATION_1), null);
+        Position child2 = new Position(2L, ORDER_1, 102L, 100L, 300, 0, Lists.newArrayList(WORKSTATION_2), null);
+        Position parent = new Position(3L, ORDER_1, 100L, null, 100, 0, Lists.newArrayList(WORKSTATION_2), null);
+
+        // when
+        List<Position> assigned = createScheduler(true, Collections.emptyMap()).assign(
+                Lists.newArrayList(child1, child2, parent));
+
+        // then
+        assertEquals(3, assigned.size());
+        assertEquals(seconds(SCHEDULE_START_TIME, 660), parent.getStartTime());
+        assertEquals(seconds(SCHEDULE_START_TIME, 760), parent.getEndTime());
+        assertEquals(WORKSTATION_2, parent.getWorkstationId());
+    }
+
+    @Test
+    public void shouldChooseWorkstationFinishingFirst() {
+        // given
+        Position position = new Position(1L, ORDER_1, 100L, null, 600, 0, Lists.newArrayList(WORKSTATION_1, WORKSTATION_2),
+                null);
+
+        // when
+        createScheduler(true, ImmutableMap.of(WORKSTATION_1, seconds(SCHEDULE_START_TIME, 3600))).assign(
+                Lists.newArrayList(position));
+
+        // then
+        assertEquals(WORKSTATION_2, position.getWorkstationId());
+        assertEquals(SCHEDULE_START_TIME, position.getStartTime());
+    }
+
+    @Test
+    public void shouldPreferWorkstationAlreadyInUse() {
+        // given
+        Position first = new Position(1L, ORDER_1, 100L, null, 600, 0, Lists.newArrayList(WORKSTATION_2), null);
+        Position second = new Position(2L, ORDER_2, 200L, null, 600, 0, Lists.newArrayList(WORKSTATION_1, WORKSTATION_2),
+                null);
+
+        // when
+        createScheduler(false, Collections.emptyMap()).assign(Lists.newArrayList(first, second));
+
+        // then
+        assertEquals(WORKSTATION_2, second.getWorkstationId());
+        assertEquals(seconds(SCHEDULE_START_TIME, 600), second.getStartTime());
+    }
+
+    @Test
+    public void shouldSkipRestOfOrderWithoutWorkstations() {
+        // given
+        Position child = new Position(1L, ORDER_1, 101L, 100L, 600, 0, Lists.newArrayList(), null);
+        Position parent = new Position(2L, ORDER_1, 100L, null, 600, 0, Lists.newArrayList(WORKSTATION_1), null);
+        Position other = new Position(3L, ORDER_2, 200L, null, 0, 0, Lists.newArrayList(WORKSTATION_1), null);
+
+        // when
+        List<Position> assigned = createScheduler(true, Collections.emptyMap()).assign(
+                Lists.newArrayList(child, parent, other));
+
+        // then
+        assertTrue(assigned.isEmpty());
+    }
+
+    private WorkstationAssignmentScheduler createScheduler(final boolean shortestTime,
+            final Map<Long, Date> operationalTasksFinishDates) {
+        return new WorkstationAssignmentScheduler(SCHEDULE_START_TIME, shortestTime, Collections.emptyMap(),
+                operationalTasksFinishDates, CONTINUOUS_CALENDAR);
+    }
+
+    private static Date seconds(final Date date, final int seconds) {
+        return Date.from(date.toInstant().plusSeconds(seconds));
+    }
+
+}
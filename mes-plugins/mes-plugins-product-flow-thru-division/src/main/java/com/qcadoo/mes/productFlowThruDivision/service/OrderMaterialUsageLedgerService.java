@@ -0,0 +1,206 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productFlowThruDivision.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.costNormsForMaterials.CostNormsForMaterialsService;
+import com.qcadoo.mes.costNormsForMaterials.orderRawMaterialCosts.domain.ProductWithQuantityAndCost;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps quantities and costs of components issued for orders in productflowthrudivision_ordermaterialusage, summed per order
+ * and product from positions of internal outbound documents. As in a sum over the documents, the cost stays empty while none
+ * of the positions has a price.
+ * <p>
+ * Accepting a production tracking adds only the positions of its own outbound documents, so costs of an order are no longer
+ * aggregated over all of its documents each time. Updates of one order are serialized with a transaction level advisory lock.
+ * The nightly reconciliation compares stored rows with the documents and recalculates orders that drifted, e.g. after a
+ * document was edited or deleted.
+ */
+@Service
+public class OrderMaterialUsageLedgerService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrderMaterialUsageLedgerService.class);
+
+    private static final String L_LOCK = "SELECT pg_advisory_xact_lock(hashtext('productflowthrudivision_ordermaterialusage'), "
+            + "hashtext(CAST(:orderId AS text)))";
+
+    private static final String L_AGGREGATE_POSITIONS = "SELECT d.order_id, p.product_id, SUM(p.quantity) AS quantity, "
+            + "SUM(p.quantity * p.price) AS cost FROM materialflowresources_position p "
+            + "JOIN materialflowresources_document d ON d.id = p.document_id WHERE d.type = '03internalOutbound' ";
+
+    private static final String L_GROUP_BY = "GROUP BY d.order_id, p.product_id";
+
+    private static final String L_ADD_DOCUMENTS = "INSERT INTO productflowthrudivision_ordermaterialusage AS u "
+            + "(order_id, product_id, quantity, cost) " + L_AGGREGATE_POSITIONS
+            + "AND d.order_id = :orderId AND d.id IN (:documentIds) " + L_GROUP_BY
+            + " ON CONFLICT (order_id, product_id) DO UPDATE "
+            + "SET quantity = u.quantity + EXCLUDED.quantity, cost = COALESCE(u.cost + EXCLUDED.cost, u.cost, EXCLUDED.cost)";
+
+    private static final String L_DELETE = "DELETE FROM productflowthrudivision_ordermaterialusage WHERE order_id = :orderId";
+
+    private static final String L_INSERT = "INSERT INTO productflowthrudivision_ordermaterialusage "
+            + "(order_id, product_id, quantity, cost) " + L_AGGREGATE_POSITIONS + "AND d.order_id = :orderId " + L_GROUP_BY;
+
+    private static final String L_EXISTS = "SELECT EXISTS (SELECT 1 FROM productflowthrudivision_ordermaterialusage "
+            + "WHERE order_id = :orderId)";
+
+    private static final String L_SELECT = "SELECT product_id, quantity, cost FROM productflowthrudivision_ordermaterialusage "
+            + "WHERE order_id = :orderId ORDER BY product_id";
+
+    private static final String L_FIND_DRIFTED_ORDERS = "SELECT DISTINCT COALESCE(u.order_id, v.order_id) "
+            + "FROM productflowthrudivision_ordermaterialusage u FULL JOIN (" + L_AGGREGATE_POSITIONS
+            + "AND d.order_id IN (SELECT order_id FROM productflowthrudivision_ordermaterialusage) " + L_GROUP_BY
+            + ") v ON v.order_id = u.order_id AND v.product_id = u.product_id "
+            + "WHERE (u.quantity, u.cost) IS DISTINCT FROM (v.quantity, v.cost)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CostNormsForMaterialsService costNormsForMaterialsService;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    /**
+     * Adds positions of the given internal outbound documents of the order, which have to be flushed already. Orders without
+     * stored rows, e.g. started before the rows were kept, are summed up from all of their documents instead.
+     *
+     * @return quantities and costs of all components issued for the order
+     */
+    @Transactional
+    public List<ProductWithQuantityAndCost> addDocuments(final Long orderId, final Collection<Long> documentIds) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("orderId", orderId);
+
+        lock(params);
+
+        if (!jdbcTemplate.queryForObject(L_EXISTS, params, Boolean.class)) {
+            jdbcTemplate.update(L_INSERT, params);
+        } else if (!documentIds.isEmpty()) {
+            params.put("documentIds", documentIds);
+
+            jdbcTemplate.update(L_ADD_DOCUMENTS, params);
+        }
+
+        return getProductsWithQuantitiesAndCosts(params);
+    }
+
+    /**
+     * Sums up all internal outbound documents of the order again.
+     *
+     * @return quantities and costs of all components issued for the order
+     */
+    @Transactional
+    public List<ProductWithQuantityAndCost> recalculate(final Long orderId) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("orderId", orderId);
+
+        lock(params);
+
+        jdbcTemplate.update(L_DELETE, params);
+        jdbcTemplate.update(L_INSERT, params);
+
+        return getProductsWithQuantitiesAndCosts(params);
+    }
+
+    public void reconcileTrigger() {
+        multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                reconcile();
+            }
+
+        });
+    }
+
+    public int reconcile() {
+        List<Long> driftedOrderIds = jdbcTemplate.queryForList(L_FIND_DRIFTED_ORDERS, Maps.newHashMap(), Long.class);
+
+        for (Long orderId : driftedOrderIds) {
+            try {
+                recalculateCosts(orderId);
+            } catch (RuntimeException e) {
+                LOG.error("Material usage of order (id: " + orderId + ") could not be reconciled", e);
+            }
+        }
+
+        if (!driftedOrderIds.isEmpty()) {
+            LOG.warn("Order material usage reconciled, orders corrected: " + driftedOrderIds.size());
+        }
+
+        return driftedOrderIds.size();
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void recalculateCosts(final Long orderId) {
+        Entity order = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).get(orderId);
+
+        List<ProductWithQuantityAndCost> productsWithQuantitiesAndCosts = recalculate(orderId);
+
+        if (Objects.nonNull(order)) {
+            costNormsForMaterialsService.updateCostsForProductInOrder(order, productsWithQuantitiesAndCosts);
+        }
+    }
+
+    private void lock(final Map<String, Object> params) {
+        jdbcTemplate.queryForList(L_LOCK, params);
+    }
+
+    private List<ProductWithQuantityAndCost> getProductsWithQuantitiesAndCosts(final Map<String, Object> params) {
+        return jdbcTemplate.query(L_SELECT, params,
+                (rs, rowNum) -> new ProductWithQuantityAndCost(rs.getLong("product_id"), getDecimal(rs.getBigDecimal("quantity")),
+                        rs.getBigDecimal("cost")));
+    }
+
+    private BigDecimal getDecimal(final BigDecimal value) {
+        return Objects.isNull(value) ? BigDecimal.ZERO : value;
+    }
+
+}
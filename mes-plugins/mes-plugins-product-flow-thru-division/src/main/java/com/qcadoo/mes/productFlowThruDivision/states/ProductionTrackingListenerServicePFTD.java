@@ -45,6 +45,7 @@ import com.qcadoo.mes.materialFlowResources.service.DocumentManagementService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.states.constants.OrderState;
 import com.qcadoo.mes.productFlowThruDivision.constants.DocumentFieldsPFTD;
+import com.qcadoo.mes.productFlowThruDivision.service.OrderMaterialUsageLedgerService;
 import com.qcadoo.mes.productionCounting.ProductionTrackingService;
 import com.qcadoo.mes.productionCounting.constants.ParameterFieldsPC;
 import com.qcadoo.mes.productionCounting.constants.PriceBasedOn;
@@ -61,9 +62,7 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.model.api.search.SearchQueryBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
-import com.qcadoo.model.api.search.SearchResult;
 import com.qcadoo.model.api.units.PossibleUnitConversions;
 import com.qcadoo.model.api.units.UnitConversionService;
 import com.qcadoo.model.api.validators.ErrorMessage;
@@ -117,6 +116,9 @@ public final class ProductionTrackingListenerServicePFTD {
     @Autowired
     private ProductionTrackingService productionTrackingService;
 
+    @Autowired
+    private OrderMaterialUsageLedgerService orderMaterialUsageLedgerService;
+
     public Entity onAccept(final Entity productionTracking, final String sourceState) {
         boolean isCorrection = productionTracking.getBooleanField(ProductionTrackingFields.IS_CORRECTION);
 
@@ -163,6 +165,8 @@ public final class ProductionTrackingListenerServicePFTD {
 
         boolean errorsDisplayed = false;
 
+        List<Long> outboundDocumentIds = Lists.newArrayList();
+
         for (Long warehouseId : groupedRecordInProducts.keySet()) {
             Entity warehouseFrom = getLocationDD().get(warehouseId);
             Entity outboundDocument = createInternalOutboundDocumentForComponents(warehouseFrom, order,
@@ -185,6 +189,8 @@ public final class ProductionTrackingListenerServicePFTD {
 
                     errorsDisplayed = true;
                 }
+            } else if (Objects.nonNull(outboundDocument)) {
+                outboundDocumentIds.add(outboundDocument.getId());
             }
         }
 
@@ -192,7 +198,9 @@ public final class ProductionTrackingListenerServicePFTD {
             return;
         }
 
-        updateCostsForOrder(order);
+        TransactionAspectSupport.currentTransactionStatus().flush();
+
+        updateCostsForOrder(order, orderMaterialUsageLedgerService.addDocuments(order.getId(), outboundDocumentIds));
     }
 
     public Entity createInternalOutboundDocumentForComponents(final Entity locationFrom, final Entity order,
@@ -608,27 +616,10 @@ public final class ProductionTrackingListenerServicePFTD {
     }
 
     public void updateCostsForOrder(final Entity order) {
-        DataDefinition positionDD = getPositionDD();
-
-        SearchQueryBuilder searchQueryBuilder = positionDD
-                .find("SELECT pr.id AS product, SUM(p.quantity) AS quantity, SUM(p.quantity * p.price) AS price "
-                        + "FROM #materialFlowResources_position p JOIN p.document AS d join p.product AS pr "
-                        + "WHERE d.order = :order_id AND d.type = :type " + "GROUP BY d.order, d.type, pr.id");
-
-        searchQueryBuilder.setLong("order_id", order.getId());
-        searchQueryBuilder.setString("type", DocumentType.INTERNAL_OUTBOUND.getStringValue());
-
-        SearchResult result = searchQueryBuilder.list();
-
-        List<ProductWithQuantityAndCost> productsWithQuantitiesAndCosts = Lists.newArrayList();
-
-        for (Entity costsForProduct : result.getEntities()) {
-            Long product = (Long) costsForProduct.getField(PositionFields.PRODUCT);
-            BigDecimal quantity = costsForProduct.getDecimalField(PositionFields.QUANTITY);
-            BigDecimal cost = costsForProduct.getDecimalField(PositionFields.PRICE);
-            productsWithQuantitiesAndCosts.add(new ProductWithQuantityAndCost(product, quantity, cost));
-        }
+        updateCostsForOrder(order, orderMaterialUsageLedgerService.recalculate(order.getId()));
+    }
 
+    private void updateCostsForOrder(final Entity order, final List<ProductWithQuantityAndCost> productsWithQuantitiesAndCosts) {
         List<Entity> updatedCosts = costNormsForMaterialsService.updateCostsForProductInOrder(order,
                 productsWithQuantitiesAndCosts);
 
@@ -0,0 +1,286 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productFlowThruDivision.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.costNormsForMaterials.CostNormsForMaterialsService;
+import com.qcadoo.mes.costNormsForMaterials.orderRawMaterialCosts.domain.ProductWithQuantityAndCost;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+
+/**
+ * Checks the stored material usage against sums of internal outbound documents. Runs only against a database given with
+ * -Dproductflowthrudivision.ledger.url (and .user, .password) which holds an order with at least two internal outbound
+ * documents with positions; each test runs in a transaction that is rolled back.
+ */
+public class OrderMaterialUsageLedgerServiceTest {
+
+    private static final String L_SUM_POSITIONS = "SELECT p.product_id, SUM(p.quantity) AS quantity, "
+            + "SUM(p.quantity * p.price) AS cost FROM materialflowresources_position p "
+            + "JOIN materialflowresources_document d ON d.id = p.document_id "
+            + "WHERE d.type = '03internalOutbound' AND d.order_id = :orderId AND d.id IN (:documentIds) GROUP BY p.product_id";
+
+    private static final String L_SELECT_ROWS = "SELECT product_id, quantity, cost "
+            + "FROM productflowthrudivision_ordermaterialusage WHERE order_id = :orderId";
+
+    private OrderMaterialUsageLedgerService orderMaterialUsageLedgerService;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    private DataDefinition orderDD;
+
+    private Long orderId;
+
+    private List<Long> documentIds;
+
+    @Before
+    public void init() {
+        String url = System.getProperty("productflowthrudivision.ledger.url");
+
+        assumeNotNull(url);
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url,
+                System.getProperty("productflowthrudivision.ledger.user", "postgres"),
+                System.getProperty("productflowthrudivision.ledger.password", "postgres"));
+
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+
+        orderDD = mock(DataDefinition.class);
+
+        given(dataDefinitionService.get(anyString(), anyString())).willReturn(orderDD);
+
+        orderMaterialUsageLedgerService = new OrderMaterialUsageLedgerService();
+
+        ReflectionTestUtils.setField(orderMaterialUsageLedgerService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(orderMaterialUsageLedgerService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(orderMaterialUsageLedgerService, "costNormsForMaterialsService",
+                mock(CostNormsForMaterialsService.class));
+
+        List<Long> orderIds = jdbcTemplate.queryForList("SELECT d.order_id FROM materialflowresources_document d "
+                + "WHERE d.type = '03internalOutbound' AND d.order_id IS NOT NULL "
+                + "AND EXISTS (SELECT 1 FROM materialflowresources_position p WHERE p.document_id = d.id) "
+                + "GROUP BY d.order_id HAVING COUNT(*) > 1 ORDER BY d.order_id LIMIT 1", Collections.emptyMap(), Long.class);
+
+        assumeTrue(orderIds.size() == 1);
+
+        orderId = orderIds.get(0);
+        documentIds = jdbcTemplate.queryForList("SELECT d.id FROM materialflowresources_document d "
+                + "WHERE d.type = '03internalOutbound' AND d.order_id = :orderId "
+                + "AND EXISTS (SELECT 1 FROM materialflowresources_position p WHERE p.document_id = d.id) ORDER BY d.id",
+                ImmutableMap.of("orderId", orderId), Long.class);
+    }
+
+    @Test
+    public void shouldSumUpAllDocumentsOfOrderWithoutStoredRows() {
+        inRolledBackTransaction(() -> {
+            // given
+            deleteStoredRows();
+
+            Long lastDocumentId = documentIds.get(documentIds.size() - 1);
+
+            // when
+            List<ProductWithQuantityAndCost> productsWithQuantitiesAndCosts = orderMaterialUsageLedgerService.addDocuments(
+                    orderId, Lists.newArrayList(lastDocumentId));
+
+            // then
+            Map<Long, Map<String, Object>> expected = sumPositions(documentIds);
+
+            assertProducts(expected, productsWithQuantitiesAndCosts);
+            assertRows(expected);
+        });
+    }
+
+    @Test
+    public void shouldAddOnlyGivenDocumentsToStoredRows() {
+        inRolledBackTransaction(() -> {
+            // given
+            deleteStoredRows();
+
+            List<Long> earlierDocumentIds = documentIds.subList(0, documentIds.size() - 1);
+            Long lastDocumentId = documentIds.get(documentIds.size() - 1);
+
+            storeRows(earlierDocumentIds);
+
+            // when
+            orderMaterialUsageLedgerService.addDocuments(orderId, Lists.newArrayList(lastDocumentId));
+
+            // then
+            assertRows(sumPositions(documentIds));
+        });
+    }
+
+    @Test
+    public void shouldReconcileOrderAfterPositionWasEdited() {
+        inRolledBackTransaction(() -> {
+            // given
+            deleteStoredRows();
+
+            orderMaterialUsageLedgerService.recalculate(orderId);
+
+            jdbcTemplate.update("UPDATE materialflowresources_position SET quantity = quantity + 1 WHERE id = "
+                    + "(SELECT MIN(p.id) FROM materialflowresources_position p WHERE p.document_id = :documentId)",
+                    ImmutableMap.of("documentId", documentIds.get(0)));
+
+            // when
+            int reconciledOrders = orderMaterialUsageLedgerService.reconcile();
+
+            // then
+            assertEquals(1, reconciledOrders);
+
+            verify(orderDD).get(orderId);
+
+            assertRows(sumPositions(documentIds));
+        });
+    }
+
+    @Test
+    public void shouldKeepCostEmptyWhenPositionsHaveNoPrice() {
+        inRolledBackTransaction(() -> {
+            // given
+            deleteStoredRows();
+
+            jdbcTemplate.update("UPDATE materialflowresources_position SET price = NULL WHERE document_id IN (:documentIds)",
+                    ImmutableMap.of("documentIds", documentIds));
+
+            storeRows(documentIds.subList(0, 1));
+
+            // when
+            List<ProductWithQuantityAndCost> productsWithQuantitiesAndCosts = orderMaterialUsageLedgerService.addDocuments(
+                    orderId, documentIds.subList(1, documentIds.size()));
+
+            // then
+            assertFalse(productsWithQuantitiesAndCosts.isEmpty());
+
+            for (ProductWithQuantityAndCost productWithQuantityAndCost : productsWithQuantitiesAndCosts) {
+                assertFalse(productWithQuantityAndCost.getCostOpt().isPresent());
+            }
+        });
+    }
+
+    private void inRolledBackTransaction(final Runnable test) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                status.setRollbackOnly();
+
+                test.run();
+            }
+
+        });
+    }
+
+    private void deleteStoredRows() {
+        jdbcTemplate.update("DELETE FROM productflowthrudivision_ordermaterialusage", Collections.emptyMap());
+    }
+
+    private void storeRows(final List<Long> storedDocumentIds) {
+        for (Map<String, Object> row : sumPositions(storedDocumentIds).values()) {
+            Map<String, Object> params = Maps.newHashMap(row);
+
+            params.put("orderId", orderId);
+
+            jdbcTemplate.update("INSERT INTO productflowthrudivision_ordermaterialusage (order_id, product_id, quantity, cost) "
+                    + "VALUES (:orderId, :product_id, :quantity, :cost)", params);
+        }
+    }
+
+    private Map<Long, Map<String, Object>> sumPositions(final List<Long> summedDocumentIds) {
+        Map<Long, Map<String, Object>> rowsByProduct = Maps.newHashMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_SUM_POSITIONS,
+                ImmutableMap.of("orderId", orderId, "documentIds", summedDocumentIds))) {
+            rowsByProduct.put(((Number) row.get("product_id")).longValue(), row);
+        }
+
+        return rowsByProduct;
+    }
+
+    private void assertProducts(final Map<Long, Map<String, Object>> expected,
+            final List<ProductWithQuantityAndCost> productsWithQuantitiesAndCosts) {
+        assertEquals(expected.size(), productsWithQuantitiesAndCosts.size());
+
+        for (ProductWithQuantityAndCost productWithQuantityAndCost : productsWithQuantitiesAndCosts) {
+            Map<String, Object> row = expected.get(productWithQuantityAndCost.getProductId());
+
+            assertDecimal((BigDecimal) row.get("quantity"), productWithQuantityAndCost.getQuantityOpt().orElse(null));
+            assertDecimal((BigDecimal) row.get("cost"), productWithQuantityAndCost.getCostOpt().orElse(null));
+        }
+    }
+
+    private void assertRows(final Map<Long, Map<String, Object>> expected) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(L_SELECT_ROWS, ImmutableMap.of("orderId", orderId));
+
+        assertEquals(expected.size(), rows.size());
+
+        for (Map<String, Object> row : rows) {
+            Map<String, Object> expectedRow = expected.get(((Number) row.get("product_id")).longValue());
+
+            assertDecimal((BigDecimal) expectedRow.get("quantity"), (BigDecimal) row.get("quantity"));
+            assertDecimal((BigDecimal) expectedRow.get("cost"), (BigDecimal) row.get("cost"));
+        }
+    }
+
+    private void assertDecimal(final BigDecimal expected, final BigDecimal actual) {
+        if (expected == null) {
+            assertNull(actual);
+        } else {
+            assertTrue(expected.compareTo(actual) == 0);
+        }
+    }
+
+}
@@ -85,6 +85,14 @@ public final class ProductionTrackingFields {
 
     public static final String EXPIRATION_DATE = "expirationDate";
 
+    public static final String ACCEPTANCE_QUEUED_AT = "acceptanceQueuedAt";
+
+    public static final String ACCEPTANCE_STARTED_AT = "acceptanceStartedAt";
+
+    public static final String ACCEPTANCE_NEXT_ATTEMPT_AT = "acceptanceNextAttemptAt";
+
+    public static final String ACCEPTANCE_ATTEMPTS = "acceptanceAttempts";
+
     public static final String STOPPAGES = "stoppages";
 
 }
@@ -145,6 +145,7 @@ public class ProductionTrackingDetailsHooks {
 
             initializeProductionTrackingDetailsView(view);
             showLastStateChangeFailNotification(productionTrackingForm, productionTracking);
+            showAcceptanceQueueNotification(productionTrackingForm, productionTracking);
             changeFieldComponentsEnabledAndGridsEditable(view);
             updateRibbonState(view);
             toggleCorrectButton(view, productionTracking);
@@ -314,7 +315,10 @@ public class ProductionTrackingDetailsHooks {
             String lastStateChangeFailCause = productionTracking
                     .getStringField(ProductionTrackingFields.LAST_STATE_CHANGE_FAIL_CAUSE);
 
-            if (StringUtils.isEmpty(lastStateChangeFailCause)) {
+            if (Objects.nonNull(productionTracking.getDateField(ProductionTrackingFields.ACCEPTANCE_QUEUED_AT))) {
+                productionTrackingForm.addMessage("productionCounting.productionTracking.info.acceptanceFails.withCause",
+                        ComponentState.MessageType.INFO, false, StringUtils.defaultString(lastStateChangeFailCause));
+            } else if (StringUtils.isEmpty(lastStateChangeFailCause)) {
                 productionTrackingForm.addMessage("productionCounting.productionTracking.info.lastStateChangeFails",
                         ComponentState.MessageType.INFO, true, lastStateChangeFailCause);
             } else {
@@ -324,6 +328,18 @@ public class ProductionTrackingDetailsHooks {
         }
     }
 
+    private void showAcceptanceQueueNotification(final FormComponent productionTrackingForm, final Entity productionTracking) {
+        String state = productionTracking.getStringField(ProductionTrackingFields.STATE);
+
+        if (ProductionTrackingStateStringValues.PENDING.equals(state)) {
+            Integer acceptanceAttempts = productionTracking.getIntegerField(ProductionTrackingFields.ACCEPTANCE_ATTEMPTS);
+
+            productionTrackingForm.addMessage("productionCounting.productionTracking.info.acceptanceQueued",
+                    ComponentState.MessageType.INFO, false, String.valueOf(Objects.isNull(acceptanceAttempts) ? 0
+                            : acceptanceAttempts));
+        }
+    }
+
     public void changeFieldComponentsEnabledAndGridsEditable(final ViewDefinitionState view) {
         FormComponent productionTrackingForm = (FormComponent) view.getComponentByReference(L_FORM);
 
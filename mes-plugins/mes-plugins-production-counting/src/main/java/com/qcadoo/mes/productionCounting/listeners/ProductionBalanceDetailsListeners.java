@@ -42,7 +42,6 @@ import com.qcadoo.mes.productionCounting.xls.ProductionBalanceXlsService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.file.FileService;
 import com.qcadoo.model.api.search.SearchRestrictions;
-import com.qcadoo.report.api.ReportService;
 import com.qcadoo.security.api.SecurityService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ComponentState.MessageType;
@@ -59,9 +58,6 @@ public class ProductionBalanceDetailsListeners {
     @Autowired
     private FileService fileService;
 
-    @Autowired
-    private ReportService reportService;
-
     @Autowired
     private ProductionCountingService productionCountingService;
 
@@ -127,8 +123,8 @@ public class ProductionBalanceDetailsListeners {
     }
 
     public void printProductionBalance(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(view, state, new String[] { args[0], ProductionCountingConstants.PLUGIN_IDENTIFIER,
-                ProductionCountingConstants.MODEL_PRODUCTION_BALANCE });
+        productionBalanceXlsService.printGeneratedReport(view, state, ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                ProductionCountingConstants.MODEL_PRODUCTION_BALANCE);
     }
 
     public final void addAllRelatedOrders(final ViewDefinitionState view, final ComponentState state, final String[] args) {
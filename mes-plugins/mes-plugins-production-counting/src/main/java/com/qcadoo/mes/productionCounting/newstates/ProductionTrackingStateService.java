@@ -93,12 +93,18 @@ public class ProductionTrackingStateService extends BasicStateService implements
                 break;
         }
 
-        if (entity.isValid()) {
+        if (entity.isValid() && !isAcceptanceQueueTransition(targetState)) {
             logActivities(entity, stateChangeEntity, targetState);
         }
         return entity;
     }
 
+    // moving into and out of the acceptance queue is not a user activity, only the final acceptance is logged
+    private boolean isAcceptanceQueueTransition(final String targetState) {
+        return ProductionTrackingStateStringValues.PENDING.equals(targetState)
+                || ProductionTrackingStateStringValues.DRAFT.equals(targetState);
+    }
+
     private void logActivities(final Entity productionTracking, Entity stateChangeEntity, final String state) {
         // TODO get user from state change/current user, not create user
         Entity user = userService.find(stateChangeEntity.getStringField(ProductionTrackingStateChangeFields.WORKER));
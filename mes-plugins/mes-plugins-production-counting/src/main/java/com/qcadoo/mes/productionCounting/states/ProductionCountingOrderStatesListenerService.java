@@ -54,9 +54,7 @@ public class ProductionCountingOrderStatesListenerService {
         final Entity order = stateChangeContext.getOwner();
         String typeOfProductionRecording = order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING);
 
-        if (checkIfOrderHasProductionTrackings(order)) {
-            stateChangeContext.addValidationError("orders.order.state.error.draftProductionTrackingsExists");
-        }
+        checkIfOrderHasNotAcceptedProductionTrackings(stateChangeContext, order);
 
         if (productionCountingService.isTypeOfProductionRecordingCumulated(typeOfProductionRecording)) {
             checkFinalProductionCountingForOrderCumulated(stateChangeContext);
@@ -123,22 +121,28 @@ public class ProductionCountingOrderStatesListenerService {
     public void validationOnAbandone(final StateChangeContext stateChangeContext) {
         final Entity order = stateChangeContext.getOwner();
 
-        if (checkIfOrderHasProductionTrackings(order)) {
-            stateChangeContext.addValidationError("orders.order.state.error.draftProductionTrackingsExists");
-        }
+        checkIfOrderHasNotAcceptedProductionTrackings(stateChangeContext, order);
     }
 
     public void validationOnDecline(final StateChangeContext stateChangeContext) {
         final Entity order = stateChangeContext.getOwner();
 
-        if (checkIfOrderHasProductionTrackings(order)) {
+        checkIfOrderHasNotAcceptedProductionTrackings(stateChangeContext, order);
+    }
+
+    private void checkIfOrderHasNotAcceptedProductionTrackings(final StateChangeContext stateChangeContext, final Entity order) {
+        if (checkIfOrderHasProductionTrackings(order, ProductionTrackingStateStringValues.DRAFT)) {
             stateChangeContext.addValidationError("orders.order.state.error.draftProductionTrackingsExists");
         }
+
+        if (checkIfOrderHasProductionTrackings(order, ProductionTrackingStateStringValues.PENDING)) {
+            stateChangeContext.addValidationError("orders.order.state.error.pendingProductionTrackingsExists");
+        }
     }
 
-    private boolean checkIfOrderHasProductionTrackings(final Entity order) {
+    private boolean checkIfOrderHasProductionTrackings(final Entity order, final String state) {
         SearchResult searchResult = order.getHasManyField(OrderFieldsPC.PRODUCTION_TRACKINGS).find()
-                .add(SearchRestrictions.eq(ProductionTrackingFields.STATE, ProductionTrackingStateStringValues.DRAFT)).list();
+                .add(SearchRestrictions.eq(ProductionTrackingFields.STATE, state)).list();
 
         return (searchResult.getTotalNumberOfEntities() > 0);
     }
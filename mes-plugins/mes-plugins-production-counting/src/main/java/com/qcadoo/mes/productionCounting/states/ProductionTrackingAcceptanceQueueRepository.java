@@ -0,0 +1,110 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p/>
+ * This file is part of Qcadoo.
+ * <p/>
+ * Qcadoo is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option) any
+ * later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p/>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Production trackings in the pending state form the acceptance queue. Only the oldest pending tracking of an order can be
+ * claimed, and only when no other worker holds it, so trackings of one order are accepted in the order they were queued.
+ * Claims are serialized with a transaction level advisory lock, which keeps two workers from claiming trackings of the same
+ * order at once.
+ */
+@Repository
+public class ProductionTrackingAcceptanceQueueRepository {
+
+    private static final String L_LOCK = "SELECT pg_advisory_xact_lock(hashtext('productioncounting_productiontracking_acceptance'))";
+
+    private static final String L_CLAIM = "UPDATE productioncounting_productiontracking pt "
+            + "SET acceptancestartedat = now(), acceptanceattempts = COALESCE(pt.acceptanceattempts, 0) + 1 "
+            + "WHERE pt.id = (SELECT q.id FROM productioncounting_productiontracking q "
+            + "WHERE q.state = '05pending' "
+            + "AND (q.acceptancestartedat IS NULL OR q.acceptancestartedat < now() - :staleAfterMinutes * interval '1 minute') "
+            + "AND (q.acceptancenextattemptat IS NULL OR q.acceptancenextattemptat <= now()) "
+            + "AND NOT EXISTS (SELECT 1 FROM productioncounting_productiontracking p "
+            + "WHERE p.order_id = q.order_id AND p.state = '05pending' "
+            + "AND (p.acceptancequeuedat, p.id) < (q.acceptancequeuedat, q.id)) "
+            + "ORDER BY q.acceptancequeuedat, q.id LIMIT 1) RETURNING pt.id";
+
+    private static final String L_RETRY_LATER = "UPDATE productioncounting_productiontracking "
+            + "SET acceptancestartedat = NULL, acceptancenextattemptat = now() + :delaySeconds * interval '1 second' "
+            + "WHERE id = :productionTrackingId AND state = '05pending'";
+
+    private static final String L_REQUESTING_USER = "SELECT sc.worker FROM productioncounting_productiontrackingstatechange sc "
+            + "WHERE sc.productiontracking_id = :productionTrackingId AND sc.targetstate = '05pending' "
+            + "AND sc.status = '03successful' ORDER BY sc.id DESC LIMIT 1";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Transactional
+    public Long claim(final int staleAfterMinutes) {
+        jdbcTemplate.queryForList(L_LOCK, Maps.newHashMap());
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("staleAfterMinutes", staleAfterMinutes);
+
+        List<Long> productionTrackingIds = jdbcTemplate.queryForList(L_CLAIM, params, Long.class);
+
+        if (productionTrackingIds.isEmpty()) {
+            return null;
+        }
+
+        return productionTrackingIds.get(0);
+    }
+
+    @Transactional
+    public void retryLater(final Long productionTrackingId, final int delaySeconds) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("productionTrackingId", productionTrackingId);
+        params.put("delaySeconds", delaySeconds);
+
+        jdbcTemplate.update(L_RETRY_LATER, params);
+    }
+
+    public String getRequestingUser(final Long productionTrackingId) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("productionTrackingId", productionTrackingId);
+
+        List<String> workers = jdbcTemplate.queryForList(L_REQUESTING_USER, params, String.class);
+
+        if (workers.isEmpty()) {
+            return null;
+        }
+
+        return workers.get(0);
+    }
+
+}
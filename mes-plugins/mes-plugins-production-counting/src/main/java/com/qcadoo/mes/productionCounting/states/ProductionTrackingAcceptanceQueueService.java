@@ -0,0 +1,298 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p/>
+ * This file is part of Qcadoo.
+ * <p/>
+ * Qcadoo is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option) any
+ * later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p/>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.newstates.StateExecutorService;
+import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
+import com.qcadoo.mes.productionCounting.newstates.ProductionTrackingStateServiceMarker;
+import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Accepts production trackings in the background, so terminals do not wait for documents, costs and counting updates.
+ * <p>
+ * Enabled with productionTrackingAcceptanceQueue=true. Queued trackings are moved to the pending state and accepted by a pool
+ * of productionTrackingAcceptanceThreads workers. Trackings of one order are accepted one by one, in the order they were
+ * queued, trackings of different orders in parallel. A tracking which can not be accepted goes back to draft with the cause
+ * stored on it, unexpected errors are retried up to productionTrackingAcceptanceAttempts times. The queue is kept in the
+ * database, so pending trackings survive a restart and are picked up by the periodic trigger.
+ */
+@Service
+public class ProductionTrackingAcceptanceQueueService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductionTrackingAcceptanceQueueService.class);
+
+    private static final int L_STALE_AFTER_MINUTES = 30;
+
+    private static final int L_RETRY_DELAY_SECONDS = 30;
+
+    private static final int L_MAX_CAUSE_LENGTH = 255;
+
+    @Value("${productionTrackingAcceptanceQueue:false}")
+    private boolean enabled;
+
+    @Value("${productionTrackingAcceptanceThreads:4}")
+    private int threads;
+
+    @Value("${productionTrackingAcceptanceAttempts:3}")
+    private int maxAttempts;
+
+    @Autowired
+    private ProductionTrackingAcceptanceQueueRepository productionTrackingAcceptanceQueueRepository;
+
+    @Autowired
+    private StateExecutorService stateExecutorService;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private TranslationService translationService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    private final AtomicBoolean signalled = new AtomicBoolean();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            threads = Math.max(threads, 1);
+            executor = Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean canBeQueued(final Entity productionTracking) {
+        return enabled && ProductionTrackingStateStringValues.DRAFT.equals(
+                productionTracking.getStringField(ProductionTrackingFields.STATE));
+    }
+
+    public Entity enqueue(final Entity productionTracking, final String userLogin) {
+        productionTracking.setField(ProductionTrackingFields.ACCEPTANCE_QUEUED_AT, new Date());
+        productionTracking.setField(ProductionTrackingFields.ACCEPTANCE_STARTED_AT, null);
+        productionTracking.setField(ProductionTrackingFields.ACCEPTANCE_NEXT_ATTEMPT_AT, null);
+        productionTracking.setField(ProductionTrackingFields.ACCEPTANCE_ATTEMPTS, 0);
+
+        Entity queuedProductionTracking = stateExecutorService.changeState(ProductionTrackingStateServiceMarker.class,
+                productionTracking, userLogin, ProductionTrackingStateStringValues.PENDING);
+
+        if (ProductionTrackingStateStringValues.PENDING.equals(queuedProductionTracking
+                .getStringField(ProductionTrackingFields.STATE))) {
+            wakeUpAfterCommit();
+        }
+
+        return queuedProductionTracking;
+    }
+
+    public void processQueueTrigger() {
+        if (enabled) {
+            wakeUp();
+        }
+    }
+
+    private void wakeUpAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            wakeUp();
+
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCommit() {
+                wakeUp();
+            }
+
+        });
+    }
+
+    private void wakeUp() {
+        signalled.set(true);
+
+        int workers;
+
+        do {
+            workers = activeWorkers.get();
+
+            if (workers >= threads) {
+                return;
+            }
+        } while (!activeWorkers.compareAndSet(workers, workers + 1));
+
+        executor.execute(() -> {
+            try {
+                multiTenantService.doInMultiTenantContext(this::processQueue);
+            } catch (RuntimeException e) {
+                LOG.error("Production tracking acceptance worker failed", e);
+            } finally {
+                activeWorkers.decrementAndGet();
+            }
+
+            if (signalled.get()) {
+                wakeUp();
+            }
+        });
+    }
+
+    private void processQueue() {
+        while (true) {
+            signalled.set(false);
+
+            Long productionTrackingId = productionTrackingAcceptanceQueueRepository.claim(L_STALE_AFTER_MINUTES);
+
+            if (Objects.isNull(productionTrackingId)) {
+                return;
+            }
+
+            wakeUp();
+
+            accept(productionTrackingId);
+        }
+    }
+
+    private void accept(final Long productionTrackingId) {
+        try {
+            Entity productionTracking = getProductionTrackingDD().get(productionTrackingId);
+
+            if (Objects.isNull(productionTracking)) {
+                return;
+            }
+
+            String userLogin = productionTrackingAcceptanceQueueRepository.getRequestingUser(productionTrackingId);
+
+            Entity acceptedProductionTracking = stateExecutorService.changeState(ProductionTrackingStateServiceMarker.class,
+                    productionTracking, userLogin, ProductionTrackingStateStringValues.ACCEPTED);
+
+            if (ProductionTrackingStateStringValues.ACCEPTED.equals(acceptedProductionTracking
+                    .getStringField(ProductionTrackingFields.STATE))) {
+                return;
+            }
+
+            String cause = getFailureCause(acceptedProductionTracking);
+
+            if (StringUtils.isEmpty(cause)) {
+                retryOrReject(productionTrackingId, null);
+            } else {
+                reject(productionTrackingId, userLogin, cause);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Production tracking acceptance failed, id: " + productionTrackingId, e);
+
+            retryOrReject(productionTrackingId, e.getMessage());
+        }
+    }
+
+    private void retryOrReject(final Long productionTrackingId, final String cause) {
+        Entity productionTracking = getProductionTrackingDD().get(productionTrackingId);
+        Integer attempts = productionTracking.getIntegerField(ProductionTrackingFields.ACCEPTANCE_ATTEMPTS);
+
+        if (Objects.isNull(attempts) || (attempts < maxAttempts)) {
+            productionTrackingAcceptanceQueueRepository.retryLater(productionTrackingId, L_RETRY_DELAY_SECONDS);
+        } else {
+            reject(productionTrackingId, productionTrackingAcceptanceQueueRepository.getRequestingUser(productionTrackingId),
+                    StringUtils.defaultIfEmpty(cause, translationService.translate(
+                            "states.messages.change.failure.internalServerError", LocaleContextHolder.getLocale())));
+        }
+    }
+
+    private void reject(final Long productionTrackingId, final String userLogin, final String cause) {
+        Entity productionTracking = getProductionTrackingDD().get(productionTrackingId);
+
+        productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAILS, true);
+        productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAIL_CAUSE,
+                StringUtils.abbreviate(cause, L_MAX_CAUSE_LENGTH));
+        productionTracking.setField(ProductionTrackingFields.ACCEPTANCE_STARTED_AT, null);
+
+        Entity rejectedProductionTracking = stateExecutorService.changeState(ProductionTrackingStateServiceMarker.class,
+                productionTracking, userLogin, ProductionTrackingStateStringValues.DRAFT);
+
+        if (ProductionTrackingStateStringValues.DRAFT.equals(rejectedProductionTracking
+                .getStringField(ProductionTrackingFields.STATE))) {
+            LOG.info("Production tracking acceptance rejected, id: " + productionTrackingId + ", cause: " + cause);
+        } else {
+            LOG.error("Production tracking acceptance rejected, but it could not be moved back to draft, id: "
+                    + productionTrackingId + ", cause: " + cause);
+        }
+    }
+
+    private String getFailureCause(final Entity productionTracking) {
+        List<ErrorMessage> errors = Stream.concat(productionTracking.getGlobalErrors().stream(),
+                productionTracking.getErrors().values().stream()).collect(Collectors.toList());
+
+        return errors.stream()
+                .map(error -> translationService.translate(error.getMessage(), LocaleContextHolder.getLocale(), error.getVars()))
+                .collect(Collectors.joining(" "));
+    }
+
+    private DataDefinition getProductionTrackingDD() {
+        return dataDefinitionService.get(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                ProductionCountingConstants.MODEL_PRODUCTION_TRACKING);
+    }
+
+}
@@ -31,6 +31,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
 import com.qcadoo.mes.productionCounting.newstates.ProductionTrackingStateServiceMarker;
 import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingState;
 import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateChangeDescriber;
@@ -72,6 +73,9 @@ public class ProductionTrackingStatesHelper {
     @Autowired
     private SecurityService securityService;
 
+    @Autowired
+    private ProductionTrackingAcceptanceQueueService productionTrackingAcceptanceQueueService;
+
     public void setInitialState(final Entity productionTracking) {
         stateChangeEntityBuilder.buildInitial(stateChangeDescriber, productionTracking, ProductionTrackingState.DRAFT);
     }
@@ -116,6 +120,11 @@ public class ProductionTrackingStatesHelper {
         Long userId = securityService.getCurrentUserId();
         productionRecord.setField(USER_CHANGE_STATE, userId);
         String userLogin = securityService.getCurrentUserName();
+
+        if (productionTrackingAcceptanceQueueService.canBeQueued(productionRecord)) {
+            return tryQueueAcceptance(productionRecord, userLogin, logMessages);
+        }
+
         stateExecutorService.changeState(ProductionTrackingStateServiceMarker.class, productionRecord, userLogin, ProductionTrackingStateStringValues.ACCEPTED);
 
         if (productionRecord.isValid()) {
@@ -130,6 +139,23 @@ public class ProductionTrackingStatesHelper {
         }
     }
 
+    private StateChangeStatus tryQueueAcceptance(final Entity productionRecord, final String userLogin,
+            final boolean logMessages) {
+        Entity queuedProductionRecord = productionTrackingAcceptanceQueueService.enqueue(productionRecord, userLogin);
+
+        if (ProductionTrackingStateStringValues.PENDING.equals(queuedProductionRecord
+                .getStringField(ProductionTrackingFields.STATE))) {
+            return StateChangeStatus.IN_PROGRESS;
+        } else {
+            if (logMessages) {
+                LOGGER.error(queuedProductionRecord.getErrors().toString());
+                LOGGER.error(queuedProductionRecord.getGlobalErrors().toString());
+            }
+
+            return StateChangeStatus.FAILURE;
+        }
+    }
+
     public StateChangeStatus tryCorrect(final Entity productionRecord, final boolean logMessages) {
         Long userId = securityService.getCurrentUserId();
         productionRecord.setField(USER_CHANGE_STATE, userId);
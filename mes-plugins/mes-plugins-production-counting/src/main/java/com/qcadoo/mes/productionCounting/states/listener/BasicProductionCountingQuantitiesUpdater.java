@@ -0,0 +1,161 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p/>
+ * This file is part of Qcadoo.
+ * <p/>
+ * Qcadoo is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option) any
+ * later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p/>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states.listener;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingConstants;
+import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.exception.EntityRuntimeException;
+
+/**
+ * Applies used and produced quantity changes of a production tracking to basicproductioncounting_basicproductioncounting
+ * rows of an order. Quantities are added in the database, one statement per direction, so trackings of the same order
+ * accepted at the same time never overwrite each other's changes. Rows are locked in id order first, which keeps
+ * concurrent trackings of the order from deadlocking. A change which would make a quantity negative is not applied.
+ * <p>
+ * Changed rows are then saved through their data definition with the quantities read back from the database, so their
+ * validators and save hooks, like the coverage register update, still run. Rows stay locked until the surrounding
+ * transaction ends, so no other tracking can change them in between.
+ */
+@Service
+public class BasicProductionCountingQuantitiesUpdater {
+
+    private static final String L_USED_QUANTITY = "usedquantity";
+
+    private static final String L_PRODUCED_QUANTITY = "producedquantity";
+
+    private static final String L_LOCK = "SELECT bpc.id FROM basicproductioncounting_basicproductioncounting bpc "
+            + "WHERE bpc.order_id = :orderId AND bpc.product_id IN (:productIds) ORDER BY bpc.id FOR UPDATE";
+
+    private static final String L_SELECT_QUANTITIES = "SELECT bpc.id, bpc.usedquantity, bpc.producedquantity "
+            + "FROM basicproductioncounting_basicproductioncounting bpc WHERE bpc.id IN (:ids) ORDER BY bpc.id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void update(final Long orderId, final Map<Long, BigDecimal> usedQuantities,
+            final Map<Long, BigDecimal> producedQuantities) {
+        Set<Long> productIds = Sets.newHashSet(usedQuantities.keySet());
+
+        productIds.addAll(producedQuantities.keySet());
+
+        if (productIds.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("orderId", orderId);
+        params.put("productIds", productIds);
+
+        jdbcTemplate.queryForList(L_LOCK, params, Long.class);
+
+        Set<Long> basicProductionCountingIds = Sets.newHashSet();
+
+        basicProductionCountingIds.addAll(addQuantities(L_USED_QUANTITY, orderId, usedQuantities));
+        basicProductionCountingIds.addAll(addQuantities(L_PRODUCED_QUANTITY, orderId, producedQuantities));
+
+        saveBasicProductionCountings(basicProductionCountingIds);
+    }
+
+    private List<Long> addQuantities(final String column, final Long orderId, final Map<Long, BigDecimal> quantities) {
+        if (quantities.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> values = Lists.newArrayList();
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("orderId", orderId);
+
+        int index = 0;
+
+        for (Map.Entry<Long, BigDecimal> quantity : quantities.entrySet()) {
+            values.add(String.format("(CAST(:product%d AS bigint), CAST(:quantity%d AS numeric))", index, index));
+
+            params.put("product" + index, quantity.getKey());
+            params.put("quantity" + index, quantity.getValue());
+
+            index++;
+        }
+
+        String query = "UPDATE basicproductioncounting_basicproductioncounting bpc "
+                + String.format("SET %1$s = COALESCE(bpc.%1$s, 0) + d.quantity ", column) + "FROM (VALUES "
+                + String.join(", ", values) + ") AS d (product_id, quantity) "
+                + "WHERE bpc.id = (SELECT MIN(b.id) FROM basicproductioncounting_basicproductioncounting b "
+                + "WHERE b.order_id = :orderId AND b.product_id = d.product_id) "
+                + String.format("AND COALESCE(bpc.%s, 0) + d.quantity >= 0 RETURNING bpc.id", column);
+
+        return jdbcTemplate.queryForList(query, params, Long.class);
+    }
+
+    private void saveBasicProductionCountings(final Set<Long> basicProductionCountingIds) {
+        if (basicProductionCountingIds.isEmpty()) {
+            return;
+        }
+
+        DataDefinition basicProductionCountingDD = getBasicProductionCountingDD();
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(L_SELECT_QUANTITIES,
+                Collections.singletonMap("ids", basicProductionCountingIds));
+
+        for (Map<String, Object> row : rows) {
+            Entity basicProductionCounting = basicProductionCountingDD.get(((Number) row.get("id")).longValue());
+
+            basicProductionCounting.setField(BasicProductionCountingFields.USED_QUANTITY, row.get(L_USED_QUANTITY));
+            basicProductionCounting.setField(BasicProductionCountingFields.PRODUCED_QUANTITY, row.get(L_PRODUCED_QUANTITY));
+
+            basicProductionCounting = basicProductionCountingDD.save(basicProductionCounting);
+
+            if (!basicProductionCounting.isValid()) {
+                throw new EntityRuntimeException(basicProductionCounting);
+            }
+        }
+    }
+
+    private DataDefinition getBasicProductionCountingDD() {
+        return dataDefinitionService.get(BasicProductionCountingConstants.PLUGIN_IDENTIFIER,
+                BasicProductionCountingConstants.MODEL_BASIC_PRODUCTION_COUNTING);
+    }
+
+}
@@ -24,13 +24,12 @@
 package com.qcadoo.mes.productionCounting.states.listener;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.advancedGenealogy.constants.ProductFieldsAG;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
-import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields;
-import com.qcadoo.mes.basicProductionCounting.constants.OrderFieldsBPC;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.states.aop.OrderStateChangeAspect;
 import com.qcadoo.mes.orders.states.constants.OrderState;
@@ -56,6 +55,7 @@ import com.qcadoo.model.api.validators.ErrorMessage;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
@@ -101,6 +101,9 @@ public final class ProductionTrackingListenerService {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private BasicProductionCountingQuantitiesUpdater basicProductionCountingQuantitiesUpdater;
+
     public void onChangeFromDraftToAny(final Entity productionTracking) {
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAILS, false);
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAIL_CAUSE, null);
@@ -312,38 +315,26 @@ public final class ProductionTrackingListenerService {
         final List<Entity> trackingOperationProductOutComponents = productionTracking
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
 
-        trackingOperationProductInComponents.forEach(trackingOperationProductInComponent -> {
-            Entity basicProductionCounting = getBasicProductionCounting(trackingOperationProductInComponent, order);
+        final Map<Long, BigDecimal> usedQuantities = Maps.newHashMap();
+        final Map<Long, BigDecimal> producedQuantities = Maps.newHashMap();
 
-            if (basicProductionCounting == null) {
-                return;
-            }
-
-            final BigDecimal usedQuantity = basicProductionCounting.getDecimalField(BasicProductionCountingFields.USED_QUANTITY);
+        trackingOperationProductInComponents.forEach(trackingOperationProductInComponent -> {
+            final Long productId = trackingOperationProductInComponent.getBelongsToField(L_PRODUCT).getId();
             final BigDecimal productQuantity = trackingOperationProductInComponent
                     .getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY);
-            final BigDecimal result = operation.perform(usedQuantity, productQuantity);
 
-            basicProductionCounting.setField(BasicProductionCountingFields.USED_QUANTITY, result);
-            basicProductionCounting.getDataDefinition().save(basicProductionCounting);
+            usedQuantities.put(productId, operation.perform(usedQuantities.get(productId), productQuantity));
         });
 
         trackingOperationProductOutComponents.forEach(trackingOperationProductOutComponent -> {
-            Entity basicProductionCounting = getBasicProductionCounting(trackingOperationProductOutComponent, order);
-
-            if (basicProductionCounting == null) {
-                return;
-            }
-
-            final BigDecimal usedQuantity = basicProductionCounting
-                    .getDecimalField(BasicProductionCountingFields.PRODUCED_QUANTITY);
+            final Long productId = trackingOperationProductOutComponent.getBelongsToField(L_PRODUCT).getId();
             final BigDecimal productQuantity = trackingOperationProductOutComponent
                     .getDecimalField(TrackingOperationProductOutComponentFields.USED_QUANTITY);
-            final BigDecimal result = operation.perform(usedQuantity, productQuantity);
 
-            basicProductionCounting.setField(BasicProductionCountingFields.PRODUCED_QUANTITY, result);
-            basicProductionCounting.getDataDefinition().save(basicProductionCounting);
+            producedQuantities.put(productId, operation.perform(producedQuantities.get(productId), productQuantity));
         });
+
+        basicProductionCountingQuantitiesUpdater.update(order.getId(), usedQuantities, producedQuantities);
     }
 
     private void checkIfTimesIsSet(final Entity productionTracking) {
@@ -388,14 +379,6 @@ public final class ProductionTrackingListenerService {
         }
     }
 
-    private Entity getBasicProductionCounting(final Entity trackingOperationProductComponent, final Entity order) {
-        Entity product = trackingOperationProductComponent.getBelongsToField(L_PRODUCT);
-
-        return order.getHasManyField(OrderFieldsBPC.BASIC_PRODUCTION_COUNTINGS).find()
-                .add(SearchRestrictions.belongsTo(BasicProductionCountingFields.PRODUCT, product)).setMaxResults(1)
-                .uniqueResult();
-    }
-
     public void onCorrected(final Entity productionTracking) {
         updateBasicProductionCounting(productionTracking, new Substraction());
         setOrderDoneAndWastesQuantity(productionTracking, new Substraction());
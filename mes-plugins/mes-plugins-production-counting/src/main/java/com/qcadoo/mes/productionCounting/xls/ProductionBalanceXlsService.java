@@ -2,11 +2,14 @@ package com.qcadoo.mes.productionCounting.xls;
 
 import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.print.xls.ReportFont;
+import com.qcadoo.mes.basic.print.xls.ReportStyle;
+import com.qcadoo.mes.basic.print.xls.ReportStyleRegistry;
+import com.qcadoo.mes.basic.print.xls.XlsxDocumentService;
 import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
 import com.qcadoo.mes.productionCounting.xls.dto.*;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.report.api.xls.XlsDocumentService;
 
 import java.math.BigDecimal;
 import java.util.Date;
@@ -14,20 +17,17 @@ import java.util.List;
 import java.util.Locale;
 import java.util.stream.Collectors;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.IndexedColors;
-import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service
-public class ProductionBalanceXlsService extends XlsDocumentService {
+public class ProductionBalanceXlsService extends XlsxDocumentService {
 
     @Autowired
     private TranslationService translationService;
@@ -42,26 +42,24 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             "productName", "plannedQuantity", "producedQuantity", "wastesQuantity", "producedWastes", "deviation", "productUnit");
 
     @Override
-    protected void addHeader(HSSFSheet sheet, Locale locale, Entity entity) {
+    protected void addHeader(Sheet sheet, Locale locale, Entity entity) {
 
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        HSSFRow headerRow = sheet.createRow(0);
+        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook());
+        Row headerRow = sheet.createRow(0);
         int columnIndex = 0;
         for (String key : PRODUCTION_QUANTITIES_HEADERS) {
             createHeaderCell(stylesContainer, headerRow,
                     translationService.translate("productionCounting.productionBalance.report.xls.header." + key, locale),
-                    columnIndex, HSSFCellStyle.ALIGN_LEFT);
+                    columnIndex, CellStyle.ALIGN_LEFT);
             columnIndex++;
         }
     }
 
     @Override
-    protected void addSeries(HSSFSheet sheet, Entity entity) {
+    protected void addSeries(Sheet sheet, Entity entity) {
         List<Long> ordersIds = getOrdersIds(entity);
 
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook());
         createProducedQuantitiesSheet(sheet, ordersIds, stylesContainer);
     }
 
@@ -71,41 +69,43 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
     }
 
     @Override
-    protected void addExtraSheets(final HSSFWorkbook workbook, Entity entity, Locale locale) {
+    protected void addExtraSheets(final Workbook workbook, Entity entity, Locale locale) {
+        final StylesContainer stylesContainer = new StylesContainer(workbook);
+
         List<Long> ordersIds = getOrdersIds(entity);
         List<MaterialCost> materialCosts = productionBalanceRepository.getMaterialCosts(entity, ordersIds);
         createMaterialCostsSheet(materialCosts, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts", locale)),
-                locale);
+                stylesContainer, locale);
         createLaborTimeSheet(createSheet(workbook, translationService.translate(LaborTimeSheetConstants.SHEET_TITLE, locale)),
-                ordersIds, locale);
+                ordersIds, stylesContainer, locale);
         List<LaborTimeDetails> laborTimeDetailsList = productionBalanceRepository.getLaborTimeDetails(entity, ordersIds);
         createLaborTimeDetailsSheet(laborTimeDetailsList, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails", locale)),
-                locale);
+                stylesContainer, locale);
         createPieceworkSheet(createSheet(workbook, translationService.translate(PieceworkSheetConstants.SHEET_TITLE, locale)),
-                ordersIds, locale);
+                ordersIds, stylesContainer, locale);
         createStoppagesSheet(
                 createSheet(workbook,
                         translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages", locale)),
-                ordersIds, locale);
+                ordersIds, stylesContainer, locale);
         List<ProductionCost> productionCosts = productionBalanceRepository.getProductionCosts(entity, ordersIds);
         createProductionCostsSheet(productionCosts, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.productionCosts", locale)),
-                locale);
+                stylesContainer, locale);
         List<OrderBalance> ordersBalance = productionBalanceRepository.getOrdersBalance(entity, ordersIds, materialCosts,
                 productionCosts);
         createOrdersBalanceSheet(ordersBalance, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance", locale)),
-                locale);
+                stylesContainer, locale);
         List<OrderBalance> componentsBalance = productionBalanceRepository.getComponentsBalance(entity, ordersIds, ordersBalance);
         createOrdersBalanceSheet(componentsBalance, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.componentsBalance", locale)),
-                locale);
+                stylesContainer, locale);
         List<OrderBalance> productsBalance = productionBalanceRepository.getProductsBalance(entity, ordersIds, componentsBalance);
         createProductsBalanceSheet(productsBalance, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.productsBalance", locale)),
-                locale);
+                stylesContainer, locale);
     }
 
     private List<Long> getOrdersIds(final Entity productionBalance) {
@@ -114,11 +114,11 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         return orders.stream().map(Entity::getId).collect(Collectors.toList());
     }
 
-    private void createProducedQuantitiesSheet(HSSFSheet sheet, List<Long> ordersIds, StylesContainer stylesContainer) {
+    private void createProducedQuantitiesSheet(Sheet sheet, List<Long> ordersIds, StylesContainer stylesContainer) {
         List<ProducedQuantity> producedQuantities = productionBalanceRepository.getProducedQuantities(ordersIds);
         int rowIndex = 1;
         for (ProducedQuantity producedQuantity : producedQuantities) {
-            HSSFRow row = sheet.createRow(rowIndex);
+            Row row = sheet.createRow(rowIndex);
             createRegularCell(stylesContainer, row, 0, producedQuantity.getOrderNumber());
             createRegularCell(stylesContainer, row, 1, producedQuantity.getProductNumber());
             createRegularCell(stylesContainer, row, 2, producedQuantity.getProductName());
@@ -131,16 +131,13 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             rowIndex++;
         }
 
-        for (int i = 0; i < PRODUCTION_QUANTITIES_HEADERS.size(); i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        autoSizeColumns(sheet, 0, PRODUCTION_QUANTITIES_HEADERS.size() - 1);
     }
 
-    private void createMaterialCostsSheet(List<MaterialCost> materialCosts, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createMaterialCostsSheet(List<MaterialCost> materialCosts, Sheet sheet,
+            StylesContainer stylesContainer, Locale locale) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer,
                 row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.orderNumber", locale),
@@ -215,16 +212,12 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createRegularCell(stylesContainer, row, 13, materialCost.getUsedWasteUnit());
             rowCounter++;
         }
-        for (int i = 0; i <= 13; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        autoSizeColumns(sheet, 0, 13);
     }
 
-    private void createPieceworkSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createPieceworkSheet(Sheet sheet, List<Long> ordersIds, StylesContainer stylesContainer, Locale locale) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer, row, translationService.translate(PieceworkSheetConstants.ORDER_NUMBER, locale), 0,
                 CellStyle.ALIGN_LEFT);
         createHeaderCell(stylesContainer, row, translationService.translate(PieceworkSheetConstants.OPERATION_NUMBER, locale), 1,
@@ -242,16 +235,12 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createNumericCell(stylesContainer, row, 2, pieceworkDetails.getTotalExecutedOperationCycles(), false);
             rowCounter++;
         }
-        for (int i = 0; i <= 2; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        autoSizeColumns(sheet, 0, 2);
     }
 
-    private void createStoppagesSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createStoppagesSheet(Sheet sheet, List<Long> ordersIds, StylesContainer stylesContainer, Locale locale) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(
                 stylesContainer, row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.stoppages.orderNumber", locale),
@@ -316,16 +305,12 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createRegularCell(stylesContainer, row, 11, stoppage.getWorker());
             rowCounter++;
         }
-        for (int i = 0; i <= 11; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        autoSizeColumns(sheet, 0, 11);
     }
 
-    private void createLaborTimeSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createLaborTimeSheet(Sheet sheet, List<Long> ordersIds, StylesContainer stylesContainer, Locale locale) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.ORDER_NUMBER, locale), 0,
                 CellStyle.ALIGN_LEFT);
         createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.OPERATION_NUMBER, locale), 1,
@@ -357,16 +342,13 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createTimeCell(stylesContainer, row, 7, laborTime.getLaborTime(), false);
             rowCounter++;
         }
-        for (int i = 0; i <= 7; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        autoSizeColumns(sheet, 0, 7);
     }
 
-    private void createLaborTimeDetailsSheet(List<LaborTimeDetails> laborTimeDetailsList, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createLaborTimeDetailsSheet(List<LaborTimeDetails> laborTimeDetailsList, Sheet sheet,
+            StylesContainer stylesContainer, Locale locale) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer, row,
                 translationService.translate(
                         "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.divisionNumber", locale),
@@ -504,16 +486,13 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createTimeCell(stylesContainer, row, 25, laborTimeDetails.getMachineTimeDeviation(), false);
             rowCounter++;
         }
-        for (int i = 0; i <= 25; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        autoSizeColumns(sheet, 0, 25);
     }
 
-    private void createProductionCostsSheet(List<ProductionCost> productionCosts, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createProductionCostsSheet(List<ProductionCost> productionCosts, Sheet sheet,
+            StylesContainer stylesContainer, Locale locale) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer,
                 row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.productionCosts.orderNumber", locale),
@@ -605,16 +584,13 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createNumericCell(stylesContainer, row, 16, productionCost.getRealPieceworkCosts(), false);
             rowCounter++;
         }
-        for (int i = 0; i <= 16; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        autoSizeColumns(sheet, 0, 16);
     }
 
-    private void createOrdersBalanceSheet(List<OrderBalance> ordersBalance, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createOrdersBalanceSheet(List<OrderBalance> ordersBalance, Sheet sheet,
+            StylesContainer stylesContainer, Locale locale) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer,
                 row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.orderNumber", locale),
@@ -729,16 +705,13 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createNumericCell(stylesContainer, row, 20, orderBalance.getSellPrice(), false);
             rowCounter++;
         }
-        for (int i = 0; i <= 20; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        autoSizeColumns(sheet, 0, 20);
     }
 
-    private void createProductsBalanceSheet(List<OrderBalance> productsBalance, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createProductsBalanceSheet(List<OrderBalance> productsBalance, Sheet sheet,
+            StylesContainer stylesContainer, Locale locale) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer,
                 row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productNumber", locale),
@@ -848,127 +821,90 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createNumericCell(stylesContainer, row, 19, orderBalance.getSellPrice(), false);
             rowCounter++;
         }
-        for (int i = 0; i <= 19; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        autoSizeColumns(sheet, 0, 19);
     }
 
-    private HSSFCell createRegularCell(StylesContainer stylesContainer, HSSFRow row, int column, String content) {
-        HSSFCell cell = row.createCell(column);
+    private Cell createRegularCell(StylesContainer stylesContainer, Row row, int column, String content) {
+        Cell cell = row.createCell(column);
         cell.setCellValue(content);
-        cell.setCellStyle(StylesContainer.aligned(stylesContainer.regularStyle, HSSFCellStyle.ALIGN_LEFT));
+        cell.setCellStyle(stylesContainer.aligned(stylesContainer.regularStyle, CellStyle.ALIGN_LEFT));
         return cell;
     }
 
-    private HSSFCell createNumericCell(StylesContainer stylesContainer, HSSFRow row, int column, BigDecimal value, boolean bold) {
-        HSSFCell cell = row.createCell(column, HSSFCell.CELL_TYPE_NUMERIC);
+    private Cell createNumericCell(StylesContainer stylesContainer, Row row, int column, BigDecimal value, boolean bold) {
+        Cell cell = row.createCell(column, Cell.CELL_TYPE_NUMERIC);
         cell.setCellValue(numberService.setScaleWithDefaultMathContext(value, 2).doubleValue());
         if (bold) {
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.numberBoldStyle, HSSFCellStyle.ALIGN_RIGHT));
+            cell.setCellStyle(stylesContainer.aligned(stylesContainer.numberBoldStyle, CellStyle.ALIGN_RIGHT));
         } else {
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.numberStyle, HSSFCellStyle.ALIGN_RIGHT));
+            cell.setCellStyle(stylesContainer.aligned(stylesContainer.numberStyle, CellStyle.ALIGN_RIGHT));
         }
         return cell;
     }
 
-    private HSSFCell createTimeCell(StylesContainer stylesContainer, HSSFRow row, int column, Integer value, boolean bold) {
-        HSSFCell cell = row.createCell(column, HSSFCell.CELL_TYPE_NUMERIC);
+    private Cell createTimeCell(StylesContainer stylesContainer, Row row, int column, Integer value, boolean bold) {
+        Cell cell = row.createCell(column, Cell.CELL_TYPE_NUMERIC);
         if (value == null) {
             value = 0;
         }
         cell.setCellValue(Math.abs(value) / 86400d);
         if (value >= 0) {
             if (bold) {
-                cell.setCellStyle(StylesContainer.aligned(stylesContainer.timeBoldStyle, HSSFCellStyle.ALIGN_RIGHT));
+                cell.setCellStyle(stylesContainer.aligned(stylesContainer.timeBoldStyle, CellStyle.ALIGN_RIGHT));
             } else {
-                cell.setCellStyle(StylesContainer.aligned(stylesContainer.timeStyle, HSSFCellStyle.ALIGN_RIGHT));
+                cell.setCellStyle(stylesContainer.aligned(stylesContainer.timeStyle, CellStyle.ALIGN_RIGHT));
             }
         } else {
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.negativeTimeStyle, HSSFCellStyle.ALIGN_RIGHT));
+            cell.setCellStyle(stylesContainer.aligned(stylesContainer.negativeTimeStyle, CellStyle.ALIGN_RIGHT));
         }
         return cell;
     }
 
-    private HSSFCell createDateTimeCell(StylesContainer stylesContainer, HSSFRow row, int column, Date value) {
-        HSSFCell cell = row.createCell(column);
+    private Cell createDateTimeCell(StylesContainer stylesContainer, Row row, int column, Date value) {
+        Cell cell = row.createCell(column);
         if (value != null) {
             cell.setCellValue(value);
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.dateTimeStyle, HSSFCellStyle.ALIGN_RIGHT));
+            cell.setCellStyle(stylesContainer.aligned(stylesContainer.dateTimeStyle, CellStyle.ALIGN_RIGHT));
         }
         return cell;
     }
 
-    private HSSFCell createHeaderCell(StylesContainer stylesContainer, HSSFRow row, String content, int column, short align) {
-        HSSFCell cell = row.createCell(column);
+    private Cell createHeaderCell(StylesContainer stylesContainer, Row row, String content, int column, short align) {
+        Cell cell = row.createCell(column);
         cell.setCellValue(content);
-        cell.setCellStyle(StylesContainer.aligned(stylesContainer.headerStyle, align));
+        cell.setCellStyle(stylesContainer.aligned(stylesContainer.headerStyle, align));
         return cell;
     }
 
     private static class StylesContainer {
 
-        private final HSSFCellStyle regularStyle;
-
-        private final HSSFCellStyle headerStyle;
+        private final ReportStyle regularStyle = ReportStyle.DEFAULT.withVerticalAlignment(CellStyle.VERTICAL_CENTER);
 
-        private final HSSFCellStyle timeStyle;
+        private final ReportStyle headerStyle = ReportStyle.DEFAULT.withFont(ReportFont.BOLD)
+                .withFillColor(IndexedColors.GREY_25_PERCENT.getIndex()).withBorderBottom(CellStyle.BORDER_MEDIUM)
+                .withWrapText(true);
 
-        private final HSSFCellStyle timeBoldStyle;
+        private final ReportStyle timeStyle = ReportStyle.DEFAULT.withDataFormat("[HH]:MM:SS");
 
-        private final HSSFCellStyle negativeTimeStyle;
+        private final ReportStyle timeBoldStyle = timeStyle.withFont(ReportFont.BOLD);
 
-        private final HSSFCellStyle numberStyle;
+        private final ReportStyle negativeTimeStyle = ReportStyle.DEFAULT.withDataFormat("-[HH]:MM:SS");
 
-        private final HSSFCellStyle numberBoldStyle;
+        private final ReportStyle numberStyle = ReportStyle.DEFAULT.withDataFormat("0.00###");
 
-        private final HSSFCellStyle dateTimeStyle;
+        private final ReportStyle numberBoldStyle = numberStyle.withFont(ReportFont.BOLD);
 
-        StylesContainer(HSSFWorkbook workbook, FontsContainer fontsContainer) {
-            regularStyle = workbook.createCellStyle();
-            regularStyle.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        private final ReportStyle dateTimeStyle = ReportStyle.DEFAULT.withDataFormat("yyyy-mm-dd hh:mm");
 
-            headerStyle = workbook.createCellStyle();
-            headerStyle.setFont(fontsContainer.boldFont);
-            headerStyle.setFillPattern(XSSFCellStyle.SOLID_FOREGROUND);
-            headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-            headerStyle.setBorderBottom(XSSFCellStyle.BORDER_MEDIUM);
-            headerStyle.setWrapText(true);
+        private final ReportStyleRegistry styleRegistry;
 
-            timeStyle = workbook.createCellStyle();
-            timeStyle.setDataFormat(workbook.createDataFormat().getFormat("[HH]:MM:SS"));
-
-            timeBoldStyle = workbook.createCellStyle();
-            timeBoldStyle.setDataFormat(workbook.createDataFormat().getFormat("[HH]:MM:SS"));
-            timeBoldStyle.setFont(fontsContainer.boldFont);
-
-            negativeTimeStyle = workbook.createCellStyle();
-            negativeTimeStyle.setDataFormat(workbook.createDataFormat().getFormat("-[HH]:MM:SS"));
-
-            numberStyle = workbook.createCellStyle();
-            numberStyle.setDataFormat(workbook.createDataFormat().getFormat("0.00###"));
-
-            numberBoldStyle = workbook.createCellStyle();
-            numberBoldStyle.setDataFormat(workbook.createDataFormat().getFormat("0.00###"));
-            numberBoldStyle.setFont(fontsContainer.boldFont);
-
-            dateTimeStyle = workbook.createCellStyle();
-            dateTimeStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
+        StylesContainer(Workbook workbook) {
+            styleRegistry = new ReportStyleRegistry(workbook);
         }
 
-        private static HSSFCellStyle aligned(HSSFCellStyle style, short align) {
-            style.setAlignment(align);
-            return style;
+        private CellStyle aligned(ReportStyle style, short align) {
+            return styleRegistry.getStyle(style.withAlignment(align));
         }
 
     }
-
-    private static class FontsContainer {
-
-        private final Font boldFont;
-
-        FontsContainer(HSSFWorkbook workbook) {
-            boldFont = workbook.createFont();
-            boldFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
-        }
-    }
 }
@@ -0,0 +1,225 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Claims pending trackings of two orders from many workers at once and checks that only the oldest pending tracking of each
+ * order is handed out, and that a stale claim is taken over. Runs only against a database given with
+ * -Dproductioncounting.concurrency.url (and .user, .password) which holds two orders with at least two production trackings
+ * each and no pending trackings; the trackings are restored afterwards.
+ */
+public class ProductionTrackingAcceptanceQueueRepositoryConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    private static final int STALE_AFTER_MINUTES = 10;
+
+    private static final String L_SELECT_ROW = "SELECT id, order_id, state, acceptancequeuedat, acceptancestartedat, "
+            + "acceptancenextattemptat, acceptanceattempts FROM productioncounting_productiontracking WHERE id = :id";
+
+    private static final String L_QUEUE = "UPDATE productioncounting_productiontracking SET state = '05pending', "
+            + "acceptancequeuedat = now() - :queuedMinutesAgo * interval '1 minute', acceptancestartedat = NULL, "
+            + "acceptancenextattemptat = NULL, acceptanceattempts = 0 WHERE id = :id";
+
+    private ProductionTrackingAcceptanceQueueRepository productionTrackingAcceptanceQueueRepository;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    private List<Map<String, Object>> initialRows;
+
+    private Long firstOrderFirstTrackingId;
+
+    private Long firstOrderSecondTrackingId;
+
+    private Long secondOrderFirstTrackingId;
+
+    private Long secondOrderSecondTrackingId;
+
+    @Before
+    public void init() {
+        String url = System.getProperty("productioncounting.concurrency.url");
+
+        assumeNotNull(url);
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url,
+                System.getProperty("productioncounting.concurrency.user", "postgres"),
+                System.getProperty("productioncounting.concurrency.password", "postgres"));
+
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        productionTrackingAcceptanceQueueRepository = new ProductionTrackingAcceptanceQueueRepository();
+
+        ReflectionTestUtils.setField(productionTrackingAcceptanceQueueRepository, "jdbcTemplate", jdbcTemplate);
+
+        assumeTrue(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM productioncounting_productiontracking "
+                + "WHERE state = '05pending'", Collections.emptyMap(), Long.class) == 0);
+
+        List<Long> ids = jdbcTemplate.queryForList("SELECT pt.id FROM productioncounting_productiontracking pt "
+                + "WHERE pt.order_id IN (SELECT p.order_id FROM productioncounting_productiontracking p "
+                + "GROUP BY p.order_id HAVING COUNT(*) > 1 ORDER BY p.order_id LIMIT 2) "
+                + "AND (SELECT COUNT(*) FROM productioncounting_productiontracking o "
+                + "WHERE o.order_id = pt.order_id AND o.id < pt.id) < 2 ORDER BY pt.order_id, pt.id", Collections.emptyMap(),
+                Long.class);
+
+        assumeTrue(ids.size() == 4);
+
+        initialRows = Lists.newArrayList();
+
+        for (Long id : ids) {
+            initialRows.add(jdbcTemplate.queryForList(L_SELECT_ROW, ImmutableMap.of("id", id)).get(0));
+        }
+
+        firstOrderFirstTrackingId = ids.get(0);
+        firstOrderSecondTrackingId = ids.get(1);
+        secondOrderFirstTrackingId = ids.get(2);
+        secondOrderSecondTrackingId = ids.get(3);
+    }
+
+    @After
+    public void restore() {
+        if (initialRows == null) {
+            return;
+        }
+
+        for (Map<String, Object> row : initialRows) {
+            jdbcTemplate.update("UPDATE productioncounting_productiontracking SET state = :state, "
+                    + "acceptancequeuedat = :acceptancequeuedat, acceptancestartedat = :acceptancestartedat, "
+                    + "acceptancenextattemptat = :acceptancenextattemptat, acceptanceattempts = :acceptanceattempts "
+                    + "WHERE id = :id", row);
+        }
+    }
+
+    @Test
+    public void shouldClaimOnlyOldestPendingTrackingOfEachOrder() throws Exception {
+        // given
+        queue(firstOrderFirstTrackingId, 4);
+        queue(secondOrderFirstTrackingId, 3);
+        queue(firstOrderSecondTrackingId, 2);
+        queue(secondOrderSecondTrackingId, 1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<Long>> claims = Lists.newArrayList();
+
+        // when
+        for (int i = 0; i < THREADS; i++) {
+            claims.add(executor.submit(this::claim));
+        }
+
+        Set<Long> claimedIds = Sets.newHashSet();
+        int claimsCount = 0;
+
+        for (Future<Long> claim : claims) {
+            Long claimedId = claim.get();
+
+            if (claimedId != null) {
+                claimedIds.add(claimedId);
+                claimsCount++;
+            }
+        }
+
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        // then
+        assertEquals(2, claimsCount);
+        assertEquals(ImmutableSet.of(firstOrderFirstTrackingId, secondOrderFirstTrackingId), claimedIds);
+
+        // when
+        jdbcTemplate.update("UPDATE productioncounting_productiontracking SET state = '02accepted' WHERE id = :id",
+                ImmutableMap.of("id", firstOrderFirstTrackingId));
+
+        // then
+        assertEquals(firstOrderSecondTrackingId, claim());
+        assertNull(claim());
+    }
+
+    @Test
+    public void shouldTakeOverStaleClaim() {
+        // given
+        queue(firstOrderFirstTrackingId, 30);
+        queue(firstOrderSecondTrackingId, 20);
+
+        jdbcTemplate.update("UPDATE productioncounting_productiontracking SET acceptancestartedat = now() - :startedMinutesAgo "
+                + "* interval '1 minute', acceptanceattempts = 1 WHERE id = :id", ImmutableMap.of("id",
+                firstOrderFirstTrackingId, "startedMinutesAgo", STALE_AFTER_MINUTES / 2));
+
+        // when
+        Long freshClaimId = claim();
+
+        jdbcTemplate.update("UPDATE productioncounting_productiontracking SET acceptancestartedat = now() - :startedMinutesAgo "
+                + "* interval '1 minute' WHERE id = :id", ImmutableMap.of("id", firstOrderFirstTrackingId, "startedMinutesAgo",
+                STALE_AFTER_MINUTES * 2));
+
+        Long staleClaimId = claim();
+
+        // then
+        assertNull(freshClaimId);
+        assertEquals(firstOrderFirstTrackingId, staleClaimId);
+        assertEquals(2, ((Number) jdbcTemplate.queryForList(L_SELECT_ROW, ImmutableMap.of("id", firstOrderFirstTrackingId))
+                .get(0).get("acceptanceattempts")).intValue());
+    }
+
+    private void queue(final Long productionTrackingId, final int queuedMinutesAgo) {
+        jdbcTemplate.update(L_QUEUE, ImmutableMap.of("id", productionTrackingId, "queuedMinutesAgo", queuedMinutesAgo));
+    }
+
+    private Long claim() {
+        return transactionTemplate.execute(status -> productionTrackingAcceptanceQueueRepository.claim(STALE_AFTER_MINUTES));
+    }
+
+}
@@ -0,0 +1,251 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.newstates.StateExecutorService;
+import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
+import com.qcadoo.mes.productionCounting.newstates.ProductionTrackingStateServiceMarker;
+import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class ProductionTrackingAcceptanceQueueServiceTest {
+
+    private static final long L_TIMEOUT = 5000L;
+
+    private static final Long L_ACCEPTED_ID = 1L;
+
+    private static final Long L_REJECTED_ID = 2L;
+
+    private static final Long L_FAILED_ID = 3L;
+
+    private static final String L_USER_LOGIN = "terminal";
+
+    private ProductionTrackingAcceptanceQueueService productionTrackingAcceptanceQueueService;
+
+    @Mock
+    private ProductionTrackingAcceptanceQueueRepository productionTrackingAcceptanceQueueRepository;
+
+    @Mock
+    private StateExecutorService stateExecutorService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private TranslationService translationService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private DataDefinition productionTrackingDD;
+
+    @Mock
+    private Entity productionTracking, acceptedProductionTracking, rejectedProductionTracking, failedProductionTracking;
+
+    @Mock
+    private ErrorMessage errorMessage;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productionTrackingAcceptanceQueueService = new ProductionTrackingAcceptanceQueueService();
+
+        ReflectionTestUtils.setField(productionTrackingAcceptanceQueueService, "productionTrackingAcceptanceQueueRepository",
+                productionTrackingAcceptanceQueueRepository);
+        ReflectionTestUtils.setField(productionTrackingAcceptanceQueueService, "stateExecutorService", stateExecutorService);
+        ReflectionTestUtils.setField(productionTrackingAcceptanceQueueService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(productionTrackingAcceptanceQueueService, "translationService", translationService);
+        ReflectionTestUtils.setField(productionTrackingAcceptanceQueueService, "multiTenantService", multiTenantService);
+        ReflectionTestUtils.setField(productionTrackingAcceptanceQueueService, "threads", 2);
+        ReflectionTestUtils.setField(productionTrackingAcceptanceQueueService, "maxAttempts", 3);
+
+        given(dataDefinitionService.get(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                ProductionCountingConstants.MODEL_PRODUCTION_TRACKING)).willReturn(productionTrackingDD);
+
+        doAnswer(invocation -> {
+            ((MultiTenantCallback) invocation.getArguments()[0]).invoke();
+
+            return null;
+        }).when(multiTenantService).doInMultiTenantContext(any(MultiTenantCallback.class));
+    }
+
+    @After
+    public final void destroy() {
+        productionTrackingAcceptanceQueueService.destroy();
+    }
+
+    @Test
+    public final void shouldNotQueueWhenQueueIsDisabled() {
+        // given
+        given(productionTracking.getStringField(ProductionTrackingFields.STATE)).willReturn(
+                ProductionTrackingStateStringValues.DRAFT);
+
+        // when
+        boolean canBeQueued = productionTrackingAcceptanceQueueService.canBeQueued(productionTracking);
+
+        // then
+        assertFalse(canBeQueued);
+    }
+
+    @Test
+    public final void shouldQueueOnlyDraftTrackings() {
+        // given
+        enableQueue();
+
+        given(productionTracking.getStringField(ProductionTrackingFields.STATE)).willReturn(
+                ProductionTrackingStateStringValues.DRAFT, ProductionTrackingStateStringValues.CORRECTED);
+
+        // when
+        boolean draftCanBeQueued = productionTrackingAcceptanceQueueService.canBeQueued(productionTracking);
+        boolean correctedCanBeQueued = productionTrackingAcceptanceQueueService.canBeQueued(productionTracking);
+
+        // then
+        assertTrue(draftCanBeQueued);
+        assertFalse(correctedCanBeQueued);
+    }
+
+    @Test
+    public final void shouldMoveQueuedTrackingToPending() {
+        // given
+        enableQueue();
+
+        given(stateExecutorService.changeState(ProductionTrackingStateServiceMarker.class, productionTracking, L_USER_LOGIN,
+                ProductionTrackingStateStringValues.PENDING)).willReturn(productionTracking);
+        given(productionTracking.getStringField(ProductionTrackingFields.STATE)).willReturn(
+                ProductionTrackingStateStringValues.PENDING);
+
+        // when
+        Entity queuedProductionTracking = productionTrackingAcceptanceQueueService.enqueue(productionTracking, L_USER_LOGIN);
+
+        // then
+        assertEquals(productionTracking, queuedProductionTracking);
+
+        verify(productionTracking).setField(ProductionTrackingFields.ACCEPTANCE_ATTEMPTS, 0);
+        verify(productionTracking).setField(eq(ProductionTrackingFields.ACCEPTANCE_QUEUED_AT), any());
+    }
+
+    @Test
+    public final void shouldAcceptClaimedTrackingsAndRejectInvalidOnes() {
+        // given
+        enableQueue();
+
+        given(productionTrackingAcceptanceQueueRepository.claim(anyInt())).willReturn(L_ACCEPTED_ID, L_REJECTED_ID, null);
+        given(productionTrackingAcceptanceQueueRepository.getRequestingUser(any(Long.class))).willReturn(L_USER_LOGIN);
+
+        stubTracking(L_ACCEPTED_ID, acceptedProductionTracking, ProductionTrackingStateStringValues.ACCEPTED);
+        stubTracking(L_REJECTED_ID, rejectedProductionTracking, ProductionTrackingStateStringValues.PENDING);
+
+        given(rejectedProductionTracking.getGlobalErrors()).willReturn(Lists.newArrayList(errorMessage));
+        given(errorMessage.getMessage()).willReturn("productionCounting.error");
+        given(errorMessage.getVars()).willReturn(new String[0]);
+        given(translationService.translate(eq("productionCounting.error"), any(Locale.class), Matchers.<String> anyVararg()))
+                .willReturn("Not enough quantity");
+        given(stateExecutorService.changeState(ProductionTrackingStateServiceMarker.class, rejectedProductionTracking,
+                L_USER_LOGIN, ProductionTrackingStateStringValues.DRAFT)).willReturn(rejectedProductionTracking);
+
+        // when
+        productionTrackingAcceptanceQueueService.processQueueTrigger();
+
+        // then
+        verify(stateExecutorService, timeout(L_TIMEOUT)).changeState(ProductionTrackingStateServiceMarker.class,
+                rejectedProductionTracking, L_USER_LOGIN, ProductionTrackingStateStringValues.DRAFT);
+        verify(rejectedProductionTracking).setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAILS, true);
+        verify(rejectedProductionTracking).setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAIL_CAUSE,
+                "Not enough quantity");
+        verify(stateExecutorService, never()).changeState(ProductionTrackingStateServiceMarker.class,
+                acceptedProductionTracking, L_USER_LOGIN, ProductionTrackingStateStringValues.DRAFT);
+        verify(productionTrackingAcceptanceQueueRepository, never()).retryLater(any(Long.class), anyInt());
+    }
+
+    @Test
+    public final void shouldRetryTrackingFailedWithoutCause() {
+        // given
+        enableQueue();
+
+        given(productionTrackingAcceptanceQueueRepository.claim(anyInt())).willReturn(L_FAILED_ID, null);
+        given(productionTrackingAcceptanceQueueRepository.getRequestingUser(L_FAILED_ID)).willReturn(L_USER_LOGIN);
+
+        stubTracking(L_FAILED_ID, failedProductionTracking, ProductionTrackingStateStringValues.PENDING);
+
+        given(failedProductionTracking.getIntegerField(ProductionTrackingFields.ACCEPTANCE_ATTEMPTS)).willReturn(1);
+
+        // when
+        productionTrackingAcceptanceQueueService.processQueueTrigger();
+
+        // then
+        verify(productionTrackingAcceptanceQueueRepository, timeout(L_TIMEOUT)).retryLater(eq(L_FAILED_ID), anyInt());
+        verify(stateExecutorService, never()).changeState(eq(ProductionTrackingStateServiceMarker.class),
+                eq(failedProductionTracking), anyString(), eq(ProductionTrackingStateStringValues.DRAFT));
+    }
+
+    private void enableQueue() {
+        ReflectionTestUtils.setField(productionTrackingAcceptanceQueueService, "enabled", true);
+
+        productionTrackingAcceptanceQueueService.init();
+    }
+
+    private void stubTracking(final Long id, final Entity productionTracking, final String stateAfterAcceptance) {
+        given(productionTrackingDD.get(id)).willReturn(productionTracking);
+        given(productionTracking.getGlobalErrors()).willReturn(Collections.emptyList());
+        given(productionTracking.getErrors()).willReturn(Collections.emptyMap());
+        given(stateExecutorService.changeState(ProductionTrackingStateServiceMarker.class, productionTracking, L_USER_LOGIN,
+                ProductionTrackingStateStringValues.ACCEPTED)).willReturn(productionTracking);
+        given(productionTracking.getStringField(ProductionTrackingFields.STATE)).willReturn(stateAfterAcceptance);
+    }
+
+}
@@ -0,0 +1,202 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Accepts many trackings of one order in parallel and checks that no quantity change is lost. Runs only against a database
+ * given with -Dproductioncounting.concurrency.url (and .user, .password) which holds an order with at least two basic
+ * production counting rows; the rows are restored afterwards. Saving rows through their data definition is mocked.
+ */
+public class BasicProductionCountingQuantitiesConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    private static final int TRACKINGS = 400;
+
+    private static final BigDecimal USED_QUANTITY = new BigDecimal("1.25");
+
+    private static final BigDecimal PRODUCED_QUANTITY = new BigDecimal("0.5");
+
+    private static final String L_SELECT_ROW = "SELECT id, order_id, product_id, usedquantity, producedquantity "
+            + "FROM basicproductioncounting_basicproductioncounting WHERE id = :id";
+
+    private BasicProductionCountingQuantitiesUpdater basicProductionCountingQuantitiesUpdater;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    private List<Map<String, Object>> initialRows;
+
+    @Before
+    public void init() {
+        String url = System.getProperty("productioncounting.concurrency.url");
+
+        assumeNotNull(url);
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url,
+                System.getProperty("productioncounting.concurrency.user", "postgres"),
+                System.getProperty("productioncounting.concurrency.password", "postgres"));
+
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        basicProductionCountingQuantitiesUpdater = new BasicProductionCountingQuantitiesUpdater();
+
+        ReflectionTestUtils.setField(basicProductionCountingQuantitiesUpdater, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(basicProductionCountingQuantitiesUpdater, "dataDefinitionService",
+                mockDataDefinitionService());
+
+        List<Long> ids = jdbcTemplate.queryForList("SELECT MIN(bpc.id) FROM basicproductioncounting_basicproductioncounting bpc "
+                + "WHERE bpc.order_id = (SELECT b.order_id FROM basicproductioncounting_basicproductioncounting b "
+                + "GROUP BY b.order_id HAVING COUNT(DISTINCT b.product_id) > 1 ORDER BY b.order_id LIMIT 1) "
+                + "GROUP BY bpc.product_id ORDER BY 1 LIMIT 2", Collections.emptyMap(), Long.class);
+
+        assumeTrue(ids.size() == 2);
+
+        initialRows = Lists.newArrayList();
+
+        for (Long id : ids) {
+            initialRows.add(jdbcTemplate.queryForList(L_SELECT_ROW, ImmutableMap.of("id", id)).get(0));
+        }
+    }
+
+    @After
+    public void restore() {
+        if (initialRows == null) {
+            return;
+        }
+
+        for (Map<String, Object> row : initialRows) {
+            jdbcTemplate.update("UPDATE basicproductioncounting_basicproductioncounting "
+                    + "SET usedquantity = :usedquantity, producedquantity = :producedquantity WHERE id = :id", row);
+        }
+    }
+
+    @Test
+    public void shouldNotLoseQuantitiesOfTrackingsAcceptedInParallel() throws Exception {
+        // given
+        final Long orderId = ((Number) initialRows.get(0).get("order_id")).longValue();
+        final Long firstProductId = ((Number) initialRows.get(0).get("product_id")).longValue();
+        final Long secondProductId = ((Number) initialRows.get(1).get("product_id")).longValue();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<?>> trackings = Lists.newArrayList();
+
+        // when
+        for (int i = 0; i < TRACKINGS; i++) {
+            final boolean reversedProducts = (i % 2) == 1;
+
+            trackings.add(executor.submit(() -> transactionTemplate.execute(status -> {
+                Map<Long, BigDecimal> usedQuantities = reversedProducts ? ImmutableMap.of(secondProductId, USED_QUANTITY,
+                        firstProductId, USED_QUANTITY) : ImmutableMap.of(firstProductId, USED_QUANTITY, secondProductId,
+                        USED_QUANTITY);
+
+                basicProductionCountingQuantitiesUpdater.update(orderId, usedQuantities,
+                        ImmutableMap.of(secondProductId, PRODUCED_QUANTITY));
+
+                return null;
+            })));
+        }
+
+        for (Future<?> tracking : trackings) {
+            tracking.get();
+        }
+
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        // then
+        BigDecimal count = BigDecimal.valueOf(TRACKINGS);
+
+        assertQuantities(initialRows.get(0), USED_QUANTITY.multiply(count), BigDecimal.ZERO);
+        assertQuantities(initialRows.get(1), USED_QUANTITY.multiply(count), PRODUCED_QUANTITY.multiply(count));
+    }
+
+    private DataDefinitionService mockDataDefinitionService() {
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+        DataDefinition basicProductionCountingDD = mock(DataDefinition.class);
+        Entity basicProductionCounting = mock(Entity.class);
+
+        given(dataDefinitionService.get(anyString(), anyString())).willReturn(basicProductionCountingDD);
+        given(basicProductionCountingDD.get(anyLong())).willReturn(basicProductionCounting);
+        given(basicProductionCountingDD.save(any(Entity.class))).willReturn(basicProductionCounting);
+        given(basicProductionCounting.isValid()).willReturn(true);
+
+        return dataDefinitionService;
+    }
+
+    private void assertQuantities(final Map<String, Object> initialRow, final BigDecimal usedQuantityChange,
+            final BigDecimal producedQuantityChange) {
+        Map<String, Object> row = jdbcTemplate.queryForList(L_SELECT_ROW, ImmutableMap.of("id", initialRow.get("id"))).get(0);
+
+        assertEquals(0, getQuantity(initialRow, "usedquantity").add(usedQuantityChange).compareTo(
+                getQuantity(row, "usedquantity")));
+        assertEquals(0, getQuantity(initialRow, "producedquantity").add(producedQuantityChange).compareTo(
+                getQuantity(row, "producedquantity")));
+    }
+
+    private BigDecimal getQuantity(final Map<String, Object> row, final String column) {
+        BigDecimal quantity = (BigDecimal) row.get(column);
+
+        return quantity == null ? BigDecimal.ZERO : quantity;
+    }
+
+}
@@ -0,0 +1,187 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingConstants;
+import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.exception.EntityRuntimeException;
+
+public class BasicProductionCountingQuantitiesUpdaterTest {
+
+    private static final Long L_ORDER_ID = 1L;
+
+    private BasicProductionCountingQuantitiesUpdater basicProductionCountingQuantitiesUpdater;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition basicProductionCountingDD;
+
+    @Mock
+    private Entity basicProductionCounting;
+
+    @Captor
+    private ArgumentCaptor<String> queryCaptor;
+
+    @Captor
+    private ArgumentCaptor<Map<String, Object>> paramsCaptor;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        basicProductionCountingQuantitiesUpdater = new BasicProductionCountingQuantitiesUpdater();
+
+        ReflectionTestUtils.setField(basicProductionCountingQuantitiesUpdater, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(basicProductionCountingQuantitiesUpdater, "dataDefinitionService", dataDefinitionService);
+
+        given(dataDefinitionService.get(BasicProductionCountingConstants.PLUGIN_IDENTIFIER,
+                BasicProductionCountingConstants.MODEL_BASIC_PRODUCTION_COUNTING)).willReturn(basicProductionCountingDD);
+        given(basicProductionCountingDD.get(5L)).willReturn(basicProductionCounting);
+        given(basicProductionCountingDD.save(basicProductionCounting)).willReturn(basicProductionCounting);
+        given(basicProductionCounting.isValid()).willReturn(true);
+    }
+
+    @Test
+    public final void shouldDoNothingWhenThereAreNoQuantities() {
+        // when
+        basicProductionCountingQuantitiesUpdater.update(L_ORDER_ID, Maps.newHashMap(), Maps.newHashMap());
+
+        // then
+        verifyZeroInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public final void shouldUpdateEachDirectionWithOneStatement() {
+        // given
+        Map<Long, BigDecimal> usedQuantities = ImmutableMap.of(11L, new BigDecimal("2.5"), 12L, BigDecimal.ONE,
+                13L, BigDecimal.TEN);
+        Map<Long, BigDecimal> producedQuantities = ImmutableMap.of(21L, new BigDecimal("-4"));
+
+        // when
+        basicProductionCountingQuantitiesUpdater.update(L_ORDER_ID, usedQuantities, producedQuantities);
+
+        // then
+        verify(jdbcTemplate, times(3)).queryForList(queryCaptor.capture(), paramsCaptor.capture(), eq(Long.class));
+
+        List<String> queries = queryCaptor.getAllValues();
+        List<Map<String, Object>> params = paramsCaptor.getAllValues();
+
+        assertEquals(4, ((Collection<Long>) params.get(0).get("productIds")).size());
+
+        assertTrue(queries.get(1).contains("SET usedquantity = COALESCE(bpc.usedquantity, 0) + d.quantity"));
+        assertTrue(queries.get(1).contains("AND COALESCE(bpc.usedquantity, 0) + d.quantity >= 0"));
+        assertEquals(L_ORDER_ID, params.get(1).get("orderId"));
+        assertEquals(7, params.get(1).size());
+
+        assertTrue(queries.get(2).contains("SET producedquantity = COALESCE(bpc.producedquantity, 0) + d.quantity"));
+        assertTrue(queries.get(2).contains("AND COALESCE(bpc.producedquantity, 0) + d.quantity >= 0"));
+        assertEquals(21L, params.get(2).get("product0"));
+        assertEquals(new BigDecimal("-4"), params.get(2).get("quantity0"));
+
+        verify(basicProductionCountingDD, never()).save(any(Entity.class));
+    }
+
+    @Test
+    public final void shouldSkipDirectionWithoutQuantities() {
+        // given
+        Map<Long, BigDecimal> producedQuantities = ImmutableMap.of(21L, BigDecimal.ONE);
+
+        // when
+        basicProductionCountingQuantitiesUpdater.update(L_ORDER_ID, Maps.newHashMap(), producedQuantities);
+
+        // then
+        verify(jdbcTemplate, times(2)).queryForList(anyString(), anyMap(), eq(Long.class));
+    }
+
+    @Test
+    public final void shouldSaveChangedRowsWithQuantitiesFromDatabase() {
+        // given
+        given(jdbcTemplate.queryForList(anyString(), anyMap(), eq(Long.class))).willReturn(Lists.newArrayList(5L));
+        given(jdbcTemplate.queryForList(anyString(), anyMap())).willReturn(
+                Lists.<Map<String, Object>> newArrayList(ImmutableMap.<String, Object> of("id", 5L, "usedquantity",
+                        BigDecimal.TEN, "producedquantity", BigDecimal.ONE)));
+
+        // when
+        basicProductionCountingQuantitiesUpdater.update(L_ORDER_ID, ImmutableMap.of(11L, BigDecimal.ONE),
+                ImmutableMap.of(11L, BigDecimal.ONE));
+
+        // then
+        verify(basicProductionCounting).setField(BasicProductionCountingFields.USED_QUANTITY, BigDecimal.TEN);
+        verify(basicProductionCounting).setField(BasicProductionCountingFields.PRODUCED_QUANTITY, BigDecimal.ONE);
+        verify(basicProductionCountingDD, times(1)).save(basicProductionCounting);
+    }
+
+    @Test(expected = EntityRuntimeException.class)
+    public final void shouldFailWhenChangedRowIsNotValid() {
+        // given
+        given(jdbcTemplate.queryForList(anyString(), anyMap(), eq(Long.class))).willReturn(Lists.newArrayList(5L));
+        given(jdbcTemplate.queryForList(anyString(), anyMap())).willReturn(
+                Lists.<Map<String, Object>> newArrayList(ImmutableMap.<String, Object> of("id", 5L, "usedquantity",
+                        BigDecimal.TEN, "producedquantity", BigDecimal.ONE)));
+        given(basicProductionCounting.isValid()).willReturn(false);
+
+        // when
+        basicProductionCountingQuantitiesUpdater.update(L_ORDER_ID, ImmutableMap.of(11L, BigDecimal.ONE),
+                Maps.newHashMap());
+    }
+
+}
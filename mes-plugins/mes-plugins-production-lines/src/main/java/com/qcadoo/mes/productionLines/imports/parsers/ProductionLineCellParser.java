@@ -31,6 +31,7 @@ import org.springframework.stereotype.Component;
 
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
+import com.qcadoo.mes.basic.imports.services.ImportLookupCache;
 import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
 import com.qcadoo.mes.productionLines.constants.ProductionLinesConstants;
 import com.qcadoo.model.api.DataDefinition;
@@ -46,10 +47,14 @@ public class ProductionLineCellParser implements CellParser {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ImportLookupCache importLookupCache;
+
     @Override
     public void parse(final String cellValue, final String dependentCellValue, final CellErrorsAccessor errorsAccessor,
             final Consumer<Object> valueConsumer) {
-        Entity productionLine = getProductionLineByNumber(cellValue);
+        Entity productionLine = importLookupCache.find(() -> getProductionLineByNumber(cellValue),
+                ProductionLinesConstants.MODEL_PRODUCTION_LINE, cellValue);
 
         if (Objects.isNull(productionLine)) {
             errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
@@ -0,0 +1,76 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.domain;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.joda.time.DateTime;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+
+/**
+ * State of one automatic PPS generation run, shared by all orders generated within the run.
+ * <p>
+ * Caches shifts of production lines, shift work times and workers on line per production line and day, and standard
+ * performance norms per technology, so orders planned on the same line do not recalculate them. All caches are safe to use
+ * from many threads, data of a single order is never kept here.
+ */
+public class PpsGenerationContext {
+
+    private final ConcurrentMap<Long, List<Shift>> shifts = Maps.newConcurrentMap();
+
+    private final ConcurrentMap<List<Object>, List<DateTimeRange>> shiftWorkDateTimes = Maps.newConcurrentMap();
+
+    private final ConcurrentMap<List<Object>, Integer> workersOnLine = Maps.newConcurrentMap();
+
+    private final ConcurrentMap<Long, BigDecimal> standardPerformanceNorms = Maps.newConcurrentMap();
+
+    public List<Shift> getShifts(final Long productionLineId, final Supplier<List<Shift>> shiftsSupplier) {
+        return shifts.computeIfAbsent(productionLineId, key -> ImmutableList.copyOf(shiftsSupplier.get()));
+    }
+
+    public List<DateTimeRange> getShiftWorkDateTimes(final Long productionLineId, final Long shiftId, final DateTime dateOfDay,
+            final Supplier<List<DateTimeRange>> shiftWorkDateTimesSupplier) {
+        return shiftWorkDateTimes.computeIfAbsent(Arrays.asList(productionLineId, shiftId, dateOfDay),
+                key -> ImmutableList.copyOf(shiftWorkDateTimesSupplier.get()));
+    }
+
+    public Integer getWorkersOnLine(final Long productionLineId, final Long shiftId, final DateTime date,
+            final Supplier<Integer> workersOnLineSupplier) {
+        return workersOnLine.computeIfAbsent(Arrays.asList(productionLineId, shiftId, date),
+                key -> workersOnLineSupplier.get());
+    }
+
+    public BigDecimal getStandardPerformanceNorm(final Long technologyId, final Supplier<BigDecimal> normSupplier) {
+        return standardPerformanceNorms.computeIfAbsent(technologyId, key -> normSupplier.get());
+    }
+
+}
@@ -31,15 +31,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
-import com.lowagie.text.DocumentException;
-import com.lowagie.text.PageSize;
 import com.qcadoo.mes.productionPerShift.constants.PPSReportFields;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
 import com.qcadoo.mes.productionPerShift.report.print.PPSReportXlsService;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.file.FileService;
-import com.qcadoo.report.api.ReportService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ComponentState.MessageType;
 import com.qcadoo.view.api.ViewDefinitionState;
@@ -56,12 +53,9 @@ public class PPSReportDetailsListeners {
     @Autowired
     private FileService fileService;
 
-    @Autowired
-    private ReportService reportService;
-
     public void printReport(final ViewDefinitionState viewDefinitionState, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(viewDefinitionState, state, new String[] { args[0],
-                ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PPS_REPORT });
+        ppsReportXlsService.printGeneratedReport(viewDefinitionState, state, ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PPS_REPORT);
     }
 
     @Transactional
@@ -92,20 +86,18 @@ public class PPSReportDetailsListeners {
                 state.addMessage("productionPerShift.window.mainTab.goodFoodReportDetails.generatedMessage", MessageType.SUCCESS);
             } catch (IOException e) {
                 throw new IllegalStateException(e.getMessage(), e);
-            } catch (DocumentException e) {
-                throw new IllegalStateException(e.getMessage(), e);
             }
         }
     }
 
-    public void generateReportDocuments(final Entity goodFoodReport, final Locale locale) throws IOException, DocumentException {
+    public void generateReportDocuments(final Entity goodFoodReport, final Locale locale) throws IOException {
 
         String localePrefix = "productionPerShift.report.fileName";
 
         Entity reportWithFileName = fileService.updateReportFileName(goodFoodReport, PPSReportFields.CREATE_DATE, localePrefix);
 
         try {
-            ppsReportXlsService.generateDocument(reportWithFileName, locale, PageSize.A3);
+            ppsReportXlsService.generateDocument(reportWithFileName, locale);
 
         } catch (IOException e) {
             throw new IllegalStateException("Problem with saving goodFood report");
@@ -3,7 +3,7 @@ package com.qcadoo.mes.productionPerShift.report.columns;
 import java.util.Locale;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.ss.usermodel.Cell;
 
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.productionPerShift.report.print.PPSReportXlsStyleContainer;
@@ -23,27 +23,27 @@ public abstract class AbstractReportColumn implements ReportColumn {
     }
 
     @Override
-    public void setWhiteDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setWhiteDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_WhiteDataStyle));
     }
 
     @Override
-    public void setWhiteDataStyleEnd(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setWhiteDataStyleEnd(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_WhiteDataStyleEnd));
     }
 
     @Override
-    public void setGreyDataStyleEnd(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setGreyDataStyleEnd(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_GreyDataStyleEnd));
     }
 
     @Override
-    public void setGreyDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setGreyDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_GreyDataStyle));
     }
 
     @Override
-    public void setHeaderStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setHeaderStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_HeaderStyle2));
     }
 
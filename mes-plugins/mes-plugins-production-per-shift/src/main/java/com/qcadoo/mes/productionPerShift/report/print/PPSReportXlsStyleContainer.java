@@ -2,11 +2,10 @@ package com.qcadoo.mes.productionPerShift.report.print;
 
 import java.util.Map;
 
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFFont;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Sheet;
 
 import com.google.common.collect.Maps;
 
@@ -15,6 +14,8 @@ import com.google.common.collect.Maps;
  */
 public class PPSReportXlsStyleContainer {
 
+    public static final String FONT_ARIAL = "Arial";
+
     public static final String I_WhiteDataStyleSmall = "whiteDataStyleSmall";
 
     public static final String I_GreyDataStyleSmall = "greyDataStyleSmall";
@@ -39,7 +40,7 @@ public class PPSReportXlsStyleContainer {
 
     public static final String I_HeaderStyle2Red = "headerStyle2Red";
 
-    private Map<String, HSSFCellStyle> styles = Maps.newHashMap();
+    private Map<String, CellStyle> styles = Maps.newHashMap();
 
     private Font fontNormal;
 
@@ -49,36 +50,36 @@ public class PPSReportXlsStyleContainer {
 
     private Font fontSmallRed;
 
-    public PPSReportXlsStyleContainer(HSSFSheet sheet) {
+    public PPSReportXlsStyleContainer(Sheet sheet) {
         initStyle(sheet);
     }
 
-    private void initStyle(final HSSFSheet sheet) {
+    private void initStyle(final Sheet sheet) {
         this.fontNormal = sheet.getWorkbook().createFont();
-        fontNormal.setFontName(HSSFFont.FONT_ARIAL);
+        fontNormal.setFontName(FONT_ARIAL);
         fontNormal.setBoldweight(Font.BOLDWEIGHT_BOLD);
         fontNormal.setFontHeightInPoints((short) 9);
-        fontNormal.setColor(HSSFFont.COLOR_NORMAL);
+        fontNormal.setColor(Font.COLOR_NORMAL);
 
         this.fontRed = sheet.getWorkbook().createFont();
-        fontRed.setFontName(HSSFFont.FONT_ARIAL);
+        fontRed.setFontName(FONT_ARIAL);
         fontRed.setBoldweight(Font.BOLDWEIGHT_BOLD);
         fontRed.setFontHeightInPoints((short) 9);
-        fontRed.setColor(HSSFFont.COLOR_NORMAL);
-        fontRed.setColor(HSSFFont.COLOR_RED);
+        fontRed.setColor(Font.COLOR_NORMAL);
+        fontRed.setColor(Font.COLOR_RED);
 
         this.fontSmall = sheet.getWorkbook().createFont();
-        fontSmall.setFontName(HSSFFont.FONT_ARIAL);
+        fontSmall.setFontName(FONT_ARIAL);
         fontSmall.setBoldweight(Font.BOLDWEIGHT_BOLD);
         fontSmall.setFontHeightInPoints((short) 7);
-        fontSmall.setColor(HSSFFont.COLOR_NORMAL);
+        fontSmall.setColor(Font.COLOR_NORMAL);
 
         this.fontSmallRed = sheet.getWorkbook().createFont();
-        fontSmallRed.setFontName(HSSFFont.FONT_ARIAL);
+        fontSmallRed.setFontName(FONT_ARIAL);
         fontSmallRed.setBoldweight(Font.BOLDWEIGHT_BOLD);
         fontSmallRed.setFontHeightInPoints((short) 7);
-        fontSmallRed.setColor(HSSFFont.COLOR_NORMAL);
-        fontSmallRed.setColor(HSSFFont.COLOR_RED);
+        fontSmallRed.setColor(Font.COLOR_NORMAL);
+        fontSmallRed.setColor(Font.COLOR_RED);
 
         initWhiteDataStyleSmall(sheet);
         greyDataStyleSmall(sheet);
@@ -94,204 +95,204 @@ public class PPSReportXlsStyleContainer {
         headerStyle2Red(sheet);
     }
 
-    private void headerStyle2Red(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderLeft(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderBottom(HSSFCellStyle.BORDER_MEDIUM);
+    private void headerStyle2Red(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
+        style.setBorderTop(CellStyle.BORDER_MEDIUM);
+        style.setBorderLeft(CellStyle.BORDER_MEDIUM);
+        style.setBorderRight(CellStyle.BORDER_MEDIUM);
+        style.setBorderBottom(CellStyle.BORDER_MEDIUM);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
         style.setFont(fontSmallRed);
         styles.put(I_HeaderStyle2Red, style);
 
     }
 
-    private void headerStyle2(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderLeft(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderBottom(HSSFCellStyle.BORDER_MEDIUM);
+    private void headerStyle2(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
+        style.setBorderTop(CellStyle.BORDER_MEDIUM);
+        style.setBorderLeft(CellStyle.BORDER_MEDIUM);
+        style.setBorderRight(CellStyle.BORDER_MEDIUM);
+        style.setBorderBottom(CellStyle.BORDER_MEDIUM);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
         style.setFont(fontSmall);
         styles.put(I_HeaderStyle2, style);
     }
 
-    private void headerStyle1(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderLeft(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderBottom(HSSFCellStyle.BORDER_MEDIUM);
-        style.setFillForegroundColor(HSSFColor.GREY_50_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        style.setAlignment(HSSFCellStyle.ALIGN_LEFT);
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+    private void headerStyle1(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
+        style.setBorderTop(CellStyle.BORDER_MEDIUM);
+        style.setBorderLeft(CellStyle.BORDER_MEDIUM);
+        style.setBorderRight(CellStyle.BORDER_MEDIUM);
+        style.setBorderBottom(CellStyle.BORDER_MEDIUM);
+        style.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
+        style.setFillPattern(CellStyle.SOLID_FOREGROUND);
+        style.setAlignment(CellStyle.ALIGN_LEFT);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
         style.setFont(fontNormal);
         styles.put(I_HeaderStyle1, style);
     }
 
-    private void greyDataStyleRed(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+    private void greyDataStyleRed(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
+        style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+        style.setFillPattern(CellStyle.SOLID_FOREGROUND);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
         style.setFont(fontRed);
         styles.put(I_GreyDataStyleRed, style);
     }
 
-    private void whiteDataStyleRed(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
+    private void whiteDataStyleRed(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
         style.setFont(fontRed);
         styles.put(I_WhiteDataStyleRed, style);
     }
 
-    private void changeoverDataStyle(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void changeoverDataStyle(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
 
 
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
 
 
 
         style.setFont(fontNormal);
 
-        style.setFillForegroundColor(HSSFColor.PALE_BLUE.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
+        style.setFillForegroundColor(IndexedColors.PALE_BLUE.getIndex());
+        style.setFillPattern(CellStyle.SOLID_FOREGROUND);
         styles.put(I_ChangeoverDataStyle, style);
     }
 
-    private void whiteDataStyle(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void whiteDataStyle(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
 
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
         style.setFont(fontNormal);
         styles.put(I_WhiteDataStyle, style);
     }
 
-    private void greyDataStyle(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
+    private void greyDataStyle(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
+        style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+        style.setFillPattern(CellStyle.SOLID_FOREGROUND);
         style.setFont(fontNormal);
         styles.put(I_GreyDataStyle, style);
     }
 
-    private void greyDataStyleEnd(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
+    private void greyDataStyleEnd(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
+        style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+        style.setFillPattern(CellStyle.SOLID_FOREGROUND);
+        style.setBorderRight(CellStyle.BORDER_MEDIUM);
         style.setFont(fontNormal);
         styles.put(I_GreyDataStyleEnd, style);
     }
 
-    private void whiteDataStyleEnd(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void whiteDataStyleEnd(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
 
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
         style.setFont(fontNormal);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
+        style.setBorderRight(CellStyle.BORDER_MEDIUM);
 
         styles.put(I_WhiteDataStyleEnd, style);
     }
 
-    private void greyDataStyleSmall(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void greyDataStyleSmall(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
 
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
+        style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+        style.setFillPattern(CellStyle.SOLID_FOREGROUND);
         style.setFont(fontSmall);
         styles.put(I_GreyDataStyleSmall, style);
     }
 
-    private void initWhiteDataStyleSmall(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void initWhiteDataStyleSmall(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
 
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
         style.setFont(fontSmall);
         styles.put(I_WhiteDataStyleSmall, style);
     }
 
-    public Map<String, HSSFCellStyle> getStyles() {
+    public Map<String, CellStyle> getStyles() {
         return styles;
     }
 
-    public void setStyles(Map<String, HSSFCellStyle> styles) {
+    public void setStyles(Map<String, CellStyle> styles) {
         this.styles = styles;
     }
 }
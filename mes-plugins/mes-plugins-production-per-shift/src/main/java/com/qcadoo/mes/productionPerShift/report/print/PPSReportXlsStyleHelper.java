@@ -23,201 +23,200 @@
  */
 package com.qcadoo.mes.productionPerShift.report.print;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFFont;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.springframework.stereotype.Service;
 
 @Service
 public class PPSReportXlsStyleHelper {
 
-    public void setWhiteDataStyleSmall(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setWhiteDataStyleSmall(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_WhiteDataStyleSmall));
     }
 
-    public void setGreyDataStyleSmall(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setGreyDataStyleSmall(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_GreyDataStyleSmall));
     }
 
-    public void setWhiteDataStyleEnd(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setWhiteDataStyleEnd(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_WhiteDataStyleEnd));
     }
 
-    public void setGreyDataStyleEnd(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setGreyDataStyleEnd(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_GreyDataStyleEnd));
     }
 
-    public void setWhiteDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setWhiteDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_WhiteDataStyle));
     }
 
-    public void setGreyDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setGreyDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_GreyDataStyle));
     }
 
-    public void setChangeoverDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setChangeoverDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_ChangeoverDataStyle));
     }
 
-    public void setWhiteDataStyleRed(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setWhiteDataStyleRed(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_WhiteDataStyleRed));
     }
 
-    public void setGreyDataStyleRed(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setGreyDataStyleRed(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_GreyDataStyleRed));
     }
 
-    public void setHeaderStyle1(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setHeaderStyle1(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_HeaderStyle1));
     }
 
-    public void setHeaderStyle2(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setHeaderStyle2(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_HeaderStyle2));
     }
 
-    public void setHeaderStyle2Red(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setHeaderStyle2Red(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_HeaderStyle2Red));
     }
 
-    private HSSFCellStyle getHeaderStyle0(final HSSFWorkbook workbook, final boolean shouldRed, final boolean shouldBackground,
+    private CellStyle getHeaderStyle0(final Workbook workbook, final boolean shouldRed, final boolean shouldBackground,
             final boolean shouldleft, final Font font) {
-        HSSFCellStyle style = workbook.createCellStyle();
+        CellStyle style = workbook.createCellStyle();
 
-        style.setBorderTop(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderLeft(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderBottom(HSSFCellStyle.BORDER_MEDIUM);
+        style.setBorderTop(CellStyle.BORDER_MEDIUM);
+        style.setBorderLeft(CellStyle.BORDER_MEDIUM);
+        style.setBorderRight(CellStyle.BORDER_MEDIUM);
+        style.setBorderBottom(CellStyle.BORDER_MEDIUM);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
 
-        font.setFontName(HSSFFont.FONT_ARIAL);
+        font.setFontName(PPSReportXlsStyleContainer.FONT_ARIAL);
         font.setBoldweight(Font.BOLDWEIGHT_NORMAL);
         font.setFontHeightInPoints((short) 7);
-        font.setColor(HSSFFont.COLOR_NORMAL);
+        font.setColor(Font.COLOR_NORMAL);
 
         style.setFont(font);
 
         if (shouldRed) {
-            font.setColor(HSSFFont.COLOR_RED);
+            font.setColor(Font.COLOR_RED);
             style.setFont(font);
         }
         if (shouldBackground) {
-            style.setFillForegroundColor(HSSFColor.GREY_50_PERCENT.index);
-            style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
+            style.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
+            style.setFillPattern(CellStyle.SOLID_FOREGROUND);
         }
         if (shouldleft) {
-            style.setAlignment(HSSFCellStyle.ALIGN_LEFT);
+            style.setAlignment(CellStyle.ALIGN_LEFT);
         }
 
         return style;
     }
 
-    private HSSFCellStyle getHeaderStyle2(final HSSFWorkbook workbook, final boolean shouldRed, final boolean shouldBackground,
+    private CellStyle getHeaderStyle2(final Workbook workbook, final boolean shouldRed, final boolean shouldBackground,
             final boolean shouldSmall, final boolean end, final boolean changeover, final Font font) {
-        HSSFCellStyle style = workbook.createCellStyle();
+        CellStyle style = workbook.createCellStyle();
 
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
 
-        font.setFontName(HSSFFont.FONT_ARIAL);
+        font.setFontName(PPSReportXlsStyleContainer.FONT_ARIAL);
         font.setBoldweight(Font.BOLDWEIGHT_BOLD);
         font.setFontHeightInPoints((short) 9);
-        font.setColor(HSSFFont.COLOR_NORMAL);
+        font.setColor(Font.COLOR_NORMAL);
 
         style.setFont(font);
 
         if (shouldRed) {
-            font.setColor(HSSFFont.COLOR_RED);
+            font.setColor(Font.COLOR_RED);
             style.setFont(font);
         }
         if (shouldBackground) {
             if (changeover) {
-                style.setFillForegroundColor(HSSFColor.LIGHT_BLUE.index);
+                style.setFillForegroundColor(IndexedColors.LIGHT_BLUE.getIndex());
 
             } else {
-                style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
+                style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
 
             }
-            style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
+            style.setFillPattern(CellStyle.SOLID_FOREGROUND);
         }
         if (shouldSmall) {
             font.setFontHeightInPoints((short) 7);
             style.setFont(font);
         }
         if (end) {
-            style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
+            style.setBorderRight(CellStyle.BORDER_MEDIUM);
         }
 
         return style;
     }
 
-    private HSSFCellStyle getHeaderStyleChangeover(final HSSFWorkbook workbook, final Font font) {
-        HSSFCellStyle style = workbook.createCellStyle();
+    private CellStyle getHeaderStyleChangeover(final Workbook workbook, final Font font) {
+        CellStyle style = workbook.createCellStyle();
 
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_THIN);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
 
-        font.setFontName(HSSFFont.FONT_ARIAL);
+        font.setFontName(PPSReportXlsStyleContainer.FONT_ARIAL);
         font.setBoldweight(Font.BOLDWEIGHT_BOLD);
         font.setFontHeightInPoints((short) 9);
-        font.setColor(HSSFFont.COLOR_NORMAL);
+        font.setColor(Font.COLOR_NORMAL);
 
         style.setFont(font);
 
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
+        style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+        style.setFillPattern(CellStyle.SOLID_FOREGROUND);
 
         return style;
     }
 
-    private HSSFCellStyle getHeaderStyleChangeoverEnd(final HSSFWorkbook workbook, final Font font) {
-        HSSFCellStyle style = workbook.createCellStyle();
+    private CellStyle getHeaderStyleChangeoverEnd(final Workbook workbook, final Font font) {
+        CellStyle style = workbook.createCellStyle();
 
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
+        style.setBorderTop(CellStyle.BORDER_THIN);
+        style.setBorderLeft(CellStyle.BORDER_THIN);
+        style.setBorderRight(CellStyle.BORDER_MEDIUM);
+        style.setBorderBottom(CellStyle.BORDER_THIN);
 
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        style.setAlignment(CellStyle.ALIGN_CENTER);
+        style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         style.setWrapText(true);
 
-        font.setFontName(HSSFFont.FONT_ARIAL);
+        font.setFontName(PPSReportXlsStyleContainer.FONT_ARIAL);
         font.setBoldweight(Font.BOLDWEIGHT_BOLD);
         font.setFontHeightInPoints((short) 9);
         style.setFont(font);
 
-        style.setFillForegroundColor(HSSFColor.SKY_BLUE.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
+        style.setFillForegroundColor(IndexedColors.SKY_BLUE.getIndex());
+        style.setFillPattern(CellStyle.SOLID_FOREGROUND);
 
         return style;
     }
 
-    public static HSSFCellStyle rowStyle2(final HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    public static CellStyle rowStyle2(final Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
 
-        style.setBorderTop(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderLeft(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderBottom(HSSFCellStyle.BORDER_MEDIUM);
+        style.setBorderTop(CellStyle.BORDER_MEDIUM);
+        style.setBorderLeft(CellStyle.BORDER_MEDIUM);
+        style.setBorderRight(CellStyle.BORDER_MEDIUM);
+        style.setBorderBottom(CellStyle.BORDER_MEDIUM);
 
         return style;
     }
@@ -23,7 +23,7 @@
  */
 package com.qcadoo.mes.productionPerShift.report.print.utils;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.ss.usermodel.Cell;
 import org.joda.time.DateTime;
 
 import com.qcadoo.model.api.Entity;
@@ -34,10 +34,10 @@ public class DayShiftHolder {
 
     private DateTime day;
 
-    private HSSFCell cell;
+    private Cell cell;
 
 
-    public DayShiftHolder(Entity shift, DateTime day, HSSFCell cell) {
+    public DayShiftHolder(Entity shift, DateTime day, Cell cell) {
         this.shift = shift;
         this.day = day;
         this.cell = cell;
@@ -59,11 +59,11 @@ public class DayShiftHolder {
         this.day = day;
     }
 
-    public HSSFCell getCell() {
+    public Cell getCell() {
         return cell;
     }
 
-    public void setCell(HSSFCell cell) {
+    public void setCell(Cell cell) {
         this.cell = cell;
     }
 }
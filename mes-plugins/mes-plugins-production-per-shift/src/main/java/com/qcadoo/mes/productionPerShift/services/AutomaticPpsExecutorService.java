@@ -1,50 +1,144 @@
 package com.qcadoo.mes.productionPerShift.services;
 
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.productionPerShift.constants.PpsAlgorithm;
+import com.qcadoo.mes.productionPerShift.domain.PpsGenerationContext;
 import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.plugin.api.PluginUtils;
 import com.qcadoo.plugin.api.RunIfEnabled;
+import com.qcadoo.tenant.api.MultiTenantService;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Service
 public class AutomaticPpsExecutorService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(AutomaticPpsExecutorService.class);
+
+    @Value("${ppsGenerationThreads:4}")
+    private int generationThreads;
+
     @Autowired
     private List<AutomaticPpsService> ppsAlgorithmServcies;
 
     @Autowired
     private AutomaticPpsParametersService parametersService;
 
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift) {
+        generateProgressForDays(progressForDaysContainer, productionPerShift, new PpsGenerationContext());
+    }
+
+    /**
+     * Generates progress for days of many orders at once. Orders are generated in parallel, each in its own transaction and in
+     * the caller's tenant, and share one {@link PpsGenerationContext}, so shift work times of a production line are calculated
+     * once per day.
+     * <p>
+     * A failed order does not stop the others, its errors are left in its container, which is marked with calculation error.
+     *
+     * @param productionPerShifts
+     *            production per shifts to generate, by the containers receiving their progress for days
+     */
+    public void generateProgressForDays(Map<ProgressForDaysContainer, Entity> productionPerShifts) {
+        if (productionPerShifts.isEmpty()) {
+            return;
+        }
+
+        PpsGenerationContext generationContext = new PpsGenerationContext();
         PpsAlgorithm algorithm = parametersService.getPpsAlgorithm();
+        int tenantId = MultiTenantUtil.getCurrentTenantId();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+                Math.min(generationThreads, productionPerShifts.size())));
+
+        try {
+            Map<ProgressForDaysContainer, Future<?>> results = Maps.newLinkedHashMap();
+
+            for (Map.Entry<ProgressForDaysContainer, Entity> productionPerShift : productionPerShifts.entrySet()) {
+                results.put(productionPerShift.getKey(), executor.submit(() -> multiTenantService.doInMultiTenantContext(
+                        tenantId, () -> transactionTemplate.execute(status -> {
+                            generateProgressForDays(algorithm, productionPerShift.getKey(), productionPerShift.getValue(),
+                                    generationContext);
+
+                            return null;
+                        }))));
+            }
+
+            for (Map.Entry<ProgressForDaysContainer, Future<?>> result : results.entrySet()) {
+                try {
+                    result.getValue().get();
+                } catch (ExecutionException e) {
+                    LOG.warn("Progress for days generation failed", e.getCause());
+
+                    result.getKey().setCalculationError(true);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("Progress for days generation interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift,
+            PpsGenerationContext generationContext) {
+        generateProgressForDays(parametersService.getPpsAlgorithm(), progressForDaysContainer, productionPerShift,
+                generationContext);
+    }
+
+    private void generateProgressForDays(PpsAlgorithm algorithm, ProgressForDaysContainer progressForDaysContainer,
+            Entity productionPerShift, PpsGenerationContext generationContext) {
         if (PpsAlgorithm.STANDARD_TECHNOLOGY == algorithm) {
-            callStandardAlgorithm(progressForDaysContainer, productionPerShift, algorithm);
+            callStandardAlgorithm(progressForDaysContainer, productionPerShift, algorithm, generationContext);
         } else if (PpsAlgorithm.STANDARD_TECHNOLOGY_AND_AMOUNT_OF_CHANGE == algorithm) {
-            callStandardAlgorithm(progressForDaysContainer, productionPerShift, algorithm);
+            callStandardAlgorithm(progressForDaysContainer, productionPerShift, algorithm, generationContext);
         } else if (PpsAlgorithm.USER == algorithm) {
-            callUserAlgorithm(progressForDaysContainer, productionPerShift);
+            callUserAlgorithm(progressForDaysContainer, productionPerShift, generationContext);
         }
     }
 
-    private void callUserAlgorithm(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift) {
+    private void callUserAlgorithm(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift,
+            PpsGenerationContext generationContext) {
         for (AutomaticPpsService service : ppsAlgorithmServcies) {
             if (serviceEnabled(service) && isNotStandardAlgorithm(service)) {
-                service.generateProgressForDays(progressForDaysContainer, productionPerShift);
+                service.generateProgressForDays(progressForDaysContainer, productionPerShift, generationContext);
             }
         }
     }
 
     private void callStandardAlgorithm(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift,
-            PpsAlgorithm algorithm) {
+            PpsAlgorithm algorithm, PpsGenerationContext generationContext) {
         for (AutomaticPpsService service : ppsAlgorithmServcies) {
             if (serviceEnabled(service)) {
                 String aClass = service.getClass().getSimpleName();
                 if (algorithm.getAlgorithmClass().equalsIgnoreCase(aClass)) {
-                    service.generateProgressForDays(progressForDaysContainer, productionPerShift);
+                    service.generateProgressForDays(progressForDaysContainer, productionPerShift, generationContext);
                 }
             }
         }
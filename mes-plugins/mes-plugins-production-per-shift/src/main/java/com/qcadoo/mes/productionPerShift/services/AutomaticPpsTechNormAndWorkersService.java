@@ -5,6 +5,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.qcadoo.mes.productionPerShift.domain.PpsGenerationContext;
 import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
 import com.qcadoo.model.api.Entity;
 
@@ -15,9 +16,14 @@ public class AutomaticPpsTechNormAndWorkersService implements AutomaticPpsServic
     private PpsTechNormAndWorkersAlgorithmService ppsTechNormAlgorithmService;
 
     @Override
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift) {
-        ppsTechNormAlgorithmService.generateProgressForDays(progressForDaysContainer, productionPerShift);
+        generateProgressForDays(progressForDaysContainer, productionPerShift, new PpsGenerationContext());
+    }
 
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift,
+            PpsGenerationContext generationContext) {
+        ppsTechNormAlgorithmService.generateProgressForDays(progressForDaysContainer, productionPerShift, generationContext);
     }
 }
@@ -26,6 +26,7 @@ import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
 import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
 import com.qcadoo.mes.productionPerShift.domain.DailyProgressContainer;
 import com.qcadoo.mes.productionPerShift.domain.DailyProgressKey;
+import com.qcadoo.mes.productionPerShift.domain.PpsGenerationContext;
 import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
 import com.qcadoo.mes.productionPerShift.domain.ShiftEfficiencyCalculationHolder;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -56,9 +57,12 @@ public abstract class PpsBaseAlgorithmService {
     @Autowired
     private ParameterService parameterService;
 
-    private Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords;
-
     public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift) {
+        generateProgressForDays(progressForDaysContainer, productionPerShift, new PpsGenerationContext());
+    }
+
+    public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift,
+            PpsGenerationContext generationContext) {
         Entity order = productionPerShift.getBelongsToField(ProductionPerShiftFields.ORDER);
         if (progressForDaysContainer.getOrder() != null) {
             order = progressForDaysContainer.getOrder();
@@ -78,7 +82,7 @@ public abstract class PpsBaseAlgorithmService {
             throw new IllegalStateException("No production line in order");
         }
 
-        List<Shift> shifts = shiftsService.findAll(productionLine);
+        List<Shift> shifts = generationContext.getShifts(productionLine.getId(), () -> shiftsService.findAll(productionLine));
         if (shifts.isEmpty()) {
             progressForDaysContainer
                     .addError(new ErrorMessage("productionPerShift.automaticAlgorithm.productionLine.shiftsRequired", false,
@@ -92,7 +96,8 @@ public abstract class PpsBaseAlgorithmService {
         if (order.getBooleanField(OrderFields.FINAL_PRODUCTION_TRACKING)) {
             plannedQuantity = basicProductionCountingService.getProducedQuantityFromBasicProductionCountings(order);
         }
-        calculateRegisteredQuantity(progressForDaysContainer, order, productionPerShift, plannedQuantity);
+        Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = calculateRegisteredQuantity(progressForDaysContainer,
+                productionPerShift, plannedQuantity);
 
         BigDecimal alreadyPlannedQuantity = BigDecimal.ZERO;
         List<Entity> progressForDays = Lists.newLinkedList();
@@ -106,8 +111,8 @@ public abstract class PpsBaseAlgorithmService {
                 || progressForDaysContainer.getAlreadyRegisteredQuantity().compareTo(BigDecimal.ZERO) > 0) {
 
             DailyProgressContainer dailyProgressContainer = fillDailyProgressWithShifts(progressForDaysContainer,
-                    productionPerShift, order, shifts, currentDate, orderStartDate, shouldBeCorrected, progressForDays.size(),
-                    alreadyPlannedQuantity, allowIncompleteUnits);
+                    generationContext, dailyProgressesWithTrackingRecords, productionPerShift, order, shifts, currentDate,
+                    orderStartDate, shouldBeCorrected, progressForDays.size(), alreadyPlannedQuantity, allowIncompleteUnits);
             if (dailyProgressContainer.isCalculationError()) {
                 progressForDaysContainer.setCalculationError(true);
                 return;
@@ -126,9 +131,11 @@ public abstract class PpsBaseAlgorithmService {
     }
 
     private DailyProgressContainer fillDailyProgressWithShifts(ProgressForDaysContainer progressForDaysContainer,
+            PpsGenerationContext generationContext, Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords,
             Entity productionPerShift, Entity order, List<Shift> shifts, DateTime dateOfDay, Date orderStartDate,
             boolean shouldBeCorrected, int progressForDayQuantity, BigDecimal alreadyPlannedQuantity,
             boolean allowIncompleteUnits) {
+        Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
         DailyProgressContainer dailyProgressContainer = new DailyProgressContainer();
         List<Entity> dailyProgressWithShifts = Lists.newLinkedList();
 
@@ -157,15 +164,15 @@ public abstract class PpsBaseAlgorithmService {
                 DateTime orderStartDateDT = new DateTime(orderStartDate, DateTimeZone.getDefault());
                 BigDecimal shiftEfficiency = BigDecimal.ZERO;
                 int time = 0;
-                for (DateTimeRange range : shiftExceptionService
-                        .getShiftWorkDateTimes(order.getBelongsToField(OrderFields.PRODUCTION_LINE), shift, dateOfDay)) {
+                for (DateTimeRange range : generationContext.getShiftWorkDateTimes(productionLine.getId(), shift.getId(),
+                        dateOfDay, () -> shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay))) {
                     if (orderStartDate.after(dateOfDay.toDate())) {
                         range = range.trimBefore(orderStartDateDT);
                     }
                     if (range != null) {
                         ShiftEfficiencyCalculationHolder calculationHolder = calculateShiftEfficiency(progressForDaysContainer,
-                                productionPerShift, shift, order, range, shiftEfficiency, progressForDayQuantity,
-                                allowIncompleteUnits);
+                                generationContext, productionPerShift, shift, order, range, shiftEfficiency,
+                                progressForDayQuantity, allowIncompleteUnits);
                         shiftEfficiency = calculationHolder.getShiftEfficiency();
                         time = time + calculationHolder.getEfficiencyTime();
                     }
@@ -209,8 +216,9 @@ public abstract class PpsBaseAlgorithmService {
         return progressForDay;
     }
 
-    private BigDecimal calculateRegisteredQuantity(final ProgressForDaysContainer progressForDaysContainer, final Entity order,
+    private Map<DailyProgressKey, Entity> calculateRegisteredQuantity(final ProgressForDaysContainer progressForDaysContainer,
             final Entity pps, BigDecimal plannedQuantity) {
+        Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = null;
         BigDecimal alreadyRegisteredQuantity = progressForDaysContainer.getAlreadyRegisteredQuantity();
         if (pps != null) {
             dailyProgressesWithTrackingRecords = dailyProgressService.getDailyProgressesWithTrackingRecords(pps);
@@ -219,15 +227,14 @@ public abstract class PpsBaseAlgorithmService {
                 alreadyRegisteredQuantity = alreadyRegisteredQuantity.add(entry.getKey().getQuantity());
             }
             progressForDaysContainer.setAlreadyRegisteredQuantity(alreadyRegisteredQuantity);
-        } else {
-            dailyProgressesWithTrackingRecords = null;
         }
         progressForDaysContainer
                 .setPlannedQuantity(plannedQuantity.subtract(alreadyRegisteredQuantity, numberService.getMathContext()));
-        return progressForDaysContainer.getPlannedQuantity();
+        return dailyProgressesWithTrackingRecords;
     }
 
     protected abstract ShiftEfficiencyCalculationHolder calculateShiftEfficiency(
-            ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift, Shift shift, Entity order,
-            DateTimeRange range, BigDecimal shiftEfficiency, int progressForDayQuantity, boolean allowIncompleteUnits);
+            ProgressForDaysContainer progressForDaysContainer, PpsGenerationContext generationContext, Entity productionPerShift,
+            Shift shift, Entity order, DateTimeRange range, BigDecimal shiftEfficiency, int progressForDayQuantity,
+            boolean allowIncompleteUnits);
 }
@@ -3,6 +3,7 @@ package com.qcadoo.mes.productionPerShift.services;
 import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.mes.productionPerShift.domain.PpsGenerationContext;
 import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
 import com.qcadoo.mes.productionPerShift.domain.ShiftEfficiencyCalculationHolder;
 import com.qcadoo.model.api.Entity;
@@ -22,10 +23,10 @@ public class PpsTechNormAlgorithmService extends PpsBaseAlgorithmService {
 
     @Override
     protected ShiftEfficiencyCalculationHolder calculateShiftEfficiency(ProgressForDaysContainer progressForDaysContainer,
-            Entity productionPerShift, Shift shift, Entity order, DateTimeRange range, BigDecimal shiftEfficiency,
-            int progressForDayQuantity, boolean allowIncompleteUnits) {
+            PpsGenerationContext generationContext, Entity productionPerShift, Shift shift, Entity order, DateTimeRange range,
+            BigDecimal shiftEfficiency, int progressForDayQuantity, boolean allowIncompleteUnits) {
         ShiftEfficiencyCalculationHolder calculationHolder = new ShiftEfficiencyCalculationHolder();
-        BigDecimal scaledNorm = getStandardPerformanceNorm(progressForDaysContainer, order);
+        BigDecimal scaledNorm = getStandardPerformanceNorm(progressForDaysContainer, generationContext, order);
         Long minuets = range.durationInMins();
         BigDecimal efficiencyForRange = calculateEfficiencyForRange(scaledNorm, minuets, allowIncompleteUnits);
         shiftEfficiency = shiftEfficiency.add(efficiencyForRange, numberService.getMathContext());
@@ -55,8 +56,11 @@ public class PpsTechNormAlgorithmService extends PpsBaseAlgorithmService {
         }
     }
 
-    protected BigDecimal getStandardPerformanceNorm(ProgressForDaysContainer progressForDaysContainer, Entity order) {
-        BigDecimal norm = order.getBelongsToField(OrderFields.TECHNOLOGY).getDecimalField("standardPerformanceTechnology");
+    protected BigDecimal getStandardPerformanceNorm(ProgressForDaysContainer progressForDaysContainer,
+            PpsGenerationContext generationContext, Entity order) {
+        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
+        BigDecimal norm = generationContext.getStandardPerformanceNorm(technology.getId(),
+                () -> technology.getDecimalField("standardPerformanceTechnology"));
         if (norm == null) {
             progressForDaysContainer.addError(new ErrorMessage(
                     "productionPerShift.automaticAlgorithm.technology.standardPerformanceTechnologyRequired", false));
@@ -4,6 +4,7 @@ import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
 import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.mes.productionPerShift.domain.PpsGenerationContext;
 import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
 import com.qcadoo.mes.productionPerShift.domain.ShiftEfficiencyCalculationHolder;
 import com.qcadoo.model.api.Entity;
@@ -26,17 +27,18 @@ public class PpsTechNormAndWorkersAlgorithmService extends PpsBaseAlgorithmServi
 
     @Override
     protected ShiftEfficiencyCalculationHolder calculateShiftEfficiency(ProgressForDaysContainer progressForDaysContainer,
-            Entity productionPerShift, Shift shift, Entity order, DateTimeRange range, BigDecimal shiftEfficiency,
-            int progressForDayQuantity, boolean allowIncompleteUnits) {
+            PpsGenerationContext generationContext, Entity productionPerShift, Shift shift, Entity order, DateTimeRange range,
+            BigDecimal shiftEfficiency, int progressForDayQuantity, boolean allowIncompleteUnits) {
         ShiftEfficiencyCalculationHolder calculationHolder = new ShiftEfficiencyCalculationHolder();
-        int workersOnLine = workersOnLineService.getWorkersOnLine(order.getBelongsToField(OrderFields.PRODUCTION_LINE),
-                shift.getEntity(), range.getFrom());
+        Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
+        int workersOnLine = generationContext.getWorkersOnLine(productionLine.getId(), shift.getId(), range.getFrom(),
+                () -> workersOnLineService.getWorkersOnLine(productionLine, shift.getEntity(), range.getFrom()));
         if (workersOnLine == 0) {
             progressForDaysContainer.addError(new ErrorMessage("productionPerShift.automaticAlgorithm.noAssignmentForShift",
                     false, order.getBelongsToField(OrderFields.PRODUCTION_LINE).getStringField(ProductionLineFields.NUMBER)));
             throw new IllegalStateException("No assignment for shift");
         }
-        BigDecimal scaledNorm = getStandardPerformanceNorm(progressForDaysContainer, order);
+        BigDecimal scaledNorm = getStandardPerformanceNorm(progressForDaysContainer, generationContext, order);
         Long minuets = range.durationInMins();
         BigDecimal efficiencyForRange = calculateEfficiencyForRange(scaledNorm, workersOnLine, minuets, allowIncompleteUnits);
         shiftEfficiency = shiftEfficiency.add(efficiencyForRange, numberService.getMathContext());
@@ -67,10 +69,11 @@ public class PpsTechNormAndWorkersAlgorithmService extends PpsBaseAlgorithmServi
         }
     }
 
-    protected BigDecimal getStandardPerformanceNorm(ProgressForDaysContainer progressForDaysContainer, Entity order) {
-        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY).getDataDefinition()
-                .get(order.getBelongsToField(OrderFields.TECHNOLOGY).getId());
-        BigDecimal norm = technology.getDecimalField("standardPerformanceTechnology");
+    protected BigDecimal getStandardPerformanceNorm(ProgressForDaysContainer progressForDaysContainer,
+            PpsGenerationContext generationContext, Entity order) {
+        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
+        BigDecimal norm = generationContext.getStandardPerformanceNorm(technology.getId(),
+                () -> technology.getDataDefinition().get(technology.getId()).getDecimalField("standardPerformanceTechnology"));
         if (norm == null) {
             progressForDaysContainer.addError(new ErrorMessage(
                     "productionPerShift.automaticAlgorithm.technology.standardPerformanceTechnologyRequired", false));
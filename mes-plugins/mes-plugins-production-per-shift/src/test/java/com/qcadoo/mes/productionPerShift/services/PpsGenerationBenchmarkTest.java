@@ -0,0 +1,271 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.ReflectionUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.ShiftExceptionService;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionPerShift.constants.PpsAlgorithm;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.domain.PpsGenerationContext;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Measures throughput of automatic PPS generation for many orders, one by one and in bulk, in parallel with one shared
+ * {@link PpsGenerationContext}. Shift work times take 1 ms, as a database lookup would. Runs only with -Dpps.benchmark=true.
+ */
+public class PpsGenerationBenchmarkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PpsGenerationBenchmarkTest.class);
+
+    private static final int ORDERS = 400;
+
+    private static final int PRODUCTION_LINES = 10;
+
+    private static final int SHIFTS = 3;
+
+    private static final int THREADS = 4;
+
+    private static final BigDecimal PLANNED_QUANTITY = new BigDecimal(20000);
+
+    private static final DateTime START_DAY = new DateTime(2026, 1, 5, 0, 0);
+
+    private AutomaticPpsExecutorService automaticPpsExecutorService;
+
+    @Mock
+    private AutomaticPpsParametersService parametersService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private DailyProgressService dailyProgressService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition dataDefinition;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private ShiftExceptionService shiftExceptionService;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private Entity parameter, technology;
+
+    private final List<Entity> productionLines = Lists.newArrayList();
+
+    @Before
+    public void init() {
+        assumeTrue(Boolean.getBoolean("pps.benchmark"));
+
+        MockitoAnnotations.initMocks(this);
+
+        PpsTechNormAlgorithmService ppsTechNormAlgorithmService = new PpsTechNormAlgorithmService();
+
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "dailyProgressService", dailyProgressService);
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "shiftsService", shiftsService);
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "shiftExceptionService", shiftExceptionService);
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "parameterService", parameterService);
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "numberService", numberService);
+
+        Field baseNumberService = ReflectionUtils.findField(PpsBaseAlgorithmService.class, "numberService");
+        ReflectionUtils.makeAccessible(baseNumberService);
+        ReflectionUtils.setField(baseNumberService, ppsTechNormAlgorithmService, numberService);
+
+        AutomaticPpsTechNormService automaticPpsTechNormService = new AutomaticPpsTechNormService();
+
+        ReflectionTestUtils.setField(automaticPpsTechNormService, "ppsTechNormAlgorithmService", ppsTechNormAlgorithmService);
+
+        automaticPpsExecutorService = new AutomaticPpsExecutorService();
+
+        ReflectionTestUtils.setField(automaticPpsExecutorService, "ppsAlgorithmServcies",
+                Lists.<AutomaticPpsService> newArrayList(automaticPpsTechNormService));
+        ReflectionTestUtils.setField(automaticPpsExecutorService, "generationThreads", THREADS);
+        ReflectionTestUtils.setField(automaticPpsExecutorService, "parametersService", parametersService);
+        ReflectionTestUtils.setField(automaticPpsExecutorService, "multiTenantService", multiTenantService);
+        ReflectionTestUtils.setField(automaticPpsExecutorService, "transactionManager", transactionManager);
+
+        doAnswer(invocation -> {
+            ((MultiTenantCallback) invocation.getArguments()[1]).invoke();
+
+            return null;
+        }).when(multiTenantService).doInMultiTenantContext(anyInt(), any(MultiTenantCallback.class));
+
+        given(parametersService.getPpsAlgorithm()).willReturn(PpsAlgorithm.STANDARD_TECHNOLOGY);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(numberService.setScaleWithDefaultMathContext(any(BigDecimal.class))).willAnswer(
+                invocation -> invocation.getArguments()[0]);
+
+        given(dataDefinitionService.get(anyString(), anyString())).willReturn(dataDefinition);
+        given(dataDefinition.create()).willAnswer(invocation -> mock(Entity.class));
+
+        given(parameterService.getParameter()).willReturn(parameter);
+
+        given(technology.getId()).willReturn(1L);
+        given(technology.getDecimalField("standardPerformanceTechnology")).willReturn(BigDecimal.ONE);
+
+        given(dailyProgressService.getDailyProgressesWithTrackingRecords(any(Entity.class))).willReturn(
+                Maps.newHashMap());
+
+        given(shiftExceptionService.getShiftWorkDateTimes(any(Entity.class), any(Shift.class), any(DateTime.class)))
+                .willAnswer(invocation -> {
+                    TimeUnit.MILLISECONDS.sleep(1);
+
+                    DateTime day = (DateTime) invocation.getArguments()[2];
+
+                    return Lists.newArrayList(new DateTimeRange(day.plusHours(6), day.plusHours(14)));
+                });
+
+        for (long lineId = 1; lineId <= PRODUCTION_LINES; lineId++) {
+            Entity productionLine = mock(Entity.class);
+
+            given(productionLine.getId()).willReturn(lineId);
+
+            List<Shift> shifts = Lists.newArrayList();
+
+            for (long shiftId = 1; shiftId <= SHIFTS; shiftId++) {
+                Shift shift = mock(Shift.class);
+
+                given(shift.getId()).willReturn(shiftId);
+                given(shift.getEntity()).willReturn(mock(Entity.class));
+
+                shifts.add(shift);
+            }
+
+            given(shiftsService.findAll(productionLine)).willReturn(shifts);
+
+            productionLines.add(productionLine);
+        }
+    }
+
+    @Test
+    public void shouldGenerateProgressForDaysOfManyOrders() {
+        Map<ProgressForDaysContainer, Entity> oneByOne = createProductionPerShifts();
+        Map<ProgressForDaysContainer, Entity> bulk = createProductionPerShifts();
+
+        long start = System.nanoTime();
+
+        for (Map.Entry<ProgressForDaysContainer, Entity> productionPerShift : oneByOne.entrySet()) {
+            automaticPpsExecutorService.generateProgressForDays(productionPerShift.getKey(), productionPerShift.getValue());
+        }
+
+        long oneByOneTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+
+        automaticPpsExecutorService.generateProgressForDays(bulk);
+
+        long bulkTime = System.nanoTime() - start;
+
+        List<ProgressForDaysContainer> oneByOneContainers = Lists.newArrayList(oneByOne.keySet());
+        List<ProgressForDaysContainer> bulkContainers = Lists.newArrayList(bulk.keySet());
+
+        for (int i = 0; i < ORDERS; i++) {
+            assertEquals(oneByOneContainers.get(i).getProgressForDays().size(), bulkContainers.get(i).getProgressForDays()
+                    .size());
+        }
+
+        LOG.info(String.format("one by one: %.1f orders/s, bulk: %.1f orders/s", ORDERS / seconds(oneByOneTime),
+                ORDERS / seconds(bulkTime)));
+    }
+
+    private Map<ProgressForDaysContainer, Entity> createProductionPerShifts() {
+        Map<ProgressForDaysContainer, Entity> productionPerShifts = Maps.newLinkedHashMap();
+
+        for (int i = 0; i < ORDERS; i++) {
+            Entity order = mock(Entity.class);
+
+            given(order.getDateField(OrderFields.START_DATE)).willReturn(START_DAY.plusDays(i % 7).plusHours(6).toDate());
+            given(order.getBelongsToField(OrderFields.PRODUCTION_LINE)).willReturn(productionLines.get(i % PRODUCTION_LINES));
+            given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+            given(order.getDecimalField(OrderFields.PLANNED_QUANTITY)).willReturn(PLANNED_QUANTITY);
+
+            Entity productionPerShift = mock(Entity.class);
+
+            given(productionPerShift.getBelongsToField(ProductionPerShiftFields.ORDER)).willReturn(order);
+
+            productionPerShifts.put(new ProgressForDaysContainer(), productionPerShift);
+        }
+
+        return productionPerShifts;
+    }
+
+    private double seconds(final long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+}
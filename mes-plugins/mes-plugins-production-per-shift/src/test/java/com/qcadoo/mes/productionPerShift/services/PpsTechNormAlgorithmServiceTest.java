@@ -0,0 +1,245 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.ReflectionUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.ShiftExceptionService;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.domain.DailyProgressKey;
+import com.qcadoo.mes.productionPerShift.domain.PpsGenerationContext;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+
+public class PpsTechNormAlgorithmServiceTest {
+
+    private static final DateTime L_START_DAY = new DateTime(2026, 1, 5, 0, 0);
+
+    private static final BigDecimal L_NORM = BigDecimal.ONE;
+
+    private static final BigDecimal L_SHIFT_QUANTITY = new BigDecimal(480);
+
+    private PpsTechNormAlgorithmService ppsTechNormAlgorithmService;
+
+    @Mock
+    private DailyProgressService dailyProgressService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition dataDefinition;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private ShiftExceptionService shiftExceptionService;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private Entity parameter, productionLine, technology, shiftEntity;
+
+    @Mock
+    private Shift shift;
+
+    private final AtomicInteger shiftWorkDateTimesCalls = new AtomicInteger();
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        ppsTechNormAlgorithmService = new PpsTechNormAlgorithmService();
+
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "dailyProgressService", dailyProgressService);
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "shiftsService", shiftsService);
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "shiftExceptionService", shiftExceptionService);
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "parameterService", parameterService);
+        ReflectionTestUtils.setField(ppsTechNormAlgorithmService, "numberService", numberService);
+
+        Field baseNumberService = ReflectionUtils.findField(PpsBaseAlgorithmService.class, "numberService");
+        ReflectionUtils.makeAccessible(baseNumberService);
+        ReflectionUtils.setField(baseNumberService, ppsTechNormAlgorithmService, numberService);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(numberService.setScaleWithDefaultMathContext(any(BigDecimal.class))).willAnswer(
+                invocation -> invocation.getArguments()[0]);
+
+        given(dataDefinitionService.get(anyString(), anyString())).willReturn(dataDefinition);
+        given(dataDefinition.create()).willAnswer(invocation -> mock(Entity.class));
+
+        given(parameterService.getParameter()).willReturn(parameter);
+
+        given(productionLine.getId()).willReturn(1L);
+        given(technology.getId()).willReturn(1L);
+        given(technology.getDecimalField("standardPerformanceTechnology")).willReturn(L_NORM);
+
+        given(shift.getId()).willReturn(1L);
+        given(shift.getEntity()).willReturn(shiftEntity);
+        given(shiftsService.findAll(productionLine)).willReturn(Lists.newArrayList(shift));
+        given(shiftExceptionService.getShiftWorkDateTimes(eq(productionLine), eq(shift), any(DateTime.class))).willAnswer(
+                invocation -> {
+                    shiftWorkDateTimesCalls.incrementAndGet();
+
+                    DateTime day = (DateTime) invocation.getArguments()[2];
+
+                    return Lists.newArrayList(new DateTimeRange(day.plusHours(6), day.plusHours(14)));
+                });
+    }
+
+    @Test
+    public final void shouldCalculateShiftWorkTimesOncePerProductionLineAndDayWithinRun() {
+        // given
+        PpsGenerationContext generationContext = new PpsGenerationContext();
+
+        ProgressForDaysContainer firstContainer = new ProgressForDaysContainer();
+        ProgressForDaysContainer secondContainer = new ProgressForDaysContainer();
+
+        // when
+        ppsTechNormAlgorithmService.generateProgressForDays(firstContainer, mockPps(new BigDecimal(1000), null),
+                generationContext);
+
+        int firstOrderCalls = shiftWorkDateTimesCalls.get();
+
+        ppsTechNormAlgorithmService.generateProgressForDays(secondContainer, mockPps(new BigDecimal(1000), null),
+                generationContext);
+
+        // then
+        assertEquals(3, firstContainer.getProgressForDays().size());
+        assertEquals(3, secondContainer.getProgressForDays().size());
+        assertEquals(firstOrderCalls, shiftWorkDateTimesCalls.get());
+    }
+
+    @Test(timeout = 60000)
+    public final void shouldKeepTrackingRecordsOfConcurrentOrdersApart() throws Exception {
+        // given
+        PpsGenerationContext generationContext = new PpsGenerationContext();
+
+        Map<ProgressForDaysContainer, Entity> productionPerShifts = Maps.newLinkedHashMap();
+
+        for (int i = 0; i < 100; i++) {
+            Entity trackedDailyProgress = null;
+
+            if (i % 2 == 0) {
+                trackedDailyProgress = mock(Entity.class);
+
+                given(trackedDailyProgress.getDecimalField(DailyProgressFields.QUANTITY)).willReturn(L_SHIFT_QUANTITY);
+            }
+
+            productionPerShifts.put(new ProgressForDaysContainer(), mockPps(new BigDecimal(1000), trackedDailyProgress));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // when
+        try {
+            List<Future<?>> results = Lists.newArrayList();
+
+            for (Map.Entry<ProgressForDaysContainer, Entity> productionPerShift : productionPerShifts.entrySet()) {
+                results.add(executor.submit(() -> ppsTechNormAlgorithmService.generateProgressForDays(
+                        productionPerShift.getKey(), productionPerShift.getValue(), generationContext)));
+            }
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // then
+        for (ProgressForDaysContainer container : productionPerShifts.keySet()) {
+            assertFalse(container.isCalculationError());
+            assertEquals(0, BigDecimal.ZERO.compareTo(container.getAlreadyRegisteredQuantity()));
+            assertEquals(0, BigDecimal.ZERO.compareTo(container.getPlannedQuantity()));
+            assertEquals(3, container.getProgressForDays().size());
+        }
+    }
+
+    private Entity mockPps(final BigDecimal plannedQuantity, final Entity trackedDailyProgress) {
+        Entity order = mock(Entity.class);
+
+        given(order.getDateField(OrderFields.START_DATE)).willReturn(L_START_DAY.plusHours(6).toDate());
+        given(order.getBelongsToField(OrderFields.PRODUCTION_LINE)).willReturn(productionLine);
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+        given(order.getDecimalField(OrderFields.PLANNED_QUANTITY)).willReturn(plannedQuantity);
+
+        Entity pps = mock(Entity.class);
+
+        given(pps.getBelongsToField(ProductionPerShiftFields.ORDER)).willReturn(order);
+
+        Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = Maps.newHashMap();
+
+        if (trackedDailyProgress != null) {
+            dailyProgressesWithTrackingRecords.put(new DailyProgressKey(L_SHIFT_QUANTITY, 1L, L_START_DAY),
+                    trackedDailyProgress);
+        }
+
+        given(dailyProgressService.getDailyProgressesWithTrackingRecords(pps)).willReturn(dailyProgressesWithTrackingRecords);
+
+        return pps;
+    }
+
+}
@@ -29,15 +29,16 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
-import org.springframework.context.annotation.Scope;
-import org.springframework.context.annotation.ScopedProxyMode;
 import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -45,7 +46,6 @@ import static com.qcadoo.mes.states.constants.StateChangeStatus.IN_PROGRESS;
 import static com.qcadoo.mes.states.constants.StateChangeStatus.PAUSED;
 
 @Service
-@Scope(value = "request", proxyMode = ScopedProxyMode.TARGET_CLASS)
 public class StateExecutorService {
 
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(StateExecutorService.class);
@@ -61,101 +61,155 @@ public class StateExecutorService {
     @Autowired
     private SecurityService securityService;
 
-    private ComponentMessagesHolder componentMessagesHolder;
-
     private static final Logger LOGGER = Logger.getLogger(StateExecutorService.class);
 
-    public <M extends StateService> void changeState(Class<M> serviceMarker, final ViewDefinitionState view, String[] args) {
-        componentMessagesHolder = view;
-        Long userId = securityService.getCurrentUserId();
-        String userLogin = securityService.getCurrentUserName();
+    private static final ThreadLocal<ExecutionContext> CURRENT_CONTEXT = new ThreadLocal<>();
 
+    private final Map<Class<?>, List<StateService>> servicesByMarker = new ConcurrentHashMap<>();
+
+    public <M extends StateService> void changeState(Class<M> serviceMarker, final ViewDefinitionState view, String[] args) {
         Optional<GridComponent> maybeGridComponent = view.tryFindComponentByReference("grid");
         if (maybeGridComponent.isPresent()) {
-            maybeGridComponent.get().getSelectedEntities().forEach(entity -> {
-                entity = entity.getDataDefinition().getMasterModelEntity(entity.getId());
-                entity.setField(USER_CHANGE_STATE, userId);
-
-                entity = changeState(serviceMarker, entity, userLogin, args[0]);
-
-                copyMessages(entity);
-            });
-
+            changeState(serviceMarker, Lists.newArrayList(maybeGridComponent.get().getSelectedEntitiesIds()), args[0], view);
         } else {
             Optional<FormComponent> maybeForm = view.tryFindComponentByReference("form");
             if (maybeForm.isPresent()) {
                 FormComponent formComponent = maybeForm.get();
                 Entity entity = formComponent.getEntity().getDataDefinition().get(formComponent.getEntityId());
-                entity.setField(USER_CHANGE_STATE, userId);
+                entity.setField(USER_CHANGE_STATE, securityService.getCurrentUserId());
                 if (entity.isValid()) {
-                    entity = changeState(serviceMarker, entity, userLogin, args[0]);
+                    ExecutionContext context = new ExecutionContext(view, securityService.getCurrentUserName());
+                    entity = changeState(serviceMarker, entity, args[0], context, null);
                     formComponent.setEntity(entity);
                 }
             }
         }
     }
 
+    /**
+     * Changes state of all given entities of the model described by the service marker, in order of ids. Each entity is
+     * loaded right before its change, so it sees changes made by the previous ones. Services, the current shift and
+     * unfinished state changes are resolved once for the whole batch.
+     * 
+     * @return entities after the state change, valid or not
+     */
+    public <M extends StateService> List<Entity> changeState(Class<M> serviceMarker, List<Long> ids, String targetState,
+            ComponentMessagesHolder messagesHolder) {
+        List<Entity> entities = Lists.newArrayList();
+
+        if (ids.isEmpty()) {
+            return entities;
+        }
+
+        List<M> services = lookupChangeStateServices(serviceMarker);
+        StateChangeEntityDescriber describer = services.get(0).getChangeEntityDescriber();
+        ExecutionContext context = new ExecutionContext(messagesHolder, securityService.getCurrentUserName());
+        Long userId = securityService.getCurrentUserId();
+
+        Set<Long> ownersWithUnfinishedChanges = findOwnersWithUnfinishedStateChange(describer, Sets.newHashSet(ids));
+
+        for (Long id : ids) {
+            Entity entity = describer.getOwnerDataDefinition().getMasterModelEntity(id);
+
+            if (Objects.isNull(entity)) {
+                continue;
+            }
+
+            entity.setField(USER_CHANGE_STATE, userId);
+            entity = changeState(serviceMarker, entity, targetState, context, ownersWithUnfinishedChanges);
+            copyMessages(entity, null, context);
+            entities.add(entity);
+        }
+
+        return entities;
+    }
+
     public <M extends StateService> Entity changeState(Class<M> serviceMarker, Entity entity, String userLogin, String targetState) {
+        ExecutionContext context = CURRENT_CONTEXT.get();
+
+        if (Objects.isNull(context)) {
+            context = new ExecutionContext(null, userLogin);
+        }
+
+        return changeState(serviceMarker, entity, targetState, context.withUserLogin(userLogin), null);
+    }
+
+    private <M extends StateService> Entity changeState(Class<M> serviceMarker, Entity entity, String targetState,
+            ExecutionContext context, Set<Long> ownersWithUnfinishedChanges) {
         List<M> services = lookupChangeStateServices(serviceMarker);
         StateChangeEntityDescriber describer = services.stream().findFirst().get().getChangeEntityDescriber();
         String sourceState = entity.getStringField(describer.getOwnerStateFieldName());
 
-        Entity stateChangeEntity = buildStateChangeEntity(describer, entity, userLogin, sourceState, targetState);
+        ExecutionContext outerContext = CURRENT_CONTEXT.get();
+        CURRENT_CONTEXT.set(context);
+
+        try {
+            return changeState(services, describer, entity, sourceState, targetState, context, ownersWithUnfinishedChanges);
+        } finally {
+            if (Objects.isNull(outerContext)) {
+                CURRENT_CONTEXT.remove();
+            } else {
+                CURRENT_CONTEXT.set(outerContext);
+            }
+        }
+    }
+
+    private <M extends StateService> Entity changeState(List<M> services, StateChangeEntityDescriber describer, Entity entity,
+            String sourceState, String targetState, ExecutionContext context, Set<Long> ownersWithUnfinishedChanges) {
+        Entity stateChangeEntity = buildStateChangeEntity(describer, entity, context.getUserLogin(), sourceState, targetState,
+                context.getShift());
 
         try {
 
             stateChangeEntity = saveStateChangeContext(entity, stateChangeEntity, describer, sourceState, targetState,
-                    StateChangeStatus.IN_PROGRESS);
+                    StateChangeStatus.IN_PROGRESS, ownersWithUnfinishedChanges);
 
-            List<Entity> stateChanges = Lists.newArrayList();
-            stateChanges.addAll(entity.getHasManyField(describer.getOwnerStateChangesFieldName()));
-            stateChanges.add(stateChangeEntity);
-            entity.setField(describer.getOwnerStateChangesFieldName(), stateChanges);
+            entity.setField(describer.getOwnerStateChangesFieldName(), Lists.newArrayList(stateChangeEntity));
 
             entity = performChangeState(services, entity, stateChangeEntity, describer);
 
             if (entity.isValid()) {
-                copyMessages(entity);
+                copyMessages(entity, null, context);
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.SUCCESSFUL);
-                message("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
+                message("states.messages.change.successful", ComponentState.MessageType.SUCCESS, context);
                 LOG.info(String.format("Change state successful. Entity name : %S id : %d. Target state : %S", entity
                         .getDataDefinition().getName(), entity.getId(), stateChangeEntity.getStringField(describer
                         .getTargetStateFieldName())));
             } else {
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
                 entity = rollbackStateChange(entity, sourceState);
-                message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+                message("states.messages.change.failure", ComponentState.MessageType.FAILURE, context);
                 LOG.info(String.format("Change state failure. Entity name : %S id : %d. Target state : %S", entity
                         .getDataDefinition().getName(), entity.getId(), stateChangeEntity.getStringField(describer
                         .getTargetStateFieldName())));
             }
 
         } catch (EntityRuntimeException entityException) {
-            copyMessages(entityException.getEntity(), entity);
+            copyMessages(entityException.getEntity(), entity, context);
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            message("states.messages.change.failure", ComponentState.MessageType.FAILURE, context);
             return entity;
 
         } catch (AnotherChangeInProgressException e) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE);
+            message("states.messages.change.failure", ComponentState.MessageType.FAILURE, context);
+            message("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE, context);
             LOG.info(String.format("Another state change in progress. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
         } catch (StateTransitionNotAlloweException e) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE);
+            message("states.messages.change.failure", ComponentState.MessageType.FAILURE, context);
+            message("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE, context);
             LOG.info(String.format("State change - transition not allowed. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
         } catch (Exception exception) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
+            message("states.messages.change.failure", ComponentState.MessageType.FAILURE, context);
+            message("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE, context);
             LOG.info(String.format("State change exception. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
             LOG.warn("Can't perform state change", exception);
@@ -165,13 +219,17 @@ public class StateExecutorService {
     }
 
     private Entity saveStateChangeContext(Entity entity, Entity stateChangeEntity, StateChangeEntityDescriber describer,
-            String _sourceState, String _targetState, StateChangeStatus status) {
+            String _sourceState, String _targetState, StateChangeStatus status, Set<Long> ownersWithUnfinishedChanges) {
         final StateEnum sourceState = describer.parseStateEnum(_sourceState);
         final StateEnum targetState = describer.parseStateEnum(_targetState);
         if (sourceState != null && !sourceState.canChangeTo(targetState)) {
             throw new StateTransitionNotAlloweException(sourceState, targetState);
         }
-        checkForUnfinishedStateChange(describer, entity);
+        if (Objects.isNull(ownersWithUnfinishedChanges)) {
+            checkForUnfinishedStateChange(describer, entity);
+        } else if (ownersWithUnfinishedChanges.contains(entity.getId())) {
+            throw new AnotherChangeInProgressException();
+        }
         stateChangeEntity = saveStateChangeEntity(stateChangeEntity, status);
         return stateChangeEntity;
     }
@@ -217,9 +275,8 @@ public class StateExecutorService {
     }
 
     private Entity buildStateChangeEntity(StateChangeEntityDescriber describer, Entity owner, String userLogin,
-            String sourceState, String targetState) {
+            String sourceState, String targetState, Entity shift) {
         final Entity stateChangeEntity = describer.getDataDefinition().create();
-        final Entity shift = shiftsService.getShiftFromDateWithTime(new Date());
 
         stateChangeEntity.setField(describer.getDateTimeFieldName(), new Date());
         stateChangeEntity.setField(describer.getSourceStateFieldName(), sourceState);
@@ -286,19 +343,24 @@ public class StateExecutorService {
         return entity.isValid();
     }
 
+    @SuppressWarnings("unchecked")
     private <M extends StateService> List<M> lookupChangeStateServices(Class<M> serviceMarker) {
-        Map<String, M> stateServices = applicationContext.getBeansOfType(serviceMarker);
+        List<StateService> stateServices = servicesByMarker.computeIfAbsent(serviceMarker, marker -> {
+            List<StateService> sortedServices = new ArrayList<>(applicationContext.getBeansOfType(serviceMarker).values());
+
+            AnnotationAwareOrderComparator.sort(sortedServices);
+
+            return sortedServices;
+        });
 
         List<M> services = new ArrayList<>();
 
-        for (M service : stateServices.values()) {
+        for (StateService service : stateServices) {
             if (serviceEnabled(service)) {
-                services.add(service);
+                services.add((M) service);
             }
         }
 
-        AnnotationAwareOrderComparator.sort(services);
-
         return services;
     }
 
@@ -306,7 +368,8 @@ public class StateExecutorService {
         List<M> services = lookupChangeStateServices(serviceMarker);
 
         StateChangeEntityDescriber describer = services.get(0).getChangeEntityDescriber();
-        Entity stateChangeEntity = buildStateChangeEntity(describer, entity, StringUtils.EMPTY, null, initialState);
+        Entity stateChangeEntity = buildStateChangeEntity(describer, entity, StringUtils.EMPTY, null, initialState,
+                shiftsService.getShiftFromDateWithTime(new Date()));
         stateChangeEntity = saveStateChangeEntity(stateChangeEntity, StateChangeStatus.SUCCESSFUL);
 
         entity.setField(describer.getOwnerStateFieldName(), initialState);
@@ -328,10 +391,11 @@ public class StateExecutorService {
         return true;
     }
 
-    private void copyMessages(Entity entity, Entity mainEntity) {
+    private void copyMessages(Entity entity, Entity mainEntity, ExecutionContext context) {
         if (mainEntity != null && mainEntity.equals(entity) && entity.getGlobalErrors() == mainEntity.getGlobalErrors()) {
             return;
         }
+        ComponentMessagesHolder componentMessagesHolder = context.getMessagesHolder();
         if (componentMessagesHolder == null) {
             return;
         }
@@ -348,10 +412,6 @@ public class StateExecutorService {
         }
     }
 
-    private void copyMessages(Entity entity) {
-        copyMessages(entity, null);
-    }
-
     private Entity saveAndValidate(final Entity entity) {
         if (entity == null) {
             return null;
@@ -364,9 +424,9 @@ public class StateExecutorService {
         return saved;
     }
 
-    private void message(String msg, ComponentState.MessageType messageType) {
-        if (componentMessagesHolder != null) {
-            componentMessagesHolder.addMessage(msg, messageType);
+    private void message(String msg, ComponentState.MessageType messageType, ExecutionContext context) {
+        if (context.getMessagesHolder() != null) {
+            context.getMessagesHolder().addMessage(msg, messageType);
         }
     }
 
@@ -383,4 +443,67 @@ public class StateExecutorService {
             throw new AnotherChangeInProgressException();
         }
     }
+
+    private Set<Long> findOwnersWithUnfinishedStateChange(final StateChangeEntityDescriber describer, final Set<Long> ownerIds) {
+        if (ownerIds.isEmpty()) {
+            return Sets.newHashSet();
+        }
+
+        final String ownerFieldName = describer.getOwnerFieldName();
+        final Set<String> unfinishedStatuses = Sets.newHashSet(IN_PROGRESS.getStringValue(), PAUSED.getStringValue());
+
+        final SearchCriteriaBuilder searchCriteria = describer.getDataDefinition().find();
+        searchCriteria.createAlias(ownerFieldName, ownerFieldName);
+        searchCriteria.add(SearchRestrictions.in(ownerFieldName + ".id", ownerIds));
+        searchCriteria.add(SearchRestrictions.in(describer.getStatusFieldName(), unfinishedStatuses));
+
+        return searchCriteria.list().getEntities().stream()
+                .map(stateChange -> stateChange.getBelongsToField(ownerFieldName).getId()).collect(Collectors.toSet());
+    }
+
+    /**
+     * State of one changeState call: where its messages go, who changes the state and the shift the change is assigned to.
+     * Nested calls made by state services on the same thread share the context of the outer call.
+     */
+    private class ExecutionContext {
+
+        private final ComponentMessagesHolder messagesHolder;
+
+        private final String userLogin;
+
+        private Entity shift;
+
+        private boolean shiftResolved;
+
+        ExecutionContext(final ComponentMessagesHolder messagesHolder, final String userLogin) {
+            this.messagesHolder = messagesHolder;
+            this.userLogin = userLogin;
+        }
+
+        ExecutionContext withUserLogin(final String userLogin) {
+            if (Objects.equals(this.userLogin, userLogin)) {
+                return this;
+            }
+
+            return new ExecutionContext(messagesHolder, userLogin);
+        }
+
+        ComponentMessagesHolder getMessagesHolder() {
+            return messagesHolder;
+        }
+
+        String getUserLogin() {
+            return userLogin;
+        }
+
+        Entity getShift() {
+            if (!shiftResolved) {
+                shift = shiftsService.getShiftFromDateWithTime(new Date());
+                shiftResolved = true;
+            }
+
+            return shift;
+        }
+
+    }
 }
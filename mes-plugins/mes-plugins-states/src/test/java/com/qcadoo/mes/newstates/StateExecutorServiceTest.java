@@ -0,0 +1,218 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.newstates;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.states.StateChangeEntityDescriber;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.view.api.ComponentMessagesHolder;
+import com.qcadoo.view.api.ComponentState;
+
+public class StateExecutorServiceTest {
+
+    private static final String STATE = "state";
+
+    private static final String OWNER = "owner";
+
+    private static final String STATE_CHANGES = "stateChanges";
+
+    private StateExecutorService stateExecutorService;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private TestStateService testStateService;
+
+    @Mock
+    private StateChangeEntityDescriber describer;
+
+    @Mock
+    private DataDefinition ownerDD;
+
+    @Mock
+    private DataDefinition stateChangeDD;
+
+    @Mock
+    private SearchCriteriaBuilder stateChangeCriteria;
+
+    @Mock
+    private Entity stateChange;
+
+    @Mock
+    private ComponentMessagesHolder messagesHolder;
+
+    private interface TestStateService extends StateService {
+    }
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        stateExecutorService = new StateExecutorService();
+
+        ReflectionTestUtils.setField(stateExecutorService, "applicationContext", applicationContext);
+        ReflectionTestUtils.setField(stateExecutorService, "shiftsService", shiftsService);
+        ReflectionTestUtils.setField(stateExecutorService, "securityService", securityService);
+
+        given(applicationContext.getBeansOfType(TestStateService.class)).willReturn(
+                Collections.singletonMap("testStateService", testStateService));
+
+        given(testStateService.getChangeEntityDescriber()).willReturn(describer);
+        given(testStateService.onValidate(any(Entity.class), anyString(), anyString(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).will(returnsFirstArg());
+        given(testStateService.onBeforeSave(any(Entity.class), anyString(), anyString(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).will(returnsFirstArg());
+        given(testStateService.onAfterSave(any(Entity.class), anyString(), anyString(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).will(returnsFirstArg());
+
+        given(describer.getOwnerDataDefinition()).willReturn(ownerDD);
+        given(describer.getDataDefinition()).willReturn(stateChangeDD);
+        given(describer.getOwnerStateFieldName()).willReturn(STATE);
+        given(describer.getOwnerStateChangesFieldName()).willReturn(STATE_CHANGES);
+        given(describer.getOwnerFieldName()).willReturn(OWNER);
+        given(describer.getStatusFieldName()).willReturn("status");
+
+        given(stateChangeDD.find()).willReturn(stateChangeCriteria);
+        given(stateChangeDD.create()).willReturn(stateChange);
+        given(stateChangeDD.save(stateChange)).willReturn(stateChange);
+        given(stateChange.getDataDefinition()).willReturn(stateChangeDD);
+        given(stateChange.isValid()).willReturn(true);
+    }
+
+    @Test
+    public final void shouldChangeStateOfAllEntitiesWithSingleLookups() {
+        // given
+        List<Entity> owners = Lists.newArrayList(mockOwner(1L), mockOwner(2L), mockOwner(3L));
+
+        stubSearch(stateChangeCriteria, Collections.emptyList());
+
+        // when
+        List<Entity> result = stateExecutorService.changeState(TestStateService.class, Lists.newArrayList(3L, 1L, 2L),
+                "02accepted", messagesHolder);
+
+        // then
+        assertEquals(Lists.newArrayList(owners.get(2), owners.get(0), owners.get(1)), result);
+
+        verify(stateChangeDD, times(1)).find();
+        verify(shiftsService, times(1)).getShiftFromDateWithTime(any(Date.class));
+        verify(messagesHolder, times(3)).addMessage("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
+
+        for (Entity owner : owners) {
+            verify(ownerDD).getMasterModelEntity(owner.getId());
+            verify(owner).setField(STATE_CHANGES, Lists.newArrayList(stateChange));
+            verify(owner, never()).getHasManyField(STATE_CHANGES);
+            verify(owner).setField(STATE, "02accepted");
+            verify(ownerDD).save(owner);
+        }
+    }
+
+    @Test
+    public final void shouldResolveStateServicesOnce() {
+        // given
+        mockOwner(1L);
+
+        stubSearch(stateChangeCriteria, Collections.emptyList());
+
+        // when
+        stateExecutorService.changeState(TestStateService.class, Lists.newArrayList(1L), "02accepted", messagesHolder);
+        stateExecutorService.changeState(TestStateService.class, Lists.newArrayList(1L), "03declined", messagesHolder);
+
+        // then
+        verify(applicationContext, times(1)).getBeansOfType(TestStateService.class);
+    }
+
+    @Test
+    public final void shouldNotChangeStateOfEntityWithUnfinishedStateChange() {
+        // given
+        Entity owner = mockOwner(1L);
+        Entity unfinishedStateChange = mock(Entity.class);
+
+        given(unfinishedStateChange.getBelongsToField(OWNER)).willReturn(owner);
+
+        stubSearch(stateChangeCriteria, Lists.newArrayList(unfinishedStateChange));
+
+        // when
+        stateExecutorService.changeState(TestStateService.class, Lists.newArrayList(1L), "02accepted", messagesHolder);
+
+        // then
+        verify(ownerDD, never()).save(owner);
+        verify(owner).setField(STATE, "01draft");
+        verify(messagesHolder).addMessage("states.messages.change.failure.anotherChangeInProgress",
+                ComponentState.MessageType.FAILURE);
+    }
+
+    private Entity mockOwner(final Long id) {
+        Entity owner = mock(Entity.class);
+
+        given(owner.getId()).willReturn(id);
+        given(owner.getDataDefinition()).willReturn(ownerDD);
+        given(owner.getStringField(STATE)).willReturn("01draft");
+        given(owner.isValid()).willReturn(true);
+        given(ownerDD.save(owner)).willReturn(owner);
+        given(ownerDD.getMasterModelEntity(id)).willReturn(owner);
+
+        return owner;
+    }
+
+    private void stubSearch(final SearchCriteriaBuilder criteria, final List<Entity> entities) {
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(searchResult.getEntities()).willReturn(entities);
+        given(criteria.list()).willReturn(searchResult);
+    }
+
+}
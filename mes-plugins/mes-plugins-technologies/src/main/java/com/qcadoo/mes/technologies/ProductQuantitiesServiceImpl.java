@@ -47,6 +47,8 @@ import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
 import com.qcadoo.mes.technologies.dto.ProductQuantitiesHolder;
+import com.qcadoo.mes.technologies.quantities.MultiOrderMrpService;
+import com.qcadoo.mes.technologies.quantities.TechnologyQuantityModelService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -71,6 +73,12 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private TechnologyQuantityModelService technologyQuantityModelService;
+
+    @Autowired
+    private MultiOrderMrpService multiOrderMrpService;
+
     @Override
     public ProductQuantitiesHolder getProductComponentQuantities(final Entity technology, final BigDecimal givenQuantity) {
         Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
@@ -156,6 +164,10 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     @Override
     public Map<Long, BigDecimal> getNeededProductQuantities(final List<Entity> orders, final MrpAlgorithm mrpAlgorithm,
             final boolean onTheFly) {
+        if (onTheFly && multiOrderMrpService.isApplicableFor(mrpAlgorithm)) {
+            return multiOrderMrpService.getNeededProductQuantities(orders, mrpAlgorithm);
+        }
+
         Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
 
         return getNeededProductQuantities(orders, mrpAlgorithm, operationRuns, onTheFly);
@@ -196,23 +208,12 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
             final Set<OperationProductComponentHolder> nonComponents) {
         OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = new OperationProductComponentWithQuantityContainer();
 
-        EntityTree operationComponents = getOperationComponentsFromTechnology(technology);
-        Entity root = operationComponents.getRoot();
-
-        if (root != null) {
-            preloadProductQuantitiesAndOperationRuns(operationComponents, operationProductComponentWithQuantityContainer,
-                    operationRuns);
-            traverseProductQuantitiesAndOperationRuns(technology, givenQuantity, root, null,
-                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns);
-        }
+        technologyQuantityModelService.getModel(technology).calculate(givenQuantity, numberService.getMathContext(),
+                operationProductComponentWithQuantityContainer, nonComponents, operationRuns);
 
         return operationProductComponentWithQuantityContainer;
     }
 
-    private EntityTree getOperationComponentsFromTechnology(final Entity technology) {
-        return technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
-    }
-
     private OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForOrders(final List<Entity> orders,
             final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents,
             final boolean onTheFly) {
@@ -27,6 +27,7 @@ import com.qcadoo.mes.states.service.StateChangeEntityBuilder;
 import com.qcadoo.mes.technologies.TechnologyService;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.quantities.TechnologyQuantityModelService;
 import com.qcadoo.mes.technologies.states.constants.TechnologyState;
 import com.qcadoo.mes.technologies.states.constants.TechnologyStateChangeDescriber;
 import com.qcadoo.model.api.DataDefinition;
@@ -62,6 +63,9 @@ public class TechnologyModelHooks {
     @Autowired
     private TreeNumberingService treeNumberingService;
 
+    @Autowired
+    private TechnologyQuantityModelService technologyQuantityModelService;
+
     public void onCreate(final DataDefinition technologyDD, final Entity technology) {
         setInitialState(technology);
     }
@@ -78,6 +82,7 @@ public class TechnologyModelHooks {
         }
         setNewMasterTechnology(technologyDD, technology);
         qualityCardChange(technologyDD, technology);
+        technologyQuantityModelService.invalidate(technology.getId());
     }
 
     public void onUpdate(final DataDefinition technologyDD, final Entity technology) {
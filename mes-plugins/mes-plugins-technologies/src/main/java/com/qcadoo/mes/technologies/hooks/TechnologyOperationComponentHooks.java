@@ -27,6 +27,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.qcadoo.mes.technologies.TechnologyService;
 import com.qcadoo.mes.technologies.constants.*;
+import com.qcadoo.mes.technologies.quantities.TechnologyQuantityModelService;
 import com.qcadoo.model.api.*;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,6 +49,9 @@ public class TechnologyOperationComponentHooks {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private TechnologyQuantityModelService technologyQuantityModelService;
+
     public void onCreate(final DataDefinition technologyOperationComponentDD, final Entity technologyOperationComponent) {
         copyCommentAndAttachmentFromOperation(technologyOperationComponent);
         setParentIfRootNodeAlreadyExists(technologyOperationComponent);
@@ -215,6 +219,16 @@ public class TechnologyOperationComponentHooks {
         if (technologyOperationComponent.getId() != null) {
             copyWorkstations(technologyOperationComponentDD, technologyOperationComponent);
         }
+
+        invalidateTechnologyQuantityModel(technologyOperationComponent);
+    }
+
+    private void invalidateTechnologyQuantityModel(final Entity technologyOperationComponent) {
+        Entity technology = technologyOperationComponent.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY);
+
+        if (Objects.nonNull(technology)) {
+            technologyQuantityModelService.invalidate(technology.getId());
+        }
     }
 
     private void copyWorkstations(final DataDefinition technologyOperationComponentDD, final Entity technologyOperationComponent) {
@@ -250,6 +264,7 @@ public class TechnologyOperationComponentHooks {
                             .distinct().collect(Collectors.joining(", ")));
             return false;
         }
+        invalidateTechnologyQuantityModel(entity);
         return true;
     }
 }
@@ -25,6 +25,7 @@ package com.qcadoo.mes.technologies.imports.parsers;
 
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
+import com.qcadoo.mes.basic.imports.services.ImportLookupCache;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
 import com.qcadoo.model.api.DataDefinition;
@@ -46,9 +47,13 @@ public class TechnologyOperationComponentCellParser implements CellParser {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ImportLookupCache importLookupCache;
+
     @Override
     public void parse(final String cellValue, final String dependentCellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer) {
-        Entity technologyOperationComponent = getTechnologyOperationComponentByNodeNumber(cellValue);
+        Entity technologyOperationComponent = importLookupCache.find(() -> getTechnologyOperationComponentByNodeNumber(cellValue),
+                TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT, cellValue);
 
         if (Objects.isNull(technologyOperationComponent)) {
             errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
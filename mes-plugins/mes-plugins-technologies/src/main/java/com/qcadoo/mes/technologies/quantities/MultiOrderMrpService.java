@@ -0,0 +1,253 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.quantities;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+
+/**
+ * Calculates needed product quantities of many orders at once.
+ * <p>
+ * Orders are grouped by technology and planned quantity, so every distinct pair is exploded only once. Models of all
+ * technologies are taken together from {@link TechnologyQuantityModelService}, and the pairs are exploded by a dedicated fork
+ * join pool when mrpCalculationParallelism is greater than 1. Quantities are summed per technology component before they are
+ * summed per product, in the same order as for a single order, so the result does not depend on the parallelism.
+ */
+@Service
+public class MultiOrderMrpService {
+
+    private static final String L_TECHNOLOGY = "technology";
+
+    private static final String L_PLANNED_QUANTITY = "plannedQuantity";
+
+    private static final int L_QUANTITIES_PER_TASK = 16;
+
+    private static final Set<MrpAlgorithm> L_APPLICABLE_ALGORITHMS = EnumSet.of(MrpAlgorithm.ALL_PRODUCTS_IN,
+            MrpAlgorithm.ONLY_COMPONENTS, MrpAlgorithm.ONLY_MATERIALS);
+
+    private static final String L_PRODUCTS_WITH_MASTER_TECHNOLOGY_QUERY = "SELECT DISTINCT t.product_id "
+            + "FROM technologies_technology t WHERE t.master = true AND t.state = '02accepted' AND t.product_id IN (:productIds)";
+
+    @Value("${mrpCalculationParallelism:1}")
+    private int parallelism;
+
+    @Autowired
+    private TechnologyQuantityModelService technologyQuantityModelService;
+
+    @Autowired
+    private NumberService numberService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void init() {
+        if (parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Algorithms which include subcontracted products are resolved by other plugins, on the per order path.
+     */
+    public boolean isApplicableFor(final MrpAlgorithm mrpAlgorithm) {
+        return L_APPLICABLE_ALGORITHMS.contains(mrpAlgorithm);
+    }
+
+    public Map<Long, BigDecimal> getNeededProductQuantities(final List<Entity> orders, final MrpAlgorithm mrpAlgorithm) {
+        Map<Long, Entity> technologies = Maps.newHashMap();
+        Map<Long, Map<BigDecimal, Integer>> plannedQuantities = Maps.newLinkedHashMap();
+        Set<Long> orderIds = Sets.newHashSet();
+
+        for (Entity order : orders) {
+            if (Objects.nonNull(order.getId()) && !orderIds.add(order.getId())) {
+                continue;
+            }
+
+            Entity technology = order.getBelongsToField(L_TECHNOLOGY);
+
+            if (technology == null) {
+                throw new IllegalStateException("Order doesn't contain technology.");
+            }
+
+            technologies.putIfAbsent(technology.getId(), technology);
+
+            BigDecimal plannedQuantity = order.getDecimalField(L_PLANNED_QUANTITY);
+
+            plannedQuantities.computeIfAbsent(technology.getId(), technologyId -> Maps.newLinkedHashMap()).merge(
+                    Objects.isNull(plannedQuantity) ? null : plannedQuantity.stripTrailingZeros(), 1, Integer::sum);
+        }
+
+        return getNeededProductQuantities(technologyQuantityModelService.getModels(technologies.values()), plannedQuantities,
+                mrpAlgorithm);
+    }
+
+    Map<Long, BigDecimal> getNeededProductQuantities(final Map<Long, TechnologyQuantityModel> models,
+            final Map<Long, Map<BigDecimal, Integer>> plannedQuantities, final MrpAlgorithm mrpAlgorithm) {
+        MathContext mathContext = numberService.getMathContext();
+
+        List<Explosion> explosions = Lists.newArrayList();
+
+        for (Map.Entry<Long, Map<BigDecimal, Integer>> technologyQuantities : plannedQuantities.entrySet()) {
+            TechnologyQuantityModel model = models.get(technologyQuantities.getKey());
+
+            for (Map.Entry<BigDecimal, Integer> plannedQuantity : technologyQuantities.getValue().entrySet()) {
+                explosions.add(new Explosion(model, plannedQuantity.getKey(), plannedQuantity.getValue()));
+            }
+        }
+
+        explode(explosions, mathContext);
+
+        Map<TechnologyQuantityModel, BigDecimal[]> sums = Maps.newLinkedHashMap();
+
+        for (Explosion explosion : explosions) {
+            BigDecimal[] technologySums = sums.computeIfAbsent(explosion.model,
+                    model -> new BigDecimal[model.getComponentsCount()]);
+
+            explosion.model.addQuantities(technologySums, explosion.quantities, explosion.count, mathContext);
+        }
+
+        Map<Long, BigDecimal> productQuantities = Maps.newHashMap();
+
+        for (Map.Entry<TechnologyQuantityModel, BigDecimal[]> technologySums : sums.entrySet()) {
+            technologySums.getKey().addInputQuantities(technologySums.getValue(),
+                    !MrpAlgorithm.ALL_PRODUCTS_IN.equals(mrpAlgorithm), productQuantities);
+        }
+
+        if (MrpAlgorithm.ONLY_MATERIALS.equals(mrpAlgorithm)) {
+            productQuantities.keySet().removeAll(getProductsWithMasterTechnology(productQuantities.keySet()));
+        }
+
+        return productQuantities;
+    }
+
+    private void explode(final List<Explosion> explosions, final MathContext mathContext) {
+        Explosion[] explosionsArray = explosions.toArray(new Explosion[explosions.size()]);
+
+        ExplodeTask task = new ExplodeTask(explosionsArray, mathContext, 0, explosionsArray.length);
+
+        if (pool == null || explosionsArray.length <= L_QUANTITIES_PER_TASK) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    private Collection<Long> getProductsWithMasterTechnology(final Set<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return jdbcTemplate.queryForList(L_PRODUCTS_WITH_MASTER_TECHNOLOGY_QUERY,
+                Collections.singletonMap("productIds", productIds), Long.class);
+    }
+
+    private static class Explosion {
+
+        private final TechnologyQuantityModel model;
+
+        private final BigDecimal plannedQuantity;
+
+        private final int count;
+
+        private BigDecimal[] quantities;
+
+        Explosion(final TechnologyQuantityModel model, final BigDecimal plannedQuantity, final int count) {
+            this.model = model;
+            this.plannedQuantity = plannedQuantity;
+            this.count = count;
+        }
+
+    }
+
+    private static class ExplodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Explosion[] explosions;
+
+        private final MathContext mathContext;
+
+        private final int from;
+
+        private final int to;
+
+        ExplodeTask(final Explosion[] explosions, final MathContext mathContext, final int from, final int to) {
+            this.explosions = explosions;
+            this.mathContext = mathContext;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= L_QUANTITIES_PER_TASK) {
+                for (int index = from; index < to; index++) {
+                    explosions[index].quantities = explosions[index].model.calculateQuantities(
+                            explosions[index].plannedQuantity, mathContext);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+
+                invokeAll(new ExplodeTask(explosions, mathContext, from, middle),
+                        new ExplodeTask(explosions, mathContext, middle, to));
+            }
+        }
+
+    }
+
+}
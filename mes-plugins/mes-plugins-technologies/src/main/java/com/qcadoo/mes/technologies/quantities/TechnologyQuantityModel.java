@@ -0,0 +1,376 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.quantities;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+
+/**
+ * Immutable, entity free form of a technology operation tree, used to calculate product component quantities and operation
+ * runs.
+ * <p>
+ * Operations are kept in the order in which the tree is traversed (parent before its children), so calculation is a single
+ * pass over arrays. Input components of a parent operation are paired with the first output component of its child producing
+ * the same product when the model is built, not on every calculation.
+ * <p>
+ * Components are stored in slots identified by {@link OperationProductComponentHolder}, so components with equal holders
+ * share one quantity - just as they share one entry of {@link OperationProductComponentWithQuantityContainer}.
+ */
+public final class TechnologyQuantityModel {
+
+    public static final int NO_PARENT = -1;
+
+    private static final int L_QUANTITY_SCALE = 5;
+
+    private static final int L_NONE = -1;
+
+    private final Long[] preloadedOperationIds;
+
+    private final OperationProductComponentHolder[] slotHolders;
+
+    private final BigDecimal[] slotQuantities;
+
+    private final boolean[] nonComponentSlots;
+
+    private final int[] componentSlots;
+
+    private final Long[] operationIds;
+
+    private final boolean[] productQuantitiesDivisible;
+
+    private final boolean[] tjDivisible;
+
+    private final int[] componentsFrom;
+
+    private final int[] operationComponents;
+
+    private final int[] matchesFrom;
+
+    private final int[] matchedInComponents;
+
+    private final int[] matchedOutComponents;
+
+    private TechnologyQuantityModel(final Builder builder, final Long technologyProductId) {
+        preloadedOperationIds = builder.preloadedOperationIds.toArray(new Long[0]);
+        slotHolders = builder.slotHolders.toArray(new OperationProductComponentHolder[0]);
+        slotQuantities = builder.slotQuantities.toArray(new BigDecimal[0]);
+        componentSlots = toArray(builder.componentSlots);
+        nonComponentSlots = new boolean[slotHolders.length];
+
+        int operations = builder.operationIds.size();
+
+        operationIds = builder.operationIds.toArray(new Long[0]);
+        productQuantitiesDivisible = new boolean[operations];
+        tjDivisible = new boolean[operations];
+        componentsFrom = new int[operations + 1];
+        matchesFrom = new int[operations + 1];
+
+        List<Integer> components = Lists.newArrayList();
+        List<Integer> matchedIn = Lists.newArrayList();
+        List<Integer> matchedOut = Lists.newArrayList();
+
+        for (int operation = 0; operation < operations; operation++) {
+            productQuantitiesDivisible[operation] = builder.productQuantitiesDivisible.get(operation);
+            tjDivisible[operation] = builder.tjDivisible.get(operation);
+
+            componentsFrom[operation] = components.size();
+            matchesFrom[operation] = matchedIn.size();
+
+            int[] inComponents = builder.inComponents.get(operation);
+            int[] outComponents = builder.outComponents.get(operation);
+
+            for (int component : inComponents) {
+                components.add(component);
+            }
+
+            for (int component : outComponents) {
+                components.add(component);
+            }
+
+            int parent = builder.parents.get(operation);
+
+            if (parent == NO_PARENT) {
+                int outComponent = findOutComponent(builder, outComponents, technologyProductId);
+
+                if (outComponent != L_NONE) {
+                    matchedIn.add(L_NONE);
+                    matchedOut.add(outComponent);
+                }
+            } else {
+                for (int inComponent : builder.inComponents.get(parent)) {
+                    int outComponent = findOutComponent(builder, outComponents, builder.getProductId(inComponent));
+
+                    if (outComponent != L_NONE) {
+                        matchedIn.add(inComponent);
+                        matchedOut.add(outComponent);
+
+                        nonComponentSlots[componentSlots[inComponent]] = true;
+                    }
+                }
+            }
+        }
+
+        componentsFrom[operations] = components.size();
+        matchesFrom[operations] = matchedIn.size();
+
+        operationComponents = toArray(components);
+        matchedInComponents = toArray(matchedIn);
+        matchedOutComponents = toArray(matchedOut);
+    }
+
+    private static int findOutComponent(final Builder builder, final int[] outComponents, final Long productId) {
+        for (int outComponent : outComponents) {
+            if (Objects.equals(builder.getProductId(outComponent), productId)) {
+                return outComponent;
+            }
+        }
+
+        return L_NONE;
+    }
+
+    private static int[] toArray(final List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Fills the given container, non components and operation runs for the given quantity of the technology product, with the
+     * same results as walking the technology operation tree.
+     */
+    public void calculate(final BigDecimal givenQuantity, final MathContext mathContext,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final Set<OperationProductComponentHolder> nonComponents, final Map<Long, BigDecimal> operationRuns) {
+        for (Long operationId : preloadedOperationIds) {
+            operationRuns.put(operationId, BigDecimal.ONE);
+        }
+
+        BigDecimal[] quantities = calculateQuantities(givenQuantity, mathContext, operationRuns);
+
+        for (int slot = 0; slot < slotHolders.length; slot++) {
+            operationProductComponentWithQuantityContainer.put(slotHolders[slot], quantities[slot]);
+
+            if (nonComponentSlots[slot]) {
+                nonComponents.add(slotHolders[slot]);
+            }
+        }
+    }
+
+    /**
+     * Calculates quantities of all components for the given quantity of the technology product, without collecting operation
+     * runs.
+     *
+     * @return quantities of components, to be passed to {@link #addInputQuantities(BigDecimal[], boolean, Map)}
+     */
+    public BigDecimal[] calculateQuantities(final BigDecimal givenQuantity, final MathContext mathContext) {
+        return calculateQuantities(givenQuantity, mathContext, null);
+    }
+
+    private BigDecimal[] calculateQuantities(final BigDecimal givenQuantity, final MathContext mathContext,
+            final Map<Long, BigDecimal> operationRuns) {
+        BigDecimal[] quantities = Arrays.copyOf(slotQuantities, slotQuantities.length);
+
+        for (int operation = 0; operation < operationIds.length; operation++) {
+            for (int match = matchesFrom[operation]; match < matchesFrom[operation + 1]; match++) {
+                int inComponent = matchedInComponents[match];
+
+                BigDecimal needed = (inComponent == L_NONE) ? givenQuantity : quantities[componentSlots[inComponent]];
+
+                multiply(operation, needed, quantities[componentSlots[matchedOutComponents[match]]], mathContext, quantities,
+                        operationRuns);
+            }
+        }
+
+        return quantities;
+    }
+
+    /**
+     * Adds the given quantities multiplied by count to the sums, both indexed like the result of
+     * {@link #calculateQuantities(BigDecimal, MathContext)}.
+     */
+    public void addQuantities(final BigDecimal[] sums, final BigDecimal[] quantities, final int count,
+            final MathContext mathContext) {
+        BigDecimal multiplier = BigDecimal.valueOf(count);
+
+        for (int slot = 0; slot < sums.length; slot++) {
+            BigDecimal quantity = (count == 1) ? quantities[slot] : quantities[slot].multiply(multiplier, mathContext);
+
+            sums[slot] = Objects.isNull(sums[slot]) ? quantity : sums[slot].add(quantity, mathContext);
+        }
+    }
+
+    /**
+     * Adds quantities of input components to quantities of their products. With onlyComponents, inputs produced by another
+     * operation of the technology are skipped.
+     */
+    public void addInputQuantities(final BigDecimal[] quantities, final boolean onlyComponents,
+            final Map<Long, BigDecimal> productQuantities) {
+        for (int slot = 0; slot < slotHolders.length; slot++) {
+            if (!slotHolders[slot].isEntityTypeSame(OperationProductComponentEntityType.OPERATION_PRODUCT_IN_COMPONENT)
+                    || (onlyComponents && nonComponentSlots[slot])) {
+                continue;
+            }
+
+            productQuantities.merge(slotHolders[slot].getProductId(), quantities[slot], BigDecimal::add);
+        }
+    }
+
+    public int getComponentsCount() {
+        return slotHolders.length;
+    }
+
+    private void multiply(final int operation, final BigDecimal needed, final BigDecimal actual, final MathContext mathContext,
+            final BigDecimal[] quantities, final Map<Long, BigDecimal> operationRuns) {
+        BigDecimal multiplier = needed.divide(actual, mathContext);
+
+        if (!productQuantitiesDivisible[operation]) {
+            // It's intentional to round up the operation runs
+            multiplier = multiplier.setScale(0, RoundingMode.CEILING);
+        }
+
+        BigDecimal runs = multiplier;
+
+        if (!tjDivisible[operation]) {
+            runs = multiplier.setScale(0, RoundingMode.CEILING);
+        }
+
+        if (Objects.nonNull(operationRuns)) {
+            operationRuns.put(operationIds[operation], runs);
+        }
+
+        for (int component = componentsFrom[operation]; component < componentsFrom[operation + 1]; component++) {
+            int slot = componentSlots[operationComponents[component]];
+
+            quantities[slot] = quantities[slot].multiply(multiplier, mathContext).setScale(L_QUANTITY_SCALE,
+                    RoundingMode.CEILING);
+        }
+    }
+
+    public boolean isEmpty() {
+        return operationIds.length == 0;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+
+        private final List<Long> preloadedOperationIds = Lists.newArrayList();
+
+        private final Map<OperationProductComponentHolder, Integer> slotsByHolder = Maps.newHashMap();
+
+        private final List<OperationProductComponentHolder> slotHolders = Lists.newArrayList();
+
+        private final List<BigDecimal> slotQuantities = Lists.newArrayList();
+
+        private final List<OperationProductComponentHolder> componentHolders = Lists.newArrayList();
+
+        private final List<Integer> componentSlots = Lists.newArrayList();
+
+        private final List<Long> operationIds = Lists.newArrayList();
+
+        private final List<Integer> parents = Lists.newArrayList();
+
+        private final List<Boolean> productQuantitiesDivisible = Lists.newArrayList();
+
+        private final List<Boolean> tjDivisible = Lists.newArrayList();
+
+        private final List<int[]> inComponents = Lists.newArrayList();
+
+        private final List<int[]> outComponents = Lists.newArrayList();
+
+        private Builder() {
+        }
+
+        /**
+         * Registers an operation product component with its quantity per operation run. Quantities of components with equal
+         * holders are overwritten by the last one registered.
+         */
+        public int addComponent(final OperationProductComponentHolder holder, final BigDecimal quantity) {
+            Integer slot = slotsByHolder.get(holder);
+
+            if (Objects.isNull(slot)) {
+                slot = slotHolders.size();
+
+                slotsByHolder.put(holder, slot);
+                slotHolders.add(holder);
+                slotQuantities.add(quantity);
+            } else {
+                slotQuantities.set(slot, quantity);
+            }
+
+            componentHolders.add(holder);
+            componentSlots.add(slot);
+
+            return componentHolders.size() - 1;
+        }
+
+        /**
+         * Registers an operation of the technology tree, which gets one run unless it is reached while traversing the tree.
+         */
+        public Builder addTreeOperation(final Long operationId) {
+            preloadedOperationIds.add(operationId);
+
+            return this;
+        }
+
+        /**
+         * Adds an operation in the order of traversal - the parent has to be added before its children.
+         *
+         * @return index of the operation, to be used as a parent of its children
+         */
+        public int addOperation(final int parent, final Long operationId, final boolean areProductQuantitiesDivisible,
+                final boolean isTjDivisible, final int[] operationInComponents, final int[] operationOutComponents) {
+            operationIds.add(operationId);
+            parents.add(parent);
+            productQuantitiesDivisible.add(areProductQuantitiesDivisible);
+            tjDivisible.add(isTjDivisible);
+            inComponents.add(operationInComponents);
+            outComponents.add(operationOutComponents);
+
+            return operationIds.size() - 1;
+        }
+
+        public TechnologyQuantityModel build(final Long technologyProductId) {
+            return new TechnologyQuantityModel(this, technologyProductId);
+        }
+
+        private Long getProductId(final int component) {
+            return componentHolders.get(component).getProductId();
+        }
+
+    }
+
+}
@@ -0,0 +1,359 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.quantities;
+
+import static com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType.OPERATION_PRODUCT_IN_COMPONENT;
+import static com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType.OPERATION_PRODUCT_OUT_COMPONENT;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.states.constants.TechnologyState;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+/**
+ * Builds {@link TechnologyQuantityModel}s of technologies and caches the ones of accepted technologies, whose operation trees
+ * can't be modified.
+ * <p>
+ * Cached models are dropped whenever the technology is saved - which includes every change of its state - or one of its
+ * operation components is saved or deleted. Each tenant has its own models, as technology ids repeat between tenants.
+ */
+@Service
+public class TechnologyQuantityModelService {
+
+    private static final String L_QUANTITY = "quantity";
+
+    private static final String L_TECHNOLOGIES_QUERY = "SELECT t.id, t.product_id, t.state FROM technologies_technology t "
+            + "WHERE t.id IN (:technologyIds)";
+
+    private static final String L_OPERATION_COMPONENTS_QUERY = "SELECT toc.id, toc.technology_id, toc.parent_id, "
+            + "toc.areproductquantitiesdivisible, toc.istjdivisible FROM technologies_technologyoperationcomponent toc "
+            + "WHERE toc.technology_id IN (:technologyIds) ORDER BY toc.priority, toc.id";
+
+    private static final String L_PRODUCT_COMPONENTS_QUERY = "SELECT pc.* FROM ("
+            + "SELECT true AS input, opic.id, opic.priority, opic.operationcomponent_id, opic.product_id, opic.quantity "
+            + "FROM technologies_operationproductincomponent opic "
+            + "JOIN technologies_technologyoperationcomponent toc ON toc.id = opic.operationcomponent_id "
+            + "WHERE toc.technology_id IN (:technologyIds) UNION ALL "
+            + "SELECT false AS input, opoc.id, NULL AS priority, opoc.operationcomponent_id, opoc.product_id, opoc.quantity "
+            + "FROM technologies_operationproductoutcomponent opoc "
+            + "JOIN technologies_technologyoperationcomponent toc ON toc.id = opoc.operationcomponent_id "
+            + "WHERE toc.technology_id IN (:technologyIds)) pc ORDER BY pc.priority, pc.id";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    private final ConcurrentMap<Integer, ConcurrentMap<Long, TechnologyQuantityModel>> models = new ConcurrentHashMap<>();
+
+    public TechnologyQuantityModel getModel(final Entity technology) {
+        if (Objects.isNull(technology.getId()) || !TechnologyState.ACCEPTED.getStringValue().equals(
+                technology.getStringField(TechnologyFields.STATE))) {
+            return compile(technology);
+        }
+
+        ConcurrentMap<Long, TechnologyQuantityModel> tenantModels = getTenantModels();
+
+        TechnologyQuantityModel model = tenantModels.get(technology.getId());
+
+        if (Objects.isNull(model)) {
+            model = compile(technology);
+
+            tenantModels.put(technology.getId(), model);
+        }
+
+        return model;
+    }
+
+    /**
+     * Returns models of all given technologies. Technologies that are not cached are loaded together, with a fixed number of
+     * queries.
+     */
+    public Map<Long, TechnologyQuantityModel> getModels(final Collection<Entity> technologies) {
+        Map<Long, TechnologyQuantityModel> technologyModels = Maps.newHashMap();
+
+        List<Long> technologyIds = Lists.newArrayList();
+
+        ConcurrentMap<Long, TechnologyQuantityModel> tenantModels = getTenantModels();
+
+        for (Entity technology : technologies) {
+            if (technologyModels.containsKey(technology.getId()) || technologyIds.contains(technology.getId())) {
+                continue;
+            }
+
+            TechnologyQuantityModel model = tenantModels.get(technology.getId());
+
+            if (Objects.isNull(model)) {
+                technologyIds.add(technology.getId());
+            } else {
+                technologyModels.put(technology.getId(), model);
+            }
+        }
+
+        if (!technologyIds.isEmpty()) {
+            technologyModels.putAll(load(technologyIds, tenantModels));
+        }
+
+        return technologyModels;
+    }
+
+    public void invalidate(final Long technologyId) {
+        if (Objects.isNull(technologyId)) {
+            return;
+        }
+
+        final Integer tenantId = MultiTenantUtil.getCurrentTenantId();
+
+        removeModel(tenantId, technologyId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    removeModel(tenantId, technologyId);
+                }
+
+            });
+        }
+    }
+
+    private ConcurrentMap<Long, TechnologyQuantityModel> getTenantModels() {
+        return models.computeIfAbsent(MultiTenantUtil.getCurrentTenantId(), tenantId -> new ConcurrentHashMap<>());
+    }
+
+    private void removeModel(final Integer tenantId, final Long technologyId) {
+        ConcurrentMap<Long, TechnologyQuantityModel> tenantModels = models.get(tenantId);
+
+        if (Objects.nonNull(tenantModels)) {
+            tenantModels.remove(technologyId);
+        }
+    }
+
+    private Map<Long, TechnologyQuantityModel> load(final List<Long> technologyIds,
+            final ConcurrentMap<Long, TechnologyQuantityModel> tenantModels) {
+        Map<String, Object> params = Collections.singletonMap("technologyIds", technologyIds);
+
+        List<Map<String, Object>> technologyRows = jdbcTemplate.queryForList(L_TECHNOLOGIES_QUERY, params);
+
+        ListMultimap<Long, Map<String, Object>> operationComponentRows = ArrayListMultimap.create();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_OPERATION_COMPONENTS_QUERY, params)) {
+            operationComponentRows.put(getId(row, "technology_id"), row);
+        }
+
+        ListMultimap<Long, Map<String, Object>> inComponentRows = ArrayListMultimap.create();
+        ListMultimap<Long, Map<String, Object>> outComponentRows = ArrayListMultimap.create();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_PRODUCT_COMPONENTS_QUERY, params)) {
+            if ((Boolean) row.get("input")) {
+                inComponentRows.put(getId(row, "operationcomponent_id"), row);
+            } else {
+                outComponentRows.put(getId(row, "operationcomponent_id"), row);
+            }
+        }
+
+        DataDefinition productDD = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
+        DataDefinition technologyOperationComponentDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT);
+
+        Map<Long, TechnologyQuantityModel> technologyModels = Maps.newHashMap();
+
+        for (Map<String, Object> technologyRow : technologyRows) {
+            Long technologyId = getId(technologyRow, "id");
+
+            TechnologyQuantityModel.Builder builder = TechnologyQuantityModel.builder();
+
+            List<Map<String, Object>> rows = operationComponentRows.get(technologyId);
+
+            Map<Long, int[]> inComponents = Maps.newHashMap();
+            Map<Long, int[]> outComponents = Maps.newHashMap();
+
+            ListMultimap<Long, Map<String, Object>> children = ArrayListMultimap.create();
+
+            Map<String, Object> root = null;
+
+            for (Map<String, Object> row : rows) {
+                Long operationComponentId = getId(row, "id");
+                Long parentId = getId(row, "parent_id");
+
+                inComponents.put(operationComponentId, addComponents(builder, inComponentRows.get(operationComponentId),
+                        productDD, technologyOperationComponentDD, OPERATION_PRODUCT_IN_COMPONENT));
+                outComponents.put(operationComponentId, addComponents(builder, outComponentRows.get(operationComponentId),
+                        productDD, technologyOperationComponentDD, OPERATION_PRODUCT_OUT_COMPONENT));
+
+                builder.addTreeOperation(operationComponentId);
+
+                if (Objects.isNull(parentId)) {
+                    if (Objects.isNull(root)) {
+                        root = row;
+                    }
+                } else {
+                    children.put(parentId, row);
+                }
+            }
+
+            if (Objects.nonNull(root)) {
+                addOperation(builder, root, TechnologyQuantityModel.NO_PARENT, children, inComponents, outComponents);
+            }
+
+            TechnologyQuantityModel model = builder.build(getId(technologyRow, "product_id"));
+
+            if (TechnologyState.ACCEPTED.getStringValue().equals(technologyRow.get("state"))) {
+                tenantModels.put(technologyId, model);
+            }
+
+            technologyModels.put(technologyId, model);
+        }
+
+        return technologyModels;
+    }
+
+    private void addOperation(final TechnologyQuantityModel.Builder builder, final Map<String, Object> row, final int parent,
+            final ListMultimap<Long, Map<String, Object>> children, final Map<Long, int[]> inComponents,
+            final Map<Long, int[]> outComponents) {
+        Long operationComponentId = getId(row, "id");
+
+        int operation = builder.addOperation(parent, operationComponentId,
+                Boolean.TRUE.equals(row.get("areproductquantitiesdivisible")), Boolean.TRUE.equals(row.get("istjdivisible")),
+                inComponents.get(operationComponentId), outComponents.get(operationComponentId));
+
+        for (Map<String, Object> child : children.get(operationComponentId)) {
+            addOperation(builder, child, operation, children, inComponents, outComponents);
+        }
+    }
+
+    private int[] addComponents(final TechnologyQuantityModel.Builder builder, final List<Map<String, Object>> rows,
+            final DataDefinition productDD, final DataDefinition technologyOperationComponentDD,
+            final OperationProductComponentEntityType entityType) {
+        int[] components = new int[rows.size()];
+
+        int index = 0;
+
+        for (Map<String, Object> row : rows) {
+            OperationProductComponentHolder holder = new OperationProductComponentHolder(getId(row, "product_id"),
+                    getId(row, "operationcomponent_id"), productDD, technologyOperationComponentDD, entityType);
+
+            components[index++] = builder.addComponent(holder, (BigDecimal) row.get(L_QUANTITY));
+        }
+
+        return components;
+    }
+
+    private Long getId(final Map<String, Object> row, final String column) {
+        Number id = (Number) row.get(column);
+
+        return Objects.isNull(id) ? null : id.longValue();
+    }
+
+    private TechnologyQuantityModel compile(final Entity technology) {
+        TechnologyQuantityModel.Builder builder = TechnologyQuantityModel.builder();
+
+        EntityTree operationComponents = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+        Entity root = operationComponents.getRoot();
+
+        if (Objects.isNull(root)) {
+            return builder.build(null);
+        }
+
+        Map<Long, int[]> inComponents = Maps.newHashMap();
+        Map<Long, int[]> outComponents = Maps.newHashMap();
+
+        for (Entity operationComponent : operationComponents) {
+            inComponents.put(operationComponent.getId(), addComponents(builder,
+                    operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS)));
+            outComponents.put(operationComponent.getId(), addComponents(builder,
+                    operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS)));
+
+            builder.addTreeOperation(operationComponent.getId());
+        }
+
+        addOperation(builder, root, TechnologyQuantityModel.NO_PARENT, inComponents, outComponents);
+
+        Entity technologyProduct = technology.getBelongsToField(TechnologyFields.PRODUCT);
+
+        return builder.build(Objects.isNull(technologyProduct) ? null : technologyProduct.getId());
+    }
+
+    private void addOperation(final TechnologyQuantityModel.Builder builder, final Entity operationComponent, final int parent,
+            final Map<Long, int[]> inComponents, final Map<Long, int[]> outComponents) {
+        int[] operationInComponents = inComponents.computeIfAbsent(operationComponent.getId(),
+                operationComponentId -> addComponents(builder,
+                        operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS)));
+        int[] operationOutComponents = outComponents.computeIfAbsent(operationComponent.getId(),
+                operationComponentId -> addComponents(builder,
+                        operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS)));
+
+        int operation = builder.addOperation(parent, operationComponent.getId(),
+                operationComponent.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE),
+                operationComponent.getBooleanField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE), operationInComponents,
+                operationOutComponents);
+
+        for (Entity child : operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)) {
+            addOperation(builder, child, operation, inComponents, outComponents);
+        }
+    }
+
+    private int[] addComponents(final TechnologyQuantityModel.Builder builder, final List<Entity> operationProductComponents) {
+        int[] components = new int[operationProductComponents.size()];
+
+        int index = 0;
+
+        for (Entity operationProductComponent : operationProductComponents) {
+            components[index++] = builder.addComponent(new OperationProductComponentHolder(operationProductComponent),
+                    operationProductComponent.getDecimalField(L_QUANTITY));
+        }
+
+        return components;
+    }
+
+}
@@ -46,6 +46,7 @@ import org.springframework.test.util.ReflectionTestUtils;
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.technologies.quantities.TechnologyQuantityModelService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
@@ -112,6 +113,8 @@ public class ProductQuantitiesServiceImplTest {
         productQuantitiesService = new ProductQuantitiesServiceImpl();
 
         ReflectionTestUtils.setField(productQuantitiesService, "numberService", numberService);
+        ReflectionTestUtils.setField(productQuantitiesService, "technologyQuantityModelService",
+                new TechnologyQuantityModelService());
 
         when(order.getBelongsToField("technology")).thenReturn(technology);
 
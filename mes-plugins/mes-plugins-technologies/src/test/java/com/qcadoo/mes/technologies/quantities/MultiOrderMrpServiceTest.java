@@ -0,0 +1,336 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.quantities;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.model.api.NumberService;
+
+public class MultiOrderMrpServiceTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MultiOrderMrpServiceTest.class);
+
+    private static final MathContext L_MATH_CONTEXT = MathContext.DECIMAL64;
+
+    private static final int L_TECHNOLOGIES = 40;
+
+    private static final int L_MATERIALS = 30;
+
+    private static final Long L_FIRST_MATERIAL_ID = 1000L;
+
+    private final List<MultiOrderMrpService> services = Lists.newArrayList();
+
+    private NumberService numberService;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private Map<Long, TechnologyQuantityModel> models;
+
+    @Before
+    public void init() {
+        numberService = mock(NumberService.class);
+        jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+
+        given(numberService.getMathContext()).willReturn(L_MATH_CONTEXT);
+
+        models = generateModels(new Random(20101L));
+    }
+
+    @After
+    public void destroy() {
+        services.forEach(MultiOrderMrpService::destroy);
+    }
+
+    @Test
+    public void shouldCalculateSameQuantitiesAsPerOrderPath() {
+        // given
+        List<Order> orders = generateOrders(1000, new Random(1L));
+
+        for (MrpAlgorithm mrpAlgorithm : Lists.newArrayList(MrpAlgorithm.ALL_PRODUCTS_IN, MrpAlgorithm.ONLY_COMPONENTS)) {
+            // when
+            Map<Long, BigDecimal> serialQuantities = createService(1).getNeededProductQuantities(models,
+                    groupOrders(orders), mrpAlgorithm);
+            Map<Long, BigDecimal> parallelQuantities = createService(4).getNeededProductQuantities(models,
+                    groupOrders(orders), mrpAlgorithm);
+
+            // then
+            Map<Long, BigDecimal> expectedQuantities = getQuantitiesPerOrder(orders,
+                    MrpAlgorithm.ONLY_COMPONENTS.equals(mrpAlgorithm));
+
+            assertQuantities(expectedQuantities, serialQuantities);
+            assertQuantities(expectedQuantities, parallelQuantities);
+        }
+    }
+
+    @Test
+    public void shouldSkipProductsWithMasterTechnologyForOnlyMaterials() {
+        // given
+        List<Order> orders = generateOrders(100, new Random(2L));
+
+        Map<Long, BigDecimal> expectedQuantities = getQuantitiesPerOrder(orders, true);
+
+        List<Long> productsWithMasterTechnology = Lists.newArrayList(L_FIRST_MATERIAL_ID, L_FIRST_MATERIAL_ID + 1);
+
+        given(jdbcTemplate.queryForList(anyString(), anyMap(), eq(Long.class))).willReturn(productsWithMasterTechnology);
+
+        // when
+        Map<Long, BigDecimal> quantities = createService(1).getNeededProductQuantities(models, groupOrders(orders),
+                MrpAlgorithm.ONLY_MATERIALS);
+
+        // then
+        expectedQuantities.keySet().removeAll(productsWithMasterTechnology);
+
+        assertQuantities(expectedQuantities, quantities);
+    }
+
+    @Ignore("benchmark, run manually")
+    @Test
+    public void shouldCompareMultiOrderAndPerOrderCalculation() {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        MultiOrderMrpService serialService = createService(1);
+        MultiOrderMrpService parallelService = createService(parallelism);
+
+        for (int run = 0; run < 5; run++) {
+            List<Order> orders = generateOrders(1000, new Random(run));
+
+            long perOrderStart = System.nanoTime();
+            Map<Long, BigDecimal> expectedQuantities = getQuantitiesPerOrder(orders, false);
+            long perOrderTime = System.nanoTime() - perOrderStart;
+
+            long serialStart = System.nanoTime();
+            Map<Long, BigDecimal> serialQuantities = serialService.getNeededProductQuantities(models, groupOrders(orders),
+                    MrpAlgorithm.ALL_PRODUCTS_IN);
+            long serialTime = System.nanoTime() - serialStart;
+
+            long parallelStart = System.nanoTime();
+            Map<Long, BigDecimal> parallelQuantities = parallelService.getNeededProductQuantities(models,
+                    groupOrders(orders), MrpAlgorithm.ALL_PRODUCTS_IN);
+            long parallelTime = System.nanoTime() - parallelStart;
+
+            assertQuantities(expectedQuantities, serialQuantities);
+            assertQuantities(expectedQuantities, parallelQuantities);
+
+            LOG.info(String.format("run %d: per order %d us, serial %d us, parallel (%d threads) %d us", run,
+                    perOrderTime / 1000, serialTime / 1000, parallelism, parallelTime / 1000));
+        }
+    }
+
+    private MultiOrderMrpService createService(final int parallelism) {
+        MultiOrderMrpService service = new MultiOrderMrpService();
+
+        ReflectionTestUtils.setField(service, "parallelism", parallelism);
+        ReflectionTestUtils.setField(service, "numberService", numberService);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+
+        service.init();
+
+        services.add(service);
+
+        return service;
+    }
+
+    // mirrors ProductQuantitiesServiceImpl: one container per order, grouped by component, then summed by product
+    private Map<Long, BigDecimal> getQuantitiesPerOrder(final List<Order> orders, final boolean onlyComponents) {
+        OperationProductComponentWithQuantityContainer groupedQuantities = new OperationProductComponentWithQuantityContainer();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        for (Order order : orders) {
+            OperationProductComponentWithQuantityContainer quantities = new OperationProductComponentWithQuantityContainer();
+
+            models.get(order.technologyId).calculate(order.plannedQuantity, L_MATH_CONTEXT, quantities, nonComponents,
+                    Maps.newHashMap());
+
+            for (Map.Entry<OperationProductComponentHolder, BigDecimal> quantity : quantities.asMap().entrySet()) {
+                if (groupedQuantities.containsKey(quantity.getKey())) {
+                    groupedQuantities.put(quantity.getKey(),
+                            quantity.getValue().add(groupedQuantities.get(quantity.getKey()), L_MATH_CONTEXT));
+                } else {
+                    groupedQuantities.put(quantity.getKey(), quantity.getValue());
+                }
+            }
+        }
+
+        Map<Long, BigDecimal> productQuantities = Maps.newHashMap();
+
+        for (Map.Entry<OperationProductComponentHolder, BigDecimal> quantity : groupedQuantities.asMap().entrySet()) {
+            OperationProductComponentHolder holder = quantity.getKey();
+
+            if (!holder.isEntityTypeSame(OperationProductComponentEntityType.OPERATION_PRODUCT_IN_COMPONENT)
+                    || (onlyComponents && nonComponents.contains(holder))) {
+                continue;
+            }
+
+            productQuantities.merge(holder.getProductId(), quantity.getValue(), BigDecimal::add);
+        }
+
+        return productQuantities;
+    }
+
+    private Map<Long, Map<BigDecimal, Integer>> groupOrders(final List<Order> orders) {
+        Map<Long, Map<BigDecimal, Integer>> plannedQuantities = Maps.newLinkedHashMap();
+
+        for (Order order : orders) {
+            plannedQuantities.computeIfAbsent(order.technologyId, technologyId -> Maps.newLinkedHashMap())
+                    .merge(order.plannedQuantity.stripTrailingZeros(), 1, Integer::sum);
+        }
+
+        return plannedQuantities;
+    }
+
+    private void assertQuantities(final Map<Long, BigDecimal> expected, final Map<Long, BigDecimal> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+
+        for (Map.Entry<Long, BigDecimal> quantity : expected.entrySet()) {
+            assertEquals(0, quantity.getValue().compareTo(actual.get(quantity.getKey())));
+        }
+    }
+
+    private List<Order> generateOrders(final int count, final Random random) {
+        List<Order> orders = Lists.newArrayListWithCapacity(count);
+
+        for (int order = 0; order < count; order++) {
+            BigDecimal plannedQuantity = new BigDecimal(1 + random.nextInt(20)).multiply(new BigDecimal("12.5"));
+
+            orders.add(new Order((long) (1 + random.nextInt(L_TECHNOLOGIES)), plannedQuantity));
+        }
+
+        return orders;
+    }
+
+    // technology t produces product t; operation i of technology t produces intermediate product t * 100 + i for its parent
+    private Map<Long, TechnologyQuantityModel> generateModels(final Random random) {
+        Map<Long, TechnologyQuantityModel> technologyModels = Maps.newHashMap();
+
+        for (long technologyId = 1; technologyId <= L_TECHNOLOGIES; technologyId++) {
+            int operations = 1 + random.nextInt(6);
+            int[] parents = new int[operations];
+
+            for (int operation = 1; operation < operations; operation++) {
+                parents[operation] = random.nextInt(operation);
+            }
+
+            TechnologyQuantityModel.Builder builder = TechnologyQuantityModel.builder();
+
+            List<List<Integer>> inComponents = Lists.newArrayList();
+            int[] outComponents = new int[operations];
+
+            for (int operation = 0; operation < operations; operation++) {
+                Long operationId = technologyId * 100 + operation;
+                Long productId = (operation == 0) ? technologyId : operationId;
+
+                outComponents[operation] = builder.addComponent(out(productId, operationId), quantity(random));
+
+                List<Integer> operationInComponents = Lists.newArrayList();
+
+                for (int material = random.nextInt(3); material >= 0; material--) {
+                    operationInComponents.add(builder.addComponent(
+                            in(L_FIRST_MATERIAL_ID + random.nextInt(L_MATERIALS), operationId), quantity(random)));
+                }
+
+                inComponents.add(operationInComponents);
+
+                builder.addTreeOperation(operationId);
+            }
+
+            for (int operation = 1; operation < operations; operation++) {
+                Long parentOperationId = technologyId * 100 + parents[operation];
+
+                inComponents.get(parents[operation]).add(
+                        builder.addComponent(in(technologyId * 100 + operation, parentOperationId), quantity(random)));
+            }
+
+            int[] indexes = new int[operations];
+
+            for (int operation = 0; operation < operations; operation++) {
+                int parent = (operation == 0) ? TechnologyQuantityModel.NO_PARENT : indexes[parents[operation]];
+                boolean divisible = random.nextBoolean();
+
+                indexes[operation] = builder.addOperation(parent, technologyId * 100 + operation, divisible,
+                        random.nextBoolean(), inComponents.get(operation).stream().mapToInt(Integer::intValue).toArray(),
+                        new int[] { outComponents[operation] });
+            }
+
+            technologyModels.put(technologyId, builder.build(technologyId));
+        }
+
+        return technologyModels;
+    }
+
+    private static BigDecimal quantity(final Random random) {
+        return new BigDecimal(1 + random.nextInt(400)).movePointLeft(2);
+    }
+
+    private static OperationProductComponentHolder in(final Long productId, final Long operationId) {
+        return new OperationProductComponentHolder(productId, operationId, null, null,
+                OperationProductComponentEntityType.OPERATION_PRODUCT_IN_COMPONENT);
+    }
+
+    private static OperationProductComponentHolder out(final Long productId, final Long operationId) {
+        return new OperationProductComponentHolder(productId, operationId, null, null,
+                OperationProductComponentEntityType.OPERATION_PRODUCT_OUT_COMPONENT);
+    }
+
+    private static class Order {
+
+        private final Long technologyId;
+
+        private final BigDecimal plannedQuantity;
+
+        Order(final Long technologyId, final BigDecimal plannedQuantity) {
+            this.technologyId = technologyId;
+            this.plannedQuantity = plannedQuantity;
+        }
+
+    }
+
+}
@@ -0,0 +1,171 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.quantities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+
+public class TechnologyQuantityModelTest {
+
+    private static final Long L_ROOT_OPERATION_ID = 2L;
+
+    private static final Long L_CHILD_OPERATION_ID = 1L;
+
+    private static final Long L_UNUSED_OPERATION_ID = 3L;
+
+    private final OperationProductComponentHolder productInComponent1 = in(1L, L_CHILD_OPERATION_ID);
+
+    private final OperationProductComponentHolder productInComponent2 = in(2L, L_ROOT_OPERATION_ID);
+
+    private final OperationProductComponentHolder productInComponent3 = in(3L, L_ROOT_OPERATION_ID);
+
+    private final OperationProductComponentHolder productOutComponent2 = out(2L, L_CHILD_OPERATION_ID);
+
+    private final OperationProductComponentHolder productOutComponent4 = out(4L, L_ROOT_OPERATION_ID);
+
+    private OperationProductComponentWithQuantityContainer quantities;
+
+    private Set<OperationProductComponentHolder> nonComponents;
+
+    private Map<Long, BigDecimal> operationRuns;
+
+    @Before
+    public void init() {
+        quantities = new OperationProductComponentWithQuantityContainer();
+        nonComponents = Sets.newHashSet();
+        operationRuns = Maps.newHashMap();
+    }
+
+    @Test
+    public void shouldRoundUpOperationRunsOfIndivisibleOperations() {
+        // when
+        buildModel(false, 4L).calculate(new BigDecimal("4.5"), MathContext.DECIMAL64, quantities, nonComponents, operationRuns);
+
+        // then
+        assertQuantity("50", productInComponent1);
+        assertQuantity("10", productInComponent2);
+        assertQuantity("5", productInComponent3);
+        assertQuantity("10", productOutComponent2);
+        assertQuantity("5", productOutComponent4);
+
+        assertEquals(0, new BigDecimal(5).compareTo(operationRuns.get(L_ROOT_OPERATION_ID)));
+        assertEquals(0, new BigDecimal(10).compareTo(operationRuns.get(L_CHILD_OPERATION_ID)));
+        assertEquals(BigDecimal.ONE, operationRuns.get(L_UNUSED_OPERATION_ID));
+
+        assertEquals(Sets.newHashSet(productInComponent2), nonComponents);
+    }
+
+    @Test
+    public void shouldNotRoundQuantitiesOfDivisibleOperations() {
+        // when
+        buildModel(true, 4L).calculate(new BigDecimal("4.5"), MathContext.DECIMAL64, quantities, nonComponents, operationRuns);
+
+        // then
+        assertQuantity("45", productInComponent1);
+        assertQuantity("9", productInComponent2);
+        assertQuantity("4.5", productInComponent3);
+        assertQuantity("9", productOutComponent2);
+        assertQuantity("4.5", productOutComponent4);
+
+        assertEquals(0, new BigDecimal("4.5").compareTo(operationRuns.get(L_ROOT_OPERATION_ID)));
+        assertEquals(0, new BigDecimal(9).compareTo(operationRuns.get(L_CHILD_OPERATION_ID)));
+    }
+
+    @Test
+    public void shouldKeepQuantitiesPerRunIfRootDoesNotProduceTechnologyProduct() {
+        // when
+        buildModel(false, 5L).calculate(new BigDecimal("4.5"), MathContext.DECIMAL64, quantities, nonComponents, operationRuns);
+
+        // then
+        assertQuantity("10", productInComponent1);
+        assertQuantity("2", productInComponent2);
+        assertQuantity("2", productOutComponent2);
+        assertQuantity("1", productOutComponent4);
+
+        assertEquals(BigDecimal.ONE, operationRuns.get(L_ROOT_OPERATION_ID));
+        assertEquals(0, new BigDecimal(2).compareTo(operationRuns.get(L_CHILD_OPERATION_ID)));
+    }
+
+    @Test
+    public void shouldReturnNothingForTechnologyWithoutOperations() {
+        // given
+        TechnologyQuantityModel model = TechnologyQuantityModel.builder().build(4L);
+
+        // when
+        model.calculate(BigDecimal.TEN, MathContext.DECIMAL64, quantities, nonComponents, operationRuns);
+
+        // then
+        assertTrue(model.isEmpty());
+        assertTrue(quantities.asMap().isEmpty());
+        assertTrue(operationRuns.isEmpty());
+    }
+
+    private TechnologyQuantityModel buildModel(final boolean divisible, final Long technologyProductId) {
+        TechnologyQuantityModel.Builder builder = TechnologyQuantityModel.builder();
+
+        int[] rootIn = { builder.addComponent(productInComponent2, new BigDecimal(2)),
+                builder.addComponent(productInComponent3, BigDecimal.ONE) };
+        int[] rootOut = { builder.addComponent(productOutComponent4, BigDecimal.ONE) };
+        int[] childIn = { builder.addComponent(productInComponent1, new BigDecimal(5)) };
+        int[] childOut = { builder.addComponent(productOutComponent2, BigDecimal.ONE) };
+
+        builder.addTreeOperation(L_ROOT_OPERATION_ID).addTreeOperation(L_CHILD_OPERATION_ID)
+                .addTreeOperation(L_UNUSED_OPERATION_ID);
+
+        int root = builder.addOperation(TechnologyQuantityModel.NO_PARENT, L_ROOT_OPERATION_ID, divisible, divisible, rootIn,
+                rootOut);
+        builder.addOperation(root, L_CHILD_OPERATION_ID, divisible, divisible, childIn, childOut);
+
+        return builder.build(technologyProductId);
+    }
+
+    private void assertQuantity(final String expected, final OperationProductComponentHolder holder) {
+        assertEquals(0, new BigDecimal(expected).compareTo(quantities.get(holder)));
+    }
+
+    private static OperationProductComponentHolder in(final Long productId, final Long operationId) {
+        return new OperationProductComponentHolder(productId, operationId, null, null,
+                OperationProductComponentEntityType.OPERATION_PRODUCT_IN_COMPONENT);
+    }
+
+    private static OperationProductComponentHolder out(final Long productId, final Long operationId) {
+        return new OperationProductComponentHolder(productId, operationId, null, null,
+                OperationProductComponentEntityType.OPERATION_PRODUCT_OUT_COMPONENT);
+    }
+
+}
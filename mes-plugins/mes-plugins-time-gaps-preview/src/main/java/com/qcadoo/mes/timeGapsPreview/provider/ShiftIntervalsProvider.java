@@ -23,11 +23,8 @@
  */
 package com.qcadoo.mes.timeGapsPreview.provider;
 
-import static com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
-
 import java.util.Collection;
 import java.util.Date;
-import java.util.List;
 import java.util.Set;
 
 import org.joda.time.Interval;
@@ -73,10 +70,10 @@ public class ShiftIntervalsProvider implements IntervalsProvider {
         Interval searchInterval = context.getInterval();
         Date fromDate = searchInterval.getStart().toDate();
         Date toDate = searchInterval.getEnd().toDate();
-        List<ShiftHour> shiftHours = shiftsService.getHoursForAllShifts(fromDate, toDate);
+        long[] shiftWorkTimes = shiftsService.getWorkingIntervalsForAllShifts(fromDate, toDate);
         Set<Interval> shiftWorkTimeIntervals = Sets.newHashSet();
-        for (ShiftHour shiftHour : shiftHours) {
-            Interval shiftWorkTimeInterval = new Interval(shiftHour.getDateFrom().getTime(), shiftHour.getDateTo().getTime());
+        for (int i = 0; i < shiftWorkTimes.length; i += 2) {
+            Interval shiftWorkTimeInterval = new Interval(shiftWorkTimes[i], shiftWorkTimes[i + 1]);
             shiftWorkTimeIntervals.add(shiftWorkTimeInterval);
         }
         return shiftWorkTimeIntervals;
@@ -23,8 +23,13 @@
  */
 package com.qcadoo.mes.warehouseMinimalState.hooks;
 
+import java.math.BigDecimal;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockLedgerService;
 import com.qcadoo.mes.warehouseMinimalState.constants.WarehouseMinimumStateFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
@@ -33,6 +38,32 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 @Service
 public class WarehouseMinimumStateHooks {
 
+    @Autowired
+    private ResourceStockLedgerService resourceStockLedgerService;
+
+    public void onSave(final DataDefinition locationMinimumStateDD, final Entity locationMinimumState) {
+        if (Objects.nonNull(locationMinimumState.getId())) {
+            addMinimumState(locationMinimumStateDD.get(locationMinimumState.getId()), true);
+        }
+
+        addMinimumState(locationMinimumState, false);
+    }
+
+    public void onDelete(final DataDefinition locationMinimumStateDD, final Entity locationMinimumState) {
+        addMinimumState(locationMinimumState, true);
+    }
+
+    private void addMinimumState(final Entity locationMinimumState, final boolean subtract) {
+        BigDecimal minimumState = locationMinimumState.getDecimalField(WarehouseMinimumStateFields.MINIMUM_STATE);
+
+        if (Objects.nonNull(minimumState) && subtract) {
+            minimumState = minimumState.negate();
+        }
+
+        resourceStockLedgerService.addMinimumState(locationMinimumState.getBelongsToField(WarehouseMinimumStateFields.LOCATION),
+                locationMinimumState.getBelongsToField(WarehouseMinimumStateFields.PRODUCT), minimumState);
+    }
+
     public boolean validatesWith(final DataDefinition locationMinimumStateDD, final Entity locationMinimumState) {
 
         Entity lms = getLocationMinimumStateByProductAndLocation(locationMinimumStateDD,